@@ -0,0 +1,110 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import ninja.javahacker.javahtmlrenderer.CompletionMode;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the whole {@link HtmlRenderer#render(String, RenderOptions)} for documents of different shapes.
+ * <p>The documents are rendered with {@link CompletionMode#UNTIL_LOADED}, so the fixed sleep time does not
+ * dominate the measurements. The sleep time is just an upper bound for loading the images.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HtmlRendererBenchmark {
+
+    public enum Document {
+        TEXT, IMAGES, TABLE
+    }
+
+    @Param({"TEXT", "IMAGES", "TABLE"})
+    public Document document;
+
+    private File image;
+
+    private String html;
+
+    private RenderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        image = File.createTempFile("benchmark", ".png");
+        var img = new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB);
+        var g = img.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, Color.BLUE, 160, 120, Color.ORANGE));
+            g.fillRect(0, 0, 160, 120);
+        } finally {
+            g.dispose();
+        }
+        ImageIO.write(img, "png", image);
+        html = makeHtml(document, image.toURI().toString());
+        options = RenderOptions.defaults().withCompletionMode(CompletionMode.UNTIL_LOADED).withSleepTime(5_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!image.delete()) image.deleteOnExit();
+    }
+
+    private static String makeHtml(Document document, String imageUrl) {
+        var html = new StringBuilder();
+        switch (document) {
+            case TEXT:
+                for (int i = 0; i < 50; i++) {
+                    html.append("<p style=\"font-family: 'Arial'; font-size: 12;\">Paragraph ").append(i)
+                            .append(": Lorem ipsum dolor sit amet, <b>consectetur</b> adipiscing <i>elit</i>.</p>");
+                }
+                break;
+            case IMAGES:
+                for (int i = 0; i < 20; i++) {
+                    html.append("<div><img src='").append(imageUrl).append("' /> Image ").append(i).append("</div>");
+                }
+                break;
+            case TABLE:
+                html.append("<table border='1'>");
+                for (int i = 0; i < 200; i++) {
+                    html.append("<tr>");
+                    for (int j = 0; j < 5; j++) {
+                        html.append("<td>Cell ").append(i).append(",").append(j).append("</td>");
+                    }
+                    html.append("</tr>");
+                }
+                html.append("</table>");
+                break;
+            default:
+                throw new AssertionError();
+        }
+        return html.toString();
+    }
+
+    @Benchmark
+    public BufferedImage render() throws InterruptedException {
+        return HtmlRenderer.render(html, options);
+    }
+}
@@ -0,0 +1,91 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.HtmlTemplate;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares rendering a large template by substituting its values in the HTML source, which is parsed again
+ * for every render, with binding them to an {@link HtmlTemplate}, which is parsed once.
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HtmlTemplateBenchmark {
+
+    @Param({"20", "200"})
+    public int rows;
+
+    private String source;
+
+    private HtmlTemplate template;
+
+    private HtmlRenderEngine engine;
+
+    private RenderOptions options;
+
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var html = new StringBuilder("<h1>${title}</h1><table border='1'>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td>Row ").append(i).append("</td><td style='color: red;'>${cell").append(i % 10)
+                    .append("}</td><td><b>Fixed</b> text</td></tr>");
+        }
+        source = html.append("</table>").toString();
+        template = new HtmlTemplate(source);
+        engine = new HtmlRenderEngine();
+        options = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+    }
+
+    private Map<String, Object> nextValues() {
+        round++;
+        var values = new HashMap<String, Object>();
+        values.put("title", "Report " + round);
+        for (int i = 0; i < 10; i++) {
+            values.put("cell" + i, round * 10 + i);
+        }
+        return values;
+    }
+
+    @Benchmark
+    public BufferedImage substituteAndParse() throws InterruptedException {
+        var html = source;
+        for (var e : nextValues().entrySet()) {
+            html = html.replace("${" + e.getKey() + "}", String.valueOf(e.getValue()));
+        }
+        return engine.render(html, options);
+    }
+
+    @Benchmark
+    public BufferedImage bindTemplate() throws InterruptedException {
+        return engine.render(template, nextValues(), options);
+    }
+}
@@ -0,0 +1,88 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ImageCompare#equals(BufferedImage, BufferedImage)} for identical images and for images
+ * that differ in their first or in their last pixel, both for images of the same type, which are compared
+ * straight from their rasters, and for images of different types, which are compared color by color.
+ * <p>As a baseline, the same images are also compared pixel by pixel with {@link BufferedImage#getRGB(int, int)},
+ * column by column, just as the images used to be compared.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageCompareBenchmark {
+
+    public enum Difference {
+        IDENTICAL, EARLY_MISMATCH, LATE_MISMATCH
+    }
+
+    @Param({"IDENTICAL", "EARLY_MISMATCH", "LATE_MISMATCH"})
+    public Difference difference;
+
+    @Param({"true", "false"})
+    public boolean sameType;
+
+    @Param({"1000x1000", "3840x2160"})
+    public String size;
+
+    private int width;
+
+    private int height;
+
+    private BufferedImage a;
+
+    private BufferedImage b;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var dimensions = size.split("x");
+        width = Integer.parseInt(dimensions[0]);
+        height = Integer.parseInt(dimensions[1]);
+        a = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        b = new BufferedImage(width, height, sameType ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = x * 31 + y * 17 & 0xFFFFFF;
+                a.setRGB(x, y, rgb);
+                b.setRGB(x, y, rgb);
+            }
+        }
+        if (difference == Difference.EARLY_MISMATCH) b.setRGB(0, 0, ~a.getRGB(0, 0));
+        if (difference == Difference.LATE_MISMATCH) b.setRGB(width - 1, height - 1, ~a.getRGB(width - 1, height - 1));
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return ImageCompare.equals(a, b);
+    }
+
+    @Benchmark
+    public boolean perPixel() {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of a {@link ParallelHtmlRenderer} with different numbers of workers, while as many
+ * threads as the machine has processors ask for renders.
+ * <p>With a single worker, the renders are serialized just as if they were done in the Event Dispatch Thread,
+ * so that is the baseline for the speedup of the other worker counts.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParallelHtmlRendererBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int workers;
+
+    private ParallelHtmlRenderer renderer;
+
+    private String html;
+
+    private RenderOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        renderer = new ParallelHtmlRenderer(workers);
+        var text = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            text.append("<p style='font-size: ").append(10 + i % 12).append(";'>Lorem <b>ipsum</b> dolor sit amet, ")
+                    .append("<i>consectetur</i> adipiscing elit, sed do eiusmod tempor ").append(i).append("</p>");
+        }
+        html = text.toString();
+        options = RenderOptions.defaults().withHeadless(true).withSleepTime(0).withWidth(600);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        renderer.close();
+    }
+
+    @Benchmark
+    public BufferedImage render() throws InterruptedException {
+        return renderer.render(html, options);
+    }
+}
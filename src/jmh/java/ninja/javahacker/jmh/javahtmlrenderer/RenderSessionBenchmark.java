@@ -0,0 +1,85 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.RenderSession;
+import ninja.javahacker.javahtmlrenderer.RenderUpdate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares rendering again a whole dashboard where a single number changed with rendering it in a {@link RenderSession},
+ * either from the whole HTML source or by the {@code id} of the changed element.
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderSessionBenchmark {
+
+    @Param({"20", "200"})
+    public int rows;
+
+    private HtmlRenderEngine engine;
+
+    private RenderSession session;
+
+    private RenderOptions options;
+
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        options = RenderOptions.defaults().withHeadless(true).withSleepTime(0).withWidth(600);
+        engine = new HtmlRenderEngine();
+        session = new RenderSession(options);
+        session.render(dashboard(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        engine.close();
+    }
+
+    private String dashboard(int value) {
+        var html = new StringBuilder("<h1>Dashboard</h1><table border='1'>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td>Metric ").append(i).append("</td><td id='m").append(i).append("'>")
+                    .append(i == 0 ? value : i).append("</td><td><b>Fixed</b> text</td></tr>");
+        }
+        return html.append("</table>").toString();
+    }
+
+    @Benchmark
+    public BufferedImage fullRender() throws InterruptedException {
+        return engine.render(dashboard(++round % 1000), options);
+    }
+
+    @Benchmark
+    public RenderUpdate sessionRender() throws InterruptedException {
+        return session.render(dashboard(++round % 1000));
+    }
+
+    @Benchmark
+    public RenderUpdate sessionUpdate() throws InterruptedException {
+        return session.update(Map.of("m0", ++round % 1000));
+    }
+}
@@ -0,0 +1,62 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JEditorPane;
+import ninja.javahacker.javahtmlrenderer.Screenshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link Screenshot} of components of different sizes, both allocating a new image each time
+ * and painting into a reused one.
+ * <p>Each benchmark thread has its own component, which is never shown, so it is confined to that thread
+ * instead of being used in the AWT's Event Dispatch Thread.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ScreenshotBenchmark {
+
+    @Param({"100", "500", "2000"})
+    public int size;
+
+    private JEditorPane pane;
+
+    private BufferedImage target;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var html = new StringBuilder();
+        for (int i = 0; i < size / 10; i++) {
+            html.append("<p>Line ").append(i).append(": <span style='color: red;'>Lorem ipsum</span> dolor sit amet</p>");
+        }
+        pane = new JEditorPane("text/html", html.toString());
+        pane.setSize(size, size);
+        target = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public BufferedImage screenshot() {
+        return Screenshot.screenshot(pane);
+    }
+
+    @Benchmark
+    public BufferedImage screenshotIntoTarget() {
+        return Screenshot.screenshot(pane, target);
+    }
+}
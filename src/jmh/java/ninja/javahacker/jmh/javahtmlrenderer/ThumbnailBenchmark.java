@@ -0,0 +1,73 @@
+package ninja.javahacker.jmh.javahtmlrenderer;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JEditorPane;
+import ninja.javahacker.javahtmlrenderer.ScaleQuality;
+import ninja.javahacker.javahtmlrenderer.Screenshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares taking a thumbnail of a large component by scaling down a screenshot of all of it with painting it straight
+ * into the thumbnail with {@link Screenshot#thumbnail(java.awt.Component, BufferedImage, ScaleQuality)}.
+ * <p>Each benchmark thread has its own component, which is never shown, so it is confined to that thread
+ * instead of being used in the AWT's Event Dispatch Thread.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ThumbnailBenchmark {
+
+    @Param({"2000"})
+    public int size;
+
+    @Param({"FAST", "BILINEAR", "PROGRESSIVE"})
+    public ScaleQuality quality;
+
+    private JEditorPane pane;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var html = new StringBuilder();
+        for (int i = 0; i < size / 10; i++) {
+            html.append("<p>Line ").append(i).append(": <span style='color: red;'>Lorem ipsum</span> dolor sit amet</p>");
+        }
+        pane = new JEditorPane("text/html", html.toString());
+        pane.setSize(size, size);
+    }
+
+    @Benchmark
+    public BufferedImage screenshotThenScale() {
+        var full = Screenshot.screenshot(pane);
+        var thumb = new BufferedImage(size / 10, size / 10, BufferedImage.TYPE_INT_RGB);
+        var g = thumb.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(full, 0, 0, thumb.getWidth(), thumb.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+        return thumb;
+    }
+
+    @Benchmark
+    public BufferedImage thumbnail() {
+        return Screenshot.thumbnail(pane, new BufferedImage(size / 10, size / 10, BufferedImage.TYPE_INT_RGB), quality);
+    }
+}
@@ -11,6 +11,7 @@ import ninja.javahacker.javahtmlrenderer.ImageCompare;
 })
 module ninja.javahacker.javahtmlrenderer {
     requires transitive java.desktop;
+    requires transitive jdk.jfr;
     requires transitive static lombok;
     requires transitive static com.github.spotbugs.annotations;
     exports ninja.javahacker.javahtmlrenderer;
@@ -0,0 +1,392 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+
+/**
+ * Renders HTML pages into {@link BufferedImage}s asynchronously, giving the results as {@link CompletableFuture}s.
+ * <p>Each render is run by an {@link Executor}, whose thread mostly just waits for the AWT's Event Dispatch Thread
+ * and for the images of the document to load. By default, a virtual thread is started for each render when the
+ * JVM supports them, so thousands of renders might be waiting at the same time without parking as many platform
+ * threads. If the JVM has no virtual threads, a cached pool of platform threads is used instead. A different
+ * {@link Executor} might also be given.</p>
+ * <p>A render might be cancelled by {@linkplain CompletableFuture#cancel(boolean) cancelling} its future or be
+ * given a timeout, after which its future fails with a {@link java.util.concurrent.TimeoutException}. Either way,
+ * the frame and the editor pane in use by the render, if any, are disposed as soon as possible.</p>
+ * <p>At most a given number of renders might be pending at the same time. Further calls to
+ * {@link #render(String, RenderOptions)} block until some of the pending renders completes, so a caller
+ * that produces renders faster than they are completed is slowed down instead of queueing them endlessly.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (AsyncHtmlRenderer renderer = new AsyncHtmlRenderer()) {
+ *         CompletableFuture&lt;BufferedImage&gt; a = renderer.render("&lt;p&gt;Hello&lt;/p&gt;");
+ *         CompletableFuture&lt;BufferedImage&gt; b = renderer.render("&lt;p&gt;World&lt;/p&gt;");
+ *         a.thenAcceptBoth(b, (x, y) -&gt; ...);
+ *     }
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class AsyncHtmlRenderer implements AutoCloseable {
+
+    /**
+     * The default maximum number of pending renders.
+     */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    /**
+     * Counts the created instances, in order to name their threads.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    /**
+     * Runs the renders.
+     */
+    @NonNull
+    private final Executor executor;
+
+    /**
+     * The {@link #executor} if it was created by this renderer, which must shut it down, or {@code null} otherwise.
+     */
+    private final ExecutorService owned;
+
+    /**
+     * The maximum number of pending renders.
+     */
+    private final int maxPending;
+
+    /**
+     * Limits the number of pending renders.
+     */
+    @NonNull
+    private final Semaphore permits;
+
+    /**
+     * Tells if this renderer was already closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a renderer with its own executor and the default maximum number of pending renders.
+     */
+    public AsyncHtmlRenderer() {
+        this(DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Creates a renderer with its own executor and the given maximum number of pending renders.
+     * @param maxPending The maximum number of pending renders.
+     * @throws IllegalArgumentException If the {@code maxPending} is not positive.
+     */
+    public AsyncHtmlRenderer(int maxPending) {
+        this(maxPending, defaultExecutor());
+    }
+
+    /**
+     * Creates a renderer that runs its renders in the given executor.
+     * <p>The executor is not shut down when this renderer is closed.</p>
+     * @param executor The executor that runs the renders.
+     * @param maxPending The maximum number of pending renders.
+     * @throws IllegalArgumentException If the {@code executor} is {@code null} or the {@code maxPending} is not positive.
+     */
+    public AsyncHtmlRenderer(@NonNull Executor executor, int maxPending) {
+        this(executor, null, maxPending);
+    }
+
+    /**
+     * Creates a renderer that runs its renders in an executor created by itself.
+     * @param maxPending The maximum number of pending renders.
+     * @param owned The executor that runs the renders.
+     * @throws IllegalArgumentException If the {@code maxPending} is not positive.
+     */
+    private AsyncHtmlRenderer(int maxPending, @NonNull ExecutorService owned) {
+        this(owned, owned, maxPending);
+    }
+
+    /**
+     * Creates a renderer that runs its renders in the given executor.
+     * @param executor The executor that runs the renders.
+     * @param owned The {@code executor} if it was created by this renderer or {@code null} otherwise.
+     * @param maxPending The maximum number of pending renders.
+     * @throws IllegalArgumentException If the {@code maxPending} is not positive.
+     */
+    private AsyncHtmlRenderer(@NonNull Executor executor, ExecutorService owned, int maxPending) {
+        if (maxPending < 1) {
+            if (owned != null) owned.shutdown();
+            throw new IllegalArgumentException("The maxPending must be positive.");
+        }
+        this.executor = executor;
+        this.owned = owned;
+        this.maxPending = maxPending;
+        this.permits = new Semaphore(maxPending, true);
+    }
+
+    /**
+     * Creates the executor used when none is given.
+     * <p>It starts a new virtual thread for each render if the JVM supports them.
+     * Otherwise, it is a cached pool of daemon platform threads.</p>
+     * @return The created executor.
+     */
+    private static ExecutorService defaultExecutor() {
+        try {
+            // Looked up reflectively, since virtual threads are newer than the Java version targeted by this library.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            int instance = INSTANCES.incrementAndGet();
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "AsyncHtmlRenderer-" + instance + "-worker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Returns the maximum number of pending renders.
+     * @return The maximum number of pending renders.
+     */
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Starts the render of a given HTML source using the default render options and without any timeout.
+     * @param html The HTML that should be rendered.
+     * @return A future that gives the rendered image.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for the number of pending renders to drop.
+     */
+    public CompletableFuture<BufferedImage> render(@NonNull String html) throws InterruptedException {
+        return render(html, RenderOptions.defaults());
+    }
+
+    /**
+     * Starts the render of a given HTML source using the given render options and without any timeout.
+     * <p>If there are already as many pending renders as allowed, waits until some of them completes.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return A future that gives the rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for the number of pending renders to drop.
+     */
+    public CompletableFuture<BufferedImage> render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        return start(html, options, 0);
+    }
+
+    /**
+     * Starts the render of a given HTML source using the given render options and timeout.
+     * <p>If there are already as many pending renders as allowed, waits until some of them completes.
+     * That wait is not accounted in the {@code timeout}.</p>
+     * <p>If the render does not complete within the {@code timeout}, its future fails with a
+     * {@link java.util.concurrent.TimeoutException} and the render is abandoned.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param timeout How long the render might take.
+     * @return A future that gives the rendered image.
+     * @throws IllegalArgumentException If the {@code html}, the {@code options} or the {@code timeout} are {@code null}
+     *     or the {@code timeout} is zero or negative.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for the number of pending renders to drop.
+     */
+    public CompletableFuture<BufferedImage> render(@NonNull String html, @NonNull RenderOptions options, @NonNull Duration timeout)
+            throws InterruptedException
+    {
+        if (timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("The timeout must be positive.");
+        return start(html, options, timeout.toNanos());
+    }
+
+    /**
+     * Starts the render of a given HTML source.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param timeout How long the render might take in nanoseconds or zero if there is no timeout.
+     * @return A future that gives the rendered image.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for the number of pending renders to drop.
+     */
+    private CompletableFuture<BufferedImage> start(@NonNull String html, @NonNull RenderOptions options, long timeout)
+            throws InterruptedException
+    {
+        if (closed) throw new IllegalStateException("The renderer is closed.");
+        permits.acquire();
+        Job job = new Job(html, options);
+        CompletableFuture<BufferedImage> future = job.future;
+        future.whenComplete((r, e) -> {
+            permits.release();
+            if (e != null) job.abort();
+        });
+        if (timeout > 0) future.orTimeout(timeout, TimeUnit.NANOSECONDS);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Closes this renderer.
+     * <p>Pending renders are allowed to finish, but no new render might be started.
+     * If this renderer created its own executor, that executor is shut down.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (owned != null) owned.shutdown();
+    }
+
+    /**
+     * A single render and the state needed to abandon it at any moment.
+     * <p>The surface is created, used and disposed only in the AWT's Event Dispatch Thread, so whether the
+     * render is abandoned before, during or after the surface creation, it is always disposed exactly once.</p>
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    private static final class Job implements Runnable {
+
+        /**
+         * The HTML that should be rendered.
+         */
+        @NonNull
+        private final String html;
+
+        /**
+         * The render options.
+         */
+        @NonNull
+        private final RenderOptions options;
+
+        /**
+         * Gives the rendered image.
+         */
+        @NonNull
+        private final CompletableFuture<BufferedImage> future;
+
+        /**
+         * Gathers the metrics of the render.
+         */
+        @NonNull
+        private final RenderRecorder recorder;
+
+        /**
+         * The surface in use or {@code null} if there is none.
+         * <p>This is accessed only in the AWT's Event Dispatch Thread.</p>
+         */
+        private RenderSurface surface;
+
+        /**
+         * Tells if the render was abandoned.
+         * <p>This is accessed only in the AWT's Event Dispatch Thread.</p>
+         */
+        private boolean aborted;
+
+        /**
+         * The thread running the render or {@code null} if it is not running.
+         * <p>This is accessed only while holding the lock of this object.</p>
+         */
+        private Thread runner;
+
+        /**
+         * Sole constructor.
+         * @param html The HTML that should be rendered.
+         * @param options The render options.
+         */
+        public Job(@NonNull String html, @NonNull RenderOptions options) {
+            this.html = html;
+            this.options = options;
+            this.future = new CompletableFuture<>();
+            this.recorder = RenderRecorder.start(options);
+        }
+
+        /**
+         * Renders the HTML source and completes the future with the result.
+         */
+        @Override
+        public void run() {
+            if (future.isDone()) return;
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            recorder.started();
+            try {
+                AtomicReference<ImageLoadTracker> tracker = new AtomicReference<>();
+                AtomicReference<BufferedImage> result = new AtomicReference<>();
+                HtmlRenderer.invokeAndWait(recorder, () -> tracker.set(load()));
+                HtmlRenderer.awaitCompletion(tracker.get(), options, recorder);
+                HtmlRenderer.invokeAndWait(recorder, () -> result.set(paint()));
+                if (result.get() == null) return;
+                recorder.finish();
+                future.complete(result.get());
+            } catch (InterruptedException | RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // Don't leak the interruption made by abort() into the next task of the executor's thread.
+                if (future.isCompletedExceptionally()) Thread.interrupted();
+            }
+        }
+
+        /**
+         * Creates the surface and loads the HTML source into it, unless the render was already abandoned.
+         * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+         * @return The tracker of the images in the document or {@code null} if there is none.
+         */
+        private ImageLoadTracker load() {
+            if (aborted) return null;
+            surface = RenderSurface.create(options.isHeadless());
+            return surface.load(html, options, recorder);
+        }
+
+        /**
+         * Paints and disposes the surface, unless the render was already abandoned.
+         * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+         * @return The painted image or {@code null} if the render was abandoned.
+         */
+        private BufferedImage paint() {
+            if (surface == null) return null;
+            try {
+                return surface.paint(options.getPixelType());
+            } finally {
+                long dispose = recorder.mark();
+                surface.dispose();
+                surface = null;
+                recorder.add(RenderPhase.DISPOSE, dispose);
+            }
+        }
+
+        /**
+         * Abandons the render, interrupting its thread and disposing its surface.
+         */
+        public void abort() {
+            synchronized (this) {
+                if (runner != null) runner.interrupt();
+            }
+            EventQueue.invokeLater(() -> {
+                aborted = true;
+                if (surface != null) {
+                    surface.dispose();
+                    surface = null;
+                }
+            });
+        }
+    }
+}
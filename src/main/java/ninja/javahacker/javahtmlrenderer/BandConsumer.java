@@ -0,0 +1,22 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives the horizontal bands of a document rendered in bands, from the top to the bottom.
+ * @see HtmlRenderEngine#render(String, RenderOptions, int, BandConsumer)
+ * @author Victor Williams Stafusa da Silva
+ */
+@FunctionalInterface
+public interface BandConsumer {
+
+    /**
+     * Receives a band of the rendered document.
+     * <p>The image of the band is reused for the next bands, so it should not be used after this method returns.
+     * Callers that need to keep the pixels should copy them.</p>
+     * @param y The first row of the band in the document.
+     * @param band The image of the band. It is as wide as the document and, except for the last band, as tall as
+     *     the requested band height.
+     */
+    public void accept(int y, BufferedImage band);
+}
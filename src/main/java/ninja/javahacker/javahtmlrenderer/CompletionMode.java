@@ -0,0 +1,23 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * Defines how the {@link HtmlRenderer} decides that the HTML document is ready to be painted.
+ * @see RenderOptions#withCompletionMode(CompletionMode)
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum CompletionMode {
+
+    /**
+     * Always waits for the full {@linkplain RenderOptions#getSleepTime() sleep time} before painting.
+     * <p>This is the historical behavior and is the default.</p>
+     */
+    FIXED_WAIT,
+
+    /**
+     * Paints as soon as the document is parsed and every {@code <img>} in its HTML view
+     * either finished loading or failed.
+     * <p>The {@linkplain RenderOptions#getSleepTime() sleep time} is used only as an upper bound
+     * for that wait. Documents without images are painted right away.</p>
+     */
+    UNTIL_LOADED;
+}
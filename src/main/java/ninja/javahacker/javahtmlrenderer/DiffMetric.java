@@ -0,0 +1,24 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * Defines how the {@link ImageDiff} measures how different two pixels are.
+ * @see ImageDiff#withMetric(DiffMetric)
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum DiffMetric {
+
+    /**
+     * The largest absolute difference among the alpha, red, green and blue channels, from 0 to 255.
+     * <p>Two pixels differ if that difference is larger than the {@linkplain ImageDiff#getTolerance() tolerance}.
+     * This is the default.</p>
+     */
+    CHANNEL,
+
+    /**
+     * A perceptual distance between the colors, measured in the YIQ color space after blending them over white.
+     * <p>Differences in brightness weight more than differences in hue, as they are more noticeable to the human eye.
+     * Two pixels differ if that distance is larger than the distance between black and white scaled by the
+     * square of the {@linkplain ImageDiff#getTolerance() tolerance} divided by 255.</p>
+     */
+    PERCEPTUAL;
+}
@@ -0,0 +1,322 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.NonNull;
+
+/**
+ * An image whose pixels are stored outside of the Java heap, in a direct {@link ByteBuffer} or in a file mapped
+ * into memory.
+ * <p>Large renders kept in the heap weigh on the garbage collector and are usually copied again to be handed to native
+ * code, to another process or to a file. The pixels of these images are instead painted in small bands, which are
+ * copied straight into the buffer, so the heap only ever holds a band. The buffer might then be handed as is to
+ * whatever needs the pixels, and a file mapped into memory already has them, without writing anything.</p>
+ * <p>The pixels are stored row by row, from the top to the bottom, without any padding nor header:</p>
+ * <ul>
+ *     <li>{@link PixelType#ARGB} stores four bytes per pixel, in the order alpha, red, green and blue.</li>
+ *     <li>{@link PixelType#RGB} stores four bytes per pixel, in the order unused, red, green and blue.</li>
+ *     <li>{@link PixelType#GRAY} stores one byte per pixel.</li>
+ * </ul>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     DirectImage image = HtmlRenderer.renderMapped(html, options, Path.of("render.raw"));
+ *     ByteBuffer pixels = image.getBuffer();
+ *     BufferedImage view = image.getImage();
+ * </pre>
+ * <p>The {@link #getImage() image view} shares the pixels with the buffer, but it is slower to read and to paint
+ * than the images stored in the heap, since Java2D has no optimized paths for it.</p>
+ * <p>Instances of this class might be read by many threads at once, but writing into their pixels is not thread-safe.</p>
+ * @see HtmlRenderer#renderDirect(String, RenderOptions)
+ * @see HtmlRenderer#renderMapped(String, RenderOptions, Path)
+ * @see Screenshot#screenshot(java.awt.Component, DirectImage)
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class DirectImage {
+
+    /**
+     * The width of the image.
+     */
+    private final int width;
+
+    /**
+     * The height of the image.
+     */
+    private final int height;
+
+    /**
+     * The pixel type of the image.
+     */
+    @NonNull
+    private final PixelType type;
+
+    /**
+     * The pixels of the image, in big-endian order.
+     */
+    @NonNull
+    private final ByteBuffer pixels;
+
+    /**
+     * The pixels of the image as {@code int}s or {@code null} if they are stored as single bytes.
+     */
+    private final IntBuffer ints;
+
+    /**
+     * An image sharing the pixels of the buffer.
+     */
+    @NonNull
+    private final BufferedImage image;
+
+    /**
+     * Sole constructor.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The pixel type of the image.
+     * @param pixels The pixels of the image.
+     */
+    private DirectImage(int width, int height, @NonNull PixelType type, @NonNull ByteBuffer pixels) {
+        this.width = width;
+        this.height = height;
+        this.type = type;
+        this.pixels = pixels;
+        this.ints = bytesPerPixel(type) == 4 ? pixels.asIntBuffer() : null;
+        ColorModel cm = type.getColorModel();
+        DataBuffer data = ints == null ? new ByteData(pixels, width * height) : new IntData(ints, width * height);
+        WritableRaster raster = Raster.createWritableRaster(cm.createCompatibleSampleModel(width, height), data, null);
+        this.image = new BufferedImage(cm, raster, cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Allocates an image in a direct buffer, with all of its pixels zeroed.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The pixel type of the image.
+     * @return The allocated image.
+     * @throws IllegalArgumentException If the {@code width} or the {@code height} are not positive, if the {@code type}
+     *     is {@code null} or if the image does not fit in a single buffer.
+     */
+    public static DirectImage allocate(int width, int height, PixelType type) {
+        int size = sizeOf(width, height, type);
+        return new DirectImage(width, height, type, ByteBuffer.allocateDirect(size));
+    }
+
+    /**
+     * Maps an image into a file, which is created if it does not exist or resized to the size of the pixels if it does.
+     * <p>The pixels already in the file, if any, are kept. The file might be closed and even deleted right after this
+     * method returns, and the mapping still works until the image is garbage collected.</p>
+     * @param file The file.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The pixel type of the image.
+     * @return The mapped image.
+     * @throws IllegalArgumentException If the {@code file} or the {@code type} are {@code null}, if the {@code width}
+     *     or the {@code height} are not positive or if the image does not fit in a single buffer.
+     * @throws IOException If the file could not be created, resized or mapped.
+     */
+    public static DirectImage map(Path file, int width, int height, PixelType type) throws IOException {
+        if (file == null) throw new IllegalArgumentException("The file can't be null.");
+        int size = sizeOf(width, height, type);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+            return new DirectImage(width, height, type, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Gives the size in bytes of the pixels of an image.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The pixel type of the image.
+     * @return The size in bytes of the pixels of the image.
+     * @throws IllegalArgumentException If the {@code width} or the {@code height} are not positive, if the {@code type}
+     *     is {@code null} or if the image does not fit in a single buffer.
+     */
+    private static int sizeOf(int width, int height, PixelType type) {
+        if (type == null) throw new IllegalArgumentException("The type can't be null.");
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("The width and the height must be positive.");
+        long size = (long) width * height * bytesPerPixel(type);
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("The image does not fit in a single buffer.");
+        return (int) size;
+    }
+
+    /**
+     * Gives the number of bytes of each pixel of a pixel type.
+     * @param type The pixel type.
+     * @return The number of bytes of each pixel.
+     */
+    private static int bytesPerPixel(@NonNull PixelType type) {
+        return DataBuffer.getDataTypeSize(type.getColorModel().getTransferType()) / 8;
+    }
+
+    /**
+     * Copies a band painted in the heap into the pixels of this image.
+     * <p>The band must be an image created by {@link PixelType#create(int, int)} with the pixel type and the width
+     * of this image, or a subimage of its top rows. Its rows that fall below this image are ignored.</p>
+     * @param y The row of this image where the top of the band goes.
+     * @param band The band.
+     */
+    void put(int y, @NonNull BufferedImage band) {
+        int length = Math.min(band.getHeight(), height - y) * width;
+        DataBuffer data = band.getRaster().getDataBuffer();
+        if (ints != null) {
+            ints.put(y * width, ((DataBufferInt) data).getData(), 0, length);
+        } else {
+            pixels.put(y * width, ((DataBufferByte) data).getData(), 0, length);
+        }
+    }
+
+    /**
+     * Returns the width of the image.
+     * @return The width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     * @return The height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the pixel type of the image.
+     * @return The pixel type of the image.
+     */
+    public PixelType getPixelType() {
+        return type;
+    }
+
+    /**
+     * Returns a buffer with the pixels of the image, from its position zero to its limit.
+     * <p>The buffer shares the pixels with the image, so the changes in one are seen in the other, but it has its own
+     * position, limit and byte order.</p>
+     * @return A buffer with the pixels of the image.
+     */
+    public ByteBuffer getBuffer() {
+        return pixels.duplicate();
+    }
+
+    /**
+     * Returns an image that shares its pixels with this one, which might be read or painted like any other.
+     * <p>Unlike the images stored in the heap, which might be painted with {@link BufferedImage#createGraphics()} as
+     * fast as the Java2D allows, painting this one goes pixel by pixel. So, it is better suited to read the pixels,
+     * for example to compare them or to encode them with {@link javax.imageio.ImageIO}.</p>
+     * @return An image that shares its pixels with this one.
+     */
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Writes the pixels of an image mapped into a file to the storage device, as done by {@link MappedByteBuffer#force()}.
+     * <p>If the image is not mapped into a file, this does nothing.</p>
+     */
+    public void force() {
+        if (pixels instanceof MappedByteBuffer) ((MappedByteBuffer) pixels).force();
+    }
+
+    /**
+     * Pixels stored as {@code int}s in a buffer.
+     */
+    private static final class IntData extends DataBuffer {
+
+        /**
+         * The pixels.
+         */
+        @NonNull
+        private final IntBuffer pixels;
+
+        /**
+         * Sole constructor.
+         * @param pixels The pixels.
+         * @param size The number of pixels.
+         */
+        IntData(@NonNull IntBuffer pixels, int size) {
+            super(DataBuffer.TYPE_INT, size);
+            this.pixels = pixels;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param bank {@inheritDoc}
+         * @param i {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int getElem(int bank, int i) {
+            return pixels.get(i);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param bank {@inheritDoc}
+         * @param i {@inheritDoc}
+         * @param val {@inheritDoc}
+         */
+        @Override
+        public void setElem(int bank, int i, int val) {
+            pixels.put(i, val);
+        }
+    }
+
+    /**
+     * Pixels stored as single bytes in a buffer.
+     */
+    private static final class ByteData extends DataBuffer {
+
+        /**
+         * The pixels.
+         */
+        @NonNull
+        private final ByteBuffer pixels;
+
+        /**
+         * Sole constructor.
+         * @param pixels The pixels.
+         * @param size The number of pixels.
+         */
+        ByteData(@NonNull ByteBuffer pixels, int size) {
+            super(DataBuffer.TYPE_BYTE, size);
+            this.pixels = pixels;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param bank {@inheritDoc}
+         * @param i {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int getElem(int bank, int i) {
+            return pixels.get(i) & 0xFF;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param bank {@inheritDoc}
+         * @param i {@inheritDoc}
+         * @param val {@inheritDoc}
+         */
+        @Override
+        public void setElem(int bank, int i, int val) {
+            pixels.put(i, (byte) val);
+        }
+    }
+}
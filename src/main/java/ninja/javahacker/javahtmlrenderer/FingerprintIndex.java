@@ -0,0 +1,335 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import lombok.NonNull;
+
+/**
+ * An in-memory index of values, like golden images or the keys of stored renders, by the {@link ImageFingerprint}s
+ * of their images.
+ * <p>Finding the value of an image equal to a given one is a single hash lookup by its content hash, instead of a
+ * pixel by pixel {@linkplain ImageCompare#equals(BufferedImage, BufferedImage) comparison} with each indexed image.
+ * Finding the values of the images that look most alike to a given one is a search in a BK-tree of their perceptual
+ * hashes, which only visits the few branches of the tree that might have images within the searched distance.</p>
+ * <p>Since each image is indexed by its content hash, equal images are indexed once, so the index might also be used
+ * to store equal renders only once, with {@link #intern(ImageFingerprint, Object)}.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     FingerprintIndex&lt;String&gt; goldens = new FingerprintIndex&lt;&gt;();
+ *     goldens.put(ImageFingerprint.of(golden1), "golden-1.png");
+ *     goldens.put(ImageFingerprint.of(golden2), "golden-2.png");
+ *     ImageFingerprint rendered = ImageFingerprint.of(HtmlRenderer.render(html));
+ *     Optional&lt;String&gt; exact = goldens.get(rendered);
+ *     Optional&lt;FingerprintIndex.Match&lt;String&gt;&gt; closest = goldens.closest(rendered, 10);
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @param <T> The type of the indexed values.
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class FingerprintIndex<T> {
+
+    /**
+     * An indexed value found by a search, with the fingerprint of its image and how different it looks from the searched one.
+     * <p>Instances of this class are immutable.</p>
+     * @param <T> The type of the indexed values.
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    public static final class Match<T> {
+
+        /**
+         * The fingerprint of the image of the found value.
+         */
+        @NonNull
+        private final ImageFingerprint fingerprint;
+
+        /**
+         * The found value.
+         */
+        @NonNull
+        private final T value;
+
+        /**
+         * How different the image of the found value looks from the searched one.
+         */
+        private final int distance;
+
+        /**
+         * Tells if the image of the found value is equal to the searched one.
+         */
+        private final boolean exact;
+
+        /**
+         * Sole constructor.
+         * @param fingerprint The fingerprint of the image of the found value.
+         * @param value The found value.
+         * @param distance How different the image of the found value looks from the searched one.
+         * @param exact Tells if the image of the found value is equal to the searched one.
+         */
+        private Match(@NonNull ImageFingerprint fingerprint, @NonNull T value, int distance, boolean exact) {
+            this.fingerprint = fingerprint;
+            this.value = value;
+            this.distance = distance;
+            this.exact = exact;
+        }
+
+        /**
+         * Returns the fingerprint of the image of the found value.
+         * @return The fingerprint of the image of the found value.
+         */
+        public ImageFingerprint getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * Returns the found value.
+         * @return The found value.
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * Returns how different the image of the found value looks from the searched one,
+         * as given by {@link ImageFingerprint#distance(ImageFingerprint)}.
+         * @return How different the image of the found value looks from the searched one.
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * Tells if the image of the found value is equal to the searched one.
+         * @return {@code true} if the image of the found value is equal to the searched one, {@code false} otherwise.
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Match(fingerprint=" + fingerprint + ", value=" + value + ", distance=" + distance + ", exact=" + exact + ")";
+        }
+    }
+
+    /**
+     * A node of the BK-tree, holding the fingerprints that share the same perceptual hash.
+     * <p>Each child is at a different distance from this node, and all the fingerprints under a child are at the same
+     * distance from this node as the child itself. Nodes are never removed, even if they no longer hold any fingerprint.</p>
+     */
+    private static final class Node {
+
+        /**
+         * The perceptual hash shared by the fingerprints of this node.
+         */
+        private final long hash;
+
+        /**
+         * The fingerprints that have the perceptual hash of this node.
+         */
+        @NonNull
+        private final List<ImageFingerprint> fingerprints;
+
+        /**
+         * The children of this node, by their distance from this node.
+         */
+        @NonNull
+        private final Map<Integer, Node> children;
+
+        /**
+         * Sole constructor.
+         * @param hash The perceptual hash shared by the fingerprints of this node.
+         */
+        Node(long hash) {
+            this.hash = hash;
+            this.fingerprints = new ArrayList<>(1);
+            this.children = new HashMap<>();
+        }
+    }
+
+    /**
+     * The indexed values, by the fingerprints of their images.
+     * <p>This is accessed only while holding the lock of this index.</p>
+     */
+    @NonNull
+    private final Map<ImageFingerprint, T> values;
+
+    /**
+     * The root of the BK-tree of the perceptual hashes or {@code null} if nothing was indexed yet.
+     * <p>This is accessed only while holding the lock of this index.</p>
+     */
+    private Node root;
+
+    /**
+     * Creates an empty index.
+     */
+    public FingerprintIndex() {
+        this.values = new HashMap<>();
+    }
+
+    /**
+     * Returns the number of indexed values.
+     * @return The number of indexed values.
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Indexes a value by the fingerprint of its image, replacing the value already indexed for an equal image, if any.
+     * @param fingerprint The fingerprint of the image.
+     * @param value The value.
+     * @return The value that was indexed for an equal image, if any.
+     * @throws IllegalArgumentException If the {@code fingerprint} or the {@code value} are {@code null}.
+     */
+    public synchronized Optional<T> put(@NonNull ImageFingerprint fingerprint, @NonNull T value) {
+        T old = values.put(fingerprint, value);
+        if (old == null) insert(fingerprint);
+        return Optional.ofNullable(old);
+    }
+
+    /**
+     * Gives the value indexed for an image equal to the given one or, if there is none, indexes the given value.
+     * <p>This is meant to store equal images only once: the value is where the image is stored, and the image
+     * should be stored only if the returned value is the given one.</p>
+     * @param fingerprint The fingerprint of the image.
+     * @param value The value.
+     * @return The value already indexed for an equal image, if any, or the given {@code value} otherwise.
+     * @throws IllegalArgumentException If the {@code fingerprint} or the {@code value} are {@code null}.
+     */
+    public synchronized T intern(@NonNull ImageFingerprint fingerprint, @NonNull T value) {
+        T old = values.putIfAbsent(fingerprint, value);
+        if (old != null) return old;
+        insert(fingerprint);
+        return value;
+    }
+
+    /**
+     * Gives the value indexed for an image equal to the given one.
+     * @param fingerprint The fingerprint of the image.
+     * @return The value indexed for an image equal to the given one, if any.
+     * @throws IllegalArgumentException If the {@code fingerprint} is {@code null}.
+     */
+    public synchronized Optional<T> get(@NonNull ImageFingerprint fingerprint) {
+        return Optional.ofNullable(values.get(fingerprint));
+    }
+
+    /**
+     * Removes the value indexed for an image equal to the given one.
+     * @param fingerprint The fingerprint of the image.
+     * @return The value that was indexed for an image equal to the given one, if any.
+     * @throws IllegalArgumentException If the {@code fingerprint} is {@code null}.
+     */
+    public synchronized Optional<T> remove(@NonNull ImageFingerprint fingerprint) {
+        T old = values.remove(fingerprint);
+        if (old == null) return Optional.empty();
+        Node node = root;
+        while (node.hash != fingerprint.getPerceptualHash()) {
+            node = node.children.get(Long.bitCount(node.hash ^ fingerprint.getPerceptualHash()));
+        }
+        node.fingerprints.remove(fingerprint);
+        return Optional.of(old);
+    }
+
+    /**
+     * Gives the value indexed for the image that looks most alike to the given one, within a maximum distance.
+     * <p>An image equal to the given one is always preferred. Among the images at the same distance, any might be given.</p>
+     * @param fingerprint The fingerprint of the image.
+     * @param maxDistance The maximum distance, as given by {@link ImageFingerprint#distance(ImageFingerprint)}.
+     * @return The value indexed for the image that looks most alike to the given one, if any is within the maximum distance.
+     * @throws IllegalArgumentException If the {@code fingerprint} is {@code null} or if the {@code maxDistance} is negative
+     *     or greater than {@link ImageFingerprint#MAX_DISTANCE}.
+     */
+    public synchronized Optional<Match<T>> closest(@NonNull ImageFingerprint fingerprint, int maxDistance) {
+        checkDistance(maxDistance);
+        T exact = values.get(fingerprint);
+        if (exact != null) return Optional.of(new Match<>(fingerprint, exact, 0, true));
+        List<Match<T>> found = search(fingerprint, maxDistance, true);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(found.size() - 1));
+    }
+
+    /**
+     * Gives the values indexed for all the images that look like the given one, within a maximum distance.
+     * @param fingerprint The fingerprint of the image.
+     * @param maxDistance The maximum distance, as given by {@link ImageFingerprint#distance(ImageFingerprint)}.
+     * @return The values indexed for the images within the maximum distance, from the nearest to the farthest.
+     *     An image equal to the given one, if any, comes first.
+     * @throws IllegalArgumentException If the {@code fingerprint} is {@code null} or if the {@code maxDistance} is negative
+     *     or greater than {@link ImageFingerprint#MAX_DISTANCE}.
+     */
+    public synchronized List<Match<T>> within(@NonNull ImageFingerprint fingerprint, int maxDistance) {
+        checkDistance(maxDistance);
+        List<Match<T>> found = search(fingerprint, maxDistance, false);
+        found.sort(Comparator.comparingInt((Match<T> m) -> m.getDistance()).thenComparing(m -> !m.isExact()));
+        return List.copyOf(found);
+    }
+
+    /**
+     * Checks that a maximum distance is valid.
+     * @param maxDistance The maximum distance.
+     * @throws IllegalArgumentException If the {@code maxDistance} is negative or greater than {@link ImageFingerprint#MAX_DISTANCE}.
+     */
+    private static void checkDistance(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > ImageFingerprint.MAX_DISTANCE) {
+            throw new IllegalArgumentException("The maxDistance must be from 0 to " + ImageFingerprint.MAX_DISTANCE + ".");
+        }
+    }
+
+    /**
+     * Adds a fingerprint to the BK-tree.
+     * @param fingerprint The fingerprint.
+     */
+    private void insert(@NonNull ImageFingerprint fingerprint) {
+        long hash = fingerprint.getPerceptualHash();
+        if (root == null) root = new Node(hash);
+        Node node = root;
+        while (node.hash != hash) {
+            node = node.children.computeIfAbsent(Long.bitCount(node.hash ^ hash), d -> new Node(hash));
+        }
+        node.fingerprints.add(fingerprint);
+    }
+
+    /**
+     * Searches the BK-tree for the fingerprints within a maximum distance from a given one.
+     * @param fingerprint The searched fingerprint.
+     * @param maxDistance The maximum distance.
+     * @param shrink If the maximum distance should shrink to the distance of the nearest fingerprint found so far,
+     *     so only the nearest one is looked for.
+     * @return The found values. If {@code shrink} is {@code true}, the last one is the nearest.
+     */
+    private List<Match<T>> search(@NonNull ImageFingerprint fingerprint, int maxDistance, boolean shrink) {
+        List<Match<T>> found = new ArrayList<>();
+        if (root == null) return found;
+        long hash = fingerprint.getPerceptualHash();
+        int radius = maxDistance;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int d = Long.bitCount(node.hash ^ hash);
+            if (d <= radius) {
+                for (ImageFingerprint f : node.fingerprints) {
+                    found.add(new Match<>(f, values.get(f), d, f.equals(fingerprint)));
+                }
+                if (shrink && !node.fingerprints.isEmpty()) radius = d;
+            }
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - d) <= radius) pending.push(child.getValue());
+            }
+        }
+        if (shrink) found.sort(Comparator.comparingInt((Match<T> m) -> m.getDistance()).reversed());
+        return found;
+    }
+}
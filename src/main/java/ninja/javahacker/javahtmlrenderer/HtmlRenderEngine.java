@@ -0,0 +1,383 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+
+/**
+ * A long-lived renderer of HTML pages into {@link BufferedImage}s that reuses its editor panes and frames.
+ * <p>The {@link HtmlRenderer} starts a new thread and creates and disposes a new frame and a new editor pane
+ * for every render. Creating and tearing down those native resources often costs more than the render itself.
+ * Instead, this class keeps a bounded pool of ready surfaces and just swaps the document of one of them
+ * on each render. The rendering happens in the calling thread, without starting any new thread.</p>
+ * <p>The pool size also bounds how many renders might be in progress at the same time. Further concurrent
+ * calls to {@link #render(String, RenderOptions)} wait until some render finishes. Surfaces that stay
+ * unused in the pool for longer than the idle timeout are disposed.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (HtmlRenderEngine engine = new HtmlRenderEngine()) {
+ *         BufferedImage a = engine.render("&lt;p&gt;Hello&lt;/p&gt;");
+ *         BufferedImage b = engine.render("&lt;p&gt;World&lt;/p&gt;");
+ *     }
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class HtmlRenderEngine implements AutoCloseable {
+
+    /**
+     * The default pool size.
+     */
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * The default time that a surface is kept idle in the pool before being disposed.
+     */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+    /**
+     * A pooled surface and the moment where it was given back to the pool.
+     * @param surface The pooled surface.
+     * @param since When the surface was given back to the pool, as given by {@link System#nanoTime()}.
+     */
+    private static record Idle(@NonNull RenderSurface surface, long since) {
+    }
+
+    /**
+     * Paints a surface where a document was loaded.
+     * @param <T> The type of the rendered result.
+     */
+    @FunctionalInterface
+    private static interface Painter<T> {
+
+        /**
+         * Paints a surface where a document was loaded. Called outside of the AWT's Event Dispatch Thread.
+         * @param surface The surface.
+         * @return The rendered result.
+         * @throws InterruptedException If this thread is interrupted before the result become available.
+         */
+        public T paint(@NonNull RenderSurface surface) throws InterruptedException;
+    }
+
+    /**
+     * The maximum number of pooled surfaces and of concurrent renders.
+     */
+    private final int poolSize;
+
+    /**
+     * The time in nanoseconds that a surface is kept idle in the pool before being disposed.
+     */
+    private final long idleTimeout;
+
+    /**
+     * Limits the number of concurrent renders.
+     */
+    @NonNull
+    private final Semaphore permits;
+
+    /**
+     * The pooled surfaces. The most recently used are at the head.
+     * <p>This is accessed only in the AWT's Event Dispatch Thread.</p>
+     */
+    @NonNull
+    private final Deque<Idle> idle;
+
+    /**
+     * The number of pooled surfaces, published to be read outside of the AWT's Event Dispatch Thread.
+     */
+    private volatile int idleCount;
+
+    /**
+     * Periodically disposes the surfaces that are idle for too long.
+     */
+    @NonNull
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * Tells if this engine was already closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates an engine with the default pool size and idle timeout.
+     */
+    public HtmlRenderEngine() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * Creates an engine with the given pool size and idle timeout.
+     * @param poolSize The maximum number of pooled surfaces and of concurrent renders.
+     * @param idleTimeout How long a surface is kept idle in the pool before being disposed.
+     * @throws IllegalArgumentException If the {@code poolSize} is not positive or the {@code idleTimeout} is
+     *     {@code null}, zero or negative.
+     */
+    public HtmlRenderEngine(int poolSize, @NonNull Duration idleTimeout) {
+        if (poolSize < 1) throw new IllegalArgumentException("The poolSize must be positive.");
+        if (idleTimeout.isNegative() || idleTimeout.isZero()) throw new IllegalArgumentException("The idleTimeout must be positive.");
+        this.poolSize = poolSize;
+        this.idleTimeout = idleTimeout.toNanos();
+        this.permits = new Semaphore(poolSize, true);
+        this.idle = new ArrayDeque<>(poolSize);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "HtmlRenderEngine-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, this.idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(() -> EventQueue.invokeLater(this::evictIdle), period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the maximum number of pooled surfaces and of concurrent renders.
+     * @return The maximum number of pooled surfaces and of concurrent renders.
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns how long a surface is kept idle in the pool before being disposed.
+     * @return How long a surface is kept idle in the pool before being disposed.
+     */
+    public Duration getIdleTimeout() {
+        return Duration.ofNanos(idleTimeout);
+    }
+
+    /**
+     * Returns how many surfaces are currently idle in the pool, ready to be reused.
+     * <p>Surfaces are given back to the pool and evicted from it asynchronously, in the AWT's Event Dispatch Thread,
+     * so this might lag a little behind the renders that just finished.</p>
+     * @return How many surfaces are currently idle in the pool.
+     */
+    public int getIdleSurfaces() {
+        return idleCount;
+    }
+
+    /**
+     * Renders a given HTML source using the default render options.
+     * @param html The HTML that should be rendered.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html) throws InterruptedException {
+        return render(html, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders a given HTML source using the given render options.
+     * <p>If there are already as many renders in progress as the pool size, waits until some of them finishes.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        return render(html, options, s -> HtmlRenderer.callAndWait(s.recorder(), () -> s.paint(options.getPixelType())));
+    }
+
+    /**
+     * Renders a given HTML source using the given render options into an image leased from the given pool.
+     * <p>If there are already as many renders in progress as the pool size, waits until some of them finishes.</p>
+     * <p>The image has the {@linkplain RenderOptions#getPixelType() pixel type} given in the options, even when
+     * rendering with a window. It should not be used after its lease is closed.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param targets The pool where the image is leased from.
+     * @return The lease of the rendered image, which should be closed once the image is no longer used.
+     * @throws IllegalArgumentException If the {@code html}, the {@code options} or the {@code targets} are {@code null}
+     *     or if the options {@linkplain RenderOptions#isScaled() scale} the rendered image.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public RenderTarget render(@NonNull String html, @NonNull RenderOptions options, @NonNull RenderTargetPool targets)
+            throws InterruptedException
+    {
+        options.unscaled();
+        return render(html, options, s -> HtmlRenderer.callAndWait(s.recorder(), () -> s.paint(targets, options.getPixelType())));
+    }
+
+    /**
+     * Renders a given HTML source using the given render options in horizontal bands of a given height.
+     * <p>If there are already as many renders in progress as the pool size, waits until some of them finishes.</p>
+     * <p>The document is laid out once and then painted band by band into a single reused image, which is handed
+     * to the {@code consumer} in the calling thread after each band is painted. So, the memory needed for the pixels
+     * is bounded by the band height instead of by the document height. Stacking all the bands gives exactly the
+     * image given by {@link #render(String, RenderOptions)}.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param bandHeight The height of each band, except for the last one, which might be shorter.
+     * @param consumer Receives each band, from the top to the bottom.
+     * @return The size of the whole document.
+     * @throws IllegalArgumentException If the {@code html}, the {@code options} or the {@code consumer} are {@code null}
+     *     or if the {@code bandHeight} is not positive or if the options {@linkplain RenderOptions#isScaled() scale}
+     *     the rendered image.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before all the bands are rendered.
+     */
+    public Dimension render(@NonNull String html, @NonNull RenderOptions options, int bandHeight, @NonNull BandConsumer consumer)
+            throws InterruptedException
+    {
+        if (bandHeight < 1) throw new IllegalArgumentException("The bandHeight must be positive.");
+        options.unscaled();
+        return render(html, options, s -> HtmlRenderer.paintBands(s, options.getPixelType(), bandHeight, consumer));
+    }
+
+    /**
+     * Renders a template with the given values bound to its placeholders using the given render options.
+     * <p>If there are already as many renders in progress as the pool size, waits until some of them finishes.</p>
+     * <p>The HTML source of the template is not parsed again. Instead, a document already parsed from it is reused,
+     * replacing only the text of its placeholders.</p>
+     * @param template The template that should be rendered.
+     * @param values The values of the placeholders, by their names. Each one is converted with {@link String#valueOf(Object)}
+     *     and values of names that are not placeholders are ignored.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code template}, the {@code values} or the {@code options} are {@code null}
+     *     or if the {@code values} lacks the value of some placeholder.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull HtmlTemplate template, @NonNull Map<String, ?> values, @NonNull RenderOptions options)
+            throws InterruptedException
+    {
+        Map<String, String> bound = template.bind(values);
+        return render(
+                (s, r) -> s.load(template, bound, options, r),
+                options,
+                s -> HtmlRenderer.callAndWait(s.recorder(), () -> s.paint(options.getPixelType())));
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and the given way to paint it.
+     * @param <T> The type of the rendered result.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param painter Paints the surface where the document was loaded. Called in the calling thread.
+     * @return The rendered result.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the result become available.
+     */
+    private <T> T render(@NonNull String html, @NonNull RenderOptions options, @NonNull Painter<T> painter)
+            throws InterruptedException
+    {
+        return render((s, r) -> s.load(html, options, r), options, painter);
+    }
+
+    /**
+     * Renders a document using the given render options and the given ways to load and to paint it.
+     * @param <T> The type of the rendered result.
+     * @param loader Loads the document into a surface. Called in the AWT's Event Dispatch Thread.
+     * @param options The render options.
+     * @param painter Paints the surface where the document was loaded. Called in the calling thread.
+     * @return The rendered result.
+     * @throws IllegalStateException If this engine is already closed.
+     * @throws InterruptedException If this thread is interrupted before the result become available.
+     */
+    private <T> T render(@NonNull RenderSurface.Loader loader, @NonNull RenderOptions options, @NonNull Painter<T> painter)
+            throws InterruptedException
+    {
+        if (closed) throw new IllegalStateException("The engine is closed.");
+        RenderRecorder recorder = RenderRecorder.start(options);
+        permits.acquire();
+        recorder.started();
+        AtomicReference<RenderSurface> surface = new AtomicReference<>();
+        AtomicReference<ImageLoadTracker> tracker = new AtomicReference<>();
+        try {
+            HtmlRenderer.invokeAndWait(recorder, () -> {
+                RenderSurface s = take(options.isHeadless());
+                surface.set(s);
+                tracker.set(loader.load(s, recorder));
+            });
+            HtmlRenderer.awaitCompletion(tracker.get(), options, recorder);
+            T result = painter.paint(surface.get());
+            recorder.finish();
+            return result;
+        } finally {
+            // Runs after the tasks above in the AWT's Event Dispatch Thread, even if they were
+            // abandoned due to an interruption, so the surface is always given back.
+            EventQueue.invokeLater(() -> {
+                RenderSurface s = surface.get();
+                if (s != null) giveBack(s);
+            });
+            permits.release();
+        }
+    }
+
+    /**
+     * Takes a surface from the pool or creates a new one if the pool has none suitable.
+     * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+     * @param headless If the surface should have no top-level window.
+     * @return A surface ready to load a document.
+     */
+    private RenderSurface take(boolean headless) {
+        for (Iterator<Idle> it = idle.iterator(); it.hasNext();) {
+            RenderSurface s = it.next().surface();
+            if (s.isHeadless() == headless) {
+                it.remove();
+                idleCount = idle.size();
+                return s;
+            }
+        }
+        return RenderSurface.create(headless);
+    }
+
+    /**
+     * Gives a surface back to the pool, or disposes it if the pool is full or this engine is closed.
+     * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+     * @param surface The surface that is no longer in use.
+     */
+    private void giveBack(@NonNull RenderSurface surface) {
+        if (closed || idle.size() >= poolSize) {
+            surface.dispose();
+            return;
+        }
+        surface.reset();
+        idle.addFirst(new Idle(surface, System.nanoTime()));
+        idleCount = idle.size();
+    }
+
+    /**
+     * Disposes the surfaces that were idle in the pool for longer than the idle timeout.
+     * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        while (!idle.isEmpty() && now - idle.peekLast().since() >= idleTimeout) {
+            idle.pollLast().surface().dispose();
+        }
+        idleCount = idle.size();
+    }
+
+    /**
+     * Closes this engine, disposing all of its pooled surfaces.
+     * <p>Renders already in progress are allowed to finish, but no new render might be started.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        EventQueue.invokeLater(() -> {
+            idle.forEach(i -> i.surface().dispose());
+            idle.clear();
+            idleCount = 0;
+        });
+    }
+}
@@ -1,13 +1,38 @@
 package ninja.javahacker.javahtmlrenderer;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import javax.swing.JEditorPane;
-import javax.swing.JFrame;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import lombok.NonNull;
 
 /**
@@ -23,6 +48,13 @@ import lombok.NonNull;
  * and wait for it to finish. The purpose of that wait is to allow the loading of
  * embedded images complete. The default wait time is 200 ms, but it can be
  * overrode by using the overloaded methods that take the wait time as a parameter.</p>
+ * <p>Instead of always waiting for the full wait time, the renderer might be told to paint the
+ * document as soon as its images are loaded by using {@link CompletionMode#UNTIL_LOADED} in the
+ * {@link RenderOptions}. In that case, the wait time is just an upper bound:</p>
+ * <pre>
+ *     RenderOptions opt = RenderOptions.defaults().withCompletionMode(CompletionMode.UNTIL_LOADED);
+ *     BufferedImage my = HtmlRenderer.render(html, opt);
+ * </pre>
  * <p>Since the HTML document is renderer asynchronously, the {@link #render(String)} method is blocking.
  * If you are interested in a blocking-free behavior, you should construct instances of {@code HtmlRender}
  * by using the {@link #prepare(String)} method and monitor the asynchronous render
@@ -33,16 +65,16 @@ import lombok.NonNull;
 public class HtmlRenderer {
 
     /**
-     * The default wait time for allowing the document be completed.
-     * <p>This is used most for the purposes of fully rendering images.</p>
-     * <p>This is defined as 200 milliseconds.</p>
+     * The height of the bands painted at a time when rendering straight to a byte sink or to an image stored outside of
+     * the Java heap.
      */
-    private static final int DEFAULT_WAIT_TIME = 200;
+    private static final int ENCODE_BAND_HEIGHT = 128;
 
     /**
-     * The wait time for allowing the document be completed.
+     * The options used to perform the render.
      */
-    private final int sleepTime;
+    @NonNull
+    private final RenderOptions options;
 
     /**
      * The thread that is responsible for performing the render.
@@ -58,17 +90,23 @@ public class HtmlRenderer {
     private final AtomicReference<BufferedImage> result;
 
     /**
-     * Creates an instance of a renderer for a given HTML source and a given wait sleep time.
+     * Gathers the metrics of the render.
+     */
+    @NonNull
+    private final RenderRecorder recorder;
+
+    /**
+     * Creates an instance of a renderer for a given HTML source and given render options.
      * <p>This constructor is private and exists solely for instantiation of the {@code HtmlRenderer}.</p>
      * @param html The HTML that should be rendered.
-     * @param sleepTime The wait time.
-     * @throws IllegalArgumentException If the {@code sleepTime} is negative or the {@code html} is {@code null}.
+     * @param options The render options.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
      */
-    private HtmlRenderer(@NonNull String html, int sleepTime) {
-        if (sleepTime < 0) throw new IllegalArgumentException("The sleepTime can't be negative.");
+    private HtmlRenderer(@NonNull String html, @NonNull RenderOptions options) {
         this.result = new AtomicReference<>();
         this.worker = new Thread(() -> inBackground(html));
-        this.sleepTime = sleepTime;
+        this.options = options;
+        this.recorder = RenderRecorder.start(options);
     }
 
     /**
@@ -79,7 +117,7 @@ public class HtmlRenderer {
      * @throws IllegalArgumentException If the {@code html} is {@code null}.
      */
     public static HtmlRenderer prepare(@NonNull String html) {
-        return prepare(html, DEFAULT_WAIT_TIME);
+        return prepare(html, RenderOptions.defaults());
     }
 
     /**
@@ -91,7 +129,18 @@ public class HtmlRenderer {
      * @throws IllegalArgumentException If the {@code sleepTime} is negative or the {@code html} is {@code null}.
      */
     public static HtmlRenderer prepare(@NonNull String html, int sleepTime) {
-        HtmlRenderer h = new HtmlRenderer(html, sleepTime);
+        return prepare(html, RenderOptions.defaults().withSleepTime(sleepTime));
+    }
+
+    /**
+     * Creates an instance of a renderer for a given HTML source and given render options and starts its render thread.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The created renderer.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     */
+    public static HtmlRenderer prepare(@NonNull String html, @NonNull RenderOptions options) {
+        HtmlRenderer h = new HtmlRenderer(html, options);
         h.worker.start();
         return h;
     }
@@ -102,28 +151,26 @@ public class HtmlRenderer {
      */
     private void inBackground(@NonNull String html) {
         if (EventQueue.isDispatchThread()) throw new AssertionError();
-        AtomicReference<JFrame> frame = new AtomicReference<>();
-        AtomicReference<JEditorPane> pane = new AtomicReference<>();
+        recorder.started();
+        AtomicReference<RenderSurface> surface = new AtomicReference<>();
+        AtomicReference<ImageLoadTracker> tracker = new AtomicReference<>();
         try {
-            invokeAndWait(() -> {
-                JFrame jf = new JFrame();
-                jf.setUndecorated(true);
-                JEditorPane jep = new JEditorPane("text/html", html);
-                jf.add(jep);
-                jf.pack();
-                jf.setResizable(false);
-                jf.setLocationRelativeTo(null);
-                frame.set(jf);
-                pane.set(jep);
+            invokeAndWait(recorder, () -> {
+                RenderSurface s = RenderSurface.create(options.isHeadless());
+                surface.set(s);
+                tracker.set(s.load(html, options, recorder));
             });
-            sleep();
-            invokeAndWait(() -> {
-                JFrame jf = frame.get();
-                JEditorPane jep = pane.get();
-                jf.pack();
-                result.set(Screenshot.screenshot(jep));
-                jf.dispose();
+            awaitCompletion(tracker.get(), options, recorder);
+            BufferedImage image = callAndWait(recorder, () -> {
+                RenderSurface s = surface.get();
+                BufferedImage painted = s.paint(options.getPixelType());
+                long dispose = recorder.mark();
+                s.dispose();
+                recorder.add(RenderPhase.DISPOSE, dispose);
+                return painted;
             });
+            recorder.finish();
+            result.set(image);
         } catch (InterruptedException e) {
             return;
         }
@@ -158,13 +205,61 @@ public class HtmlRenderer {
     }
 
     /**
-     * Sleeps for the {@code sleepTime}.
+     * Waits for the document to be completed according to the {@link CompletionMode}.
+     * <p>If there is no {@link ImageLoadTracker}, sleeps for the {@code sleepTime}. Otherwise, waits
+     * for the tracked images for no longer than the {@code sleepTime}.</p>
+     * @param tracker The tracker of the images in the document or {@code null} if there is none.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render, where the wait is timed as the {@link RenderPhase#WAIT} phase.
      * @throws InterruptedException If another thread interrupts the current one.
      */
     @SuppressFBWarnings("MDM_THREAD_YIELD")
-    private void sleep() throws InterruptedException {
+    static void awaitCompletion(ImageLoadTracker tracker, @NonNull RenderOptions options, @NonNull RenderRecorder recorder)
+            throws InterruptedException
+    {
         if (EventQueue.isDispatchThread()) throw new AssertionError();
-        Thread.sleep(sleepTime);
+        long start = recorder.mark();
+        if (tracker == null) {
+            Thread.sleep(options.getSleepTime());
+        } else {
+            tracker.await(options.getSleepTime());
+        }
+        recorder.add(RenderPhase.WAIT, start);
+    }
+
+    /**
+     * Waits for the documents of a batch to be completed according to the {@link CompletionMode}.
+     * <p>This works as {@link #awaitCompletion(ImageLoadTracker, RenderOptions, RenderRecorder)}, except that
+     * all the documents share a single wait. If there are no {@link ImageLoadTracker}s, sleeps for the
+     * {@code sleepTime} just once. Otherwise, waits for all of the tracked images for no longer than the
+     * {@code sleepTime}, counted once for the whole batch.</p>
+     * @param trackers The tracker of the images in each document, which are all {@code null} if there are none.
+     * @param options The render options.
+     * @param recorders Gathers the metrics of the render of each document, where the shared wait is timed as
+     *     the {@link RenderPhase#WAIT} phase of each one.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    @SuppressFBWarnings("MDM_THREAD_YIELD")
+    static void awaitCompletion(
+            @NonNull List<ImageLoadTracker> trackers,
+            @NonNull RenderOptions options,
+            @NonNull List<RenderRecorder> recorders)
+            throws InterruptedException
+    {
+        if (EventQueue.isDispatchThread()) throw new AssertionError();
+        long[] starts = recorders.stream().mapToLong(RenderRecorder::mark).toArray();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getSleepTime());
+        if (trackers.stream().allMatch(Objects::isNull)) {
+            Thread.sleep(options.getSleepTime());
+        } else {
+            for (ImageLoadTracker tracker : trackers) {
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (tracker != null) tracker.await(Math.max(0, left));
+            }
+        }
+        for (int i = 0; i < starts.length; i++) {
+            recorders.get(i).add(RenderPhase.WAIT, starts[i]);
+        }
     }
 
     /**
@@ -173,7 +268,7 @@ public class HtmlRenderer {
      *     {@link EventQueue#invokeAndWait(Runnable)}.
      * @throws InterruptedException If another thread interrupts the current one.
      */
-    private static void invokeAndWait(@NonNull Runnable run) throws InterruptedException {
+    static void invokeAndWait(@NonNull Runnable run) throws InterruptedException {
         if (EventQueue.isDispatchThread()) throw new AssertionError();
         try {
             EventQueue.invokeAndWait(run);
@@ -182,6 +277,98 @@ public class HtmlRenderer {
         }
     }
 
+    /**
+     * Calls {@link EventQueue#invokeAndWait(Runnable)}, timing how long it waits in the queue as the
+     * {@link RenderPhase#QUEUE} phase.
+     * @param recorder Gathers the metrics of the render.
+     * @param run The {@code Runnable} that should be run with
+     *     {@link EventQueue#invokeAndWait(Runnable)}.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    static void invokeAndWait(@NonNull RenderRecorder recorder, @NonNull Runnable run) throws InterruptedException {
+        long queued = recorder.mark();
+        invokeAndWait(() -> {
+            recorder.add(RenderPhase.QUEUE, queued);
+            run.run();
+        });
+    }
+
+    /**
+     * Paints in horizontal bands a surface where a document was loaded, handing each band to a consumer in the
+     * calling thread.
+     * <p>The document is laid out once and then painted band by band into a single reused image.</p>
+     * @param surface The surface where the document was loaded.
+     * @param type The pixel type of the bands.
+     * @param bandHeight The height of each band, except for the last one, which might be shorter.
+     * @param consumer Receives each band, from the top to the bottom.
+     * @return The size of the whole document.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    static Dimension paintBands(@NonNull RenderSurface surface, @NonNull PixelType type, int bandHeight, @NonNull BandConsumer consumer)
+            throws InterruptedException
+    {
+        Dimension size = callAndWait(surface.recorder(), surface::measure);
+        paintBands(surface, size, type, bandHeight, consumer);
+        return size;
+    }
+
+    /**
+     * Paints in horizontal bands a surface where a document was loaded and already
+     * {@linkplain RenderSurface#measure() measured}, handing each band to a consumer in the calling thread.
+     * @param surface The surface where the document was loaded.
+     * @param size The size of the document.
+     * @param type The pixel type of the bands.
+     * @param bandHeight The height of each band, except for the last one, which might be shorter.
+     * @param consumer Receives each band, from the top to the bottom.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    static void paintBands(
+            @NonNull RenderSurface surface,
+            @NonNull Dimension size,
+            @NonNull PixelType type,
+            int bandHeight,
+            @NonNull BandConsumer consumer)
+            throws InterruptedException
+    {
+        if (size.width == 0 || size.height == 0) return;
+        RenderRecorder recorder = surface.recorder();
+        BufferedImage buffer = type.create(size.width, Math.min(bandHeight, size.height));
+        recorder.allocated(buffer);
+        for (int y = 0; y < size.height; y += bandHeight) {
+            int rows = Math.min(bandHeight, size.height - y);
+            BufferedImage band = rows == buffer.getHeight() ? buffer : buffer.getSubimage(0, 0, size.width, rows);
+            int top = y;
+            invokeAndWait(recorder, () -> surface.paintBand(top, band));
+            consumer.accept(y, band);
+        }
+    }
+
+    /**
+     * Calls {@link EventQueue#invokeAndWait(Runnable)} with something that gives a result.
+     * @param <T> The type of the result.
+     * @param call What should be run with {@link EventQueue#invokeAndWait(Runnable)}.
+     * @return The result of the {@code call}.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    static <T> T callAndWait(@NonNull Supplier<T> call) throws InterruptedException {
+        return callAndWait(RenderRecorder.DISABLED, call);
+    }
+
+    /**
+     * Calls {@link EventQueue#invokeAndWait(Runnable)} with something that gives a result, timing how long it
+     * waits in the queue as the {@link RenderPhase#QUEUE} phase.
+     * @param <T> The type of the result.
+     * @param recorder Gathers the metrics of the render.
+     * @param call What should be run with {@link EventQueue#invokeAndWait(Runnable)}.
+     * @return The result of the {@code call}.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    static <T> T callAndWait(@NonNull RenderRecorder recorder, @NonNull Supplier<T> call) throws InterruptedException {
+        AtomicReference<T> result = new AtomicReference<>();
+        invokeAndWait(recorder, () -> result.set(call.get()));
+        return result.get();
+    }
+
     /**
      * Renders a given HTML source and waits it to be rendered.
      * <p>Uses the default wait sleep time.</p>
@@ -205,4 +392,503 @@ public class HtmlRenderer {
     public static BufferedImage render(@NonNull String html, int sleepTime) throws InterruptedException {
         return prepare(html, sleepTime).getResult();
     }
+
+    /**
+     * Renders a given HTML source using the given render options.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public static BufferedImage render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        return prepare(html, options).getResult();
+    }
+
+    /**
+     * Renders an HTML source read from a stream using the given render options.
+     * <p>The source is fed to the HTML parser in chunks as it is read, in the calling thread, so it is never held whole
+     * in memory, neither as a {@link String} nor as a {@link StringBuilder}. Generating a large document straight into
+     * a {@link java.io.PipedReader} or into a file, instead of into a {@link StringBuilder}, avoids those copies.
+     * The rest of the render works as {@link #render(String, RenderOptions)}.</p>
+     * <p>The source is read until its end, but the {@code html} is not closed. Any charset declared in its {@code meta}
+     * tags is ignored, since it was already decoded.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     * @throws IOException If reading from the {@code html} fails.
+     */
+    public static BufferedImage render(@NonNull Reader html, @NonNull RenderOptions options) throws InterruptedException, IOException {
+        RenderRecorder recorder = RenderRecorder.start(options);
+        long parse = recorder.mark();
+        ParsedHtml parsed = ParsedHtml.parse(html);
+        recorder.add(RenderPhase.PARSE, parse);
+        return renderParsed(parsed, options, recorder);
+    }
+
+    /**
+     * Renders an HTML source read from a stream of bytes in a given charset using the given render options.
+     * <p>This works as {@link #render(Reader, RenderOptions)}, decoding the bytes in chunks as they are read.
+     * The {@code html} is not closed.</p>
+     * @param html The HTML that should be rendered.
+     * @param charset The charset of the HTML source.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null}.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     * @throws IOException If reading from the {@code html} fails.
+     */
+    public static BufferedImage render(@NonNull InputStream html, @NonNull Charset charset, @NonNull RenderOptions options)
+            throws InterruptedException, IOException
+    {
+        return render(new InputStreamReader(html, charset), options);
+    }
+
+    /**
+     * Renders an HTML file in a given charset using the given render options.
+     * <p>This works as {@link #render(Reader, RenderOptions)}, but the file is mapped into memory and decoded in chunks
+     * straight from the mapping, so its bytes are not read into the heap either.</p>
+     * @param html The HTML file that should be rendered.
+     * @param charset The charset of the HTML file.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null} or if the file is larger than 2 GiB.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     * @throws IOException If the file could not be opened, mapped or read.
+     */
+    public static BufferedImage render(@NonNull Path html, @NonNull Charset charset, @NonNull RenderOptions options)
+            throws InterruptedException, IOException
+    {
+        RenderRecorder recorder = RenderRecorder.start(options);
+        long parse = recorder.mark();
+        ParsedHtml parsed = ParsedHtml.parse(html, charset);
+        recorder.add(RenderPhase.PARSE, parse);
+        return renderParsed(parsed, options, recorder);
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and encodes it into an output stream
+     * as it is painted.
+     * <p>Unlike the other render methods, this one renders in the calling thread, without starting any other.
+     * The document is painted in bands, as done by {@link HtmlRenderEngine#render(String, RenderOptions, int, BandConsumer)},
+     * and each band is encoded as soon as it is painted, without ever holding the whole image nor the whole encoded
+     * output in memory, except for the {@link ImageFormat#JPEG} format, which needs the whole image.</p>
+     * <p>The {@code out} is neither flushed nor closed.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null}, if the rendered document is empty or
+     *     if the options {@linkplain RenderOptions#isScaled() scale} the rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image is fully written.
+     * @throws IOException If writing to the {@code out} fails.
+     */
+    public static Dimension render(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull OutputStream out)
+            throws InterruptedException, IOException
+    {
+        return encode(html, options, format, Channels.newChannel(out));
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and encodes it into a channel
+     * as it is painted.
+     * <p>This works as {@link #render(String, RenderOptions, ImageFormat, OutputStream)}.
+     * The {@code out} is not closed.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null}, if the rendered document is empty or
+     *     if the options {@linkplain RenderOptions#isScaled() scale} the rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image is fully written.
+     * @throws IOException If writing to the {@code out} fails.
+     */
+    public static Dimension render(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull WritableByteChannel out)
+            throws InterruptedException, IOException
+    {
+        return encode(html, options, format, out);
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and encodes it into a buffer
+     * as it is painted.
+     * <p>This works as {@link #render(String, RenderOptions, ImageFormat, OutputStream)}. The encoded image
+     * is written starting at the position of the {@code out}, which is advanced past it.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null}, if the rendered document is empty or
+     *     if the options {@linkplain RenderOptions#isScaled() scale} the rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image is fully written.
+     * @throws BufferOverflowException If the encoded image does not fit in the remaining space of the {@code out}.
+     */
+    public static Dimension render(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull ByteBuffer out)
+            throws InterruptedException
+    {
+        return encodeInto(html, options, format, out);
+    }
+
+    /**
+     * Renders a given HTML source using the given render options into an image stored in a direct buffer, outside of
+     * the Java heap.
+     * <p>Like {@link #render(String, RenderOptions, ImageFormat, OutputStream)}, this renders in the calling thread and
+     * paints the document in bands, which are copied into the buffer as soon as they are painted. So, the heap never
+     * holds more than a band, no matter how large the rendered image is.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}, if the rendered document
+     *     is empty, if it does not fit in a single buffer or if the options {@linkplain RenderOptions#isScaled() scale} it.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public static DirectImage renderDirect(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        return renderOffHeap(html, options, size -> DirectImage.allocate(size.width, size.height, options.getPixelType()));
+    }
+
+    /**
+     * Renders a given HTML source using the given render options into an image mapped into a file.
+     * <p>This works as {@link #renderDirect(String, RenderOptions)}, but the image is mapped into the file as done by
+     * {@link DirectImage#map(Path, int, int, PixelType)}. So, once this returns, the raw pixels are already in the
+     * file, ready to be read by another process, without any further copy.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param file The file where the image should be mapped.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null}, if the rendered document is empty, if it
+     *     does not fit in a single buffer or if the options {@linkplain RenderOptions#isScaled() scale} it.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     * @throws IOException If the file could not be created, resized or mapped.
+     */
+    public static DirectImage renderMapped(@NonNull String html, @NonNull RenderOptions options, @NonNull Path file)
+            throws InterruptedException, IOException
+    {
+        try {
+            return renderOffHeap(html, options, size -> {
+                try {
+                    return DirectImage.map(file, size.width, size.height, options.getPixelType());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Renders many HTML sources in batches using the default render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} is {@code null}.
+     */
+    public static Stream<BufferedImage> renderAll(@NonNull Collection<String> htmls) {
+        return renderAll(htmls.stream(), RenderOptions.defaults());
+    }
+
+    /**
+     * Renders many HTML sources in batches using the given render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @param options The render options.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} or the {@code options} are {@code null}.
+     */
+    public static Stream<BufferedImage> renderAll(@NonNull Collection<String> htmls, @NonNull RenderOptions options) {
+        return renderAll(htmls.stream(), options);
+    }
+
+    /**
+     * Renders many HTML sources in batches using the default render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} is {@code null}.
+     */
+    public static Stream<BufferedImage> renderAll(@NonNull Stream<String> htmls) {
+        return renderAll(htmls, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders many HTML sources in batches using the given render options.
+     * <p>Rendering each document with {@link #render(String, RenderOptions)} costs a new thread, a new frame and
+     * editor pane, two hops to the AWT's Event Dispatch Thread and the whole wait time, which dwarfs the cost of
+     * painting small documents. Instead, the documents are grouped into batches. All the documents of a batch are
+     * loaded in a single task in the AWT's Event Dispatch Thread, then share a single wait time, and then are all
+     * painted in another single task. The editor panes, and their frames, are reused from a batch to the next.</p>
+     * <p>The returned stream is lazy. The sources are only pulled as the rendered images are consumed,
+     * while a couple of batches are rendered ahead. The images are given in the same order of their sources, as soon
+     * as their batch is painted. The returned stream should be closed once it is no longer used, which also closes
+     * the {@code htmls} and cancels any batch still in progress:</p>
+     * <pre>
+     *     try (Stream&lt;BufferedImage&gt; images = HtmlRenderer.renderAll(snippets, opt)) {
+     *         images.forEach(...);
+     *     }
+     * </pre>
+     * <p>The images are not rendered by the thread consuming the stream. If that thread is interrupted while
+     * waiting for some of them, a {@link java.util.concurrent.CancellationException} is thrown and its interrupt
+     * status is kept set.</p>
+     * @param htmls The HTML sources that should be rendered. It must not contain {@code null}s, otherwise an
+     *     {@link IllegalArgumentException} is thrown by the returned stream once it reaches them.
+     * @param options The render options.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} or the {@code options} are {@code null}.
+     */
+    public static Stream<BufferedImage> renderAll(@NonNull Stream<String> htmls, @NonNull RenderOptions options) {
+        // Both accessed only in the AWT's Event Dispatch Thread.
+        Deque<RenderSurface> idle = new ArrayDeque<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicInteger count = new AtomicInteger();
+        return RenderBatches.stream(htmls, RenderBatches.BATCH_SIZE, 2, batch -> {
+            FutureTask<List<BufferedImage>> task = new FutureTask<>(() -> renderBatch(batch, options, idle, closed));
+            Thread t = new Thread(task, "HtmlRenderer-batch-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.start();
+            return task;
+        }, () -> EventQueue.invokeLater(() -> {
+            closed.set(true);
+            idle.forEach(RenderSurface::dispose);
+            idle.clear();
+        }));
+    }
+
+    /**
+     * Renders a batch of HTML sources, with a single task in the AWT's Event Dispatch Thread for loading all of them,
+     * a single wait and a single task for painting all of them.
+     * @param batch The HTML sources that should be rendered.
+     * @param options The render options.
+     * @param idle The surfaces that are not in use by any batch. Accessed only in the AWT's Event Dispatch Thread.
+     * @param closed Tells if the stream of the batch was closed, so the surfaces should be disposed instead of reused.
+     *     Accessed only in the AWT's Event Dispatch Thread.
+     * @return The rendered images, in the same order of their sources.
+     * @throws InterruptedException If this thread is interrupted before the images become available.
+     */
+    private static List<BufferedImage> renderBatch(
+            @NonNull List<String> batch,
+            @NonNull RenderOptions options,
+            @NonNull Deque<RenderSurface> idle,
+            @NonNull AtomicBoolean closed)
+            throws InterruptedException
+    {
+        List<RenderRecorder> recorders = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            RenderRecorder recorder = RenderRecorder.start(options);
+            recorder.started();
+            recorders.add(recorder);
+        }
+
+        // Both filled in the AWT's Event Dispatch Thread.
+        List<RenderSurface> surfaces = new ArrayList<>(batch.size());
+        List<ImageLoadTracker> trackers = new ArrayList<>(batch.size());
+        try {
+            invokeAndWait(() -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    RenderSurface s = idle.isEmpty() ? RenderSurface.create(options.isHeadless()) : idle.poll();
+                    surfaces.add(s);
+                    trackers.add(s.load(batch.get(i), options, recorders.get(i)));
+                }
+            });
+            awaitCompletion(trackers, options, recorders);
+            List<BufferedImage> images = callAndWait(() -> surfaces.stream().map(s -> s.paint(options.getPixelType())).toList());
+            recorders.forEach(RenderRecorder::finish);
+            return images;
+        } finally {
+            // Runs after the tasks above in the AWT's Event Dispatch Thread, even if they were
+            // abandoned due to an interruption, so the surfaces are always given back.
+            EventQueue.invokeLater(() -> surfaces.forEach(s -> {
+                if (closed.get()) {
+                    s.dispose();
+                } else {
+                    s.reset();
+                    idle.push(s);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Pays the startup costs of the first render ahead of time, waiting until it is done.
+     * <p>The first render in a fresh JVM is much slower than the following ones, since it initializes the AWT toolkit,
+     * the look and feel and the fonts, loads the classes of the Swing text and HTML packages, parses the default style
+     * sheet and runs everything in the interpreter. This does all of that by rendering a small representative
+     * document a few times.</p>
+     * <p>The warm-up runs only once per JVM, so calling this again, or after {@link #warmUpInBackground()}, just waits
+     * for the warm-up already started.</p>
+     * @throws InterruptedException If this thread is interrupted before the warm-up is done. The warm-up goes on.
+     */
+    public static void warmUp() throws InterruptedException {
+        WarmUp.await();
+    }
+
+    /**
+     * Starts paying the startup costs of the first render ahead of time in a background daemon thread, as done by
+     * {@link #warmUp()}, and returns immediately.
+     * <p>This is meant to be called as early as possible at the application startup. Renders started meanwhile
+     * work as usual, just without the full benefit of the warm-up.</p>
+     * @return A future completed once the warm-up is done.
+     */
+    public static CompletableFuture<Void> warmUpInBackground() {
+        return WarmUp.start();
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and encodes it into a buffer as it is painted.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image is fully written.
+     */
+    private static Dimension encodeInto(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull ByteBuffer out)
+            throws InterruptedException
+    {
+        try {
+            return encode(html, options, format, ImageEncoder.into(out));
+        } catch (IOException e) {
+            // Writing into a buffer never fails with an IOException.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and encodes it into a channel as it is painted.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image is fully written.
+     * @throws IOException If writing to the {@code out} fails.
+     */
+    private static Dimension encode(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull WritableByteChannel out)
+            throws InterruptedException, IOException
+    {
+        options.unscaled();
+        PixelType type = format == ImageFormat.JPEG && options.getPixelType() == PixelType.ARGB ? PixelType.RGB : options.getPixelType();
+        RenderRecorder recorder = RenderRecorder.start(options);
+        AtomicReference<RenderSurface> surface = new AtomicReference<>();
+        try {
+            ImageLoadTracker tracker = callAndWait(recorder, () -> {
+                RenderSurface s = RenderSurface.create(options.isHeadless());
+                surface.set(s);
+                return s.load(html, options, recorder);
+            });
+            awaitCompletion(tracker, options, recorder);
+            Dimension size = callAndWait(recorder, surface.get()::measure);
+            ImageEncoder encoder = ImageEncoder.create(format, size, type, out);
+            paintBands(surface.get(), size, type, ENCODE_BAND_HEIGHT, encoder);
+            encoder.finish();
+            recorder.finish();
+            return size;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            EventQueue.invokeLater(() -> {
+                RenderSurface s = surface.get();
+                if (s != null) s.dispose();
+            });
+        }
+    }
+
+    /**
+     * Renders a given HTML source using the given render options into an image stored outside of the Java heap.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param target Gives the image where the document should be painted, with the size of the document.
+     * @return The rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    private static DirectImage renderOffHeap(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull Function<Dimension, DirectImage> target)
+            throws InterruptedException
+    {
+        options.unscaled();
+        RenderRecorder recorder = RenderRecorder.start(options);
+        AtomicReference<RenderSurface> surface = new AtomicReference<>();
+        try {
+            ImageLoadTracker tracker = callAndWait(recorder, () -> {
+                RenderSurface s = RenderSurface.create(options.isHeadless());
+                surface.set(s);
+                return s.load(html, options, recorder);
+            });
+            awaitCompletion(tracker, options, recorder);
+            Dimension size = callAndWait(recorder, surface.get()::measure);
+            if (size.width == 0 || size.height == 0) throw new IllegalArgumentException("The rendered document is empty.");
+            DirectImage image = target.apply(size);
+            paintBands(surface.get(), size, options.getPixelType(), ENCODE_BAND_HEIGHT, image::put);
+            recorder.finish();
+            return image;
+        } finally {
+            EventQueue.invokeLater(() -> {
+                RenderSurface s = surface.get();
+                if (s != null) s.dispose();
+            });
+        }
+    }
+
+    /**
+     * Renders an HTML source already parsed from a stream.
+     * @param html The parsed HTML source.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render.
+     * @return The rendered image.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    private static BufferedImage renderParsed(@NonNull ParsedHtml html, @NonNull RenderOptions options, @NonNull RenderRecorder recorder)
+            throws InterruptedException
+    {
+        AtomicReference<RenderSurface> surface = new AtomicReference<>();
+        try {
+            ImageLoadTracker tracker = callAndWait(recorder, () -> {
+                RenderSurface s = RenderSurface.create(options.isHeadless());
+                surface.set(s);
+                return s.load(html, options, recorder);
+            });
+            awaitCompletion(tracker, options, recorder);
+            BufferedImage image = callAndWait(recorder, () -> {
+                RenderSurface s = surface.getAndSet(null);
+                BufferedImage painted = s.paint(options.getPixelType());
+                long dispose = recorder.mark();
+                s.dispose();
+                recorder.add(RenderPhase.DISPOSE, dispose);
+                return painted;
+            });
+            recorder.finish();
+            return image;
+        } finally {
+            EventQueue.invokeLater(() -> {
+                RenderSurface s = surface.get();
+                if (s != null) s.dispose();
+            });
+        }
+    }
 }
@@ -0,0 +1,262 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import lombok.NonNull;
+
+/**
+ * An HTML source with named placeholders, which is parsed once and then rendered many times with different values.
+ * <p>The placeholders are written as <code>${name}</code> in the text of the HTML source, where the name is made of
+ * letters, digits, underscores, dots and hyphens and starts with a letter or an underscore. Placeholders within tags,
+ * like in attribute values, or interrupted by tags are not placeholders at all and are rendered literally.</p>
+ * <p>Parsing the HTML source into a document, with its elements and resolved styles, is often the costliest part of
+ * rendering it. So, instead of substituting the values in the HTML source and parsing it again for each render,
+ * the parsed documents are kept and reused: each render binds its values by replacing only the text of the
+ * placeholders in a document that was already parsed, keeping the styles of the text around them. A document is
+ * parsed only when all the others are in use by other renders.</p>
+ * <p>The values are inserted as plain text, so they never need to be escaped and can't add any markup. Whitespace in
+ * the values is kept as is, while in the HTML source it would be collapsed, so rendering a template gives the same
+ * image as rendering its HTML source with the values substituted and escaped only as long as the values have no
+ * consecutive whitespace.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class HtmlTemplate {
+
+    /**
+     * The syntax of the placeholders.
+     */
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z_][A-Za-z0-9_.\\-]*)\\}");
+
+    /**
+     * The maximum number of parsed documents kept while not in use.
+     */
+    private static final int MAX_IDLE = 16;
+
+    /**
+     * Parses the HTML sources into documents.
+     */
+    private static final HTMLEditorKit KIT = new RenderEditorKit(false);
+
+    /**
+     * The HTML source.
+     */
+    @NonNull
+    private final String source;
+
+    /**
+     * The names of the placeholders, in the order they first appear.
+     */
+    @NonNull
+    private final List<String> names;
+
+    /**
+     * The parsed documents not in use.
+     */
+    @NonNull
+    private final BlockingQueue<Lease> idle;
+
+    /**
+     * Parses an HTML source with placeholders.
+     * @param source The HTML source.
+     * @throws IllegalArgumentException If the {@code source} is {@code null}.
+     */
+    public HtmlTemplate(@NonNull String source) {
+        this.source = source;
+        this.idle = new ArrayBlockingQueue<>(MAX_IDLE);
+        Lease first = parse();
+        Set<String> found = new LinkedHashSet<>();
+        for (Slot slot : first.slots) {
+            found.add(slot.name());
+        }
+        this.names = List.copyOf(found);
+        idle.add(first);
+    }
+
+    /**
+     * Returns the HTML source.
+     * @return The HTML source.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the names of the placeholders, in the order they first appear in the HTML source.
+     * @return The names of the placeholders.
+     */
+    public Set<String> getPlaceholders() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(names));
+    }
+
+    /**
+     * Gives the values of the placeholders as strings, in the order of their names.
+     * <p>Values of names that are not placeholders are ignored.</p>
+     * @param values The values of the placeholders, by their names. Each one is converted with {@link String#valueOf(Object)}.
+     * @return The values of the placeholders as strings, in the order of their names.
+     * @throws IllegalArgumentException If the {@code values} is {@code null} or lacks the value of some placeholder.
+     */
+    Map<String, String> bind(@NonNull Map<String, ?> values) {
+        Map<String, String> bound = new LinkedHashMap<>();
+        for (String name : names) {
+            if (!values.containsKey(name)) throw new IllegalArgumentException("There is no value for the placeholder " + name + ".");
+            bound.put(name, String.valueOf(values.get(name)));
+        }
+        return bound;
+    }
+
+    /**
+     * Gives a string that identifies the document resulting of binding some values, so its layout might be remembered.
+     * @param bound The values of the placeholders, as given by {@link #bind(Map)}.
+     * @return A string that identifies the resulting document.
+     */
+    String key(@NonNull Map<String, String> bound) {
+        StringBuilder sb = new StringBuilder(source);
+        for (String value : bound.values()) {
+            sb.append('\0').append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Takes a parsed document not in use, or parses a new one if there is none, and binds some values to it.
+     * <p>The document should be {@linkplain Lease#release() released} once it is no longer used.</p>
+     * @param bound The values of the placeholders, as given by {@link #bind(Map)}.
+     * @return The lease of the document.
+     */
+    Lease lease(@NonNull Map<String, String> bound) {
+        Lease lease = idle.poll();
+        if (lease == null) lease = parse();
+        lease.bind(bound);
+        return lease;
+    }
+
+    /**
+     * Parses the HTML source into a new document and finds its placeholders.
+     * @return The lease of the new document.
+     */
+    private Lease parse() {
+        HTMLDocument doc = (HTMLDocument) KIT.createDefaultDocument();
+        try {
+            KIT.read(new StringReader(source), doc, 0);
+            String text = doc.getText(0, doc.getLength());
+            List<Slot> slots = new ArrayList<>();
+            Matcher m = PLACEHOLDER.matcher(text);
+            while (m.find()) {
+                Element leaf = doc.getCharacterElement(m.start());
+                if (leaf.getEndOffset() < m.end()) continue;
+                slots.add(new Slot(m.group(1), m.start(), m.end() - m.start(), leaf.getAttributes().copyAttributes()));
+            }
+            return new Lease(doc, slots);
+        } catch (IOException | BadLocationException e) {
+            // Reading from a string never fails and the text is always within the document.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * The place of a placeholder in a parsed document.
+     * @param name The name of the placeholder.
+     * @param offset The offset of the placeholder in the document, as parsed.
+     * @param length The length of the placeholder.
+     * @param attributes The attributes of the text of the placeholder.
+     */
+    private static record Slot(@NonNull String name, int offset, int length, @NonNull AttributeSet attributes) {
+    }
+
+    /**
+     * A parsed document of a template, which is used by a single render at a time.
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    final class Lease {
+
+        /**
+         * The parsed document.
+         */
+        @NonNull
+        private final HTMLDocument document;
+
+        /**
+         * The places of the placeholders in the document, from the first to the last.
+         */
+        @NonNull
+        private final List<Slot> slots;
+
+        /**
+         * The text that is currently in the place of each placeholder.
+         */
+        @NonNull
+        private final String[] current;
+
+        /**
+         * Sole constructor.
+         * @param document The parsed document.
+         * @param slots The places of the placeholders in the document, from the first to the last.
+         */
+        private Lease(@NonNull HTMLDocument document, @NonNull List<Slot> slots) {
+            this.document = document;
+            this.slots = slots;
+            this.current = new String[slots.size()];
+            for (int i = 0; i < current.length; i++) {
+                current[i] = "${" + slots.get(i).name() + "}";
+            }
+        }
+
+        /**
+         * Returns the parsed document.
+         * @return The parsed document.
+         */
+        public HTMLDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * Replaces the text in the place of each placeholder by its value, skipping the ones that already have it.
+         * @param bound The values of the placeholders, as given by {@link #bind(Map)}.
+         */
+        private void bind(@NonNull Map<String, String> bound) {
+            int shift = 0;
+            try {
+                for (int i = 0; i < current.length; i++) {
+                    Slot slot = slots.get(i);
+                    String value = bound.get(slot.name());
+                    if (!value.equals(current[i])) {
+                        document.replace(slot.offset() + shift, current[i].length(), value, slot.attributes());
+                        current[i] = value;
+                    }
+                    shift += value.length() - slot.length();
+                }
+            } catch (BadLocationException e) {
+                // The places are always within the document.
+                throw new AssertionError(e);
+            }
+        }
+
+        /**
+         * Gives the document back to the template, so it might be used by another render.
+         * <p>The document must be no longer in use, nor be held by any editor pane.</p>
+         */
+        public void release() {
+            idle.offer(this);
+        }
+    }
+}
@@ -1,6 +1,14 @@
 package ninja.javahacker.javahtmlrenderer;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
  * Compares two {@link BufferedImage}s.
@@ -51,10 +59,128 @@ public final class ImageCompare {
         if (a == null) return b == null;
         if (b == null) return false;
         if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) return false;
-        for (int x = 0; x < a.getWidth(); x++) {
-            for (int y = 0; y < a.getHeight(); y++) {
-                if (a.getRGB(x, y) != b.getRGB(x, y)) return false;
+        if (a.getType() == b.getType() && isDirect(a) && isDirect(b)) return rastersEqual(a, b);
+        return colorsEqual(a, b);
+    }
+
+    /**
+     * Tells if the pixels of an image might be compared straight from its backing array.
+     * <p>That is the case for the image types where each pixel is stored as a single {@code int} or as consecutive
+     * {@code byte}s and where two pixels are stored the same way if and only if they have the same color.</p>
+     * @param image The image.
+     * @return {@code true} if the pixels of the image might be compared straight from its backing array,
+     *     {@code false} otherwise.
+     */
+    private static boolean isDirect(BufferedImage image) {
+        WritableRaster r = image.getRaster();
+        DataBuffer data = r.getDataBuffer();
+        if (data.getNumBanks() != 1) return false;
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_BGR:
+                return data instanceof DataBufferInt && r.getSampleModel() instanceof SinglePixelPackedSampleModel;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return data instanceof DataBufferByte && r.getSampleModel() instanceof ComponentSampleModel;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compares two images of the same size and the same {@linkplain #isDirect(BufferedImage) direct} type
+     * by comparing their backing arrays row by row.
+     * <p>Note that the images are no longer accelerated by the graphics pipeline after their backing arrays
+     * are accessed.</p>
+     * @param a The first image to be compared.
+     * @param b The second image to be compared.
+     * @return {@code true} if both images are equals in a pixel-by-pixel comparison or {@code false} otherwise.
+     */
+    private static boolean rastersEqual(BufferedImage a, BufferedImage b) {
+        WritableRaster ra = a.getRaster();
+        WritableRaster rb = b.getRaster();
+        int w = a.getWidth();
+        int h = a.getHeight();
+        if (ra.getDataBuffer() instanceof DataBufferInt) {
+            int[] da = ((DataBufferInt) ra.getDataBuffer()).getData();
+            int[] db = ((DataBufferInt) rb.getDataBuffer()).getData();
+
+            // The highest byte of the pixels of the images without alpha is not part of their colors.
+            int mask = a.getType() == BufferedImage.TYPE_INT_ARGB ? -1 : 0x00FFFFFF;
+            for (int y = 0; y < h; y++) {
+                if (!rowEqual(da, rowStart(ra, y), db, rowStart(rb, y), w, mask)) return false;
             }
+        } else {
+            byte[] da = ((DataBufferByte) ra.getDataBuffer()).getData();
+            byte[] db = ((DataBufferByte) rb.getDataBuffer()).getData();
+            int length = w * ((ComponentSampleModel) ra.getSampleModel()).getPixelStride();
+            for (int y = 0; y < h; y++) {
+                int oa = rowStart(ra, y);
+                int ob = rowStart(rb, y);
+                if (Arrays.mismatch(da, oa, oa + length, db, ob, ob + length) >= 0) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a row of {@code int} pixels of two images, considering only some of their bits.
+     * @param a The backing array of the first image.
+     * @param oa Where the row starts in the {@code a} array.
+     * @param b The backing array of the second image.
+     * @param ob Where the row starts in the {@code b} array.
+     * @param w The number of pixels in the row.
+     * @param mask The bits of the pixels that should be compared.
+     * @return {@code true} if all the pixels in the row are equals in the bits of the {@code mask},
+     *     {@code false} otherwise.
+     */
+    private static boolean rowEqual(int[] a, int oa, int[] b, int ob, int w, int mask) {
+        int from = 0;
+        while (from < w) {
+            int m = Arrays.mismatch(a, oa + from, oa + w, b, ob + from, ob + w);
+            if (m < 0) return true;
+            from += m;
+            if (((a[oa + from] ^ b[ob + from]) & mask) != 0) return false;
+            from++;
+        }
+        return true;
+    }
+
+    /**
+     * Finds where a row of pixels starts in the backing array of a raster.
+     * @param r The raster.
+     * @param y The row.
+     * @return The index of the first element of the first pixel of the row in the backing array.
+     */
+    private static int rowStart(WritableRaster r, int y) {
+        SampleModel sm = r.getSampleModel();
+        int x0 = r.getMinX() - r.getSampleModelTranslateX();
+        int y0 = r.getMinY() + y - r.getSampleModelTranslateY();
+        int offset = r.getDataBuffer().getOffset();
+        if (sm instanceof SinglePixelPackedSampleModel) {
+            return offset + ((SinglePixelPackedSampleModel) sm).getOffset(x0, y0);
+        }
+        ComponentSampleModel csm = (ComponentSampleModel) sm;
+        int firstBand = Arrays.stream(csm.getBandOffsets()).min().orElse(0);
+        return offset + y0 * csm.getScanlineStride() + x0 * csm.getPixelStride() + firstBand;
+    }
+
+    /**
+     * Compares two images of the same size by comparing the colors of their pixels row by row.
+     * <p>This works for images of any type, even different ones.</p>
+     * @param a The first image to be compared.
+     * @param b The second image to be compared.
+     * @return {@code true} if both images are equals in a pixel-by-pixel comparison or {@code false} otherwise.
+     */
+    private static boolean colorsEqual(BufferedImage a, BufferedImage b) {
+        int w = a.getWidth();
+        int[] rowA = new int[w];
+        int[] rowB = new int[w];
+        for (int y = 0; y < a.getHeight(); y++) {
+            a.getRGB(0, y, w, 1, rowA, 0, w);
+            b.getRGB(0, y, w, 1, rowB, 0, w);
+            if (!Arrays.equals(rowA, rowB)) return false;
         }
         return true;
     }
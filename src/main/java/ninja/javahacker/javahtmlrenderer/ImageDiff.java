@@ -0,0 +1,434 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Compares two {@link BufferedImage}s, telling how much and where they differ.
+ * <p>Unlike {@link ImageCompare}, which only tells if two images are exactly equals, this class might
+ * tolerate small differences, such as the ones produced by antialiasing, both in the colors of each pixel
+ * and in the number of differing pixels.</p>
+ * <p>Instances of this class are immutable. Use the {@code with} methods to
+ * derive a new instance with some option changed:</p>
+ * <pre>
+ *     ImageDiffResult r = ImageDiff.exact()
+ *             .withMetric(DiffMetric.PERCEPTUAL)
+ *             .withTolerance(25)
+ *             .withMaxDifferingPixels(10)
+ *             .compare(expected, actual);
+ *     if (!r.isMatch()) System.out.println(r.getRegions());
+ * </pre>
+ * <p>Large images are compared in strips of rows that run in parallel in the common {@link java.util.concurrent.ForkJoinPool}.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@ToString
+@EqualsAndHashCode
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class ImageDiff {
+
+    /**
+     * The side of the square tiles in which the differing pixels are grouped into regions.
+     */
+    private static final int TILE = 16;
+
+    /**
+     * The number of rows of tiles in each strip compared in parallel.
+     */
+    private static final int STRIP_TILES = 8;
+
+    /**
+     * The minimum number of pixels for comparing the images in parallel.
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 18;
+
+    /**
+     * The perceptual distance between black and white.
+     */
+    private static final double MAX_PERCEPTUAL_DELTA = 35215.0;
+
+    /**
+     * The color of the differing pixels in the diff mask.
+     */
+    private static final int MASK_COLOR = 0xFFFF0000;
+
+    /**
+     * The options that tell that any difference at all counts.
+     */
+    private static final ImageDiff EXACT = new ImageDiff(0, 0, DiffMetric.CHANNEL, false);
+
+    /**
+     * How different two pixels might be and still be considered equals.
+     */
+    private final int tolerance;
+
+    /**
+     * How many pixels might differ and still be considered a match.
+     */
+    private final long maxDifferingPixels;
+
+    /**
+     * How the difference between two pixels is measured.
+     */
+    @NonNull
+    private final DiffMetric metric;
+
+    /**
+     * Tells if a diff mask image should be produced.
+     */
+    private final boolean mask;
+
+    /**
+     * Creates an instance with the given options.
+     * @param tolerance How different two pixels might be and still be considered equals.
+     * @param maxDifferingPixels How many pixels might differ and still be considered a match.
+     * @param metric How the difference between two pixels is measured.
+     * @param mask Tells if a diff mask image should be produced.
+     * @throws IllegalArgumentException If the {@code tolerance} is not between 0 and 255, the {@code maxDifferingPixels}
+     *     is negative or the {@code metric} is {@code null}.
+     */
+    private ImageDiff(int tolerance, long maxDifferingPixels, @NonNull DiffMetric metric, boolean mask) {
+        if (tolerance < 0 || tolerance > 255) throw new IllegalArgumentException("The tolerance must be between 0 and 255.");
+        if (maxDifferingPixels < 0) throw new IllegalArgumentException("The maxDifferingPixels can't be negative.");
+        this.tolerance = tolerance;
+        this.maxDifferingPixels = maxDifferingPixels;
+        this.metric = metric;
+        this.mask = mask;
+    }
+
+    /**
+     * Returns the options that tell that any difference at all counts.
+     * <p>They have no tolerance, allow no differing pixels, use the {@link DiffMetric#CHANNEL} metric
+     * and produce no diff mask image.</p>
+     * @return The options that tell that any difference at all counts.
+     */
+    public static ImageDiff exact() {
+        return EXACT;
+    }
+
+    /**
+     * Returns how different two pixels might be and still be considered equals, from 0 to 255.
+     * <p>How this is applied depends on the {@link DiffMetric}.</p>
+     * @return How different two pixels might be and still be considered equals.
+     */
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Returns how many pixels might differ and still be considered a match.
+     * @return How many pixels might differ and still be considered a match.
+     */
+    public long getMaxDifferingPixels() {
+        return maxDifferingPixels;
+    }
+
+    /**
+     * Returns how the difference between two pixels is measured.
+     * @return How the difference between two pixels is measured.
+     */
+    public DiffMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Tells if a diff mask image should be produced.
+     * @return {@code true} if a diff mask image should be produced, {@code false} otherwise.
+     */
+    public boolean isMask() {
+        return mask;
+    }
+
+    /**
+     * Creates a copy of this instance with a different tolerance.
+     * @param tolerance How different two pixels might be and still be considered equals, from 0 to 255.
+     * @return A copy of this instance with a different tolerance.
+     * @throws IllegalArgumentException If the {@code tolerance} is not between 0 and 255.
+     */
+    public ImageDiff withTolerance(int tolerance) {
+        return new ImageDiff(tolerance, maxDifferingPixels, metric, mask);
+    }
+
+    /**
+     * Creates a copy of this instance with a different maximum number of differing pixels.
+     * @param maxDifferingPixels How many pixels might differ and still be considered a match.
+     * @return A copy of this instance with a different maximum number of differing pixels.
+     * @throws IllegalArgumentException If the {@code maxDifferingPixels} is negative.
+     */
+    public ImageDiff withMaxDifferingPixels(long maxDifferingPixels) {
+        return new ImageDiff(tolerance, maxDifferingPixels, metric, mask);
+    }
+
+    /**
+     * Creates a copy of this instance with a different metric.
+     * @param metric How the difference between two pixels is measured.
+     * @return A copy of this instance with a different metric.
+     * @throws IllegalArgumentException If the {@code metric} is {@code null}.
+     */
+    public ImageDiff withMetric(@NonNull DiffMetric metric) {
+        return new ImageDiff(tolerance, maxDifferingPixels, metric, mask);
+    }
+
+    /**
+     * Creates a copy of this instance that produces or not a diff mask image.
+     * @param mask {@code true} if a diff mask image should be produced, {@code false} otherwise.
+     * @return A copy of this instance that produces or not a diff mask image.
+     */
+    public ImageDiff withMask(boolean mask) {
+        return new ImageDiff(tolerance, maxDifferingPixels, metric, mask);
+    }
+
+    /**
+     * Compares two images.
+     * @param a The first image to be compared.
+     * @param b The second image to be compared.
+     * @return The outcome of the comparison.
+     * @throws IllegalArgumentException If any of the images is {@code null} or if they have different sizes.
+     */
+    public ImageDiffResult compare(@NonNull BufferedImage a, @NonNull BufferedImage b) {
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight()) {
+            throw new IllegalArgumentException("The images have different sizes.");
+        }
+        Comparison c = new Comparison(a, b);
+        int strips = (c.tilesY + STRIP_TILES - 1) / STRIP_TILES;
+        IntStream s = IntStream.range(0, strips);
+        if ((long) c.width * c.height >= PARALLEL_THRESHOLD) s = s.parallel();
+        long differing = s.mapToLong(c::compareStrip).sum();
+        return new ImageDiffResult(differing, differing <= maxDifferingPixels, c.regions(), c.maskImage);
+    }
+
+    /**
+     * Tells if two pixels differ.
+     * @param p The first pixel, as given by {@link BufferedImage#getRGB(int, int)}.
+     * @param q The second pixel, as given by {@link BufferedImage#getRGB(int, int)}.
+     * @return {@code true} if the pixels differ, {@code false} otherwise.
+     */
+    private boolean differs(int p, int q) {
+        if (p == q) return false;
+        if (metric == DiffMetric.CHANNEL) return channelDelta(p, q) > tolerance;
+        double t = tolerance / 255.0;
+        return perceptualDelta(p, q) > MAX_PERCEPTUAL_DELTA * t * t;
+    }
+
+    /**
+     * Finds the largest absolute difference among the channels of two pixels.
+     * @param p The first pixel.
+     * @param q The second pixel.
+     * @return The largest absolute difference among the channels of two pixels.
+     */
+    private static int channelDelta(int p, int q) {
+        int max = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            max = Math.max(max, Math.abs(((p >>> shift) & 0xFF) - ((q >>> shift) & 0xFF)));
+        }
+        return max;
+    }
+
+    /**
+     * Finds the perceptual distance between the colors of two pixels.
+     * @param p The first pixel.
+     * @param q The second pixel.
+     * @return The perceptual distance between the colors of two pixels.
+     */
+    private static double perceptualDelta(int p, int q) {
+        double r1 = blend(p >>> 16, p >>> 24);
+        double g1 = blend(p >>> 8, p >>> 24);
+        double b1 = blend(p, p >>> 24);
+        double r2 = blend(q >>> 16, q >>> 24);
+        double g2 = blend(q >>> 8, q >>> 24);
+        double b2 = blend(q, q >>> 24);
+        double y = (r1 - r2) * 0.29889531 + (g1 - g2) * 0.58662247 + (b1 - b2) * 0.11448223;
+        double i = (r1 - r2) * 0.59597799 - (g1 - g2) * 0.27417610 - (b1 - b2) * 0.32180189;
+        double q2 = (r1 - r2) * 0.21147017 - (g1 - g2) * 0.52261711 + (b1 - b2) * 0.31114694;
+        return 0.5053 * y * y + 0.299 * i * i + 0.1957 * q2 * q2;
+    }
+
+    /**
+     * Blends a color channel over white.
+     * @param channel The channel, in its lowest 8 bits.
+     * @param alpha The alpha, in its lowest 8 bits.
+     * @return The blended channel.
+     */
+    private static double blend(int channel, int alpha) {
+        return 255 + ((channel & 0xFF) - 255) * (alpha & 0xFF) / 255.0;
+    }
+
+    /**
+     * The state of a single comparison.
+     * <p>The image is divided into square tiles, and the tiles in strips of rows. Each strip might be compared
+     * in a different thread, but each tile and each row of the mask is only ever touched by the strip containing it.</p>
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    private final class Comparison {
+
+        /**
+         * The first image to be compared.
+         */
+        @NonNull
+        private final BufferedImage a;
+
+        /**
+         * The second image to be compared.
+         */
+        @NonNull
+        private final BufferedImage b;
+
+        /**
+         * The width of the images.
+         */
+        private final int width;
+
+        /**
+         * The height of the images.
+         */
+        private final int height;
+
+        /**
+         * The number of columns of tiles.
+         */
+        private final int tilesX;
+
+        /**
+         * The number of rows of tiles.
+         */
+        private final int tilesY;
+
+        /**
+         * The bounding box of the differing pixels of each tile, as four consecutive values:
+         * minimum x, minimum y, maximum x and maximum y. The minimums are {@link Integer#MAX_VALUE}
+         * and the maximums are -1 if there is no differing pixel in the tile.
+         */
+        @NonNull
+        private final int[] boxes;
+
+        /**
+         * The diff mask image or {@code null} if it was not requested.
+         */
+        private final BufferedImage maskImage;
+
+        /**
+         * The pixels of the {@link #maskImage} or {@code null} if it was not requested.
+         */
+        private final int[] maskPixels;
+
+        /**
+         * Sole constructor.
+         * @param a The first image to be compared.
+         * @param b The second image to be compared.
+         */
+        public Comparison(@NonNull BufferedImage a, @NonNull BufferedImage b) {
+            this.a = a;
+            this.b = b;
+            this.width = a.getWidth();
+            this.height = a.getHeight();
+            this.tilesX = (width + TILE - 1) / TILE;
+            this.tilesY = (height + TILE - 1) / TILE;
+            this.boxes = new int[tilesX * tilesY * 4];
+            for (int i = 0; i < boxes.length; i += 4) {
+                boxes[i] = Integer.MAX_VALUE;
+                boxes[i + 1] = Integer.MAX_VALUE;
+                boxes[i + 2] = -1;
+                boxes[i + 3] = -1;
+            }
+            if (mask) {
+                this.maskImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                this.maskPixels = ((DataBufferInt) maskImage.getRaster().getDataBuffer()).getData();
+            } else {
+                this.maskImage = null;
+                this.maskPixels = null;
+            }
+        }
+
+        /**
+         * Compares the rows of a strip.
+         * @param strip The index of the strip.
+         * @return The number of differing pixels in the strip.
+         */
+        public long compareStrip(int strip) {
+            int y0 = strip * STRIP_TILES * TILE;
+            int y1 = Math.min(height, y0 + STRIP_TILES * TILE);
+            int[] rowA = new int[width];
+            int[] rowB = new int[width];
+            long count = 0;
+            for (int y = y0; y < y1; y++) {
+                a.getRGB(0, y, width, 1, rowA, 0, width);
+                b.getRGB(0, y, width, 1, rowB, 0, width);
+                int x = 0;
+                while (x < width) {
+                    int m = Arrays.mismatch(rowA, x, width, rowB, x, width);
+                    if (m < 0) break;
+                    x += m;
+                    if (differs(rowA[x], rowB[x])) {
+                        count++;
+                        mark(x, y);
+                    }
+                    x++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Marks a pixel as differing.
+         * @param x The x coordinate of the pixel.
+         * @param y The y coordinate of the pixel.
+         */
+        private void mark(int x, int y) {
+            int t = ((y / TILE) * tilesX + x / TILE) * 4;
+            boxes[t] = Math.min(boxes[t], x);
+            boxes[t + 1] = Math.min(boxes[t + 1], y);
+            boxes[t + 2] = Math.max(boxes[t + 2], x);
+            boxes[t + 3] = Math.max(boxes[t + 3], y);
+            if (maskPixels != null) maskPixels[y * width + x] = MASK_COLOR;
+        }
+
+        /**
+         * Groups the tiles that have differing pixels and that touch each other, even diagonally, into regions.
+         * @return The bounding boxes of the regions.
+         */
+        public List<Rectangle> regions() {
+            List<Rectangle> result = new ArrayList<>();
+            boolean[] seen = new boolean[tilesX * tilesY];
+            int[] queue = new int[tilesX * tilesY];
+            for (int start = 0; start < seen.length; start++) {
+                if (seen[start] || boxes[start * 4] == Integer.MAX_VALUE) continue;
+                Rectangle r = null;
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = start;
+                seen[start] = true;
+                while (head < tail) {
+                    int t = queue[head++];
+                    Rectangle box = new Rectangle(
+                            boxes[t * 4],
+                            boxes[t * 4 + 1],
+                            boxes[t * 4 + 2] - boxes[t * 4] + 1,
+                            boxes[t * 4 + 3] - boxes[t * 4 + 1] + 1);
+                    r = r == null ? box : r.union(box);
+                    int tx = t % tilesX;
+                    int ty = t / tilesX;
+                    for (int ny = Math.max(0, ty - 1); ny <= Math.min(tilesY - 1, ty + 1); ny++) {
+                        for (int nx = Math.max(0, tx - 1); nx <= Math.min(tilesX - 1, tx + 1); nx++) {
+                            int n = ny * tilesX + nx;
+                            if (seen[n] || boxes[n * 4] == Integer.MAX_VALUE) continue;
+                            seen[n] = true;
+                            queue[tail++] = n;
+                        }
+                    }
+                }
+                result.add(r);
+            }
+            result.sort((r1, r2) -> r1.y != r2.y ? Integer.compare(r1.y, r2.y) : Integer.compare(r1.x, r2.x));
+            return result;
+        }
+    }
+}
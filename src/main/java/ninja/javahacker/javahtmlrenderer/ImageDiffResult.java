@@ -0,0 +1,99 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Optional;
+import lombok.NonNull;
+
+/**
+ * The outcome of comparing two images with an {@link ImageDiff}.
+ * <p>Instances of this class are immutable, except for the diff mask image, which is not copied.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("EI_EXPOSE_REP")
+public final class ImageDiffResult {
+
+    /**
+     * The number of differing pixels.
+     */
+    private final long differingPixels;
+
+    /**
+     * Tells if the number of differing pixels is within the maximum allowed.
+     */
+    private final boolean match;
+
+    /**
+     * The bounding boxes of the changed regions.
+     */
+    @NonNull
+    private final List<Rectangle> regions;
+
+    /**
+     * The diff mask image or {@code null} if it was not requested.
+     */
+    private final BufferedImage mask;
+
+    /**
+     * Sole constructor.
+     * @param differingPixels The number of differing pixels.
+     * @param match Tells if the number of differing pixels is within the maximum allowed.
+     * @param regions The bounding boxes of the changed regions.
+     * @param mask The diff mask image or {@code null} if it was not requested.
+     */
+    ImageDiffResult(long differingPixels, boolean match, @NonNull List<Rectangle> regions, BufferedImage mask) {
+        this.differingPixels = differingPixels;
+        this.match = match;
+        this.regions = List.copyOf(regions);
+        this.mask = mask;
+    }
+
+    /**
+     * Returns the number of differing pixels.
+     * @return The number of differing pixels.
+     */
+    public long getDifferingPixels() {
+        return differingPixels;
+    }
+
+    /**
+     * Tells if the number of differing pixels is within the {@linkplain ImageDiff#getMaxDifferingPixels() maximum allowed}.
+     * @return {@code true} if the number of differing pixels is within the maximum allowed, {@code false} otherwise.
+     */
+    public boolean isMatch() {
+        return match;
+    }
+
+    /**
+     * Returns the bounding boxes of the changed regions.
+     * <p>Differing pixels that are near each other are grouped in the same region. The regions are
+     * sorted by their top and then by their left coordinates. Changing the returned rectangles does
+     * not affect this object.</p>
+     * @return The bounding boxes of the changed regions, which is empty if no pixel differs.
+     */
+    public List<Rectangle> getRegions() {
+        return regions.stream().map(Rectangle::new).toList();
+    }
+
+    /**
+     * Returns the diff mask image, if it was {@linkplain ImageDiff#withMask(boolean) requested}.
+     * <p>It has the same size of the compared images. Its differing pixels are opaque red and the others
+     * are fully transparent, so it might be drawn over any of the compared images to highlight the changes.</p>
+     * @return The diff mask image, if it was requested.
+     */
+    public Optional<BufferedImage> getMask() {
+        return Optional.ofNullable(mask);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ImageDiffResult(differingPixels=" + differingPixels + ", match=" + match + ", regions=" + regions
+                + ", mask=" + (mask != null) + ")";
+    }
+}
@@ -0,0 +1,300 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import lombok.NonNull;
+
+/**
+ * Encodes a document, band by band as it is painted, into a byte sink.
+ * <p>The bands are received as a {@link BandConsumer}, from the top to the bottom, and must have the
+ * {@link PixelType} given to the encoder. Once all the bands were received, the encoder must be
+ * {@linkplain #finish() finished}.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+abstract class ImageEncoder implements BandConsumer {
+
+    /**
+     * The width of the document.
+     */
+    protected final int width;
+
+    /**
+     * The height of the document.
+     */
+    protected final int height;
+
+    /**
+     * The pixel type of the bands.
+     */
+    @NonNull
+    protected final PixelType type;
+
+    /**
+     * Where the encoded bytes are written.
+     */
+    @NonNull
+    protected final WritableByteChannel out;
+
+    /**
+     * Sole constructor.
+     * @param size The size of the document.
+     * @param type The pixel type of the bands.
+     * @param out Where the encoded bytes are written.
+     */
+    protected ImageEncoder(@NonNull Dimension size, @NonNull PixelType type, @NonNull WritableByteChannel out) {
+        this.width = size.width;
+        this.height = size.height;
+        this.type = type;
+        this.out = out;
+    }
+
+    /**
+     * Creates an encoder and writes the header of the image, if its format has one.
+     * @param format The image format.
+     * @param size The size of the document.
+     * @param type The pixel type of the bands.
+     * @param out Where the encoded bytes are written.
+     * @return The encoder.
+     * @throws IllegalArgumentException If the document is empty.
+     * @throws IOException If writing the header fails.
+     */
+    public static ImageEncoder create(
+            @NonNull ImageFormat format,
+            @NonNull Dimension size,
+            @NonNull PixelType type,
+            @NonNull WritableByteChannel out)
+            throws IOException
+    {
+        if (size.width < 1 || size.height < 1) throw new IllegalArgumentException("The document is empty.");
+        ImageEncoder encoder;
+        switch (format) {
+            case PNG:
+                encoder = new PngEncoder(size, type, out);
+                break;
+            case JPEG:
+                encoder = new JpegEncoder(size, type, out);
+                break;
+            case RAW_RGBA:
+                encoder = new RawEncoder(size, type, out);
+                break;
+            default:
+                throw new AssertionError();
+        }
+        encoder.begin();
+        return encoder;
+    }
+
+    /**
+     * Creates a channel that writes into a given buffer.
+     * @param buffer The buffer.
+     * @return A channel that writes into the {@code buffer}, starting at its position.
+     */
+    public static WritableByteChannel into(@NonNull ByteBuffer buffer) {
+        return new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                buffer.put(src);
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Writes the header of the image, if its format has one.
+     * @throws IOException If writing fails.
+     */
+    protected void begin() throws IOException {
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Failing to write the encoded bytes is signaled with an {@link UncheckedIOException}.</p>
+     * @param y {@inheritDoc}
+     * @param band {@inheritDoc}
+     */
+    @Override
+    public final void accept(int y, BufferedImage band) {
+        try {
+            encode(y, band);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes a band of the document.
+     * @param y The first row of the band in the document.
+     * @param band The image of the band, which should not be used after this method returns.
+     * @throws IOException If writing fails.
+     */
+    protected abstract void encode(int y, @NonNull BufferedImage band) throws IOException;
+
+    /**
+     * Writes whatever is left of the image, after all of its bands were encoded.
+     * @throws IOException If writing fails.
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * Creates an array able to hold a row of pixels, as given by {@link #readRow(BufferedImage, int, Object)}.
+     * @return An {@code int[]} of packed pixels or a {@code byte[]} of gray samples, for the {@link PixelType#GRAY}.
+     */
+    protected final Object newRow() {
+        return type == PixelType.GRAY ? new byte[width] : new int[width];
+    }
+
+    /**
+     * Reads a row of pixels of a band.
+     * @param band The band.
+     * @param row The row in the band.
+     * @param pixels Where the pixels are read to, as created by {@link #newRow()}.
+     */
+    protected final void readRow(@NonNull BufferedImage band, int row, @NonNull Object pixels) {
+        band.getRaster().getDataElements(0, row, width, 1, pixels);
+    }
+
+    /**
+     * Writes all the remaining bytes of a buffer.
+     * @param buffer The buffer.
+     * @throws IOException If writing fails.
+     */
+    protected final void writeFully(@NonNull ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the raw pixels, as four bytes each, red, green, blue and alpha.
+     * @author Victor Williams Stafusa da Silva
+     */
+    private static final class RawEncoder extends ImageEncoder {
+
+        /**
+         * A row of pixels.
+         */
+        @NonNull
+        private final Object row;
+
+        /**
+         * The encoded pixels of a band. Reused by the next bands.
+         */
+        private ByteBuffer buffer;
+
+        /**
+         * Sole constructor.
+         * @param size The size of the document.
+         * @param type The pixel type of the bands.
+         * @param out Where the encoded bytes are written.
+         */
+        public RawEncoder(@NonNull Dimension size, @NonNull PixelType type, @NonNull WritableByteChannel out) {
+            super(size, type, out);
+            this.row = newRow();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param y {@inheritDoc}
+         * @param band {@inheritDoc}
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        protected void encode(int y, @NonNull BufferedImage band) throws IOException {
+            int bytes = band.getHeight() * width * 4;
+            if (buffer == null || buffer.capacity() < bytes) buffer = ByteBuffer.allocate(bytes);
+            buffer.clear();
+            for (int r = 0; r < band.getHeight(); r++) {
+                readRow(band, r, row);
+                if (row instanceof byte[]) {
+                    for (byte v : (byte[]) row) {
+                        buffer.put(v).put(v).put(v).put((byte) 0xFF);
+                    }
+                } else {
+                    boolean alpha = type == PixelType.ARGB;
+                    for (int p : (int[]) row) {
+                        buffer.putInt(p << 8 | (alpha ? p >>> 24 : 0xFF));
+                    }
+                }
+            }
+            buffer.flip();
+            writeFully(buffer);
+        }
+
+        /**
+         * Does nothing, since the raw pixels have no trailer.
+         */
+        @Override
+        public void finish() {
+        }
+    }
+
+    /**
+     * Writes a JPEG image, once the whole document is painted.
+     * @author Victor Williams Stafusa da Silva
+     */
+    private static final class JpegEncoder extends ImageEncoder {
+
+        /**
+         * The whole document.
+         */
+        @NonNull
+        private final BufferedImage image;
+
+        /**
+         * Sole constructor.
+         * @param size The size of the document.
+         * @param type The pixel type of the bands, which can't be {@link PixelType#ARGB}.
+         * @param out Where the encoded bytes are written.
+         */
+        public JpegEncoder(@NonNull Dimension size, @NonNull PixelType type, @NonNull WritableByteChannel out) {
+            super(size, type, out);
+            if (type == PixelType.ARGB) throw new AssertionError();
+            this.image = type.create(width, height);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param y {@inheritDoc}
+         * @param band {@inheritDoc}
+         */
+        @Override
+        protected void encode(int y, @NonNull BufferedImage band) {
+            image.getRaster().setDataElements(0, y, band.getRaster());
+        }
+
+        /**
+         * {@inheritDoc}
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public void finish() throws IOException {
+            // Caches only what the JPEG writer seeks back to, instead of the whole output in a temporary file.
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(Channels.newOutputStream(out));
+            try {
+                if (!ImageIO.write(image, "jpeg", ios)) throw new IOException("No JPEG writer available.");
+            } finally {
+                ios.close();
+            }
+        }
+    }
+}
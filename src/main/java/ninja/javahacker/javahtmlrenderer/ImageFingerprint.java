@@ -0,0 +1,248 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import lombok.NonNull;
+
+/**
+ * Fingerprints of the pixels of a {@link BufferedImage}, which identify it without keeping its pixels.
+ * <p>There are two fingerprints, both computed in a single pass over the pixels:</p>
+ * <ul>
+ *     <li>The content hash, which is a SHA-256 hash of the size and of the colors of the pixels. Two images have
+ *     the same content hash if and only if they are {@linkplain ImageCompare#equals(BufferedImage, BufferedImage)
+ *     equal}, no matter their types, except for the negligible chance of a hash collision.</li>
+ *     <li>The perceptual hash, which is a 64-bit difference hash. The image is shrunk to 9 by 8 blocks of gray
+ *     levels, and each bit tells if a block is brighter than the one at its right. Images that look alike have
+ *     perceptual hashes that differ in a few bits, as given by {@link #distance(ImageFingerprint)}, even if their
+ *     sizes differ.</li>
+ * </ul>
+ * <p>Fingerprints are meant to be kept instead of the images, in order to find equal or similar images
+ * without comparing their pixels, as done by the {@link FingerprintIndex}.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     BufferedImage a = ...;
+ *     BufferedImage b = ...;
+ *     ImageFingerprint fa = ImageFingerprint.of(a);
+ *     ImageFingerprint fb = ImageFingerprint.of(b);
+ *     boolean equal = fa.equals(fb);
+ *     int distance = fa.distance(fb);
+ * </pre>
+ * <p>Instances of this class are immutable and thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class ImageFingerprint {
+
+    /**
+     * The number of columns of blocks of the perceptual hash, which has one bit less than them in each row.
+     */
+    private static final int COLUMNS = 9;
+
+    /**
+     * The number of rows of blocks of the perceptual hash.
+     */
+    private static final int ROWS = 8;
+
+    /**
+     * The maximum {@linkplain #distance(ImageFingerprint) distance} between two fingerprints.
+     */
+    public static final int MAX_DISTANCE = (COLUMNS - 1) * ROWS;
+
+    /**
+     * The width of the image.
+     */
+    private final int width;
+
+    /**
+     * The height of the image.
+     */
+    private final int height;
+
+    /**
+     * The content hash, as an hexadecimal string.
+     */
+    @NonNull
+    private final String contentHash;
+
+    /**
+     * The perceptual hash.
+     */
+    private final long perceptualHash;
+
+    /**
+     * Sole constructor.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param contentHash The content hash, as an hexadecimal string.
+     * @param perceptualHash The perceptual hash.
+     */
+    private ImageFingerprint(int width, int height, @NonNull String contentHash, long perceptualHash) {
+        this.width = width;
+        this.height = height;
+        this.contentHash = contentHash;
+        this.perceptualHash = perceptualHash;
+    }
+
+    /**
+     * Computes the fingerprints of an image.
+     * @param image The image.
+     * @return The fingerprints of the image.
+     * @throws IllegalArgumentException If the {@code image} is {@code null}.
+     */
+    public static ImageFingerprint of(BufferedImage image) {
+        if (image == null) throw new IllegalArgumentException("The image can't be null.");
+        int w = image.getWidth();
+        int h = image.getHeight();
+        MessageDigest md = RenderCache.sha256();
+        md.update(ByteBuffer.allocate(8).putInt(w).putInt(h).flip());
+        ByteBuffer bytes = ByteBuffer.allocate(w * 4);
+        IntBuffer ints = bytes.asIntBuffer();
+        int[] row = new int[w];
+        int[] column = new int[w];
+        for (int x = 0; x < w; x++) {
+            column[x] = x * COLUMNS / w;
+        }
+        double[] gray = new double[COLUMNS * ROWS];
+        long[] count = new long[COLUMNS * ROWS];
+        boolean packed = isPacked(image);
+        int opaque = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+        for (int y = 0; y < h; y++) {
+            if (packed) {
+                image.getRaster().getDataElements(0, y, w, 1, row);
+                if (opaque != 0) {
+                    for (int x = 0; x < w; x++) {
+                        row[x] |= opaque;
+                    }
+                }
+            } else {
+                image.getRGB(0, y, w, 1, row, 0, w);
+            }
+            ints.clear();
+            ints.put(row);
+            bytes.clear();
+            md.update(bytes);
+            int block = y * ROWS / h * COLUMNS;
+            for (int x = 0; x < w; x++) {
+                gray[block + column[x]] += gray(row[x]);
+                count[block + column[x]]++;
+            }
+        }
+        long perceptual = 0L;
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLUMNS - 1; c++) {
+                int left = r * COLUMNS + c;
+                double a = count[left] == 0 ? 0 : gray[left] / count[left];
+                double b = count[left + 1] == 0 ? 0 : gray[left + 1] / count[left + 1];
+                perceptual = perceptual << 1 | (a > b ? 1 : 0);
+            }
+        }
+        return new ImageFingerprint(w, h, HexFormat.of().formatHex(md.digest()), perceptual);
+    }
+
+    /**
+     * Tells if the rows of an image might be read straight as their colors, as {@code int}s in the same format
+     * given by {@link BufferedImage#getRGB(int, int)}, except for the alpha of opaque images.
+     * @param image The image.
+     * @return {@code true} if the rows of the image might be read straight as their colors, {@code false} otherwise.
+     */
+    private static boolean isPacked(@NonNull BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) return false;
+        WritableRaster r = image.getRaster();
+        return r.getDataBuffer() instanceof DataBufferInt && r.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * Gives the gray level of a color, as seen over a white background.
+     * @param argb The color, in the format given by {@link BufferedImage#getRGB(int, int)}.
+     * @return The gray level, from 0 to 255.
+     */
+    private static int gray(int argb) {
+        int a = argb >>> 24;
+        int luma = (((argb >> 16) & 0xFF) * 77 + ((argb >> 8) & 0xFF) * 150 + (argb & 0xFF) * 29) >> 8;
+        return (luma * a + 255 * (255 - a)) / 255;
+    }
+
+    /**
+     * Returns the width of the image.
+     * @return The width of the image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     * @return The height of the image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the content hash, which is the SHA-256 hash of the size and of the colors of the pixels of the image.
+     * @return The content hash, as an hexadecimal string.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Returns the perceptual hash, which is similar for images that look alike.
+     * @return The perceptual hash.
+     */
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    /**
+     * Tells how different this image looks from another one, as the number of bits that differ in their
+     * perceptual hashes.
+     * <p>Equal images have distance zero, but images with distance zero might also be just similar.</p>
+     * @param other The other fingerprint.
+     * @return The distance, from zero to {@link #MAX_DISTANCE}.
+     * @throws IllegalArgumentException If the {@code other} is {@code null}.
+     */
+    public int distance(@NonNull ImageFingerprint other) {
+        return Long.bitCount(perceptualHash ^ other.perceptualHash);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>Two fingerprints are equal if their images are equal.</p>
+     * @param other {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ImageFingerprint)) return false;
+        ImageFingerprint that = (ImageFingerprint) other;
+        return width == that.width && height == that.height && contentHash.equals(that.contentHash);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return contentHash.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "ImageFingerprint(width=" + width + ", height=" + height + ", contentHash=" + contentHash
+                + ", perceptualHash=" + String.format("%016x", perceptualHash) + ")";
+    }
+}
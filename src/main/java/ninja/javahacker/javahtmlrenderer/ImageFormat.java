@@ -0,0 +1,30 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * Defines how the rendered images are encoded when they are rendered straight to a byte sink.
+ * @see HtmlRenderer#render(String, RenderOptions, ImageFormat, java.io.OutputStream)
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum ImageFormat {
+
+    /**
+     * A PNG image, encoded as the document is painted, with its scanlines compressed in parallel.
+     * <p>The PNG color type follows the {@linkplain RenderOptions#getPixelType() pixel type}: gray for
+     * {@link PixelType#GRAY}, RGB for {@link PixelType#RGB} and RGBA for {@link PixelType#ARGB}.</p>
+     */
+    PNG,
+
+    /**
+     * A baseline JPEG image.
+     * <p>The JPEG encoder needs the whole image, so it is encoded only after the whole document is painted.
+     * Since JPEG has no alpha channel, the {@link PixelType#ARGB} pixel type is painted as {@link PixelType#RGB}.</p>
+     */
+    JPEG,
+
+    /**
+     * The raw pixels, without any header, written row by row from the top to the bottom as the document
+     * is painted. Each pixel is written as four bytes: red, green, blue and alpha.
+     * <p>Pixel types without alpha are written as fully opaque.</p>
+     */
+    RAW_RGBA;
+}
@@ -0,0 +1,149 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import java.awt.EventQueue;
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.ImageObserver;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JEditorPane;
+import javax.swing.text.View;
+import javax.swing.text.html.ImageView;
+import lombok.NonNull;
+
+/**
+ * Watches every {@code <img>} in the HTML view of a {@link JEditorPane} until they all either
+ * finished loading or failed.
+ * <p>This is used by the {@link CompletionMode#UNTIL_LOADED} mode.</p>
+ * <p>The {@link ImageView}s load their images asynchronously and, when the image size becomes known,
+ * they schedule their relayout in the AWT's Event Dispatch Thread. In order to not paint the document
+ * before that relayout happens, the completion is also signaled through the Event Dispatch Thread, after
+ * everything that the {@link ImageView}s had already scheduled.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+final class ImageLoadTracker implements ImageObserver {
+
+    /**
+     * The flags that tells that an image will receive no further updates.
+     */
+    private static final int FINISHED = ALLBITS | FRAMEBITS | ERROR | ABORT;
+
+    /**
+     * The images that are still loading.
+     */
+    @NonNull
+    private final Set<Image> pending;
+
+    /**
+     * Signaled once every image is finished.
+     */
+    @NonNull
+    private final CountDownLatch done;
+
+    /**
+     * Tells if the view tree was fully scanned for images.
+     */
+    private boolean scanned;
+
+    /**
+     * Sole constructor.
+     */
+    private ImageLoadTracker() {
+        this.pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.done = new CountDownLatch(1);
+    }
+
+    /**
+     * Starts tracking all the images in the HTML view of the given {@link JEditorPane}.
+     * <p>This should be called in the AWT's Event Dispatch Thread, after the document was set.</p>
+     * @param pane The {@link JEditorPane} which images should be tracked.
+     * @return The tracker.
+     */
+    public static ImageLoadTracker track(@NonNull JEditorPane pane) {
+        ImageLoadTracker tracker = new ImageLoadTracker();
+        tracker.scan(pane.getUI().getRootView(pane));
+        synchronized (tracker.pending) {
+            tracker.scanned = true;
+        }
+        tracker.checkDone();
+        return tracker;
+    }
+
+    /**
+     * Recursively looks for {@link ImageView}s in a view tree and starts watching their images.
+     * @param view The root of the view tree.
+     */
+    private void scan(@NonNull View view) {
+        if (view instanceof ImageView) {
+            Image img = ((ImageView) view).getImage();
+            if (img != null) watch(img);
+        }
+        for (int i = 0; i < view.getViewCount(); i++) {
+            scan(view.getView(i));
+        }
+    }
+
+    /**
+     * Starts watching an image.
+     * @param img The image to be watched.
+     */
+    private void watch(@NonNull Image img) {
+        synchronized (pending) {
+            if (!pending.add(img)) return;
+        }
+        Toolkit tk = Toolkit.getDefaultToolkit();
+        if (tk.prepareImage(img, -1, -1, this) || (tk.checkImage(img, -1, -1, null) & FINISHED) != 0) finished(img);
+    }
+
+    /**
+     * Stops watching an image that will receive no further updates.
+     * @param img The image.
+     */
+    private void finished(@NonNull Image img) {
+        synchronized (pending) {
+            pending.remove(img);
+        }
+        checkDone();
+    }
+
+    /**
+     * Signals the completion if there is nothing else to wait for.
+     */
+    private void checkDone() {
+        synchronized (pending) {
+            if (!scanned || !pending.isEmpty()) return;
+        }
+        EventQueue.invokeLater(done::countDown);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param img {@inheritDoc}
+     * @param infoflags {@inheritDoc}
+     * @param x {@inheritDoc}
+     * @param y {@inheritDoc}
+     * @param width {@inheritDoc}
+     * @param height {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public boolean imageUpdate(Image img, int infoflags, int x, int y, int width, int height) {
+        if ((infoflags & FINISHED) == 0) return true;
+        finished(img);
+        return false;
+    }
+
+    /**
+     * Waits until all the tracked images are finished or the timeout elapses, whichever happens first.
+     * @param millis The timeout in milliseconds.
+     * @return {@code true} if all the images finished or {@code false} if the timeout elapsed.
+     * @throws InterruptedException If another thread interrupts the current one.
+     */
+    public boolean await(long millis) throws InterruptedException {
+        if (EventQueue.isDispatchThread()) throw new AssertionError();
+        return done.await(millis, TimeUnit.MILLISECONDS);
+    }
+}
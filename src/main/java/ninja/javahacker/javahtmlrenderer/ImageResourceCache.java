@@ -0,0 +1,424 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import javax.swing.text.html.ImageView;
+import lombok.NonNull;
+
+/**
+ * A cache of the decoded images referenced by the {@code <img>} tags of the rendered documents.
+ * <p>Without it, each render loads and decodes again every image of its document, in background, which is what
+ * makes the renders wait for them. When given in the {@link RenderOptions#withImageCache(ImageResourceCache)
+ * render options}, the {@link ImageView}s of the document take their images from this cache instead. They are
+ * decoded synchronously when first seen, and are then reused by every later render without any I/O.</p>
+ * <p>The images are keyed by their resolved URL. For {@code file:} URLs, the modification time of the file
+ * is also checked in every use, so changed files are decoded again. Images from other URLs are considered
+ * to never change, unless they are {@linkplain #invalidate(URL) invalidated}.</p>
+ * <p>The cached images are kept up to a given total size in bytes of their pixels. When that size is
+ * exceeded, the least recently used images are evicted.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     ImageResourceCache.shared().preload(logoUrl);
+ *     RenderOptions opt = RenderOptions.defaults().withImageCache(ImageResourceCache.shared());
+ *     BufferedImage my = HtmlRenderer.render(html, opt);
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class ImageResourceCache {
+
+    /**
+     * The name of the document property where the {@link ImageView}s look for their images.
+     */
+    static final String DOCUMENT_PROPERTY = "imageCache";
+
+    /**
+     * The maximum total size in bytes of the pixels of the images kept by the {@linkplain #shared() shared instance}.
+     * <p>This is defined as 64 MiB.</p>
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The process-wide instance.
+     */
+    private static final ImageResourceCache SHARED = new ImageResourceCache(DEFAULT_MAX_BYTES);
+
+    /**
+     * The modification time of URLs that are not files.
+     */
+    private static final long NOT_A_FILE = Long.MIN_VALUE;
+
+    /**
+     * The maximum total size in bytes of the pixels of the cached images.
+     */
+    private final long maxBytes;
+
+    /**
+     * The cached images keyed by their URLs, from the least to the most recently used.
+     * <p>This is accessed only while holding its own lock.</p>
+     */
+    @NonNull
+    private final LinkedHashMap<String, Entry> images;
+
+    /**
+     * The total size in bytes of the pixels of the cached images.
+     * <p>This is accessed only while holding the lock of the {@link #images}.</p>
+     */
+    private long bytes;
+
+    /**
+     * How many images were served from the cache.
+     */
+    @NonNull
+    private final AtomicLong hits;
+
+    /**
+     * How many images were not in the cache and were decoded.
+     */
+    @NonNull
+    private final AtomicLong misses;
+
+    /**
+     * The view of this cache given to the documents.
+     */
+    @NonNull
+    private final Dictionary<URL, Image> dictionary;
+
+    /**
+     * Creates an empty cache.
+     * @param maxBytes The maximum total size in bytes of the pixels of the cached images.
+     * @throws IllegalArgumentException If the {@code maxBytes} is negative.
+     */
+    public ImageResourceCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("The maxBytes can't be negative.");
+        this.maxBytes = maxBytes;
+        this.images = new LinkedHashMap<>(16, 0.75f, true);
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.dictionary = new DocumentView();
+    }
+
+    /**
+     * Returns the process-wide instance, which keeps up to {@link #DEFAULT_MAX_BYTES} bytes of images.
+     * @return The process-wide instance.
+     */
+    public static ImageResourceCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the pixels of the cached images.
+     * @return The maximum total size in bytes of the pixels of the cached images.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the total size in bytes of the pixels of the images currently cached.
+     * @return The total size in bytes of the pixels of the images currently cached.
+     */
+    public long getBytes() {
+        synchronized (images) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns how many images were served from the cache.
+     * @return How many images were served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many images were not in the cache, or were outdated, and were decoded.
+     * @return How many images were decoded.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Loads and decodes an image into the cache, if it is not there yet.
+     * <p>This is meant to be called at startup for the images known to be used by the documents,
+     * so not even the first render needs to load them.</p>
+     * @param url The URL of the image.
+     * @return {@code true} if the image is in the cache or {@code false} if it could not be loaded.
+     * @throws IllegalArgumentException If the {@code url} is {@code null}.
+     */
+    public boolean preload(@NonNull URL url) {
+        return get(url) != null;
+    }
+
+    /**
+     * Discards the cached image of a given URL, if there is one, so it is loaded again in its next use.
+     * @param url The URL of the image.
+     * @throws IllegalArgumentException If the {@code url} is {@code null}.
+     */
+    public void invalidate(@NonNull URL url) {
+        dictionary.remove(url);
+    }
+
+    /**
+     * Discards all the cached images.
+     */
+    public void clear() {
+        synchronized (images) {
+            images.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Returns the view of this cache given to the documents as their {@value #DOCUMENT_PROPERTY} property.
+     * @return The view of this cache given to the documents.
+     */
+    Dictionary<URL, Image> asDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Gives the image of a given URL from the cache, or loads and decodes it.
+     * <p>Two threads that miss the same image at the same time might both decode it.</p>
+     * @param url The URL of the image.
+     * @return The image or {@code null} if it could not be loaded.
+     */
+    private BufferedImage get(@NonNull URL url) {
+        String key = url.toExternalForm();
+        long modified = lastModified(url);
+        synchronized (images) {
+            Entry cached = images.get(key);
+            if (cached != null && cached.modified == modified) {
+                hits.incrementAndGet();
+                return cached.image;
+            }
+        }
+        misses.incrementAndGet();
+        BufferedImage image = decode(url);
+        if (image != null) put(key, new Entry(url, modified, image));
+        return image;
+    }
+
+    /**
+     * Caches an image, evicting the least recently used ones if needed.
+     * <p>Images larger than the maximum total size are not cached at all.</p>
+     * @param key The URL of the image.
+     * @param entry The image, its URL and the modification time of its file.
+     */
+    private void put(@NonNull String key, @NonNull Entry entry) {
+        long size = RenderCache.sizeOf(entry.image);
+        if (size > maxBytes) return;
+        synchronized (images) {
+            Entry old = images.put(key, entry);
+            if (old != null) bytes -= RenderCache.sizeOf(old.image);
+            bytes += size;
+            for (Iterator<Entry> it = images.values().iterator(); bytes > maxBytes;) {
+                bytes -= RenderCache.sizeOf(it.next().image);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Finds the modification time of the file of an URL.
+     * @param url The URL.
+     * @return The modification time of the file in milliseconds or {@link #NOT_A_FILE} if the URL is
+     *     not of a readable file.
+     */
+    private static long lastModified(@NonNull URL url) {
+        if (!"file".equals(url.getProtocol())) return NOT_A_FILE;
+        try {
+            return Files.getLastModifiedTime(Path.of(url.toURI())).toMillis();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return NOT_A_FILE;
+        }
+    }
+
+    /**
+     * Loads and decodes an image.
+     * <p>The image is converted to a type that is fast to paint, if it was decoded to another one.</p>
+     * @param url The URL of the image.
+     * @return The image or {@code null} if it could not be loaded.
+     */
+    private static BufferedImage decode(@NonNull URL url) {
+        BufferedImage read;
+        try {
+            read = ImageIO.read(url);
+        } catch (IOException e) {
+            return null;
+        }
+        if (read == null) return null;
+        int type = read.getType();
+        if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) return read;
+        boolean alpha = read.getColorModel().hasAlpha();
+        BufferedImage image = new BufferedImage(
+                read.getWidth(),
+                read.getHeight(),
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.drawImage(read, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * A cached image.
+     * @author Victor Williams Stafusa da Silva
+     */
+    private static final class Entry {
+
+        /**
+         * The URL of the image.
+         */
+        @NonNull
+        private final URL url;
+
+        /**
+         * The modification time of the file of the image or {@link #NOT_A_FILE} if it is not from a file.
+         */
+        private final long modified;
+
+        /**
+         * The image.
+         */
+        @NonNull
+        private final BufferedImage image;
+
+        /**
+         * Sole constructor.
+         * @param url The URL of the image.
+         * @param modified The modification time of the file of the image or {@link #NOT_A_FILE} if it is not from a file.
+         * @param image The image.
+         */
+        public Entry(@NonNull URL url, long modified, @NonNull BufferedImage image) {
+            this.url = url;
+            this.modified = modified;
+            this.image = image;
+        }
+    }
+
+    /**
+     * The view of the cache given to the documents.
+     * <p>The {@link ImageView}s only ever call {@link #get(Object)} and take whatever it returns as their image,
+     * so this decodes the missing images right there. The other methods just reflect the cache contents.</p>
+     * @author Victor Williams Stafusa da Silva
+     */
+    private final class DocumentView extends Dictionary<URL, Image> {
+
+        /**
+         * Sole constructor.
+         */
+        public DocumentView() {
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int size() {
+            synchronized (images) {
+                return images.size();
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public Enumeration<URL> keys() {
+            List<URL> keys = new ArrayList<>();
+            synchronized (images) {
+                for (Entry e : images.values()) {
+                    keys.add(e.url);
+                }
+            }
+            return Collections.enumeration(keys);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public Enumeration<Image> elements() {
+            List<Image> elements = new ArrayList<>();
+            synchronized (images) {
+                for (Entry e : images.values()) {
+                    elements.add(e.image);
+                }
+            }
+            return Collections.enumeration(elements);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param key {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public Image get(Object key) {
+            return key instanceof URL ? ImageResourceCache.this.get((URL) key) : null;
+        }
+
+        /**
+         * Not supported, since the images are only cached by decoding them.
+         * @param key Ignored.
+         * @param value Ignored.
+         * @return Never returns normally.
+         * @throws UnsupportedOperationException Always.
+         */
+        @Override
+        public Image put(URL key, Image value) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param key {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public Image remove(Object key) {
+            if (!(key instanceof URL)) return null;
+            synchronized (images) {
+                Entry old = images.remove(((URL) key).toExternalForm());
+                if (old == null) return null;
+                bytes -= RenderCache.sizeOf(old.image);
+                return old.image;
+            }
+        }
+    }
+}
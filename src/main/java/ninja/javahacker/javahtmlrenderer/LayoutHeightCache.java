@@ -0,0 +1,100 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.NonNull;
+
+/**
+ * Remembers the preferred heights of the HTML documents laid out at a fixed width.
+ * <p>Laying out a document at a given width is the costly part of finding its preferred height.
+ * Remembering that height allows a surface to size its editor pane right away when the same document
+ * is rendered again at the same width, so the document is laid out only once, when it is painted.</p>
+ * <p>The documents are keyed by a SHA-256 hash of their HTML source and by the width. Only the most
+ * recently used heights are kept.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class LayoutHeightCache {
+
+    /**
+     * The maximum number of heights kept.
+     */
+    private final int maxEntries;
+
+    /**
+     * The heights kept, from the least to the most recently used.
+     * <p>This is accessed only while holding its own lock.</p>
+     */
+    @NonNull
+    private final LinkedHashMap<String, Integer> heights;
+
+    /**
+     * Creates an empty cache.
+     * @param maxEntries The maximum number of heights kept.
+     * @throws IllegalArgumentException If the {@code maxEntries} is not positive.
+     */
+    public LayoutHeightCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("The maxEntries must be positive.");
+        this.maxEntries = maxEntries;
+        this.heights = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > LayoutHeightCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Computes the key of a document laid out at a given width.
+     * @param html The HTML source.
+     * @param width The width.
+     * @return The key of the document.
+     */
+    public static String key(@NonNull String html, int width) {
+        MessageDigest md = RenderCache.sha256();
+        md.update(html.getBytes(StandardCharsets.UTF_8));
+        return key(md.digest(), width);
+    }
+
+    /**
+     * Computes the key of a document laid out at a given width from the SHA-256 hash of its HTML source, encoded as UTF-8.
+     * <p>This gives the same key as {@link #key(String, int)} for the same source, so the source might be hashed as it
+     * is read, without ever holding all of it.</p>
+     * @param digest The SHA-256 hash of the HTML source.
+     * @param width The width.
+     * @return The key of the document.
+     */
+    public static String key(@NonNull byte[] digest, int width) {
+        return HexFormat.of().formatHex(digest) + "@" + width;
+    }
+
+    /**
+     * Gives the remembered height of a document.
+     * @param key The key of the document, as given by {@link #key(String, int)}.
+     * @return The remembered height or zero if there is none.
+     */
+    public int get(@NonNull String key) {
+        synchronized (heights) {
+            Integer height = heights.get(key);
+            return height == null ? 0 : height;
+        }
+    }
+
+    /**
+     * Remembers the height of a document.
+     * @param key The key of the document, as given by {@link #key(String, int)}.
+     * @param height The height.
+     */
+    public void put(@NonNull String key, int height) {
+        synchronized (heights) {
+            heights.put(key, height);
+        }
+    }
+}
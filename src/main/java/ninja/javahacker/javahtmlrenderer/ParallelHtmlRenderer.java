@@ -0,0 +1,282 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.swing.UIManager;
+import javax.swing.text.html.HTMLEditorKit;
+import lombok.NonNull;
+
+/**
+ * Renders HTML pages into {@link BufferedImage}s using many threads at once, without the AWT's Event Dispatch Thread.
+ * <p>Both the {@link HtmlRenderer} and the {@link HtmlRenderEngine} do all of their work in the AWT's Event Dispatch
+ * Thread, so a single JVM renders a single page at a time, no matter how many threads ask for renders.
+ * Instead, this class keeps a fixed number of worker threads, each one with its own editor pane, HTML document,
+ * view tree and graphics target confined to it. Each worker parses, lays out and paints its documents by itself,
+ * so as many pages as workers might be rendered at the same time.</p>
+ * <p>The renders are always headless. Since the workers load the images of the documents synchronously while
+ * building their views, the documents are complete as soon as they are loaded. So, the
+ * {@linkplain RenderOptions#getSleepTime() sleep time} and the {@link CompletionMode} are not used.</p>
+ * <p>Text justified to both margins is the exception: it is still measured and painted by Swing's shared
+ * painter, so the workers hand it to the Event Dispatch Thread, one view at a time. Thus, documents with
+ * justified text are not rendered in parallel with each other, and their renders must not be waited for
+ * while holding the Event Dispatch Thread, or they will never finish.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (ParallelHtmlRenderer renderer = new ParallelHtmlRenderer()) {
+ *         BufferedImage a = renderer.render("&lt;p&gt;Hello&lt;/p&gt;");
+ *     }
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class ParallelHtmlRenderer implements AutoCloseable {
+
+    /**
+     * Counts the created instances, in order to name their threads.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Runs the renders.
+     */
+    @NonNull
+    private final ExecutorService workers;
+
+    /**
+     * The surface of each worker thread.
+     */
+    @NonNull
+    private final ThreadLocal<RenderSurface> surfaces;
+
+    /**
+     * Creates a renderer with one worker thread for each available processor.
+     */
+    public ParallelHtmlRenderer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a renderer with the given number of worker threads.
+     * @param threads The number of worker threads.
+     * @throws IllegalArgumentException If the {@code threads} is not positive.
+     */
+    public ParallelHtmlRenderer(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("The number of threads must be positive.");
+
+        // Both the look and feel and the default style sheet of the HTMLEditorKit are lazily initialized
+        // in ways that are not safe to race, so make sure that they are initialized before any worker runs.
+        UIManager.getLookAndFeel();
+        new HTMLEditorKit().getStyleSheet();
+
+        this.threads = threads;
+        this.surfaces = ThreadLocal.withInitial(RenderSurface::createConfined);
+        int instance = INSTANCES.incrementAndGet();
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ParallelHtmlRenderer-" + instance + "-worker-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Returns the number of worker threads.
+     * @return The number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Renders a given HTML source using the default render options.
+     * @param html The HTML that should be rendered.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html) throws InterruptedException {
+        return render(html, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders a given HTML source using the given render options.
+     * <p>If all the workers are busy, the render is queued until some worker is free.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        return render((s, r) -> s.load(html, options, r), options);
+    }
+
+    /**
+     * Renders a template with the given values bound to its placeholders using the given render options.
+     * <p>If all the workers are busy, the render is queued until some worker is free.</p>
+     * <p>The HTML source of the template is not parsed again. Instead, a document already parsed from it is reused,
+     * replacing only the text of its placeholders.</p>
+     * @param template The template that should be rendered.
+     * @param values The values of the placeholders, by their names. Each one is converted with {@link String#valueOf(Object)}
+     *     and values of names that are not placeholders are ignored.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code template}, the {@code values} or the {@code options} are {@code null}
+     *     or if the {@code values} lacks the value of some placeholder.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull HtmlTemplate template, @NonNull Map<String, ?> values, @NonNull RenderOptions options)
+            throws InterruptedException
+    {
+        Map<String, String> bound = template.bind(values);
+        return render((s, r) -> s.load(template, bound, options, r), options);
+    }
+
+    /**
+     * Renders a document using the given render options and the given way to load it.
+     * @param loader Loads the document into the surface of a worker thread. Called in that worker thread.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalStateException If this renderer is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    private BufferedImage render(@NonNull RenderSurface.Loader loader, @NonNull RenderOptions options) throws InterruptedException {
+        if (workers.isShutdown()) throw new IllegalStateException("The renderer is closed.");
+        RenderRecorder recorder = RenderRecorder.start(options);
+        Future<BufferedImage> f = workers.submit(() -> inWorker(loader, options, recorder));
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Renders many HTML sources in batches using the default render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} is {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     */
+    public Stream<BufferedImage> renderAll(@NonNull Collection<String> htmls) {
+        return renderAll(htmls.stream(), RenderOptions.defaults());
+    }
+
+    /**
+     * Renders many HTML sources in batches using the given render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @param options The render options.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} or the {@code options} are {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     */
+    public Stream<BufferedImage> renderAll(@NonNull Collection<String> htmls, @NonNull RenderOptions options) {
+        return renderAll(htmls.stream(), options);
+    }
+
+    /**
+     * Renders many HTML sources in batches using the default render options.
+     * <p>This works as {@link #renderAll(Stream, RenderOptions)}.</p>
+     * @param htmls The HTML sources that should be rendered.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} is {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     */
+    public Stream<BufferedImage> renderAll(@NonNull Stream<String> htmls) {
+        return renderAll(htmls, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders many HTML sources in batches using the given render options.
+     * <p>Instead of queueing each document as a task of its own, the documents are grouped into batches and each
+     * batch is rendered as a single task by a worker thread, one document after the other. Enough batches are kept
+     * in progress to keep all the workers busy.</p>
+     * <p>The returned stream is lazy. The sources are only pulled as the rendered images are consumed, and
+     * the images are given in the same order of their sources, as soon as their batch is rendered. The returned
+     * stream should be closed once it is no longer used, which also closes the {@code htmls} and cancels any batch
+     * still queued.</p>
+     * <p>If the thread consuming the stream is interrupted while waiting for some of the images,
+     * a {@link java.util.concurrent.CancellationException} is thrown and its interrupt status is kept set.</p>
+     * @param htmls The HTML sources that should be rendered. It must not contain {@code null}s, otherwise an
+     *     {@link IllegalArgumentException} is thrown by the returned stream once it reaches them.
+     * @param options The render options.
+     * @return The rendered images, in the same order of their sources.
+     * @throws IllegalArgumentException If the {@code htmls} or the {@code options} are {@code null}.
+     * @throws IllegalStateException If this renderer is already closed.
+     */
+    public Stream<BufferedImage> renderAll(@NonNull Stream<String> htmls, @NonNull RenderOptions options) {
+        if (workers.isShutdown()) throw new IllegalStateException("The renderer is closed.");
+        return RenderBatches.stream(htmls, RenderBatches.BATCH_SIZE, threads * 2, batch -> workers.submit(() -> batch
+                .stream()
+                .map(html -> inWorker((s, r) -> s.load(html, options, r), options, RenderRecorder.start(options)))
+                .toList()
+        ), () -> { });
+    }
+
+    /**
+     * Rethrows the failure of a render that happened in some worker thread.
+     * <p>The renders never throw checked exceptions, so the failure is either a
+     * {@link RuntimeException}, which is returned for the caller to throw, or an {@link Error}.</p>
+     * @param cause The failure.
+     * @return The {@code cause}, if it is a {@link RuntimeException}.
+     */
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException) return (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new AssertionError(cause);
+    }
+
+    /**
+     * Renders a document with the surface of the current worker thread.
+     * @param loader Loads the document into the surface.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render.
+     * @return The rendered image.
+     */
+    private BufferedImage inWorker(@NonNull RenderSurface.Loader loader, @NonNull RenderOptions options, @NonNull RenderRecorder recorder) {
+        recorder.started();
+        RenderSurface s = surfaces.get();
+        BufferedImage image;
+        try {
+            loader.load(s, recorder);
+            image = s.paint(options.getPixelType());
+        } finally {
+            long reset = recorder.mark();
+            s.reset();
+            recorder.add(RenderPhase.DISPOSE, reset);
+        }
+        recorder.finish();
+        return image;
+    }
+
+    /**
+     * Closes this renderer.
+     * <p>Renders already queued are allowed to finish, but no new render might be started.</p>
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,403 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Objects;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import lombok.NonNull;
+
+/**
+ * An HTML source read from a stream and parsed into a new document, outside of the AWT's Event Dispatch Thread.
+ * <p>The source is fed to the parser of the HTML kit in small chunks, as it is read, so it is never held whole in
+ * memory, neither as a {@link String} nor as a {@link StringBuilder}. The document keeps its text, but not its markup.
+ * While the source is read, it is also hashed, so the {@link LayoutHeightCache} still recognizes the documents that were
+ * already laid out, just like it does for the documents given as {@link String}s.</p>
+ * <p>Files are mapped into memory and decoded in chunks straight from the mapping, without being read into the heap.</p>
+ * <p>Instances of this class are confined to a single thread at a time, until they are
+ * {@linkplain RenderSurface#load(ParsedHtml, RenderOptions, RenderRecorder) loaded} into a surface.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class ParsedHtml {
+
+    /**
+     * The kit used to parse the documents.
+     */
+    private static final HTMLEditorKit KIT = new RenderEditorKit(false);
+
+    /**
+     * The number of characters decoded at a time from a file mapped into memory.
+     */
+    private static final int CHUNK = 8192;
+
+    /**
+     * The parsed document.
+     */
+    @NonNull
+    private final HTMLDocument document;
+
+    /**
+     * The SHA-256 hash of the HTML source, encoded as UTF-8.
+     */
+    @NonNull
+    private final byte[] digest;
+
+    /**
+     * Sole constructor.
+     * @param document The parsed document.
+     * @param digest The SHA-256 hash of the HTML source, encoded as UTF-8.
+     */
+    private ParsedHtml(@NonNull HTMLDocument document, @NonNull byte[] digest) {
+        this.document = document;
+        this.digest = digest;
+    }
+
+    /**
+     * Reads an HTML source until its end and parses it into a new document.
+     * <p>The source was already decoded, so any charset declared in its {@code meta} tags is ignored.
+     * The {@code html} is not closed.</p>
+     * @param html The HTML source.
+     * @return The parsed source.
+     * @throws IOException If reading from the {@code html} fails.
+     */
+    public static ParsedHtml parse(@NonNull Reader html) throws IOException {
+        HTMLDocument doc = (HTMLDocument) KIT.createDefaultDocument();
+        doc.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+        DigestReader in = new DigestReader(html);
+        try {
+            KIT.read(in, doc, 0);
+        } catch (BadLocationException e) {
+            // The document is empty, so the offset zero is always within it.
+            throw new AssertionError(e);
+        }
+        in.drain();
+        return new ParsedHtml(doc, in.digest());
+    }
+
+    /**
+     * Maps an HTML file into memory and parses it into a new document.
+     * <p>Malformed input and unmappable characters are replaced, as done by {@link java.io.InputStreamReader}.</p>
+     * @param html The HTML file.
+     * @param charset The charset of the file.
+     * @return The parsed source.
+     * @throws IllegalArgumentException If the file is larger than 2 GiB.
+     * @throws IOException If the file could not be opened, mapped or read.
+     */
+    public static ParsedHtml parse(@NonNull Path html, @NonNull Charset charset) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(html, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("The file is larger than 2 GiB.");
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return parse(new MappedReader(mapped, charset));
+    }
+
+    /**
+     * Returns the parsed document.
+     * @return The parsed document.
+     */
+    public HTMLDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Gives the key of the document laid out at a given width, as given by {@link LayoutHeightCache#key(String, int)}.
+     * @param width The width.
+     * @return The key of the document.
+     */
+    public String key(int width) {
+        return LayoutHeightCache.key(digest, width);
+    }
+
+    /**
+     * Hashes the characters read through it, encoded as UTF-8, exactly as {@link String#getBytes(Charset)} would.
+     */
+    private static final class DigestReader extends FilterReader {
+
+        /**
+         * The hash of the characters read so far.
+         */
+        @NonNull
+        private final MessageDigest md;
+
+        /**
+         * Encodes the characters read as UTF-8, replacing the lone surrogates as {@link String#getBytes(Charset)} does.
+         */
+        @NonNull
+        private final CharsetEncoder encoder;
+
+        /**
+         * Holds the encoded bytes before they are hashed.
+         */
+        @NonNull
+        private final ByteBuffer bytes;
+
+        /**
+         * A high surrogate read at the end of a chunk, whose low surrogate is in the next one, or zero if there is none.
+         */
+        private char carry;
+
+        /**
+         * Tells if the end of the source was reached.
+         */
+        private boolean ended;
+
+        /**
+         * Sole constructor.
+         * @param in The reader whose characters are hashed.
+         */
+        DigestReader(@NonNull Reader in) {
+            super(in);
+            this.md = RenderCache.sha256();
+            this.encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = ByteBuffer.allocate(CHUNK);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @return {@inheritDoc}
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            char[] c = new char[1];
+            return read(c, 0, 1) == -1 ? -1 : c[0];
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param cbuf {@inheritDoc}
+         * @param off {@inheritDoc}
+         * @param len {@inheritDoc}
+         * @return {@inheritDoc}
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = in.read(cbuf, off, len);
+            if (n > 0) {
+                hash(CharBuffer.wrap(cbuf, off, n), false);
+            } else if (n == -1 && !ended) {
+                ended = true;
+                hash(CharBuffer.allocate(0), true);
+            }
+            return n;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>The skipped characters are still read, so they are hashed.</p>
+         * @param n {@inheritDoc}
+         * @return {@inheritDoc}
+         * @throws IOException {@inheritDoc}
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            if (n < 0) throw new IllegalArgumentException("The n can't be negative.");
+            char[] skipped = new char[(int) Math.min(n, CHUNK)];
+            long left = n;
+            while (left > 0) {
+                int r = read(skipped, 0, (int) Math.min(left, skipped.length));
+                if (r == -1) break;
+                left -= r;
+            }
+            return n - left;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>Reading the same characters again would hash them twice, so marks are not supported.</p>
+         * @return {@inheritDoc}
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param readAheadLimit {@inheritDoc}
+         * @throws IOException Always, since marks are not supported.
+         */
+        @Override
+        public void mark(int readAheadLimit) throws IOException {
+            throw new IOException("mark() not supported.");
+        }
+
+        /**
+         * {@inheritDoc}
+         * @throws IOException Always, since marks are not supported.
+         */
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("reset() not supported.");
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>The parser closes the reader once it is done, but the source belongs to whoever gave it, so this does
+         * not close it.</p>
+         */
+        @Override
+        public void close() {
+            // The source is closed by whoever gave it.
+        }
+
+        /**
+         * Reads whatever the parser left unread, so the whole source is hashed.
+         * @throws IOException If reading fails.
+         */
+        void drain() throws IOException {
+            char[] rest = new char[CHUNK];
+            while (read(rest, 0, rest.length) != -1) {
+                // Just hashes it.
+            }
+        }
+
+        /**
+         * Gives the hash of all the characters read, once the end of the source was reached.
+         * @return The hash of all the characters read.
+         */
+        byte[] digest() {
+            if (!ended) throw new AssertionError();
+            return md.digest();
+        }
+
+        /**
+         * Encodes some characters as UTF-8 and hashes them.
+         * @param chars The characters.
+         * @param end If these are the last characters of the source.
+         */
+        private void hash(@NonNull CharBuffer chars, boolean end) {
+            CharBuffer next = chars;
+            if (carry != 0) {
+                next = CharBuffer.allocate(chars.remaining() + 1).put(carry).put(chars).flip();
+                carry = 0;
+            }
+            while (encoder.encode(next, bytes, end).isOverflow()) {
+                update();
+            }
+            if (next.hasRemaining()) carry = next.get();
+            if (end) {
+                while (encoder.flush(bytes).isOverflow()) {
+                    update();
+                }
+            }
+            update();
+        }
+
+        /**
+         * Hashes the bytes encoded so far.
+         */
+        private void update() {
+            bytes.flip();
+            md.update(bytes);
+            bytes.clear();
+        }
+    }
+
+    /**
+     * Decodes the characters of a file mapped into memory in chunks, straight from the mapping.
+     */
+    private static final class MappedReader extends Reader {
+
+        /**
+         * The bytes of the file not yet decoded.
+         */
+        @NonNull
+        private final ByteBuffer bytes;
+
+        /**
+         * Decodes the bytes of the file.
+         */
+        @NonNull
+        private final CharsetDecoder decoder;
+
+        /**
+         * The decoded characters not yet read.
+         */
+        @NonNull
+        private final CharBuffer chars;
+
+        /**
+         * Tells if all the bytes were decoded and the decoder is being flushed.
+         */
+        private boolean flushing;
+
+        /**
+         * Tells if the decoder was flushed, so there are no more characters to decode.
+         */
+        private boolean done;
+
+        /**
+         * Sole constructor.
+         * @param bytes The bytes of the file.
+         * @param charset The charset of the file.
+         */
+        MappedReader(@NonNull ByteBuffer bytes, @NonNull Charset charset) {
+            this.bytes = bytes;
+            this.decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.chars = CharBuffer.allocate(CHUNK).flip();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param cbuf {@inheritDoc}
+         * @param off {@inheritDoc}
+         * @param len {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            Objects.checkFromIndexSize(off, len, cbuf.length);
+            if (len == 0) return 0;
+            if (!chars.hasRemaining() && !fill()) return -1;
+            int n = Math.min(len, chars.remaining());
+            chars.get(cbuf, off, n);
+            return n;
+        }
+
+        /**
+         * Decodes the next chunk of characters.
+         * @return {@code true} if some characters were decoded, {@code false} if the end of the file was reached.
+         */
+        private boolean fill() {
+            chars.clear();
+            while (chars.position() == 0 && !done) {
+                if (!flushing) flushing = decoder.decode(bytes, chars, true).isUnderflow();
+                if (flushing) done = decoder.flush(chars).isUnderflow();
+            }
+            chars.flip();
+            return chars.hasRemaining();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>The mapping is released once this reader is garbage collected, so this does nothing.</p>
+         */
+        @Override
+        public void close() {
+            // Nothing to close.
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+
+/**
+ * Defines the pixel layout of the images where the documents are painted.
+ * <p>Each pixel type stores only the channels that it needs, so choosing a smaller one
+ * reduces the memory used by each render.</p>
+ * @see RenderOptions#withPixelType(PixelType)
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum PixelType {
+
+    /**
+     * Four bytes per pixel, with alpha, red, green and blue channels.
+     * <p>This is the same as {@link BufferedImage#TYPE_INT_ARGB}.</p>
+     */
+    ARGB(BufferedImage.TYPE_INT_ARGB),
+
+    /**
+     * Four bytes per pixel, with red, green and blue channels.
+     * <p>This is the same as {@link BufferedImage#TYPE_INT_RGB}. This is the default.</p>
+     */
+    RGB(BufferedImage.TYPE_INT_RGB),
+
+    /**
+     * One byte per pixel, with a single gray channel.
+     * <p>This is the same as {@link BufferedImage#TYPE_BYTE_GRAY}.</p>
+     */
+    GRAY(BufferedImage.TYPE_BYTE_GRAY);
+
+    /**
+     * The {@link BufferedImage} type of this pixel type.
+     */
+    private final int imageType;
+
+    /**
+     * The color model of the images of this pixel type.
+     */
+    private final ColorModel colorModel;
+
+    /**
+     * Sole constructor.
+     * @param imageType The {@link BufferedImage} type of this pixel type.
+     */
+    private PixelType(int imageType) {
+        this.imageType = imageType;
+        this.colorModel = new BufferedImage(1, 1, imageType).getColorModel();
+    }
+
+    /**
+     * Returns the {@link BufferedImage} type of this pixel type.
+     * @return The {@link BufferedImage} type of this pixel type.
+     */
+    public int getImageType() {
+        return imageType;
+    }
+
+    /**
+     * Returns the color model of the images of this pixel type.
+     * @return The color model of the images of this pixel type.
+     */
+    ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    /**
+     * Creates an image of this pixel type.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @return The created image.
+     */
+    BufferedImage create(int width, int height) {
+        return new BufferedImage(width, height, imageType);
+    }
+}
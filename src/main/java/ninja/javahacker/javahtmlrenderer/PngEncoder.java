@@ -0,0 +1,321 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import lombok.NonNull;
+
+/**
+ * Writes a PNG image, band by band as the document is painted, compressing the bands in parallel.
+ * <p>Each band is filtered as soon as it is received, choosing for each scanline the filter that gives the smallest
+ * sum of absolute differences, which is the heuristic recommended by the PNG specification. Then, it is compressed
+ * in the {@link ForkJoinPool#commonPool() common pool} as an independent deflate block sequence, ended by a sync
+ * flush, using the last 32 KiB of the previous band as its preset dictionary, so compressing the bands separately
+ * barely hurts the compression ratio. The concatenation of those sequences is a single valid deflate stream.
+ * The compressed bands are written in order, each one as an {@code IDAT} chunk, and no more than a few bands
+ * are compressed at the same time, so the memory used is bounded by the band size.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class PngEncoder extends ImageEncoder {
+
+    /**
+     * The PNG file signature.
+     */
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The zlib header of a deflate stream with a 32 KiB window and the default compression level.
+     */
+    private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9C};
+
+    /**
+     * The size of the deflate window, which is also the size of the preset dictionaries.
+     */
+    private static final int WINDOW = 32 * 1024;
+
+    /**
+     * How many bytes each pixel has in the PNG image.
+     */
+    private final int bytesPerPixel;
+
+    /**
+     * The unfiltered bytes of the previous scanline, which are all zero before the first one.
+     */
+    @NonNull
+    private byte[] previous;
+
+    /**
+     * The unfiltered bytes of the current scanline.
+     */
+    @NonNull
+    private byte[] current;
+
+    /**
+     * The current scanline filtered by each of the five filters.
+     */
+    @NonNull
+    private final byte[][] filtered;
+
+    /**
+     * A row of pixels.
+     */
+    @NonNull
+    private final Object row;
+
+    /**
+     * The checksum of the whole uncompressed stream.
+     */
+    @NonNull
+    private final Adler32 adler;
+
+    /**
+     * The last bytes of the uncompressed stream so far, up to the size of the deflate window,
+     * or {@code null} if nothing was received yet.
+     */
+    private byte[] tail;
+
+    /**
+     * The bands being compressed, in order.
+     */
+    @NonNull
+    private final Deque<CompletableFuture<byte[]>> pending;
+
+    /**
+     * The maximum number of bands being compressed at the same time.
+     */
+    private final int maxPending;
+
+    /**
+     * Tells if the zlib header was already written.
+     */
+    private boolean started;
+
+    /**
+     * Sole constructor.
+     * @param size The size of the document.
+     * @param type The pixel type of the bands.
+     * @param out Where the encoded bytes are written.
+     */
+    public PngEncoder(@NonNull Dimension size, @NonNull PixelType type, @NonNull WritableByteChannel out) {
+        super(size, type, out);
+        this.bytesPerPixel = type == PixelType.GRAY ? 1 : type == PixelType.RGB ? 3 : 4;
+        this.previous = new byte[width * bytesPerPixel];
+        this.current = new byte[width * bytesPerPixel];
+        this.filtered = new byte[5][width * bytesPerPixel];
+        this.row = newRow();
+        this.adler = new Adler32();
+        this.pending = new ArrayDeque<>();
+        this.maxPending = ForkJoinPool.getCommonPoolParallelism() + 1;
+    }
+
+    /**
+     * Writes the PNG signature and the {@code IHDR} chunk.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void begin() throws IOException {
+        writeFully(ByteBuffer.wrap(SIGNATURE));
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width).putInt(height);
+        header.put((byte) 8); // Bit depth.
+        header.put((byte) (type == PixelType.GRAY ? 0 : type == PixelType.RGB ? 2 : 6)); // Color type.
+        header.put((byte) 0).put((byte) 0).put((byte) 0); // Deflate, adaptive filtering and no interlace.
+        chunk("IHDR", header.array());
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param y {@inheritDoc}
+     * @param band {@inheritDoc}
+     * @throws IOException {@inheritDoc}
+     */
+    @Override
+    protected void encode(int y, @NonNull BufferedImage band) throws IOException {
+        int rows = band.getHeight();
+        int stride = 1 + width * bytesPerPixel;
+        byte[] data = new byte[rows * stride];
+        for (int r = 0; r < rows; r++) {
+            readRow(band, r, row);
+            unpack();
+            int filter = filter();
+            data[r * stride] = (byte) filter;
+            System.arraycopy(filtered[filter], 0, data, r * stride + 1, stride - 1);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        adler.update(data);
+        byte[] dictionary = tail;
+        tail = tailOf(tail, data);
+        boolean last = y + rows == height;
+        while (pending.size() >= maxPending) {
+            write(pending.removeFirst().join());
+        }
+        pending.addLast(CompletableFuture.supplyAsync(() -> deflate(data, dictionary, last)));
+    }
+
+    /**
+     * Writes the remaining compressed bands, the zlib checksum and the {@code IEND} chunk.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            write(pending.removeFirst().join());
+        }
+        chunk("IDAT", ByteBuffer.allocate(4).putInt((int) adler.getValue()).array());
+        chunk("IEND", new byte[0]);
+    }
+
+    /**
+     * Converts the {@link #row} of pixels into the unfiltered bytes of the {@link #current} scanline.
+     */
+    private void unpack() {
+        byte[] c = current;
+        if (row instanceof byte[]) {
+            System.arraycopy(row, 0, c, 0, width);
+            return;
+        }
+        int[] pixels = (int[]) row;
+        int j = 0;
+        for (int p : pixels) {
+            c[j++] = (byte) (p >> 16);
+            c[j++] = (byte) (p >> 8);
+            c[j++] = (byte) p;
+            if (bytesPerPixel == 4) c[j++] = (byte) (p >>> 24);
+        }
+    }
+
+    /**
+     * Filters the {@link #current} scanline by each of the five filters into the {@link #filtered} arrays.
+     * @return The filter that gives the smallest sum of absolute differences.
+     */
+    private int filter() {
+        byte[] c = current;
+        byte[] u = previous;
+        int bpp = bytesPerPixel;
+        long[] sums = new long[5];
+        for (int i = 0; i < c.length; i++) {
+            int x = c[i] & 0xFF;
+            int a = i >= bpp ? c[i - bpp] & 0xFF : 0;
+            int b = u[i] & 0xFF;
+            filtered[0][i] = (byte) x;
+            filtered[1][i] = (byte) (x - a);
+            filtered[2][i] = (byte) (x - b);
+            filtered[3][i] = (byte) (x - ((a + b) >>> 1));
+            int d = i >= bpp ? u[i - bpp] & 0xFF : 0;
+            filtered[4][i] = (byte) (x - paeth(a, b, d));
+            for (int f = 0; f < 5; f++) {
+                sums[f] += Math.abs(filtered[f][i]);
+            }
+        }
+        int best = 0;
+        for (int f = 1; f < 5; f++) {
+            if (sums[f] < sums[best]) best = f;
+        }
+        return best;
+    }
+
+    /**
+     * The Paeth predictor, as defined by the PNG specification.
+     * @param a The byte at the left.
+     * @param b The byte above.
+     * @param c The byte above and at the left.
+     * @return The predicted byte.
+     */
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * Finds the last bytes of the uncompressed stream, up to the size of the deflate window.
+     * @param tail The last bytes before the {@code data} or {@code null} if there is none.
+     * @param data The bytes just appended to the uncompressed stream.
+     * @return The last bytes of the uncompressed stream, including the {@code data}.
+     */
+    private static byte[] tailOf(byte[] tail, @NonNull byte[] data) {
+        if (tail == null || data.length >= WINDOW) return Arrays.copyOfRange(data, Math.max(0, data.length - WINDOW), data.length);
+        int kept = Math.min(tail.length, WINDOW - data.length);
+        byte[] merged = Arrays.copyOfRange(tail, tail.length - kept, tail.length + data.length);
+        System.arraycopy(data, 0, merged, kept, data.length);
+        return merged;
+    }
+
+    /**
+     * Compresses a band.
+     * @param data The filtered band.
+     * @param dictionary The bytes preceding the band in the uncompressed stream or {@code null} if it is the first.
+     * @param last If this is the last band, so the deflate stream should be finished.
+     * @return The compressed band.
+     */
+    private static byte[] deflate(@NonNull byte[] data, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) deflater.setDictionary(dictionary);
+            deflater.setInput(data);
+            if (last) deflater.finish();
+            byte[] buffer = new byte[Math.max(64, data.length / 4)];
+            int length = 0;
+            while (true) {
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                int space = buffer.length - length;
+                int n = last ? deflater.deflate(buffer, length, space) : deflater.deflate(buffer, length, space, Deflater.SYNC_FLUSH);
+                length += n;
+                if (last ? deflater.finished() : n < space) return Arrays.copyOf(buffer, length);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a compressed band as an {@code IDAT} chunk, preceded by the zlib header if it is the first one.
+     * @param compressed The compressed band.
+     * @throws IOException If writing fails.
+     */
+    private void write(@NonNull byte[] compressed) throws IOException {
+        if (!started) {
+            started = true;
+            byte[] first = new byte[ZLIB_HEADER.length + compressed.length];
+            System.arraycopy(ZLIB_HEADER, 0, first, 0, ZLIB_HEADER.length);
+            System.arraycopy(compressed, 0, first, ZLIB_HEADER.length, compressed.length);
+            chunk("IDAT", first);
+        } else {
+            chunk("IDAT", compressed);
+        }
+    }
+
+    /**
+     * Writes a PNG chunk.
+     * @param name The chunk type.
+     * @param data The chunk data.
+     * @throws IOException If writing fails.
+     */
+    private void chunk(@NonNull String name, @NonNull byte[] data) throws IOException {
+        byte[] tag = name.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(tag);
+        crc.update(data);
+        writeFully(ByteBuffer.allocate(8).putInt(data.length).put(tag).flip());
+        writeFully(ByteBuffer.wrap(data));
+        writeFully(ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip());
+    }
+}
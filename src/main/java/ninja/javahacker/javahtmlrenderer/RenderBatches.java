@@ -0,0 +1,209 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.NonNull;
+
+/**
+ * Renders a sequence of HTML sources in batches, giving the rendered images back in the same order.
+ * <p>The sources are grouped into batches of a fixed size, and each batch is rendered as a whole by a single task,
+ * so the fixed costs of a render (a thread, the hops to the AWT's Event Dispatch Thread or to a worker thread and
+ * the wait for the images of the documents) are paid once per batch instead of once per document. A few batches
+ * are kept in progress ahead of the one being consumed, so the renders overlap with whatever the consumer does
+ * with the rendered images.</p>
+ * <p>The sources are pulled from their iterator only as the rendered images are consumed, so endless streams
+ * of sources are also fine.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class RenderBatches implements Iterator<BufferedImage> {
+
+    /**
+     * The number of documents in each batch, except for the last one, which might have fewer.
+     */
+    static final int BATCH_SIZE = 16;
+
+    /**
+     * Starts rendering a batch of documents.
+     */
+    @FunctionalInterface
+    static interface Submitter {
+
+        /**
+         * Starts rendering a batch of documents.
+         * @param batch The HTML sources of the documents.
+         * @return A future giving the rendered images, in the same order of their sources.
+         */
+        public Future<List<BufferedImage>> submit(@NonNull List<String> batch);
+    }
+
+    /**
+     * The HTML sources not yet submitted.
+     */
+    @NonNull
+    private final Iterator<String> sources;
+
+    /**
+     * The number of documents in each batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum number of batches in progress at the same time.
+     */
+    private final int ahead;
+
+    /**
+     * Starts rendering each batch.
+     */
+    @NonNull
+    private final Submitter submitter;
+
+    /**
+     * The batches in progress, in the order of their sources.
+     */
+    @NonNull
+    private final Deque<Future<List<BufferedImage>>> pending;
+
+    /**
+     * The images of the current batch that were not consumed yet.
+     */
+    @NonNull
+    private Iterator<BufferedImage> current;
+
+    /**
+     * Sole constructor.
+     * @param sources The HTML sources.
+     * @param batchSize The number of documents in each batch.
+     * @param ahead The maximum number of batches in progress at the same time.
+     * @param submitter Starts rendering each batch.
+     */
+    private RenderBatches(@NonNull Iterator<String> sources, int batchSize, int ahead, @NonNull Submitter submitter) {
+        this.sources = sources;
+        this.batchSize = batchSize;
+        this.ahead = ahead;
+        this.submitter = submitter;
+        this.pending = new ArrayDeque<>(ahead);
+        this.current = Collections.emptyIterator();
+    }
+
+    /**
+     * Renders the given HTML sources in batches.
+     * <p>Closing the returned stream cancels the batches in progress, closes the {@code sources} and
+     * then runs the {@code onClose} action.</p>
+     * @param sources The HTML sources.
+     * @param batchSize The number of documents in each batch.
+     * @param ahead The maximum number of batches in progress at the same time.
+     * @param submitter Starts rendering each batch.
+     * @param onClose What should be done once the returned stream is closed.
+     * @return The rendered images, in the same order of their sources.
+     */
+    public static Stream<BufferedImage> stream(
+            @NonNull Stream<String> sources,
+            int batchSize,
+            int ahead,
+            @NonNull Submitter submitter,
+            @NonNull Runnable onClose)
+    {
+        RenderBatches batches = new RenderBatches(sources.iterator(), batchSize, ahead, submitter);
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(batches, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(batches::cancel)
+                .onClose(sources::close)
+                .onClose(onClose);
+    }
+
+    /**
+     * Submits further batches until there are as many in progress as allowed or there are no more sources.
+     * @throws IllegalArgumentException If some of the sources is {@code null}.
+     */
+    private void fill() {
+        while (pending.size() < ahead && sources.hasNext()) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && sources.hasNext()) {
+                String html = sources.next();
+                if (html == null) throw new IllegalArgumentException("The HTML sources can't be null.");
+                batch.add(html);
+            }
+            pending.add(submitter.submit(batch));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This waits until the next batch is rendered, if needed.</p>
+     * @return {@inheritDoc}
+     * @throws CancellationException If this thread is interrupted while waiting. Its interrupt status is kept set
+     *     and the batches in progress are cancelled.
+     */
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            fill();
+            if (pending.isEmpty()) return false;
+            current = await(pending.poll()).iterator();
+            fill();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This waits until the next batch is rendered, if needed.</p>
+     * @return {@inheritDoc}
+     * @throws CancellationException If this thread is interrupted while waiting. Its interrupt status is kept set
+     *     and the batches in progress are cancelled.
+     */
+    @Override
+    public BufferedImage next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    /**
+     * Waits until a batch is rendered.
+     * @param batch The batch.
+     * @return The rendered images.
+     * @throws CancellationException If this thread is interrupted while waiting.
+     */
+    private List<BufferedImage> await(@NonNull Future<List<BufferedImage>> batch) {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            batch.cancel(true);
+            cancel();
+            Thread.currentThread().interrupt();
+            CancellationException x = new CancellationException("Interrupted while waiting for a batch of renders.");
+            x.initCause(e);
+            throw x;
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    /**
+     * Cancels all the batches in progress.
+     */
+    private void cancel() {
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+    }
+}
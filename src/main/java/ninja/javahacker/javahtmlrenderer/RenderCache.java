@@ -0,0 +1,463 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import lombok.NonNull;
+
+/**
+ * A cache of rendered images in front of the {@link HtmlRenderer}.
+ * <p>The renders are keyed by a SHA-256 hash of the HTML source and of the {@link RenderOptions} that change how the
+ * rendered images look like, so rendering the same HTML with the same options again gives the cached image instead
+ * of repeating the whole render.</p>
+ * <p>The cached images are kept in memory up to a given total size in bytes of their pixels. When that size is
+ * exceeded, the least recently used images are evicted. Optionally, the images might also be stored as PNG files
+ * in a directory, which survives the evictions and the JVM itself. The directory is not bounded in size.</p>
+ * <p>When many threads ask for the same render at the same time, only one of them renders it
+ * and the others wait for its result.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     RenderCache cache = new RenderCache(64L * 1024 * 1024);
+ *     BufferedImage a = cache.render(html);
+ *     BufferedImage b = cache.render(html); // Comes from the cache.
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderCache {
+
+    /**
+     * The version of the layout of the keys, which is part of every key.
+     * <p>Increasing it makes every image already stored on disk be rendered again, instead of being mistaken for
+     * the image of some other render.</p>
+     */
+    private static final int KEY_VERSION = 1;
+
+    /**
+     * The maximum total size in bytes of the pixels of the images kept in memory.
+     */
+    private final long maxBytes;
+
+    /**
+     * The directory where the images are stored as PNG files or {@code null} if there is none.
+     */
+    private final Path directory;
+
+    /**
+     * The images kept in memory, from the least to the most recently used.
+     * <p>This is accessed only while holding its own lock.</p>
+     */
+    @NonNull
+    private final LinkedHashMap<String, BufferedImage> memory;
+
+    /**
+     * The renders in progress.
+     */
+    @NonNull
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> inFlight;
+
+    /**
+     * The total size in bytes of the pixels of the images kept in memory.
+     * <p>This is accessed only while holding the lock of the {@link #memory}.</p>
+     */
+    private long bytes;
+
+    /**
+     * How many renders were served from memory or from another thread rendering the same.
+     */
+    @NonNull
+    private final AtomicLong hits;
+
+    /**
+     * How many renders were served from the directory.
+     */
+    @NonNull
+    private final AtomicLong diskHits;
+
+    /**
+     * How many renders were actually rendered.
+     */
+    @NonNull
+    private final AtomicLong misses;
+
+    /**
+     * How many images were evicted from memory.
+     */
+    @NonNull
+    private final AtomicLong evictions;
+
+    /**
+     * Creates a cache that keeps its images only in memory.
+     * @param maxBytes The maximum total size in bytes of the pixels of the images kept in memory.
+     * @throws IllegalArgumentException If the {@code maxBytes} is negative.
+     */
+    public RenderCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * Creates a cache that keeps its images in memory and also stores them as PNG files in the given directory.
+     * @param maxBytes The maximum total size in bytes of the pixels of the images kept in memory.
+     * @param directory The directory where the images are stored. If it does not exists, it is created when
+     *     the first image is stored. If it is {@code null}, the images are kept only in memory.
+     * @throws IllegalArgumentException If the {@code maxBytes} is negative.
+     */
+    public RenderCache(long maxBytes, Path directory) {
+        if (maxBytes < 0) throw new IllegalArgumentException("The maxBytes can't be negative.");
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true);
+        this.inFlight = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.diskHits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the pixels of the images kept in memory.
+     * @return The maximum total size in bytes of the pixels of the images kept in memory.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the directory where the images are stored as PNG files, if there is one.
+     * @return The directory where the images are stored as PNG files, if there is one.
+     */
+    public Optional<Path> getDirectory() {
+        return Optional.ofNullable(directory);
+    }
+
+    /**
+     * Returns the total size in bytes of the pixels of the images currently kept in memory.
+     * @return The total size in bytes of the pixels of the images currently kept in memory.
+     */
+    public long getBytes() {
+        synchronized (memory) {
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns how many renders were served from memory, including the ones that waited for another
+     * thread rendering the same.
+     * @return How many renders were served from memory.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns how many renders were served from the directory.
+     * @return How many renders were served from the directory.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * Returns how many renders were not found in the cache and were actually rendered.
+     * @return How many renders were actually rendered.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns how many images were evicted from memory.
+     * @return How many images were evicted from memory.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Discards all the images kept in memory. The files in the directory, if any, are kept.
+     */
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Renders a given HTML source using the default render options, or gives it from the cache.
+     * @param html The HTML that should be rendered.
+     * @return The rendered image. It is a copy owned by the caller, which might change it freely.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html) throws InterruptedException {
+        return render(html, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders a given HTML source using the given render options, or gives it from the cache.
+     * <p>The image is looked up first in memory, then in the directory, if any, and is rendered by the
+     * {@link HtmlRenderer} only if it is in none of them. If another thread is already rendering the
+     * same HTML with the same options, waits for it instead.</p>
+     * <p>Failing to read or to write the files of the directory never fails the render.
+     * The unreadable files are just rendered again.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image. It is a copy owned by the caller, which might change it freely.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null}.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    public BufferedImage render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException {
+        String key = key(html, options);
+        while (true) {
+            BufferedImage cached = fromMemory(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return copy(cached);
+            }
+            CompletableFuture<BufferedImage> mine = new CompletableFuture<>();
+            CompletableFuture<BufferedImage> other = inFlight.putIfAbsent(key, mine);
+            if (other == null) return copy(load(key, html, options, mine));
+            BufferedImage shared = await(other);
+            if (shared != null) {
+                hits.incrementAndGet();
+                return copy(shared);
+            }
+        }
+    }
+
+    /**
+     * Loads an image that is neither in memory nor being loaded by another thread, from the directory or by
+     * rendering it, and completes the given future with it.
+     * @param key The key of the render.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param mine The future where the other threads wait for the image.
+     * @return The loaded image.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    private BufferedImage load(
+            @NonNull String key,
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull CompletableFuture<BufferedImage> mine)
+            throws InterruptedException
+    {
+        try {
+            BufferedImage image = fromDisk(key, options.getPixelType());
+            if (image != null) {
+                diskHits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                image = HtmlRenderer.render(html, options);
+                toDisk(key, image);
+            }
+            toMemory(key, image);
+            mine.complete(image);
+            return image;
+        } catch (InterruptedException | RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Waits for another thread that is loading the same image.
+     * @param other The future of the other thread.
+     * @return The loaded image or {@code null} if the other thread was interrupted, so this one should try again.
+     * @throws InterruptedException If this thread is interrupted before the image become available.
+     */
+    private static BufferedImage await(@NonNull CompletableFuture<BufferedImage> other) throws InterruptedException {
+        try {
+            return other.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) return null;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    /**
+     * Computes the key of a render.
+     * <p>The keys name the files stored on disk, so they must not change between versions of this library unless
+     * the rendered images also change. So, instead of relying on the string representation of the options, which
+     * changes as soon as any option is added or renamed, the key is built explicitly from the options that change
+     * how the rendered images look like. Options which only change how fast or where the document is rendered,
+     * such as the {@linkplain RenderOptions#getImageCache() image cache}, the
+     * {@linkplain RenderOptions#getListener() listener} and {@linkplain RenderOptions#isHeadless() headless}
+     * rendering, are not part of it.</p>
+     * <p>Whenever the options that are part of the key change, {@link #KEY_VERSION} must be increased.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The key of the render, as an hexadecimal string.
+     */
+    private static String key(@NonNull String html, @NonNull RenderOptions options) {
+        Dimension box = options.getBoundingBox().orElse(new Dimension());
+        String spec = "v" + KEY_VERSION
+                + "|sleepTime=" + options.getSleepTime()
+                + "|completionMode=" + options.getCompletionMode().name()
+                + "|pixelType=" + options.getPixelType().name()
+                + "|width=" + options.getWidth()
+                + "|pageHeight=" + options.getPageHeight()
+                + "|maxHeight=" + options.getMaxHeight()
+                + "|styleSheet=" + options.getStyleSheet().map(SharedStyleSheet::digest).orElse("")
+                + "|scale=" + options.getScale()
+                + "|box=" + box.width + "x" + box.height
+                + "|scaleQuality=" + options.getScaleQuality().name();
+        MessageDigest md = sha256();
+        md.update(spec.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(html.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Creates a SHA-256 message digest.
+     * @return A SHA-256 message digest.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Looks up an image in memory.
+     * @param key The key of the render.
+     * @return The image or {@code null} if it is not in memory.
+     */
+    private BufferedImage fromMemory(@NonNull String key) {
+        synchronized (memory) {
+            return memory.get(key);
+        }
+    }
+
+    /**
+     * Keeps an image in memory, evicting the least recently used ones if needed.
+     * <p>Images larger than the maximum total size are not kept at all.</p>
+     * @param key The key of the render.
+     * @param image The image.
+     */
+    private void toMemory(@NonNull String key, @NonNull BufferedImage image) {
+        long size = sizeOf(image);
+        if (size > maxBytes) return;
+        synchronized (memory) {
+            BufferedImage old = memory.put(key, image);
+            if (old != null) bytes -= sizeOf(old);
+            bytes += size;
+            for (Iterator<Map.Entry<String, BufferedImage>> it = memory.entrySet().iterator(); bytes > maxBytes;) {
+                bytes -= sizeOf(it.next().getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Finds the size in bytes of the pixels of an image.
+     * @param image The image.
+     * @return The size in bytes of the pixels of the image.
+     */
+    static long sizeOf(@NonNull BufferedImage image) {
+        DataBuffer data = image.getRaster().getDataBuffer();
+        return (long) data.getSize() * data.getNumBanks() * DataBuffer.getDataTypeSize(data.getDataType()) / 8;
+    }
+
+    /**
+     * Finds the file where an image is stored.
+     * @param key The key of the render.
+     * @return The file where the image is stored.
+     */
+    private Path fileOf(@NonNull String key) {
+        return directory.resolve(key + ".png");
+    }
+
+    /**
+     * Reads an image from the directory.
+     * @param key The key of the render.
+     * @param type The pixel type of the rendered images.
+     * @return The image or {@code null} if there is no directory or if the image could not be read from it.
+     */
+    private BufferedImage fromDisk(@NonNull String key, @NonNull PixelType type) {
+        if (directory == null) return null;
+        Path file = fileOf(key);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            BufferedImage read = ImageIO.read(file.toFile());
+            if (read == null) return null;
+
+            // Keep the type produced by the renders, instead of the one chosen by the PNG reader.
+            BufferedImage image = type.create(read.getWidth(), read.getHeight());
+            Graphics2D g = image.createGraphics();
+            try {
+                g.drawImage(read, 0, 0, null);
+            } finally {
+                g.dispose();
+            }
+            return image;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores an image in the directory, if there is one.
+     * <p>The image is written to a temporary file that is then moved to its place, so other threads
+     * and processes never see a partially written file.</p>
+     * @param key The key of the render.
+     * @param image The image.
+     */
+    private void toDisk(@NonNull String key, @NonNull BufferedImage image) {
+        if (directory == null) return;
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                ImageIO.write(image, "png", temp.toFile());
+                Files.move(temp, fileOf(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // The directory is just a cache. Failing to write it only makes the image be rendered again later.
+        }
+    }
+
+    /**
+     * Copies an image.
+     * @param image The image.
+     * @return A copy of the image, with the same type.
+     */
+    private static BufferedImage copy(@NonNull BufferedImage image) {
+        ColorModel cm = image.getColorModel();
+        return new BufferedImage(cm, image.copyData(null), cm.isAlphaPremultiplied(), null);
+    }
+}
@@ -0,0 +1,535 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Container;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.swing.JComponent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.GlyphView;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.ImageView;
+import javax.swing.text.html.StyleSheet;
+import lombok.NonNull;
+
+/**
+ * The {@link HTMLEditorKit} used by the {@link RenderSurface}s.
+ * <p>All the text views in the JVM share a single glyph painter by default, which caches the font metrics of
+ * the last view that it measured or painted. That is harmless while only the AWT's Event Dispatch Thread
+ * renders text, but makes the views of one thread be measured and painted with the fonts of the views of
+ * another. So, for surfaces confined to a worker thread, the text views created by this kit use a
+ * {@link StatelessGlyphPainter} instead, which many threads might use at the same time without waiting for
+ * each other. The text views of the other surfaces, used only in the Event Dispatch Thread, keep Swing's
+ * default painter.</p>
+ * <p>The {@link ImageView}s normally load their images in background and, once loaded, schedule their
+ * relayout in the AWT's Event Dispatch Thread. That would make the Event Dispatch Thread touch a view tree
+ * owned by another thread. So, for surfaces confined to a worker thread, this kit makes the {@link ImageView}s
+ * load their images synchronously while the view tree is built, so the document is complete as soon as it
+ * is loaded and no one but the owner thread ever touches it.</p>
+ * <p>The documents created by this kit have a {@link RenderStyleSheet}, which shares the parsed {@code style}
+ * attributes between all of them.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings({"IMC_IMMATURE_CLASS_NO_TOSTRING", "SE_TRANSIENT_FIELD_NOT_RESTORED"})
+final class RenderEditorKit extends HTMLEditorKit {
+
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The glyph painter used by all the text views created by the instances of this class for confined surfaces.
+     */
+    private static final GlyphView.GlyphPainter PAINTER = new StatelessGlyphPainter(defaultPainter());
+
+    /**
+     * A single space, measured to expand tabs when there is no tab expander.
+     */
+    private static final char[] SPACE = {' '};
+
+    /**
+     * The factory that creates the views of the documents.
+     */
+    private final transient ViewFactory factory;
+
+    /**
+     * Sole constructor.
+     * @param confined If the documents are used only in a worker thread, so their text should be measured and
+     *     painted without Swing's shared painter and their images should be loaded synchronously.
+     */
+    public RenderEditorKit(boolean confined) {
+        this.factory = new HTMLFactory() {
+            @Override
+            public View create(Element elem) {
+                View v = super.create(elem);
+                if (!confined) return v;
+                if (v instanceof GlyphView) ((GlyphView) v).setGlyphPainter(PAINTER);
+                if (v instanceof ImageView) ((ImageView) v).setLoadsSynchronously(true);
+                return v;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public ViewFactory getViewFactory() {
+        return factory;
+    }
+
+    /**
+     * Creates an empty HTML document, just as the {@link HTMLEditorKit} does, but with a {@link RenderStyleSheet}.
+     * @return An empty HTML document.
+     */
+    @Override
+    public Document createDefaultDocument() {
+        StyleSheet ss = new RenderStyleSheet();
+        ss.addStyleSheet(getStyleSheet());
+        HTMLDocument doc = new HTMLDocument(ss);
+        doc.setParser(getParser());
+        doc.setAsynchronousLoadPriority(4);
+        doc.setTokenThreshold(100);
+        return doc;
+    }
+
+    /**
+     * Finds the glyph painter that Swing installs by default in the text views.
+     * @return The default glyph painter.
+     */
+    private static GlyphView.GlyphPainter defaultPainter() {
+        GlyphView probe = new GlyphView(new PlainDocument().getDefaultRootElement()) {
+            {
+                checkPainter();
+            }
+        };
+        return probe.getGlyphPainter();
+    }
+
+    /**
+     * Measures and paints the text of the views just as the glyph painter that Swing installs by default,
+     * but without caching anything, so it might be used by many threads at the same time.
+     * <p>The default painter keeps the font metrics of the last view that it measured or painted, so each of its
+     * operations replaces them by the ones of the given view and then uses them. Instead, this painter fetches the
+     * font metrics of the given view on every operation, which are cached by the AWT anyway, and keeps no state.</p>
+     * <p>Text justified to both margins is spread using data that only Swing itself can read, so the views in
+     * justified paragraphs are still handled by the default painter. As every other text component uses that
+     * painter only in the AWT's Event Dispatch Thread, those views are handed to it there, with the calling
+     * thread waiting for each of them. Thus, justified text is measured and painted one view at a time, and
+     * only while the Event Dispatch Thread is free to do it.</p>
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    private static final class StatelessGlyphPainter extends GlyphView.GlyphPainter {
+
+        /**
+         * The default painter, used in the AWT's Event Dispatch Thread for the views in justified paragraphs.
+         */
+        @NonNull
+        private final GlyphView.GlyphPainter justified;
+
+        /**
+         * Sole constructor.
+         * @param justified The default painter, used for the views in justified paragraphs.
+         */
+        public StatelessGlyphPainter(@NonNull GlyphView.GlyphPainter justified) {
+            this.justified = justified;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @param p0 {@inheritDoc}
+         * @param p1 {@inheritDoc}
+         * @param e {@inheritDoc}
+         * @param x {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public float getSpan(GlyphView v, int p0, int p1, TabExpander e, float x) {
+            if (isJustified(v)) {
+                return onDispatchThread(() -> justified.getSpan(v, p0, p1, e, x));
+            }
+            return (int) width(v.getText(p0, p1), metrics(v), (int) x, e, p0, false);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public float getHeight(GlyphView v) {
+            return metrics(v).getHeight();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public float getAscent(GlyphView v) {
+            return metrics(v).getAscent();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public float getDescent(GlyphView v) {
+            return metrics(v).getDescent();
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @param g {@inheritDoc}
+         * @param a {@inheritDoc}
+         * @param p0 {@inheritDoc}
+         * @param p1 {@inheritDoc}
+         */
+        @Override
+        public void paint(GlyphView v, Graphics g, Shape a, int p0, int p1) {
+            if (isJustified(v)) {
+                onDispatchThread(() -> {
+                    justified.paint(v, g, a, p0, p1);
+                    return null;
+                });
+                return;
+            }
+            FontMetrics fm = metrics(v);
+            TabExpander expander = v.getTabExpander();
+            Rectangle alloc = a instanceof Rectangle ? (Rectangle) a : a.getBounds();
+            float x = alloc.x;
+            int p = v.getStartOffset();
+            if (p != p0) x += width(v.getText(p, p0), fm, x, expander, p, true);
+            float y = alloc.y + fm.getHeight() - fm.getDescent();
+            g.setFont(fm.getFont());
+            draw(v, v.getText(p0, p1), fm, x, y, g, expander, p0);
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @param pos {@inheritDoc}
+         * @param bias {@inheritDoc}
+         * @param a {@inheritDoc}
+         * @return {@inheritDoc}
+         * @throws BadLocationException {@inheritDoc}
+         */
+        @Override
+        public Shape modelToView(GlyphView v, int pos, Position.Bias bias, Shape a) throws BadLocationException {
+            if (isJustified(v)) {
+                return onDispatchThreadChecked(() -> justified.modelToView(v, pos, bias, a));
+            }
+            FontMetrics fm = metrics(v);
+            Rectangle alloc = a instanceof Rectangle ? (Rectangle) a : a.getBounds();
+            int p0 = v.getStartOffset();
+            int p1 = v.getEndOffset();
+            if (pos == p1) return new Rectangle(alloc.x + alloc.width, alloc.y, 0, fm.getHeight());
+            if (pos < p0 || pos > p1) throw new BadLocationException("modelToView - can't convert", p1);
+            int width = (int) width(v.getText(p0, pos), fm, alloc.x, v.getTabExpander(), p0, false);
+            return new Rectangle(alloc.x + width, alloc.y, 0, fm.getHeight());
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @param x {@inheritDoc}
+         * @param y {@inheritDoc}
+         * @param a {@inheritDoc}
+         * @param biasReturn {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int viewToModel(GlyphView v, float x, float y, Shape a, Position.Bias[] biasReturn) {
+            if (isJustified(v)) {
+                return onDispatchThread(() -> justified.viewToModel(v, x, y, a, biasReturn));
+            }
+            Rectangle alloc = a instanceof Rectangle ? (Rectangle) a : a.getBounds();
+            int p0 = v.getStartOffset();
+            int p1 = v.getEndOffset();
+            Segment text = v.getText(p0, p1);
+            int pos = p0 + Utilities.getTabbedTextOffset(text, metrics(v), alloc.x, x, v.getTabExpander(), p0, true);
+            biasReturn[0] = Position.Bias.Forward;
+            return pos == p1 ? pos - 1 : pos;
+        }
+
+        /**
+         * {@inheritDoc}
+         * @param v {@inheritDoc}
+         * @param p0 {@inheritDoc}
+         * @param x {@inheritDoc}
+         * @param len {@inheritDoc}
+         * @return {@inheritDoc}
+         */
+        @Override
+        public int getBoundedPosition(GlyphView v, int p0, float x, float len) {
+            if (isJustified(v)) {
+                return onDispatchThread(() -> justified.getBoundedPosition(v, p0, x, len));
+            }
+            Segment text = v.getText(p0, v.getEndOffset());
+            return p0 + Utilities.getTabbedTextOffset(text, metrics(v), x, x + len, v.getTabExpander(), p0, false);
+        }
+
+        /**
+         * Runs something in the AWT's Event Dispatch Thread and waits for its result.
+         * <p>The wait is not interruptible, as the view must not be left to the Event Dispatch Thread while its
+         * owner thread goes on using it. An interruption is just kept for later instead.</p>
+         * @param <T> The type of the result.
+         * @param call What should be run.
+         * @return The result.
+         * @throws BadLocationException If the call throws it.
+         */
+        private static <T> T onDispatchThreadChecked(@NonNull DispatchCall<T> call) throws BadLocationException {
+            if (EventQueue.isDispatchThread()) return call.call();
+            FutureTask<T> task = new FutureTask<>(call::call);
+            EventQueue.invokeLater(task);
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return task.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof BadLocationException) throw (BadLocationException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new AssertionError(cause);
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Runs something that can't fail with a {@link BadLocationException} in the AWT's Event Dispatch Thread and
+         * waits for its result.
+         * @param <T> The type of the result.
+         * @param call What should be run.
+         * @return The result.
+         */
+        private static <T> T onDispatchThread(@NonNull DispatchCall<T> call) {
+            try {
+                return onDispatchThreadChecked(call);
+            } catch (BadLocationException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        /**
+         * Something that is run by the default painter in the AWT's Event Dispatch Thread.
+         * @param <T> The type of the result.
+         * @author Victor Williams Stafusa da Silva
+         */
+        @FunctionalInterface
+        private interface DispatchCall<T> {
+
+            /**
+             * Runs it.
+             * @return The result.
+             * @throws BadLocationException If the default painter throws it.
+             */
+            public T call() throws BadLocationException;
+        }
+
+        /**
+         * Tells if a view is in a paragraph justified to both margins, whose spaces are stretched by Swing.
+         * @param v The view.
+         * @return If the view is in a justified paragraph.
+         */
+        private static boolean isJustified(@NonNull GlyphView v) {
+            View row = v.getParent();
+            if (row == null) return false;
+            AttributeSet attrs = row.getAttributes();
+            return attrs != null && StyleConstants.getAlignment(attrs) == StyleConstants.ALIGN_JUSTIFIED;
+        }
+
+        /**
+         * Fetches the font metrics of a view, just as the default painter does.
+         * @param v The view.
+         * @return The font metrics of the view.
+         */
+        @SuppressWarnings("deprecation")
+        private static FontMetrics metrics(@NonNull GlyphView v) {
+            Font f = v.getFont();
+            Container c = v.getContainer();
+            return c != null ? c.getFontMetrics(f) : Toolkit.getDefaultToolkit().getFontMetrics(f);
+        }
+
+        /**
+         * Measures the width of some text, expanding its tabs, just as
+         * {@link Utilities#getTabbedTextWidth(Segment, FontMetrics, float, TabExpander, int)} does.
+         * <p>The default painter measures with integer widths when laying the text out, but with fractional ones
+         * when painting it, so this does both.</p>
+         * @param s The text.
+         * @param fm The font metrics.
+         * @param x The position where the text starts.
+         * @param e How to expand the tabs, or {@code null} to expand them as spaces.
+         * @param startOffset The offset of the text in the document.
+         * @param fractional If fractional widths should be used.
+         * @return The width of the text.
+         */
+        private static float width(
+                @NonNull Segment s,
+                @NonNull FontMetrics fm,
+                float x,
+                TabExpander e,
+                int startOffset,
+                boolean fractional)
+        {
+            if (fractional) return Utilities.getTabbedTextWidth(s, fm, x, e, startOffset);
+            float nextX = x;
+            char[] txt = s.array;
+            int n = s.offset + s.count;
+            int count = 0;
+            for (int i = s.offset; i < n; i++) {
+                if (txt[i] == '\t') {
+                    nextX += fm.charsWidth(txt, i - count, count);
+                    count = 0;
+                    nextX = e != null ? e.nextTabStop(nextX, startOffset + i - s.offset) : nextX + fm.charWidth(' ');
+                } else if (txt[i] == '\n') {
+                    nextX += fm.charsWidth(txt, i - count, count);
+                    count = 0;
+                } else {
+                    count++;
+                }
+            }
+            nextX += fm.charsWidth(txt, n - count, count);
+            return nextX - x;
+        }
+
+        /**
+         * Paints some text, expanding its tabs, just as the default painter does.
+         * <p>Unlike {@link Utilities#drawTabbedText(Segment, float, float, java.awt.Graphics2D, TabExpander, int)},
+         * this honors the text antialiasing hints of the component that holds the view.</p>
+         * @param v The view.
+         * @param s The text.
+         * @param fm The font metrics.
+         * @param x The position where the text starts.
+         * @param y The baseline of the text.
+         * @param g Where the text is painted.
+         * @param e How to expand the tabs, or {@code null} to expand them as spaces.
+         * @param startOffset The offset of the text in the document.
+         */
+        private static void draw(
+                @NonNull GlyphView v,
+                @NonNull Segment s,
+                @NonNull FontMetrics fm,
+                float x,
+                float y,
+                @NonNull Graphics g,
+                TabExpander e,
+                int startOffset)
+        {
+            Container c = v.getContainer();
+            JComponent component = c instanceof JComponent ? (JComponent) c : null;
+            float start = x;
+            float nextX = x;
+            char[] txt = s.array;
+            int n = s.offset + s.count;
+            int flushIndex = s.offset;
+            int flushLen = 0;
+            for (int i = s.offset; i < n; i++) {
+                char ch = txt[i];
+                if (ch != '\t' && ch != '\n' && ch != '\r') {
+                    flushLen++;
+                    continue;
+                }
+                if (flushLen > 0) nextX = drawChars(component, g, fm, txt, flushIndex, flushLen, start, y);
+                flushLen = 0;
+                flushIndex = i + 1;
+                if (ch == '\t') nextX = e != null ? e.nextTabStop(nextX, startOffset + i - s.offset) : nextX + charsWidth(fm, SPACE, 0, 1);
+                start = nextX;
+            }
+            if (flushLen > 0) drawChars(component, g, fm, txt, flushIndex, flushLen, start, y);
+        }
+
+        /**
+         * Paints a run of characters without tabs nor line breaks, using the text antialiasing hints of the component.
+         * @param c The component that holds the view, if it is a {@link JComponent}, or {@code null} otherwise.
+         * @param g Where the characters are painted.
+         * @param fm The font metrics.
+         * @param data The characters.
+         * @param offset The index of the first character that should be painted.
+         * @param length How many characters should be painted.
+         * @param x The position where the characters start.
+         * @param y The baseline of the characters.
+         * @return The position where the characters end.
+         */
+        private static float drawChars(
+                JComponent c,
+                @NonNull Graphics g,
+                @NonNull FontMetrics fm,
+                @NonNull char[] data,
+                int offset,
+                int length,
+                float x,
+                float y)
+        {
+            float nextX = x + charsWidth(fm, data, offset, length);
+            if (!(g instanceof Graphics2D)) {
+                g.drawChars(data, offset, length, (int) x, (int) y);
+                return nextX;
+            }
+            Graphics2D g2 = (Graphics2D) g;
+            Object aa = c == null ? null : c.getClientProperty(RenderingHints.KEY_TEXT_ANTIALIASING);
+            Object contrast = c == null ? null : c.getClientProperty(RenderingHints.KEY_TEXT_LCD_CONTRAST);
+            Object oldAa = g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+            Object oldContrast = g2.getRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST);
+            if (aa != null) g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, aa);
+            if (aa != null && contrast != null) g2.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, contrast);
+            try {
+                g2.drawString(new String(data, offset, length), x, y);
+            } finally {
+                if (aa != null && oldAa != null) g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldAa);
+                if (aa != null && contrast != null && oldContrast != null) {
+                    g2.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, oldContrast);
+                }
+            }
+            return nextX;
+        }
+
+        /**
+         * Measures the fractional width of some characters.
+         * @param fm The font metrics.
+         * @param data The characters.
+         * @param offset The index of the first character that should be measured.
+         * @param length How many characters should be measured.
+         * @return The fractional width of the characters.
+         */
+        private static float charsWidth(@NonNull FontMetrics fm, @NonNull char[] data, int offset, int length) {
+            if (length == 0) return 0;
+            return (float) fm.getFont().getStringBounds(data, offset, offset + length, fm.getFontRenderContext()).getWidth();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder event of a finished render.
+ * <p>Its duration spans the whole render and its fields hold the same {@link RenderMetrics} given to the
+ * {@link RenderListener}s. It is disabled by default and might be enabled in a recording by its name,
+ * {@value #NAME}, as such:</p>
+ * <pre>
+ *     java -XX:StartFlightRecording:filename=renders.jfr,+ninja.javahacker.javahtmlrenderer.Render#enabled=true ...
+ * </pre>
+ * <p>This event is only ever committed by the renderers.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@Name(RenderEvent.NAME)
+@Label("HTML Render")
+@Category("Java HTML Renderer")
+@Description("An HTML document rendered into an image.")
+@StackTrace(false)
+@Enabled(false)
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderEvent extends Event {
+
+    /**
+     * The name of this event.
+     */
+    public static final String NAME = "ninja.javahacker.javahtmlrenderer.Render";
+
+    /**
+     * The time spent in the {@link RenderPhase#THREAD_START} phase.
+     */
+    @Label("Thread Start")
+    @Timespan(Timespan.NANOSECONDS)
+    long threadStart;
+
+    /**
+     * The time spent in the {@link RenderPhase#QUEUE} phase.
+     */
+    @Label("Event Queue Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long queue;
+
+    /**
+     * The time spent in the {@link RenderPhase#PARSE} phase.
+     */
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    /**
+     * The time spent in the {@link RenderPhase#LAYOUT} phase.
+     */
+    @Label("Layout")
+    @Timespan(Timespan.NANOSECONDS)
+    long layout;
+
+    /**
+     * The time spent in the {@link RenderPhase#WAIT} phase.
+     */
+    @Label("Completion Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long completionWait;
+
+    /**
+     * The time spent in the {@link RenderPhase#PAINT} phase.
+     */
+    @Label("Paint")
+    @Timespan(Timespan.NANOSECONDS)
+    long paint;
+
+    /**
+     * The time spent in the {@link RenderPhase#DISPOSE} phase.
+     */
+    @Label("Dispose")
+    @Timespan(Timespan.NANOSECONDS)
+    long dispose;
+
+    /**
+     * The width of the rendered image.
+     */
+    @Label("Width")
+    int width;
+
+    /**
+     * The height of the rendered image.
+     */
+    @Label("Height")
+    int height;
+
+    /**
+     * The size in bytes of the pixels of the images allocated for painting the document.
+     */
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long bytes;
+
+    /**
+     * Sole constructor.
+     */
+    RenderEvent() {
+    }
+
+    /**
+     * Fills the fields of this event with the given metrics.
+     * @param metrics The metrics of the render.
+     */
+    void fill(RenderMetrics metrics) {
+        threadStart = metrics.getNanos(RenderPhase.THREAD_START);
+        queue = metrics.getNanos(RenderPhase.QUEUE);
+        parse = metrics.getNanos(RenderPhase.PARSE);
+        layout = metrics.getNanos(RenderPhase.LAYOUT);
+        completionWait = metrics.getNanos(RenderPhase.WAIT);
+        paint = metrics.getNanos(RenderPhase.PAINT);
+        dispose = metrics.getNanos(RenderPhase.DISPOSE);
+        width = metrics.getWidth();
+        height = metrics.getHeight();
+        bytes = metrics.getBytes();
+    }
+}
@@ -0,0 +1,564 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * Renders HTML pages into images in a pool of worker processes, each one a separate JVM.
+ * <p>The AWT has a single Event Dispatch Thread per JVM, so the {@link HtmlRenderer} and the {@link HtmlRenderEngine}
+ * can't use more than about one processor, and a render that gets stuck or leaks memory harms the whole JVM. Instead,
+ * this class launches a given number of child JVMs running this library, each one rendering in its own Event Dispatch
+ * Thread, and talks to them through their standard input and output. Nothing goes through the network.</p>
+ * <p>Each render is handed to whichever worker is free, so the renders are balanced between the workers. Workers are
+ * replaced by fresh ones when:</p>
+ * <ul>
+ *     <li>They crash. The render is then tried once again in the fresh worker.</li>
+ *     <li>They take longer than a given timeout for a render. The render then fails without being tried again,
+ *         since the document itself is the likely culprit.</li>
+ *     <li>They already did a given number of renders, or their used heap grew past a given size, so
+ *         whatever they might be leaking is thrown away with them.</li>
+ * </ul>
+ * <p>The workers always render headless. The {@linkplain RenderOptions#getListener() listener} of the options is not
+ * used, and each worker has its own {@linkplain ImageResourceCache#shared() shared image cache}, used only if the
+ * options have an image cache.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (RenderFarm farm = new RenderFarm(8)) {
+ *         BufferedImage a = farm.render("&lt;p&gt;Hello&lt;/p&gt;");
+ *     }
+ * </pre>
+ * <p>Instances of this class are thread-safe.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderFarm implements AutoCloseable {
+
+    /**
+     * The default number of renders after which a worker is replaced.
+     */
+    public static final int DEFAULT_MAX_RENDERS_PER_WORKER = 1000;
+
+    /**
+     * The default size in bytes of the used heap of a worker after which it is replaced.
+     */
+    public static final long DEFAULT_MAX_WORKER_HEAP = 512L * 1024 * 1024;
+
+    /**
+     * The default time that a worker is given for a render.
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+
+    /**
+     * Counts the created instances, in order to name their threads.
+     */
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    /**
+     * The number of workers.
+     */
+    private final int workers;
+
+    /**
+     * The number of renders after which a worker is replaced.
+     */
+    private final int maxRendersPerWorker;
+
+    /**
+     * The size in bytes of the used heap of a worker after which it is replaced.
+     */
+    private final long maxWorkerHeap;
+
+    /**
+     * The time that a worker is given for a render, in nanoseconds.
+     */
+    private final long timeout;
+
+    /**
+     * The command that launches a worker.
+     */
+    @NonNull
+    private final List<String> command;
+
+    /**
+     * All the workers.
+     */
+    @NonNull
+    private final List<Worker> all;
+
+    /**
+     * The workers that are free. It has room for the {@link #closedMarker} even when all the workers are free.
+     */
+    @NonNull
+    private final BlockingQueue<Worker> idle;
+
+    /**
+     * Never started, it is put among the free workers once this farm is closed, to wake up the threads waiting for one.
+     */
+    @NonNull
+    private final Worker closedMarker;
+
+    /**
+     * Kills the workers that take too long.
+     */
+    @NonNull
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * How many times a worker was replaced.
+     */
+    @NonNull
+    private final AtomicLong restarts;
+
+    /**
+     * Tells if this farm was already closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a farm with one worker for each available processor and the default limits.
+     * @throws IOException If some worker can't be launched.
+     */
+    public RenderFarm() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a farm with the given number of workers and the default limits.
+     * @param workers The number of workers.
+     * @throws IllegalArgumentException If the {@code workers} is not positive.
+     * @throws IOException If some worker can't be launched.
+     */
+    public RenderFarm(int workers) throws IOException {
+        this(workers, DEFAULT_MAX_RENDERS_PER_WORKER, DEFAULT_MAX_WORKER_HEAP, DEFAULT_TIMEOUT, List.of());
+    }
+
+    /**
+     * Creates a farm with the given number of workers and limits.
+     * @param workers The number of workers.
+     * @param maxRendersPerWorker The number of renders after which a worker is replaced.
+     * @param maxWorkerHeap The size in bytes of the used heap of a worker after which it is replaced. The used heap
+     *     is measured right after each render, so it includes the garbage not collected yet.
+     * @param timeout The time that a worker is given for a render.
+     * @param jvmOptions Options given to the JVMs of the workers, like {@code -Xmx256m}.
+     * @throws IllegalArgumentException If the {@code workers}, the {@code maxRendersPerWorker}, the {@code maxWorkerHeap}
+     *     or the {@code timeout} are not positive or if the {@code timeout} or the {@code jvmOptions} are {@code null}.
+     * @throws IOException If some worker can't be launched.
+     */
+    public RenderFarm(int workers, int maxRendersPerWorker, long maxWorkerHeap, @NonNull Duration timeout, @NonNull List<String> jvmOptions)
+            throws IOException
+    {
+        if (workers < 1) throw new IllegalArgumentException("The number of workers must be positive.");
+        if (maxRendersPerWorker < 1) throw new IllegalArgumentException("The maxRendersPerWorker must be positive.");
+        if (maxWorkerHeap < 1) throw new IllegalArgumentException("The maxWorkerHeap must be positive.");
+        if (timeout.isNegative() || timeout.isZero()) throw new IllegalArgumentException("The timeout must be positive.");
+        this.workers = workers;
+        this.maxRendersPerWorker = maxRendersPerWorker;
+        this.maxWorkerHeap = maxWorkerHeap;
+        this.timeout = timeout.toNanos();
+        this.command = command(jvmOptions);
+        this.all = new ArrayList<>(workers);
+        this.idle = new ArrayBlockingQueue<>(workers + 1);
+        this.closedMarker = new Worker();
+        this.restarts = new AtomicLong();
+        int instance = INSTANCES.incrementAndGet();
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "RenderFarm-" + instance + "-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int i = 0; i < workers; i++) {
+                Worker w = new Worker();
+                all.add(w);
+                w.start();
+                idle.add(w);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the command that launches a worker, in the same way that this library was loaded: either
+     * as a named module in the module path or in the class path.
+     * @param jvmOptions Options given to the JVMs of the workers.
+     * @return The command that launches a worker.
+     */
+    private static List<String> command(@NonNull List<String> jvmOptions) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        cmd.add("-Djava.awt.headless=true");
+        cmd.addAll(jvmOptions);
+        Module module = RenderFarm.class.getModule();
+        String modulePath = System.getProperty("jdk.module.path");
+        if (module.isNamed() && modulePath != null) {
+            cmd.add("--module-path");
+            cmd.add(modulePath);
+            cmd.add("-m");
+            cmd.add(module.getName() + "/" + RenderWorker.class.getName());
+        } else {
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(RenderWorker.class.getName());
+        }
+        return List.copyOf(cmd);
+    }
+
+    /**
+     * Returns the number of workers.
+     * @return The number of workers.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the number of renders after which a worker is replaced.
+     * @return The number of renders after which a worker is replaced.
+     */
+    public int getMaxRendersPerWorker() {
+        return maxRendersPerWorker;
+    }
+
+    /**
+     * Returns the size in bytes of the used heap of a worker after which it is replaced.
+     * @return The size in bytes of the used heap of a worker after which it is replaced.
+     */
+    public long getMaxWorkerHeap() {
+        return maxWorkerHeap;
+    }
+
+    /**
+     * Returns the time that a worker is given for a render.
+     * @return The time that a worker is given for a render.
+     */
+    public Duration getTimeout() {
+        return Duration.ofNanos(timeout);
+    }
+
+    /**
+     * Returns how many times a worker was replaced by a fresh one, for whatever reason.
+     * @return How many times a worker was replaced by a fresh one.
+     */
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * Renders a given HTML source using the default render options.
+     * @param html The HTML that should be rendered.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws IllegalStateException If this farm is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for a free worker.
+     * @throws IOException If the render failed, crashed the worker twice or timed out.
+     */
+    public BufferedImage render(@NonNull String html) throws InterruptedException, IOException {
+        return render(html, RenderOptions.defaults());
+    }
+
+    /**
+     * Renders a given HTML source using the given render options.
+     * <p>The raw pixels are streamed back from the worker, so the image is exactly the one that a headless
+     * {@link HtmlRenderer} would give, with the {@linkplain RenderOptions#getPixelType() pixel type} of the options.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @return The rendered image.
+     * @throws IllegalArgumentException If the {@code html} or the {@code options} are {@code null} or if the worker
+     *     rejected them.
+     * @throws IllegalStateException If this farm is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for a free worker.
+     * @throws IOException If the render failed, crashed the worker twice or timed out.
+     */
+    public BufferedImage render(@NonNull String html, @NonNull RenderOptions options) throws InterruptedException, IOException {
+        RenderProtocol.Response response = call(new RenderProtocol.Request(html, options, ImageFormat.RAW_RGBA));
+        return decode(response, options.getPixelType());
+    }
+
+    /**
+     * Renders a given HTML source using the given render options and writes it encoded into an output stream.
+     * <p>The image is encoded by the worker, so only the encoded bytes are streamed back.
+     * The {@code out} is neither flushed nor closed.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws IllegalArgumentException If any parameter is {@code null} or if the worker rejected them, as when the
+     *     rendered document is empty.
+     * @throws IllegalStateException If this farm is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for a free worker.
+     * @throws IOException If the render failed, crashed the worker twice or timed out, or if writing to the
+     *     {@code out} fails.
+     */
+    public Dimension render(@NonNull String html, @NonNull RenderOptions options, @NonNull ImageFormat format, @NonNull OutputStream out)
+            throws InterruptedException, IOException
+    {
+        RenderProtocol.Response response = call(new RenderProtocol.Request(html, options, format));
+        out.write(response.data());
+        return new Dimension(response.width(), response.height());
+    }
+
+    /**
+     * Sends a request to a free worker and waits for its successful response.
+     * <p>If the worker crashes, the request is sent once again to a fresh worker.</p>
+     * @param request The request.
+     * @return The successful response.
+     * @throws IllegalStateException If this farm is already closed.
+     * @throws InterruptedException If this thread is interrupted while waiting for a free worker.
+     * @throws IOException If the render failed, crashed the worker twice or timed out.
+     */
+    private RenderProtocol.Response call(@NonNull RenderProtocol.Request request) throws InterruptedException, IOException {
+        for (int attempt = 1; ; attempt++) {
+            Worker w = take();
+            RenderProtocol.Response response;
+            try {
+                response = w.call(request);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt == 2) throw e;
+                continue;
+            } finally {
+                giveBack(w);
+            }
+            if (response.status() == RenderProtocol.INVALID) throw new IllegalArgumentException(response.message());
+            if (response.status() != RenderProtocol.OK) throw new IOException(response.message());
+            return response;
+        }
+    }
+
+    /**
+     * Takes a free worker, waiting until some is free.
+     * <p>If this farm is closed while waiting, the {@link #closedMarker} is taken instead, which is put back for the
+     * next waiting thread.</p>
+     * @return The free worker.
+     * @throws IllegalStateException If this farm is already closed or is closed while waiting.
+     * @throws InterruptedException If this thread is interrupted while waiting for a free worker.
+     */
+    private Worker take() throws InterruptedException {
+        if (closed) throw new IllegalStateException("The farm is closed.");
+        Worker w = idle.take();
+        if (w == closedMarker) idle.offer(closedMarker);
+        if (closed) throw new IllegalStateException("The farm is closed.");
+        return w;
+    }
+
+    /**
+     * Gives a worker back to the free ones, replacing it by a fresh one if it is dead or worn out.
+     * @param w The worker.
+     */
+    private void giveBack(@NonNull Worker w) {
+        if (closed) {
+            w.stop();
+            return;
+        }
+        if (!w.isAlive() || w.isWornOut()) {
+            w.stop();
+            try {
+                w.start();
+            } catch (IOException e) {
+                // Tried again when the worker is used.
+            }
+        }
+        idle.add(w);
+    }
+
+    /**
+     * Converts the raw pixels of a response into an image.
+     * @param response The response.
+     * @param type The pixel type of the image.
+     * @return The image.
+     * @throws IOException If the response has not as many pixels as its size tells.
+     */
+    private static BufferedImage decode(@NonNull RenderProtocol.Response response, @NonNull PixelType type) throws IOException {
+        int w = response.width();
+        int h = response.height();
+        if ((long) w * h * 4 != response.data().length) throw new IOException("Corrupted response.");
+        BufferedImage image = type.create(w, h);
+        WritableRaster raster = image.getRaster();
+        ByteBuffer raw = ByteBuffer.wrap(response.data());
+        if (type == PixelType.GRAY) {
+            byte[] row = new byte[w];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    row[x] = (byte) (raw.getInt() >>> 24);
+                }
+                raster.setDataElements(0, y, w, 1, row);
+            }
+        } else {
+            int mask = type == PixelType.ARGB ? -1 : 0xFFFFFF;
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int rgba = raw.getInt();
+                    row[x] = (rgba >>> 8 | rgba << 24) & mask;
+                }
+                raster.setDataElements(0, y, w, 1, row);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Closes this farm, stopping all of its workers.
+     * <p>Renders in progress fail, and no new render might be started. The threads waiting for a free worker
+     * fail with an {@link IllegalStateException}.</p>
+     */
+    @Override
+    public void close() {
+        closed = true;
+        idle.offer(closedMarker);
+        for (Worker w : all) {
+            w.stop();
+        }
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * A worker process, which is replaced by a fresh one whenever needed.
+     * <p>Only the thread that took it from the free ones uses it, except for stopping it.</p>
+     * @author Victor Williams Stafusa da Silva
+     */
+    @SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+    private final class Worker {
+
+        /**
+         * The worker process or {@code null} if it is stopped.
+         */
+        private volatile Process process;
+
+        /**
+         * Writes the requests to the worker process.
+         */
+        private DataOutputStream out;
+
+        /**
+         * Reads the responses from the worker process.
+         */
+        private DataInputStream in;
+
+        /**
+         * How many renders the worker process did.
+         */
+        private int renders;
+
+        /**
+         * The heap used by the worker process after its last render, in bytes.
+         */
+        private long heap;
+
+        /**
+         * Tells if some worker process was ever launched for this worker.
+         */
+        private boolean started;
+
+        /**
+         * Sole constructor.
+         */
+        public Worker() {
+        }
+
+        /**
+         * Launches a fresh worker process.
+         * @throws IOException If the process can't be launched.
+         */
+        public void start() throws IOException {
+            Process p = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            out = new DataOutputStream(new BufferedOutputStream(p.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(p.getInputStream()));
+            renders = 0;
+            heap = 0;
+            if (started) restarts.incrementAndGet();
+            started = true;
+            process = p;
+            if (closed) stop();
+        }
+
+        /**
+         * Stops the worker process, if it is running.
+         */
+        public void stop() {
+            Process p = process;
+            process = null;
+            if (p != null) p.destroy();
+        }
+
+        /**
+         * Tells if the worker process is running.
+         * @return {@code true} if the worker process is running, {@code false} otherwise.
+         */
+        public boolean isAlive() {
+            Process p = process;
+            return p != null && p.isAlive();
+        }
+
+        /**
+         * Tells if the worker process did too many renders or uses too much heap.
+         * @return {@code true} if the worker process should be replaced, {@code false} otherwise.
+         */
+        public boolean isWornOut() {
+            return renders >= maxRendersPerWorker || heap > maxWorkerHeap;
+        }
+
+        /**
+         * Sends a request to the worker process and waits for its response, launching a fresh worker process
+         * before if there is none.
+         * @param request The request.
+         * @return The response.
+         * @throws InterruptedIOException If the worker process took too long and was killed.
+         * @throws IOException If the worker process crashed or could not be launched.
+         */
+        public RenderProtocol.Response call(@NonNull RenderProtocol.Request request) throws IOException {
+            if (!isAlive()) {
+                stop();
+                start();
+            }
+            Process p = process;
+            if (p == null) throw new IOException("The farm is closed.");
+            AtomicBoolean killed = new AtomicBoolean();
+            ScheduledFuture<?> timer = watchdog.schedule(() -> {
+                killed.set(true);
+                p.destroyForcibly();
+            }, timeout, TimeUnit.NANOSECONDS);
+            try {
+                RenderProtocol.write(out, request);
+                RenderProtocol.Response response = RenderProtocol.readResponse(in);
+                renders++;
+                heap = response.heap();
+                return response;
+            } catch (IOException e) {
+                stop();
+                if (killed.get()) throw new InterruptedIOException("The render timed out.");
+                throw new IOException("The worker crashed.", e);
+            } finally {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * Receives the metrics of the renders, so they might be bridged to some metrics system.
+ * <p>The listener is called by the thread that does the render, once it is finished, and should return quickly,
+ * since the result of the render is given only after it returns.</p>
+ * @see RenderOptions#withListener(RenderListener)
+ * @author Victor Williams Stafusa da Silva
+ */
+@FunctionalInterface
+public interface RenderListener {
+
+    /**
+     * Receives the metrics of a finished render.
+     * @param metrics The metrics of the render.
+     */
+    public void rendered(RenderMetrics metrics);
+}
@@ -0,0 +1,126 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.EnumMap;
+import java.util.Map;
+import lombok.NonNull;
+
+/**
+ * The timings and sizes of a finished render.
+ * <p>Instances of this class are immutable.</p>
+ * @see RenderListener
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderMetrics {
+
+    /**
+     * The time spent in each phase, in nanoseconds, indexed by the ordinal of the phase.
+     */
+    @NonNull
+    private final long[] nanos;
+
+    /**
+     * The time spent in the whole render, in nanoseconds.
+     */
+    private final long totalNanos;
+
+    /**
+     * The width of the rendered image.
+     */
+    private final int width;
+
+    /**
+     * The height of the rendered image.
+     */
+    private final int height;
+
+    /**
+     * The size in bytes of the pixels of the images allocated for painting the document.
+     */
+    private final long bytes;
+
+    /**
+     * Sole constructor.
+     * @param nanos The time spent in each phase, in nanoseconds, indexed by the ordinal of the phase.
+     * @param totalNanos The time spent in the whole render, in nanoseconds.
+     * @param width The width of the rendered image.
+     * @param height The height of the rendered image.
+     * @param bytes The size in bytes of the pixels of the images allocated for painting the document.
+     */
+    RenderMetrics(@NonNull long[] nanos, long totalNanos, int width, int height, long bytes) {
+        this.nanos = nanos.clone();
+        this.totalNanos = totalNanos;
+        this.width = width;
+        this.height = height;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns the time spent in a given phase of the render.
+     * @param phase The phase.
+     * @return The time spent in the {@code phase}, in nanoseconds.
+     * @throws IllegalArgumentException If the {@code phase} is {@code null}.
+     */
+    public long getNanos(@NonNull RenderPhase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the time spent in each phase of the render.
+     * @return The time spent in each phase of the render, in nanoseconds.
+     */
+    public Map<RenderPhase, Long> getPhaseNanos() {
+        Map<RenderPhase, Long> map = new EnumMap<>(RenderPhase.class);
+        for (RenderPhase phase : RenderPhase.values()) {
+            map.put(phase, nanos[phase.ordinal()]);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the time spent in the whole render, from the moment it was asked until its result was ready.
+     * <p>This is at least the sum of the time spent in all the phases.</p>
+     * @return The time spent in the whole render, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the width of the rendered image.
+     * @return The width of the rendered image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the rendered image.
+     * @return The height of the rendered image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the size in bytes of the pixels of the images allocated for painting the document.
+     * <p>This is the size of the rendered image or, for renders painted in bands, of the image where the bands
+     * are painted. Images leased from a {@link RenderTargetPool} are not allocated by the render, so they are
+     * not counted.</p>
+     * @return The size in bytes of the pixels of the images allocated for painting the document.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "RenderMetrics(phaseNanos=" + getPhaseNanos() + ", totalNanos=" + totalNanos
+                + ", width=" + width + ", height=" + height + ", bytes=" + bytes + ")";
+    }
+}
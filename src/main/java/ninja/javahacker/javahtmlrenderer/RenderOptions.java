@@ -0,0 +1,503 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
+import java.util.Optional;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import lombok.ToString;
+
+/**
+ * Options that drive how an HTML document is rendered by the {@link HtmlRenderer}.
+ * <p>Instances of this class are immutable. Use the {@code with} methods to
+ * derive a new instance with some option changed:</p>
+ * <pre>
+ *     RenderOptions opt = RenderOptions.defaults()
+ *             .withSleepTime(1000)
+ *             .withCompletionMode(CompletionMode.UNTIL_LOADED);
+ *     BufferedImage my = HtmlRenderer.render(html, opt);
+ * </pre>
+ * @author Victor Williams Stafusa da Silva
+ */
+@ToString
+@EqualsAndHashCode
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderOptions {
+
+    /**
+     * The default wait time for allowing the document be completed.
+     * <p>This is used most for the purposes of fully rendering images.</p>
+     * <p>This is defined as 200 milliseconds.</p>
+     */
+    static final int DEFAULT_WAIT_TIME = 200;
+
+    /**
+     * The default options.
+     */
+    private static final RenderOptions DEFAULTS =
+            new RenderOptions(DEFAULT_WAIT_TIME, CompletionMode.FIXED_WAIT, GraphicsEnvironment.isHeadless(), PixelType.RGB,
+                    0, 0, 0, null, null, null, 1.0, 0, 0, ScaleQuality.BILINEAR);
+
+    /**
+     * The wait time for allowing the document be completed.
+     */
+    private final int sleepTime;
+
+    /**
+     * How the renderer decides that the document is ready to be painted.
+     */
+    @NonNull
+    private final CompletionMode completionMode;
+
+    /**
+     * Tells if the document is rendered without any top-level window.
+     */
+    private final boolean headless;
+
+    /**
+     * The pixel type of the rendered images.
+     */
+    @NonNull
+    private final PixelType pixelType;
+
+    /**
+     * The fixed width of the rendered images or zero if it is the preferred width of the document.
+     */
+    private final int width;
+
+    /**
+     * The fixed height of the rendered images or zero if it is the preferred height of the document.
+     */
+    private final int pageHeight;
+
+    /**
+     * The maximum height of the rendered images or zero if it is unbounded.
+     */
+    private final int maxHeight;
+
+    /**
+     * The cache of the images of the documents or {@code null} if the images are loaded by each render.
+     * <p>It is not part of the string representation, which is meant to describe how the rendered
+     * images look like, since the cache only changes how fast the images are loaded.</p>
+     */
+    @ToString.Exclude
+    private final ImageResourceCache imageCache;
+
+    /**
+     * Receives the metrics of each render or {@code null} if there is none.
+     * <p>It is not part of the string representation, since it doesn't change the rendered images at all.</p>
+     */
+    @ToString.Exclude
+    private final RenderListener listener;
+
+    /**
+     * The base style sheet shared by the documents or {@code null} if there is none.
+     */
+    private final SharedStyleSheet styleSheet;
+
+    /**
+     * The fixed scale of the rendered images, which is one if they are not scaled or if they are fit into a bounding box.
+     */
+    private final double scale;
+
+    /**
+     * The width of the box where the rendered images are fit or zero if there is none.
+     */
+    private final int boxWidth;
+
+    /**
+     * The height of the box where the rendered images are fit or zero if there is none.
+     */
+    private final int boxHeight;
+
+    /**
+     * How the documents are painted when they are scaled.
+     */
+    @NonNull
+    private final ScaleQuality scaleQuality;
+
+    /**
+     * Creates an instance with the given options.
+     * @param sleepTime The wait time.
+     * @param completionMode How the renderer decides that the document is ready to be painted.
+     * @param headless Tells if the document is rendered without any top-level window.
+     * @param pixelType The pixel type of the rendered images.
+     * @param width The fixed width of the rendered images or zero if it is the preferred width of the document.
+     * @param pageHeight The fixed height of the rendered images or zero if it is the preferred height of the document.
+     * @param maxHeight The maximum height of the rendered images or zero if it is unbounded.
+     * @param imageCache The cache of the images of the documents or {@code null} if the images are loaded by each render.
+     * @param listener Receives the metrics of each render or {@code null} if there is none.
+     * @param styleSheet The base style sheet shared by the documents or {@code null} if there is none.
+     * @param scale The fixed scale of the rendered images, which is one if they are not scaled or if they are fit into
+     *     a bounding box.
+     * @param boxWidth The width of the box where the rendered images are fit or zero if there is none.
+     * @param boxHeight The height of the box where the rendered images are fit or zero if there is none.
+     * @param scaleQuality How the documents are painted when they are scaled.
+     * @throws IllegalArgumentException If the {@code sleepTime}, the {@code width}, the {@code pageHeight} or
+     *     the {@code maxHeight} are negative or the {@code completionMode}, the {@code pixelType} or
+     *     the {@code scaleQuality} are {@code null}.
+     */
+    private RenderOptions(
+            int sleepTime,
+            @NonNull CompletionMode completionMode,
+            boolean headless,
+            @NonNull PixelType pixelType,
+            int width,
+            int pageHeight,
+            int maxHeight,
+            ImageResourceCache imageCache,
+            RenderListener listener,
+            SharedStyleSheet styleSheet,
+            double scale,
+            int boxWidth,
+            int boxHeight,
+            @NonNull ScaleQuality scaleQuality)
+    {
+        if (sleepTime < 0) throw new IllegalArgumentException("The sleepTime can't be negative.");
+        if (width < 0) throw new IllegalArgumentException("The width can't be negative.");
+        if (pageHeight < 0) throw new IllegalArgumentException("The height can't be negative.");
+        if (maxHeight < 0) throw new IllegalArgumentException("The maxHeight can't be negative.");
+        this.sleepTime = sleepTime;
+        this.completionMode = completionMode;
+        this.headless = headless;
+        this.pixelType = pixelType;
+        this.width = width;
+        this.pageHeight = pageHeight;
+        this.maxHeight = maxHeight;
+        this.imageCache = imageCache;
+        this.listener = listener;
+        this.styleSheet = styleSheet;
+        this.scale = scale;
+        this.boxWidth = boxWidth;
+        this.boxHeight = boxHeight;
+        this.scaleQuality = scaleQuality;
+    }
+
+    /**
+     * Returns the default options.
+     * <p>The default options waits a fixed time of 200 ms before painting the document.
+     * They render the document headlessly only if the {@linkplain GraphicsEnvironment#isHeadless() environment is headless}.</p>
+     * @return The default options.
+     */
+    public static RenderOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Returns the wait time in milliseconds.
+     * <p>With {@link CompletionMode#FIXED_WAIT}, this is exactly how long the renderer waits.
+     * With {@link CompletionMode#UNTIL_LOADED}, this is the upper bound of that wait.</p>
+     * @return The wait time in milliseconds.
+     */
+    public int getSleepTime() {
+        return sleepTime;
+    }
+
+    /**
+     * Returns how the renderer decides that the document is ready to be painted.
+     * @return How the renderer decides that the document is ready to be painted.
+     */
+    public CompletionMode getCompletionMode() {
+        return completionMode;
+    }
+
+    /**
+     * Tells if the document is rendered without any top-level window.
+     * <p>When rendering headlessly, the editor pane is sized directly and painted into an image allocated
+     * by the renderer itself. Neither a frame is created nor the screen devices are looked up, so this
+     * works with {@code java.awt.headless=true} and without any display.</p>
+     * @return {@code true} if the document is rendered without any top-level window, {@code false} otherwise.
+     */
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Returns the pixel type of the rendered images.
+     * <p>Rendering with a window and the {@link PixelType#RGB} pixel type gives images compatible with the screen
+     * instead, which might have another type.</p>
+     * @return The pixel type of the rendered images.
+     */
+    public PixelType getPixelType() {
+        return pixelType;
+    }
+
+    /**
+     * Returns the fixed width of the rendered images.
+     * @return The fixed width of the rendered images or zero if it is the preferred width of the document.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the fixed height of the rendered images.
+     * @return The fixed height of the rendered images or zero if it is the preferred height of the document.
+     */
+    public int getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * Returns the maximum height of the rendered images.
+     * @return The maximum height of the rendered images or zero if it is unbounded.
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Returns the cache of the images of the documents, if there is one.
+     * @return The cache of the images of the documents, if there is one.
+     */
+    public Optional<ImageResourceCache> getImageCache() {
+        return Optional.ofNullable(imageCache);
+    }
+
+    /**
+     * Returns the listener that receives the metrics of each render, if there is one.
+     * @return The listener that receives the metrics of each render, if there is one.
+     */
+    public Optional<RenderListener> getListener() {
+        return Optional.ofNullable(listener);
+    }
+
+    /**
+     * Returns the base style sheet shared by the documents, if there is one.
+     * @return The base style sheet shared by the documents, if there is one.
+     */
+    public Optional<SharedStyleSheet> getStyleSheet() {
+        return Optional.ofNullable(styleSheet);
+    }
+
+    /**
+     * Returns the fixed scale of the rendered images.
+     * @return The fixed scale of the rendered images, which is one if they are not scaled or if they are fit into
+     *     a {@linkplain #getBoundingBox() bounding box}.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Returns the size of the box where the rendered images are fit, if there is one.
+     * @return The size of the box where the rendered images are fit, if there is one.
+     */
+    public Optional<Dimension> getBoundingBox() {
+        return boxWidth == 0 ? Optional.empty() : Optional.of(new Dimension(boxWidth, boxHeight));
+    }
+
+    /**
+     * Returns how the documents are painted when they are scaled.
+     * @return How the documents are painted when they are scaled.
+     */
+    public ScaleQuality getScaleQuality() {
+        return scaleQuality;
+    }
+
+    /**
+     * Tells if the rendered images are scaled, either by a fixed scale or to fit into a bounding box.
+     * @return {@code true} if the rendered images are scaled, {@code false} otherwise.
+     */
+    public boolean isScaled() {
+        return scale != 1.0 || boxWidth != 0;
+    }
+
+    /**
+     * Checks that the rendered images are not scaled, for the renders that don't support it.
+     * @return This instance.
+     * @throws IllegalArgumentException If the rendered images are scaled.
+     */
+    RenderOptions unscaled() {
+        if (isScaled()) throw new IllegalArgumentException("Scaled renders are only supported when rendering into new images.");
+        return this;
+    }
+
+    /**
+     * Creates a copy of this instance with a different wait time.
+     * @param sleepTime The wait time in milliseconds.
+     * @return A copy of this instance with a different wait time.
+     * @throws IllegalArgumentException If the {@code sleepTime} is negative.
+     */
+    public RenderOptions withSleepTime(int sleepTime) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance with a different completion mode.
+     * @param completionMode How the renderer decides that the document is ready to be painted.
+     * @return A copy of this instance with a different completion mode.
+     * @throws IllegalArgumentException If the {@code completionMode} is {@code null}.
+     */
+    public RenderOptions withCompletionMode(@NonNull CompletionMode completionMode) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that renders with or without a top-level window.
+     * @param headless {@code true} if the document should be rendered without any top-level window,
+     *     {@code false} otherwise.
+     * @return A copy of this instance that renders with or without a top-level window.
+     * @throws IllegalArgumentException If {@code headless} is {@code false} but the
+     *     {@linkplain GraphicsEnvironment#isHeadless() environment is headless}.
+     */
+    public RenderOptions withHeadless(boolean headless) {
+        if (!headless && GraphicsEnvironment.isHeadless()) {
+            throw new IllegalArgumentException("Can't render with a window in a headless environment.");
+        }
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance with a different pixel type of the rendered images.
+     * @param pixelType The pixel type of the rendered images.
+     * @return A copy of this instance with a different pixel type of the rendered images.
+     * @throws IllegalArgumentException If the {@code pixelType} is {@code null}.
+     */
+    public RenderOptions withPixelType(@NonNull PixelType pixelType) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that lays out the documents in a fixed width.
+     * <p>The document is wrapped to that width and the height of the rendered images is the preferred height of
+     * the document at that width. Rendering the same document again at the same width reuses the height
+     * computed before, so the document is laid out only once.</p>
+     * @param width The fixed width of the rendered images or zero if it should be the preferred width of the
+     *     document. Setting it to zero also makes the height be the preferred height of the document.
+     * @return A copy of this instance that lays out the documents in a fixed width.
+     * @throws IllegalArgumentException If the {@code width} is negative.
+     */
+    public RenderOptions withWidth(int width) {
+        int newPageHeight = width == 0 ? 0 : pageHeight;
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, newPageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that renders the documents in pages of a fixed size.
+     * <p>The document is wrapped to the page width. The part of the document below the page height
+     * is clipped, and the page is filled with the document background below a shorter document.</p>
+     * @param width The fixed width of the rendered images.
+     * @param height The fixed height of the rendered images.
+     * @return A copy of this instance that renders the documents in pages of a fixed size.
+     * @throws IllegalArgumentException If the {@code width} or the {@code height} are not positive.
+     */
+    public RenderOptions withPageSize(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("The width and the height must be positive.");
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, height, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that clips the rendered images to a maximum height.
+     * <p>The document is laid out as usual, but only its top part is painted, so very long documents
+     * don't need very large images.</p>
+     * @param maxHeight The maximum height of the rendered images or zero if it should be unbounded.
+     * @return A copy of this instance that clips the rendered images to a maximum height.
+     * @throws IllegalArgumentException If the {@code maxHeight} is negative.
+     */
+    public RenderOptions withMaxHeight(int maxHeight) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that takes the images of the documents from the given cache.
+     * <p>With a cache, the images are decoded synchronously while the document is loaded, or are
+     * just taken from the cache, so the document is complete without waiting for them.</p>
+     * @param imageCache The cache of the images of the documents or {@code null} if the images should be loaded
+     *     by each render.
+     * @return A copy of this instance that takes the images of the documents from the given cache.
+     */
+    public RenderOptions withImageCache(ImageResourceCache imageCache) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that reports the metrics of each render to the given listener.
+     * <p>The metrics are gathered only if there is a listener or if the {@link RenderEvent} is enabled
+     * in a running flight recording, so rendering without them costs nearly nothing.</p>
+     * @param listener Receives the metrics of each render or {@code null} if there should be none.
+     * @return A copy of this instance that reports the metrics of each render to the given listener.
+     */
+    public RenderOptions withListener(RenderListener listener) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that links the documents to the given base style sheet.
+     * <p>The rules of the style sheet are parsed only once, when it is created, and resolved only once for each
+     * distinct element path, no matter how many documents use it.</p>
+     * @param styleSheet The base style sheet shared by the documents or {@code null} if there should be none.
+     * @return A copy of this instance that links the documents to the given base style sheet.
+     */
+    public RenderOptions withStyleSheet(SharedStyleSheet styleSheet) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that scales the rendered images by a fixed factor.
+     * <p>The document is laid out as usual, at its full size, but it is painted with a scaled transform straight into
+     * the smaller image, so no image of the document at its full size is ever allocated. Each side of the rendered
+     * images is the side of the document times the scale, rounded, and at least one. This replaces any
+     * {@linkplain #withBoundingBox(int, int) bounding box}.</p>
+     * <p>Scaled images are only given by the renders that paint into a new image. The renders in bands, into leased
+     * images, outside of the heap or in a {@link RenderSession} reject them with an {@link IllegalArgumentException}.</p>
+     * @param scale The scale, which is one if the rendered images should not be scaled.
+     * @return A copy of this instance that scales the rendered images by a fixed factor.
+     * @throws IllegalArgumentException If the {@code scale} is not positive or is not finite.
+     */
+    public RenderOptions withScale(double scale) {
+        if (!(scale > 0.0) || Double.isInfinite(scale)) throw new IllegalArgumentException("The scale must be positive and finite.");
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, 0, 0, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that scales the rendered images down to fit into a bounding box.
+     * <p>This works as {@link #withScale(double)}, with the largest scale that fits the rendered image into the box,
+     * keeping its aspect ratio. Images that already fit are not enlarged. This replaces any fixed scale.</p>
+     * @param width The width of the box.
+     * @param height The height of the box.
+     * @return A copy of this instance that scales the rendered images down to fit into a bounding box.
+     * @throws IllegalArgumentException If the {@code width} or the {@code height} are not positive.
+     */
+    public RenderOptions withBoundingBox(int width, int height) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("The width and the height must be positive.");
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, this.width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                1.0, width, height, scaleQuality);
+    }
+
+    /**
+     * Creates a copy of this instance that paints the scaled documents with a different quality.
+     * @param scaleQuality How the documents are painted when they are scaled.
+     * @return A copy of this instance that paints the scaled documents with a different quality.
+     * @throws IllegalArgumentException If the {@code scaleQuality} is {@code null}.
+     */
+    public RenderOptions withScaleQuality(@NonNull ScaleQuality scaleQuality) {
+        return new RenderOptions(
+                sleepTime, completionMode, headless, pixelType, width, pageHeight, maxHeight, imageCache, listener, styleSheet,
+                scale, boxWidth, boxHeight, scaleQuality);
+    }
+}
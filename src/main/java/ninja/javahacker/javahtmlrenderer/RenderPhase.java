@@ -0,0 +1,50 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * The phases of a render, as timed in its {@link RenderMetrics}.
+ * <p>A phase might happen more than once in the same render, as the layout does, in which case its time is the sum
+ * of all of them. Phases that don't happen in some kind of render take no time at all.</p>
+ * @see RenderListener
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum RenderPhase {
+
+    /**
+     * Starting the thread that does the render, as the {@link HtmlRenderer} does for each render,
+     * or waiting for such a thread to be free, as in the {@link HtmlRenderEngine} and in the {@link ParallelHtmlRenderer}.
+     */
+    THREAD_START,
+
+    /**
+     * Waiting in the queue of the AWT's Event Dispatch Thread, behind whatever else it was doing,
+     * before each task of the render starts running there.
+     */
+    QUEUE,
+
+    /**
+     * Parsing the HTML source into a document.
+     */
+    PARSE,
+
+    /**
+     * Laying out the document.
+     */
+    LAYOUT,
+
+    /**
+     * Waiting for the document to be completed, according to the {@link CompletionMode}.
+     */
+    WAIT,
+
+    /**
+     * Painting the document.
+     */
+    PAINT,
+
+    /**
+     * Disposing the surface where the document was rendered, or resetting it to be reused.
+     * <p>Surfaces that are disposed or reset only after the render is finished, as the {@link HtmlRenderEngine}
+     * does, don't count this phase at all.</p>
+     */
+    DISPOSE;
+}
@@ -0,0 +1,198 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import lombok.NonNull;
+
+/**
+ * The messages exchanged between a {@link RenderFarm} and its {@link RenderWorker}s through the standard
+ * input and output of the worker processes.
+ * <p>A request holds the HTML source, the render options that make sense in another process and the image format.
+ * A response holds either the size of the rendered image, the heap used by the worker and the encoded image, or
+ * the reason why the render failed. The worker handles one request at a time, in the order they are sent.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class RenderProtocol {
+
+    /**
+     * The status of a response of a successful render.
+     */
+    public static final int OK = 0;
+
+    /**
+     * The status of a response of a render that failed due to an invalid argument.
+     */
+    public static final int INVALID = 1;
+
+    /**
+     * The status of a response of a render that failed for some other reason.
+     */
+    public static final int FAILED = 2;
+
+    /**
+     * A request to render an HTML source.
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     */
+    public static record Request(@NonNull String html, @NonNull RenderOptions options, @NonNull ImageFormat format) {
+    }
+
+    /**
+     * The response to a request.
+     * @param status Either {@link #OK}, {@link #INVALID} or {@link #FAILED}.
+     * @param width The width of the rendered image or zero if the render failed.
+     * @param height The height of the rendered image or zero if the render failed.
+     * @param heap The heap used by the worker after the render, in bytes.
+     * @param data The encoded image or the UTF-8 bytes of the reason why the render failed.
+     */
+    @SuppressFBWarnings({"EI_EXPOSE_REP", "EI_EXPOSE_REP2"})
+    public static record Response(int status, int width, int height, long heap, @NonNull byte[] data) {
+
+        /**
+         * Gives the reason why the render failed.
+         * @return The reason why the render failed.
+         */
+        public String message() {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * The last style sheet read, so it is parsed only once while the farm keeps sending the same one.
+     * <p>This is used only by the single thread of a worker that reads the requests.</p>
+     */
+    private static SharedStyleSheet lastStyleSheet;
+
+    /**
+     * Instantiating this class in not allowed.
+     */
+    private RenderProtocol() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Writes a request.
+     * <p>Only the options that change the rendered image are sent. The worker always renders headless,
+     * and uses its own image cache if the options have one. The style sheet is sent as its CSS rules.</p>
+     * @param out Where the request is written.
+     * @param request The request.
+     * @throws IOException If writing fails.
+     */
+    public static void write(@NonNull DataOutputStream out, @NonNull Request request) throws IOException {
+        RenderOptions options = request.options();
+        writeBytes(out, request.html().getBytes(StandardCharsets.UTF_8));
+        out.writeInt(options.getSleepTime());
+        out.writeByte(options.getCompletionMode().ordinal());
+        out.writeByte(options.getPixelType().ordinal());
+        out.writeInt(options.getWidth());
+        out.writeInt(options.getPageHeight());
+        out.writeInt(options.getMaxHeight());
+        out.writeBoolean(options.getImageCache().isPresent());
+        out.writeBoolean(options.getStyleSheet().isPresent());
+        if (options.getStyleSheet().isPresent()) writeBytes(out, options.getStyleSheet().get().getCss().getBytes(StandardCharsets.UTF_8));
+        Dimension box = options.getBoundingBox().orElse(new Dimension());
+        out.writeDouble(options.getScale());
+        out.writeInt(box.width);
+        out.writeInt(box.height);
+        out.writeByte(options.getScaleQuality().ordinal());
+        out.writeByte(request.format().ordinal());
+        out.flush();
+    }
+
+    /**
+     * Writes a response.
+     * @param out Where the response is written.
+     * @param response The response.
+     * @throws IOException If writing fails.
+     */
+    public static void write(@NonNull DataOutputStream out, @NonNull Response response) throws IOException {
+        out.writeByte(response.status());
+        out.writeInt(response.width());
+        out.writeInt(response.height());
+        out.writeLong(response.heap());
+        writeBytes(out, response.data());
+        out.flush();
+    }
+
+    /**
+     * Reads a request.
+     * @param in Where the request is read from.
+     * @return The request.
+     * @throws IOException If reading fails.
+     */
+    public static Request readRequest(@NonNull DataInputStream in) throws IOException {
+        final String html = new String(readBytes(in), StandardCharsets.UTF_8);
+        RenderOptions options = RenderOptions.defaults()
+                .withHeadless(true)
+                .withSleepTime(in.readInt())
+                .withCompletionMode(CompletionMode.values()[in.readByte()])
+                .withPixelType(PixelType.values()[in.readByte()]);
+        int width = in.readInt();
+        int pageHeight = in.readInt();
+        options = pageHeight == 0 ? options.withWidth(width) : options.withPageSize(width, pageHeight);
+        options = options.withMaxHeight(in.readInt());
+        if (in.readBoolean()) options = options.withImageCache(ImageResourceCache.shared());
+        if (in.readBoolean()) options = options.withStyleSheet(styleSheet(new String(readBytes(in), StandardCharsets.UTF_8)));
+        double scale = in.readDouble();
+        int boxWidth = in.readInt();
+        int boxHeight = in.readInt();
+        options = boxWidth == 0 ? options.withScale(scale) : options.withBoundingBox(boxWidth, boxHeight);
+        options = options.withScaleQuality(ScaleQuality.values()[in.readByte()]);
+        return new Request(html, options, ImageFormat.values()[in.readByte()]);
+    }
+
+    /**
+     * Reads a response.
+     * @param in Where the response is read from.
+     * @return The response.
+     * @throws IOException If reading fails.
+     */
+    public static Response readResponse(@NonNull DataInputStream in) throws IOException {
+        int status = in.readByte();
+        int width = in.readInt();
+        int height = in.readInt();
+        long heap = in.readLong();
+        return new Response(status, width, height, heap, readBytes(in));
+    }
+
+    /**
+     * Gives the style sheet with the given CSS rules, reusing the last one if it has the same rules.
+     * @param css The CSS rules.
+     * @return The style sheet.
+     */
+    private static SharedStyleSheet styleSheet(@NonNull String css) {
+        if (lastStyleSheet == null || !lastStyleSheet.getCss().equals(css)) lastStyleSheet = new SharedStyleSheet(css);
+        return lastStyleSheet;
+    }
+
+    /**
+     * Writes a length-prefixed array of bytes.
+     * @param out Where the bytes are written.
+     * @param data The bytes.
+     * @throws IOException If writing fails.
+     */
+    private static void writeBytes(@NonNull DataOutputStream out, @NonNull byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    /**
+     * Reads a length-prefixed array of bytes.
+     * @param in Where the bytes are read from.
+     * @return The bytes.
+     * @throws IOException If reading fails or if the length is negative.
+     */
+    private static byte[] readBytes(@NonNull DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Corrupted stream.");
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+}
@@ -0,0 +1,159 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import lombok.NonNull;
+
+/**
+ * Gathers the {@link RenderMetrics} of a render, while it runs, and reports them once it is finished.
+ * <p>If nobody wants the metrics of a render, because there is no {@link RenderListener} in its options and the
+ * {@link RenderEvent} is not enabled, the render gets the {@link #DISABLED} recorder, that does nothing at all,
+ * not even reading the clock.</p>
+ * <p>A recorder is used by the many threads that take part in a render, but only by one of them at a time,
+ * always handing it over through something that makes its changes visible to the next one, like the
+ * {@link java.awt.EventQueue#invokeAndWait(Runnable)} does.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class RenderRecorder {
+
+    /**
+     * The recorder of the renders whose metrics nobody wants.
+     */
+    public static final RenderRecorder DISABLED = new RenderRecorder(null, null, 0);
+
+    /**
+     * Receives the metrics once the render is finished or {@code null} if there is none.
+     */
+    private final RenderListener listener;
+
+    /**
+     * The flight recorder event of the render or {@code null} if it is not enabled.
+     */
+    private final RenderEvent event;
+
+    /**
+     * The moment when the render was asked, as given by {@link System#nanoTime()}.
+     */
+    private final long start;
+
+    /**
+     * The time spent in each phase, in nanoseconds, indexed by the ordinal of the phase.
+     */
+    @NonNull
+    private final long[] nanos;
+
+    /**
+     * The width of the rendered image.
+     */
+    private int width;
+
+    /**
+     * The height of the rendered image.
+     */
+    private int height;
+
+    /**
+     * The size in bytes of the pixels of the images allocated for painting the document.
+     */
+    private long bytes;
+
+    /**
+     * Sole constructor.
+     * @param listener Receives the metrics once the render is finished or {@code null} if there is none.
+     * @param event The flight recorder event of the render or {@code null} if it is not enabled.
+     * @param start The moment when the render was asked, as given by {@link System#nanoTime()}.
+     */
+    private RenderRecorder(RenderListener listener, RenderEvent event, long start) {
+        this.listener = listener;
+        this.event = event;
+        this.start = start;
+        this.nanos = new long[RenderPhase.values().length];
+    }
+
+    /**
+     * Starts recording a render that was just asked.
+     * @param options The render options.
+     * @return The recorder of the render, which is {@link #DISABLED} if nobody wants its metrics.
+     */
+    public static RenderRecorder start(@NonNull RenderOptions options) {
+        RenderListener listener = options.getListener().orElse(null);
+        RenderEvent event = new RenderEvent();
+        if (!event.isEnabled()) {
+            if (listener == null) return DISABLED;
+            event = null;
+        } else {
+            event.begin();
+        }
+        return new RenderRecorder(listener, event, System.nanoTime());
+    }
+
+    /**
+     * Tells if this recorder is gathering metrics.
+     * @return {@code true} if this recorder is gathering metrics, {@code false} if it is {@link #DISABLED}.
+     */
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * Gives the current moment, to be later given to {@link #add(RenderPhase, long)} when a phase ends.
+     * @return The current moment, as given by {@link System#nanoTime()}, or zero if this recorder is {@link #DISABLED}.
+     */
+    public long mark() {
+        return this == DISABLED ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time spent in a phase that just ended.
+     * @param phase The phase.
+     * @param since When the phase started, as given by {@link #mark()}.
+     */
+    public void add(@NonNull RenderPhase phase, long since) {
+        if (this == DISABLED) return;
+        nanos[phase.ordinal()] += System.nanoTime() - since;
+    }
+
+    /**
+     * Adds the time spent in the {@link RenderPhase#THREAD_START} phase, from the moment that the render was asked.
+     */
+    public void started() {
+        add(RenderPhase.THREAD_START, start);
+    }
+
+    /**
+     * Records the size of the rendered image.
+     * @param w The width of the rendered image.
+     * @param h The height of the rendered image.
+     */
+    public void size(int w, int h) {
+        if (this == DISABLED) return;
+        this.width = w;
+        this.height = h;
+    }
+
+    /**
+     * Records an image allocated for painting the document.
+     * @param image The allocated image.
+     */
+    public void allocated(@NonNull BufferedImage image) {
+        if (this == DISABLED) return;
+        bytes += RenderCache.sizeOf(image);
+    }
+
+    /**
+     * Reports the metrics of the finished render to the listener and to the flight recorder.
+     */
+    public void finish() {
+        if (this == DISABLED) return;
+        RenderMetrics metrics = new RenderMetrics(nanos, System.nanoTime() - start, width, height, bytes);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.fill(metrics);
+                event.commit();
+            }
+        }
+        if (listener != null) listener.rendered(metrics);
+    }
+}
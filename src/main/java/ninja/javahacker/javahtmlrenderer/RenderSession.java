@@ -0,0 +1,511 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+import lombok.NonNull;
+
+/**
+ * Renders a document that changes over time, painting again only the regions of the image where it changed.
+ * <p>Rendering almost the same HTML again and again with the {@link HtmlRenderer}, as a live dashboard where only a
+ * few numbers change does, parses, lays out and paints the whole document every time. Instead, a session keeps
+ * the laid out document and the image where it was painted. Each new HTML source is compared with the document
+ * and, if only the text of some elements changed, just that text is replaced in the document. Then, only the
+ * blocks of the document that changed, or that moved due to the change, are painted again, into the same image.</p>
+ * <p>The text of the elements might also be changed by their {@code id}s, without giving the whole HTML source
+ * again, with {@link #update(Map)}.</p>
+ * <p>Each render gives a {@link RenderUpdate} with the image and the regions that were painted again, so only those
+ * need to be encoded or sent elsewhere. If the structure or the attributes of the document changed, if the image size
+ * changed or if too much of the image changed, the whole document is laid out and painted again as usual.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (RenderSession session = new RenderSession(opt)) {
+ *         RenderUpdate first = session.render(dashboard(values));
+ *         ...
+ *         RenderUpdate next = session.render(dashboard(newValues));
+ *         for (Rectangle r : next.getDirtyRegions()) {
+ *             send(next.getImage().getSubimage(r.x, r.y, r.width, r.height), r);
+ *         }
+ *     }
+ * </pre>
+ * <p>The images of the document are expected to be loaded before the document is first painted, according to the
+ * {@link CompletionMode} of the options. Images that change afterwards are not painted again, unless they change
+ * the layout of the document.</p>
+ * <p>Instances of this class are thread-safe, but their renders are done one at a time.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderSession implements AutoCloseable {
+
+    /**
+     * The parts of an HTML source that affect the document without being part of its structure or text.
+     */
+    private static final Pattern EXTERNAL = Pattern.compile("(?is)<style\\b.*?</style\\s*>|<(?:link|base|meta)\\b[^>]*>");
+
+    /**
+     * The maximum number of regions painted again before painting the whole image instead.
+     */
+    private static final int MAX_REGIONS = 256;
+
+    /**
+     * The maximum percentage of the image area painted again region by region before painting the whole image instead.
+     */
+    private static final int MAX_DIRTY_PERCENT = 50;
+
+    /**
+     * A replacement of some text of the document.
+     * @param offset Where the replaced text starts.
+     * @param length The length of the replaced text.
+     * @param text The new text.
+     * @param attributes The attributes of the new text.
+     */
+    private static record Edit(int offset, int length, @NonNull String text, @NonNull AttributeSet attributes) {
+    }
+
+    /**
+     * The render options.
+     */
+    @NonNull
+    private final RenderOptions options;
+
+    /**
+     * The surface where the document is, or {@code null} if nothing was rendered yet.
+     * <p>This is used only in the AWT's Event Dispatch Thread while holding the lock of this session.</p>
+     */
+    private RenderSurface surface;
+
+    /**
+     * The image where the document was last painted, or {@code null} if nothing was rendered yet.
+     */
+    private BufferedImage image;
+
+    /**
+     * Where each block of the document was when it was last painted.
+     */
+    private Map<Element, Rectangle> painted;
+
+    /**
+     * The parts of the HTML source of the document that affect it without being part of its structure or text.
+     */
+    private List<String> externals;
+
+    /**
+     * Tells if this session was already closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a session with the default render options.
+     */
+    public RenderSession() {
+        this(RenderOptions.defaults());
+    }
+
+    /**
+     * Creates a session with the given render options.
+     * @param options The render options.
+     * @throws IllegalArgumentException If the {@code options} is {@code null} or if it
+     *     {@linkplain RenderOptions#isScaled() scales} the rendered images.
+     */
+    public RenderSession(@NonNull RenderOptions options) {
+        this.options = options.unscaled();
+    }
+
+    /**
+     * Returns the render options.
+     * @return The render options.
+     */
+    public RenderOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Renders a given HTML source, painting again only where it differs from the previous one.
+     * <p>If the new source has the same elements with the same attributes of the previous one, differing only in their
+     * text, that text is replaced in the document, which is laid out again, and only the regions of the image that
+     * changed are painted again. Otherwise, the new document is laid out and painted again as a whole.</p>
+     * <p>The new source is parsed only once, in this thread, whether it is just compared with the document or replaces
+     * it. Only the replacements of text, the layout and the painting are done in the AWT's Event Dispatch Thread.</p>
+     * @param html The HTML that should be rendered.
+     * @return The updated image and where it changed.
+     * @throws IllegalArgumentException If the {@code html} is {@code null}.
+     * @throws IllegalStateException If this session is already closed.
+     * @throws InterruptedException If this thread is interrupted before the image is updated.
+     */
+    public synchronized RenderUpdate render(@NonNull String html) throws InterruptedException {
+        if (closed) throw new IllegalStateException("The session is closed.");
+        RenderRecorder recorder = RenderRecorder.start(options);
+        recorder.started();
+        List<String> ext = externals(html);
+        long parse = recorder.mark();
+        ParsedHtml parsed = parse(html);
+        recorder.add(RenderPhase.PARSE, parse);
+        if (surface != null && ext.equals(externals)) {
+            RenderUpdate update = HtmlRenderer.callAndWait(recorder, () -> {
+                List<Edit> edits = diff(surface.document(), parsed.getDocument());
+                return edits == null ? null : apply(edits, html, recorder);
+            });
+            if (update != null) {
+                recorder.finish();
+                return update;
+            }
+        }
+        externals = ext;
+        return reload(parsed, recorder);
+    }
+
+    /**
+     * Replaces the text of some elements of the document, given by their {@code id}s, painting again only where it changed.
+     * <p>The whole text of each element is replaced, keeping the attributes of its first character. Each element must
+     * have a single line of text, as inline elements, table cells and paragraphs usually have.</p>
+     * @param texts The new text of each element, by its {@code id}. Each one is converted with {@link String#valueOf(Object)}.
+     * @return The updated image and where it changed.
+     * @throws IllegalArgumentException If the {@code texts} is {@code null}, if there is no element with some of its
+     *     {@code id}s, if some of those elements has many lines of text or if some of them are within each other.
+     * @throws IllegalStateException If this session is already closed or if nothing was rendered yet.
+     * @throws InterruptedException If this thread is interrupted before the image is updated.
+     */
+    public synchronized RenderUpdate update(@NonNull Map<String, ?> texts) throws InterruptedException {
+        if (closed) throw new IllegalStateException("The session is closed.");
+        if (surface == null) throw new IllegalStateException("Nothing was rendered yet.");
+        RenderRecorder recorder = RenderRecorder.start(options);
+        recorder.started();
+        AtomicReference<String> problem = new AtomicReference<>();
+        RenderUpdate update = HtmlRenderer.callAndWait(recorder, () -> {
+            List<Edit> edits = edits(surface.document(), texts, problem);
+            return edits == null ? null : apply(edits, null, recorder);
+        });
+        if (update == null) throw new IllegalArgumentException(problem.get());
+        recorder.finish();
+        return update;
+    }
+
+    /**
+     * Replaces the whole document by a new one, and lays it out and paints it again.
+     * @param parsed The new document.
+     * @param recorder Gathers the metrics of the render.
+     * @return The updated image.
+     * @throws InterruptedException If this thread is interrupted before the image is updated.
+     */
+    private RenderUpdate reload(@NonNull ParsedHtml parsed, @NonNull RenderRecorder recorder) throws InterruptedException {
+        AtomicReference<ImageLoadTracker> tracker = new AtomicReference<>();
+        HtmlRenderer.invokeAndWait(recorder, () -> {
+            if (surface == null) {
+                surface = RenderSurface.create(options.isHeadless());
+            } else {
+                surface.reset();
+            }
+            tracker.set(surface.load(parsed, options, recorder));
+        });
+        HtmlRenderer.awaitCompletion(tracker.get(), options, recorder);
+        RenderUpdate update = HtmlRenderer.callAndWait(recorder, this::repaint);
+        recorder.finish();
+        return update;
+    }
+
+    /**
+     * Paints the whole document into a new image.
+     * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+     * @return The new image.
+     */
+    private RenderUpdate repaint() {
+        image = surface.paint(options.getPixelType());
+        painted = surface.blocks();
+        return new RenderUpdate(image, List.of(new Rectangle(image.getWidth(), image.getHeight())), true);
+    }
+
+    /**
+     * Replaces some text of the document, lays it out again and paints again the regions that changed.
+     * <p>This should be called only in the AWT's Event Dispatch Thread.</p>
+     * @param edits The replacements, sorted by their offsets, which must not overlap.
+     * @param html The HTML source that the document matches after the replacements or {@code null} if there is none.
+     * @param recorder Gathers the metrics of the render.
+     * @return The updated image and where it changed.
+     */
+    private RenderUpdate apply(@NonNull List<Edit> edits, String html, @NonNull RenderRecorder recorder) {
+        HTMLDocument doc = surface.document();
+        Set<Element> touched = new HashSet<>();
+        DocumentListener listener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                touched.add(doc.getParagraphElement(e.getOffset()));
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                touched.add(doc.getParagraphElement(e.getOffset()));
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                touched.add(doc.getParagraphElement(e.getOffset()));
+            }
+        };
+        long parse = recorder.mark();
+        doc.addDocumentListener(listener);
+        try {
+            // From the last to the first, so the offsets of the ones not applied yet stay the same.
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                Edit e = edits.get(i);
+                doc.replace(e.offset(), e.length(), e.text(), e.attributes());
+            }
+        } catch (BadLocationException e) {
+            // The edits are always within the document.
+            throw new AssertionError(e);
+        } finally {
+            doc.removeDocumentListener(listener);
+        }
+        recorder.add(RenderPhase.PARSE, parse);
+        surface.edited(html, recorder);
+        Dimension size = surface.measure();
+        if (size.width != image.getWidth() || size.height != image.getHeight()) return repaint();
+        Map<Element, Rectangle> now = surface.blocks();
+        Rectangle whole = new Rectangle(size);
+        List<Rectangle> dirty = coalesce(damage(painted, now, touched), whole);
+        painted = now;
+        if (dirty == null) {
+            surface.paint(image, List.of(whole));
+            return new RenderUpdate(image, List.of(whole), true);
+        }
+        surface.paint(image, dirty);
+        return new RenderUpdate(image, dirty, false);
+    }
+
+    /**
+     * Finds the regions that must be painted again after the document changed.
+     * <p>Those are the regions of the blocks that were changed, added, removed or moved, both where they were and where
+     * they are now.</p>
+     * @param before Where each block was before the document changed.
+     * @param after Where each block is after the document changed.
+     * @param touched The blocks where some text was replaced.
+     * @return The regions that must be painted again, which might overlap.
+     */
+    private static List<Rectangle> damage(
+            @NonNull Map<Element, Rectangle> before,
+            @NonNull Map<Element, Rectangle> after,
+            @NonNull Set<Element> touched)
+    {
+        List<Rectangle> dirty = new ArrayList<>();
+        for (Map.Entry<Element, Rectangle> e : before.entrySet()) {
+            Rectangle now = after.get(e.getKey());
+            if (e.getValue().equals(now)) continue;
+            dirty.add(e.getValue());
+            if (now != null) dirty.add(now);
+        }
+        for (Map.Entry<Element, Rectangle> e : after.entrySet()) {
+            if (!before.containsKey(e.getKey())) dirty.add(e.getValue());
+        }
+        for (Element e : touched) {
+            if (before.containsKey(e)) dirty.add(before.get(e));
+            if (after.containsKey(e)) dirty.add(after.get(e));
+        }
+        return dirty;
+    }
+
+    /**
+     * Clips the regions to the image and merges the ones that overlap.
+     * @param regions The regions.
+     * @param whole The whole image.
+     * @return The merged regions, sorted by their top and then by their left coordinates, or {@code null} if there
+     *     are so many or they are so large that the whole image should be painted instead.
+     */
+    private static List<Rectangle> coalesce(@NonNull List<Rectangle> regions, @NonNull Rectangle whole) {
+        List<Rectangle> merged = new ArrayList<>();
+        for (Rectangle r : regions) {
+            Rectangle clipped = r.intersection(whole);
+            if (!clipped.isEmpty()) merged.add(clipped);
+        }
+        if (merged.size() > MAX_REGIONS) return null;
+        boolean again = true;
+        while (again) {
+            again = false;
+            for (int i = 0; i < merged.size() && !again; i++) {
+                for (int j = i + 1; j < merged.size() && !again; j++) {
+                    if (!merged.get(i).intersects(merged.get(j))) continue;
+                    merged.set(i, merged.get(i).union(merged.remove(j)));
+                    again = true;
+                }
+            }
+        }
+        long area = merged.stream().mapToLong(r -> (long) r.width * r.height).sum();
+        if (area * 100 > (long) whole.width * whole.height * MAX_DIRTY_PERCENT) return null;
+        merged.sort(Comparator.comparingInt((Rectangle r) -> r.y).thenComparingInt(r -> r.x));
+        return merged;
+    }
+
+    /**
+     * Finds the parts of an HTML source that affect the document without being part of its structure or text,
+     * as the {@code <style>} elements are.
+     * @param html The HTML source.
+     * @return Those parts, in the order that they appear.
+     */
+    private static List<String> externals(@NonNull String html) {
+        List<String> found = new ArrayList<>();
+        Matcher m = EXTERNAL.matcher(html);
+        while (m.find()) {
+            found.add(m.group());
+        }
+        return found;
+    }
+
+    /**
+     * Parses an HTML source into a new document, outside of the AWT's Event Dispatch Thread, to be either compared with
+     * the current one or loaded in its place.
+     * @param html The HTML source.
+     * @return The parsed document.
+     */
+    private static ParsedHtml parse(@NonNull String html) {
+        try {
+            return ParsedHtml.parse(new StringReader(html));
+        } catch (IOException e) {
+            // Reading from a string never fails.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Compares two documents and finds the replacements of text that turn the first into the second.
+     * @param current The current document.
+     * @param parsed The new document.
+     * @return The replacements, sorted by their offsets, or {@code null} if the documents differ in more than their text.
+     */
+    private static List<Edit> diff(@NonNull HTMLDocument current, @NonNull HTMLDocument parsed) {
+        List<Edit> edits = new ArrayList<>();
+        try {
+            return diff(current.getDefaultRootElement(), parsed.getDefaultRootElement(), edits) ? edits : null;
+        } catch (BadLocationException e) {
+            // The elements are always within their documents.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Recursively compares two elements and finds the replacements of text that turn the first into the second.
+     * @param current The element of the current document.
+     * @param parsed The element of the new document.
+     * @param edits Where the replacements are added.
+     * @return {@code true} if the elements differ only in their text, {@code false} otherwise.
+     * @throws BadLocationException Never, since the elements are within their documents.
+     */
+    private static boolean diff(@NonNull Element current, @NonNull Element parsed, @NonNull List<Edit> edits)
+            throws BadLocationException
+    {
+        if (current.isLeaf() != parsed.isLeaf() || !current.getName().equals(parsed.getName())) return false;
+        if (!sameAttributes(current.getAttributes(), parsed.getAttributes())) return false;
+        if (current.isLeaf()) {
+            int length = current.getEndOffset() - current.getStartOffset();
+            String before = current.getDocument().getText(current.getStartOffset(), length);
+            String after = parsed.getDocument().getText(parsed.getStartOffset(), parsed.getEndOffset() - parsed.getStartOffset());
+            if (before.equals(after)) return true;
+            edits.add(new Edit(current.getStartOffset(), length, after, current.getAttributes().copyAttributes()));
+            return true;
+        }
+        if (current.getElementCount() != parsed.getElementCount()) return false;
+        for (int i = 0; i < current.getElementCount(); i++) {
+            if (!diff(current.getElement(i), parsed.getElement(i), edits)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tells if two sets of attributes of elements of different documents are the same.
+     * <p>Their values are compared by their textual forms, since the values parsed from CSS declarations
+     * are not comparable with each other. The parents from where attributes are resolved are not compared.</p>
+     * @param a The first set of attributes.
+     * @param b The second set of attributes.
+     * @return {@code true} if they are the same, {@code false} otherwise.
+     */
+    private static boolean sameAttributes(@NonNull AttributeSet a, @NonNull AttributeSet b) {
+        if (a.getAttributeCount() != b.getAttributeCount()) return false;
+        for (Enumeration<?> names = a.getAttributeNames(); names.hasMoreElements();) {
+            Object name = names.nextElement();
+            if (name == AttributeSet.ResolveAttribute) continue;
+            if (!b.isDefined(name)) return false;
+            Object x = a.getAttribute(name);
+            Object y = b.getAttribute(name);
+            boolean same = x instanceof AttributeSet && y instanceof AttributeSet
+                    ? sameAttributes((AttributeSet) x, (AttributeSet) y)
+                    : String.valueOf(x).equals(String.valueOf(y));
+            if (!same) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the replacements of the text of some elements, given by their {@code id}s.
+     * @param doc The document.
+     * @param texts The new text of each element, by its {@code id}.
+     * @param problem Where the reason why the replacements are not possible is put, if they are not.
+     * @return The replacements, sorted by their offsets, or {@code null} if they are not possible.
+     */
+    private static List<Edit> edits(
+            @NonNull HTMLDocument doc,
+            @NonNull Map<String, ?> texts,
+            @NonNull AtomicReference<String> problem)
+    {
+        List<Edit> edits = new ArrayList<>(texts.size());
+        try {
+            for (Map.Entry<String, ?> e : texts.entrySet()) {
+                Element element = doc.getElement(e.getKey());
+                if (element == null) {
+                    problem.set("There is no element with the id " + e.getKey() + ".");
+                    return null;
+                }
+                int start = element.getStartOffset();
+                String text = doc.getText(start, element.getEndOffset() - start);
+                if (text.endsWith("\n")) text = text.substring(0, text.length() - 1);
+                if (text.contains("\n")) {
+                    problem.set("The element with the id " + e.getKey() + " has many lines of text.");
+                    return null;
+                }
+                AttributeSet attributes = doc.getCharacterElement(start).getAttributes().copyAttributes();
+                edits.add(new Edit(start, text.length(), String.valueOf(e.getValue()), attributes));
+            }
+        } catch (BadLocationException e) {
+            // The elements are always within the document.
+            throw new AssertionError(e);
+        }
+        edits.sort(Comparator.comparingInt(Edit::offset));
+        for (int i = 1; i < edits.size(); i++) {
+            Edit previous = edits.get(i - 1);
+            if (previous.offset() + previous.length() > edits.get(i).offset()) {
+                problem.set("Some of the elements are within each other.");
+                return null;
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Closes this session, disposing its document.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        final RenderSurface s = surface;
+        surface = null;
+        image = null;
+        painted = null;
+        if (s != null) EventQueue.invokeLater(s::dispose);
+    }
+}
@@ -0,0 +1,71 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * The style sheet of the documents created by the {@link RenderEditorKit}.
+ * <p>Each {@code style} attribute of an HTML element is normally parsed as it is read, even when many elements
+ * of many documents have exactly the same one, as is usual in the cells of large tables. So, the attribute
+ * sets parsed from the {@code style} attributes are remembered and shared by all the documents of all the threads.
+ * The documents only copy the attributes from those sets, never changing them.</p>
+ * <p>Declarations with {@code url(...)} values are not remembered, since the images that they refer to are
+ * resolved and loaded by the values themselves, relative to the base of the document that used them first.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings({"IMC_IMMATURE_CLASS_NO_TOSTRING", "SE_BAD_FIELD"})
+final class RenderStyleSheet extends StyleSheet {
+
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of parsed declarations remembered.
+     */
+    private static final int MAX_DECLARATIONS = 4096;
+
+    /**
+     * The parsed declarations, by their source, from the least to the most recently used.
+     * <p>This is accessed only while holding its own lock.</p>
+     */
+    private static final Map<String, AttributeSet> DECLARATIONS = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AttributeSet> eldest) {
+            return size() > MAX_DECLARATIONS;
+        }
+    };
+
+    /**
+     * Sole constructor.
+     */
+    public RenderStyleSheet() {
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The returned set is shared and must not be changed.</p>
+     * @param decl {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public AttributeSet getDeclaration(String decl) {
+        if (decl == null || decl.toLowerCase(Locale.ROOT).contains("url(")) return super.getDeclaration(decl);
+        synchronized (DECLARATIONS) {
+            AttributeSet known = DECLARATIONS.get(decl);
+            if (known != null) return known;
+        }
+        AttributeSet parsed = super.getDeclaration(decl);
+        synchronized (DECLARATIONS) {
+            DECLARATIONS.put(decl, parsed);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,561 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.swing.JEditorPane;
+import javax.swing.JFrame;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+import javax.swing.text.html.HTMLDocument;
+import lombok.NonNull;
+
+/**
+ * The {@link JEditorPane} and its container where an HTML document is laid out and painted.
+ * <p>A surface might be used for a single render and then disposed, as the {@link HtmlRenderer} does,
+ * or be {@linkplain #reset() reset} and reused for many renders, as the {@link HtmlRenderEngine} does.</p>
+ * <p>A headless surface has no container at all. Its editor pane is sized directly to its preferred size,
+ * which is exactly what packing a frame containing only the editor pane does.</p>
+ * <p>When the {@linkplain RenderOptions#getWidth() width is fixed}, the document is wrapped to that width and
+ * its preferred height at that width is remembered, so rendering the same document again at the same width
+ * sizes the editor pane right away, without laying it out before it is painted.</p>
+ * <p>A document might also be loaded from an {@link HtmlTemplate}, in which case it was already parsed and
+ * only the values of its placeholders are replaced. Such document is given back to the template once the
+ * surface is reset or disposed.</p>
+ * <p>The loaded document might also be {@linkplain #edited(String, RenderRecorder) changed in place} and then
+ * {@linkplain #paint(BufferedImage, List) painted only where it changed}, as the {@link RenderSession} does.</p>
+ * <p>A surface might also be {@linkplain #createConfined() confined} to a worker thread instead, as the
+ * {@link ParallelHtmlRenderer} does. Such a surface is always headless and loads its images synchronously,
+ * so it never needs the AWT's Event Dispatch Thread. Every surface holds its documents in a {@link RenderEditorKit},
+ * so the text of surfaces used in different threads is never measured nor painted with each other's fonts.</p>
+ * <p>All the methods of this class should be called only in the AWT's Event Dispatch Thread or,
+ * for confined surfaces, only in the thread that created it.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+final class RenderSurface {
+
+    /**
+     * Loads a document into a surface.
+     */
+    @FunctionalInterface
+    static interface Loader {
+
+        /**
+         * Loads a document into a surface. Called in the thread where the surface is used.
+         * @param surface The surface, which is either just created or reset.
+         * @param recorder Gathers the metrics of the render.
+         * @return The tracker of the images in the document or {@code null} if there is none.
+         */
+        public ImageLoadTracker load(@NonNull RenderSurface surface, @NonNull RenderRecorder recorder);
+    }
+
+    /**
+     * The frame that contains the {@link #pane} or {@code null} if this surface is headless.
+     */
+    private final JFrame frame;
+
+    /**
+     * The editor pane that holds the HTML document.
+     */
+    @NonNull
+    private final JEditorPane pane;
+
+    /**
+     * The thread to which this surface is confined or {@code null} if it is used in the AWT's Event Dispatch Thread.
+     */
+    private final Thread owner;
+
+    /**
+     * The preferred heights of the documents already laid out at a fixed width.
+     */
+    private static final LayoutHeightCache HEIGHTS = new LayoutHeightCache(1024);
+
+    /**
+     * The fixed width of the loaded document or zero if it is laid out at its preferred width.
+     */
+    private int width;
+
+    /**
+     * The fixed height of the painted images or zero if it is the height of the loaded document.
+     */
+    private int pageHeight;
+
+    /**
+     * The maximum height of the painted images or zero if it is unbounded.
+     */
+    private int maxHeight;
+
+    /**
+     * The fixed scale of the painted images, which is one if they are not scaled or if they are fit into a bounding box.
+     */
+    private double scale = 1.0;
+
+    /**
+     * The box where the painted images are fit or {@code null} if there is none.
+     */
+    private Dimension box;
+
+    /**
+     * How the document is painted when it is scaled.
+     */
+    private ScaleQuality scaleQuality;
+
+    /**
+     * The key of the loaded document in the {@link #HEIGHTS} or {@code null} if it is laid out at its preferred width.
+     */
+    private String layoutKey;
+
+    /**
+     * Gathers the metrics of the render of the loaded document.
+     */
+    @NonNull
+    private RenderRecorder recorder;
+
+    /**
+     * The base style sheet linked to the loaded document or {@code null} if there is none.
+     */
+    private SharedStyleSheet styleSheet;
+
+    /**
+     * The lease of the loaded document, if it was parsed from a template, or {@code null} otherwise.
+     */
+    private HtmlTemplate.Lease lease;
+
+    /**
+     * Sole constructor.
+     * @param frame The frame that contains the {@code pane} or {@code null} if this surface is headless.
+     * @param pane The editor pane that holds the HTML document.
+     * @param owner The thread to which this surface is confined or {@code null} if it is used in the
+     *     AWT's Event Dispatch Thread.
+     */
+    private RenderSurface(JFrame frame, @NonNull JEditorPane pane, Thread owner) {
+        this.frame = frame;
+        this.pane = pane;
+        this.owner = owner;
+        this.recorder = RenderRecorder.DISABLED;
+    }
+
+    /**
+     * Creates a new surface holding an empty HTML document.
+     * @param headless If the surface should be created without any top-level window.
+     * @return The created surface.
+     */
+    public static RenderSurface create(boolean headless) {
+        if (!EventQueue.isDispatchThread()) throw new AssertionError();
+        JEditorPane jep = new JEditorPane();
+        jep.setEditorKit(new RenderEditorKit(false));
+        if (headless) return new RenderSurface(null, jep, null);
+        JFrame jf = new JFrame();
+        jf.setUndecorated(true);
+        jf.add(jep);
+        jf.setResizable(false);
+        return new RenderSurface(jf, jep, null);
+    }
+
+    /**
+     * Creates a new headless surface holding an empty HTML document and confined to the current thread.
+     * @return The created surface.
+     */
+    public static RenderSurface createConfined() {
+        if (EventQueue.isDispatchThread()) throw new AssertionError();
+        JEditorPane jep = new JEditorPane();
+        jep.setEditorKit(new RenderEditorKit(true));
+        return new RenderSurface(null, jep, Thread.currentThread());
+    }
+
+    /**
+     * Checks that this surface is being used in the right thread.
+     */
+    private void checkThread() {
+        if (owner == null ? !EventQueue.isDispatchThread() : Thread.currentThread() != owner) throw new AssertionError();
+    }
+
+    /**
+     * Tells if this surface has no top-level window.
+     * @return {@code true} if this surface has no top-level window, {@code false} otherwise.
+     */
+    public boolean isHeadless() {
+        return frame == null;
+    }
+
+    /**
+     * Loads an HTML source into this surface and lays it out.
+     * <p>This surface must be either just {@linkplain #create(boolean) created} or {@linkplain #reset() reset}.</p>
+     * @param html The HTML source.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render, from now on until this surface is {@linkplain #reset() reset}.
+     * @return The tracker of the images in the document if the {@link CompletionMode} requires one
+     *     or {@code null} otherwise. Confined surfaces never need one, since their images are
+     *     already loaded when this method returns.
+     */
+    public ImageLoadTracker load(@NonNull String html, @NonNull RenderOptions options, @NonNull RenderRecorder recorder) {
+        checkThread();
+        this.recorder = recorder;
+        long parse = recorder.mark();
+        prepare(pane.getDocument(), options);
+        pane.setText(html);
+        recorder.add(RenderPhase.PARSE, parse);
+        return loaded(() -> LayoutHeightCache.key(html, options.getWidth()), options);
+    }
+
+    /**
+     * Loads an HTML source already parsed from a stream into this surface and lays it out.
+     * <p>This surface must be either just {@linkplain #create(boolean) created} or {@linkplain #reset() reset}.</p>
+     * @param html The parsed HTML source.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render, from now on until this surface is {@linkplain #reset() reset}.
+     * @return The tracker of the images in the document if the {@link CompletionMode} requires one
+     *     or {@code null} otherwise. Confined surfaces never need one, since their images are
+     *     already loaded when this method returns.
+     */
+    public ImageLoadTracker load(@NonNull ParsedHtml html, @NonNull RenderOptions options, @NonNull RenderRecorder recorder) {
+        checkThread();
+        this.recorder = recorder;
+        prepare(html.getDocument(), options);
+        pane.setDocument(html.getDocument());
+        return loaded(() -> html.key(options.getWidth()), options);
+    }
+
+    /**
+     * Loads an already parsed document of a template into this surface, with the given values bound to
+     * its placeholders, and lays it out.
+     * <p>This surface must be either just {@linkplain #create(boolean) created} or {@linkplain #reset() reset}.
+     * The document is given back to the template once this surface is {@linkplain #reset() reset} or
+     * {@linkplain #dispose() disposed}.</p>
+     * @param template The template.
+     * @param bound The values of the placeholders, as given by {@link HtmlTemplate#bind(java.util.Map)}.
+     * @param options The render options.
+     * @param recorder Gathers the metrics of the render, from now on until this surface is {@linkplain #reset() reset}.
+     * @return The tracker of the images in the document if the {@link CompletionMode} requires one
+     *     or {@code null} otherwise. Confined surfaces never need one, since their images are
+     *     already loaded when this method returns.
+     */
+    public ImageLoadTracker load(
+            @NonNull HtmlTemplate template,
+            @NonNull Map<String, String> bound,
+            @NonNull RenderOptions options,
+            @NonNull RenderRecorder recorder)
+    {
+        checkThread();
+        this.recorder = recorder;
+        final long parse = recorder.mark();
+        lease = template.lease(bound);
+        prepare(lease.getDocument(), options);
+        pane.setDocument(lease.getDocument());
+        recorder.add(RenderPhase.PARSE, parse);
+        return loaded(() -> LayoutHeightCache.key(template.key(bound), options.getWidth()), options);
+    }
+
+    /**
+     * Prepares a document to be loaded, giving it the image cache and linking it to the shared style sheet of the options.
+     * @param document The document.
+     * @param options The render options.
+     */
+    private void prepare(@NonNull Document document, @NonNull RenderOptions options) {
+        Object images = options.getImageCache().map(ImageResourceCache::asDictionary).orElse(null);
+        document.putProperty(ImageResourceCache.DOCUMENT_PROPERTY, images);
+        styleSheet = options.getStyleSheet().orElse(null);
+        if (styleSheet != null) ((HTMLDocument) document).getStyleSheet().addStyleSheet(styleSheet.sheet());
+    }
+
+    /**
+     * Lays out the document just loaded into this surface.
+     * @param key Gives the key of the document in the {@link #HEIGHTS} at the width of the options, so its layout might
+     *     be remembered. It is only called if the document is laid out at a fixed width.
+     * @param options The render options.
+     * @return The tracker of the images in the document if the {@link CompletionMode} requires one or {@code null} otherwise.
+     */
+    private ImageLoadTracker loaded(@NonNull Supplier<String> key, @NonNull RenderOptions options) {
+        width = options.getWidth();
+        pageHeight = options.getPageHeight();
+        maxHeight = options.getMaxHeight();
+        scale = options.getScale();
+        box = options.getBoundingBox().orElse(null);
+        scaleQuality = options.getScaleQuality();
+        layoutKey = width == 0 ? null : key.get();
+        if (layoutKey != null && styleSheet != null) layoutKey += "/" + styleSheet.digest();
+        int known = layoutKey == null ? 0 : HEIGHTS.get(layoutKey);
+        if (known == 0) {
+            layout();
+        } else {
+            long start = recorder.mark();
+            resize(width, Math.max(known, pageHeight));
+            recorder.add(RenderPhase.LAYOUT, start);
+        }
+        if (frame != null) frame.setLocationRelativeTo(null);
+        boolean track = owner == null && options.getCompletionMode() == CompletionMode.UNTIL_LOADED;
+        return track ? ImageLoadTracker.track(pane) : null;
+    }
+
+    /**
+     * Gives the loaded document, so it might be changed in place.
+     * <p>Once it is changed, {@link #edited(String, RenderRecorder)} must be called before laying it out or painting it again.</p>
+     * @return The loaded document.
+     */
+    public HTMLDocument document() {
+        checkThread();
+        return (HTMLDocument) pane.getDocument();
+    }
+
+    /**
+     * Tells that the loaded document was changed in place, so its layout is no longer the one of its original HTML source.
+     * @param html The HTML source that the document now matches, so its layout might be remembered, or {@code null} if
+     *     there is none.
+     * @param recorder Gathers the metrics of the render of the changed document, from now on until this surface is
+     *     {@linkplain #reset() reset} or edited again.
+     */
+    public void edited(String html, @NonNull RenderRecorder recorder) {
+        checkThread();
+        this.recorder = recorder;
+        layoutKey = width == 0 || html == null ? null : LayoutHeightCache.key(html, width);
+        if (layoutKey != null && styleSheet != null) layoutKey += "/" + styleSheet.digest();
+    }
+
+    /**
+     * Gives where each block of the loaded document is, as it was {@linkplain #measure() last laid out}.
+     * <p>The blocks are the branch elements of the document, like paragraphs, table cells and the body itself.
+     * Comparing the blocks before and after the document is changed tells which regions must be painted again.</p>
+     * @return The bounds of each block in the editor pane.
+     */
+    public Map<Element, Rectangle> blocks() {
+        checkThread();
+        Insets in = pane.getInsets();
+        Rectangle alloc = new Rectangle(in.left, in.top, pane.getWidth() - in.left - in.right, pane.getHeight() - in.top - in.bottom);
+        Map<Element, Rectangle> blocks = new HashMap<>();
+        blocks(pane.getUI().getRootView(pane), alloc, blocks);
+        return blocks;
+    }
+
+    /**
+     * Recursively finds where each block of a view tree is.
+     * <p>When many nested views are of the same element, as the rows of a paragraph are, the outermost one is used.</p>
+     * @param view The root of the view tree.
+     * @param alloc Where the root of the view tree is, or {@code null} if it has no place.
+     * @param blocks Where the bounds of each block are put.
+     */
+    private static void blocks(@NonNull View view, Shape alloc, @NonNull Map<Element, Rectangle> blocks) {
+        Element e = view.getElement();
+        if (e == null || e.isLeaf() || alloc == null) return;
+        blocks.putIfAbsent(e, alloc.getBounds());
+        for (int i = 0; i < view.getViewCount(); i++) {
+            blocks(view.getView(i), view.getChildAllocation(i, alloc), blocks);
+        }
+    }
+
+    /**
+     * Gives the recorder that gathers the metrics of the render of the loaded document.
+     * <p>Unlike the other methods, this one might be called in any thread that takes part in the render.</p>
+     * @return The recorder that gathers the metrics of the render of the loaded document,
+     *     which is {@link RenderRecorder#DISABLED} if there is none.
+     */
+    public RenderRecorder recorder() {
+        return recorder;
+    }
+
+    /**
+     * Sizes the editor pane to its preferred size or, if the width is fixed, to its preferred height
+     * at that width, timing it as the {@link RenderPhase#LAYOUT} phase.
+     */
+    private void layout() {
+        long start = recorder.mark();
+        fit();
+        recorder.add(RenderPhase.LAYOUT, start);
+    }
+
+    /**
+     * Sizes the editor pane to its preferred size or, if the width is fixed, to its preferred height
+     * at that width. Does nothing if the editor pane already has that size.
+     */
+    private void fit() {
+        if (width == 0) {
+            Dimension preferred = pane.getPreferredSize();
+            if (preferred.equals(pane.getSize())) return;
+            if (frame == null) {
+                pane.setSize(preferred);
+            } else {
+                frame.pack();
+            }
+            return;
+        }
+        if (pane.getWidth() != width) pane.setSize(width, Short.MAX_VALUE);
+
+        // The UI gives the preferred height at the current width, while the preferred size of
+        // the editor pane itself might had been fixed by a previous resize.
+        int preferred = pane.getUI().getPreferredSize(pane).height;
+        if (layoutKey != null) HEIGHTS.put(layoutKey, preferred);
+        int height = Math.max(preferred, pageHeight);
+        if (pane.getHeight() != height) resize(width, height);
+    }
+
+    /**
+     * Sizes the editor pane to a given size.
+     * @param w The width.
+     * @param h The height.
+     */
+    private void resize(int w, int h) {
+        if (frame == null) {
+            pane.setSize(w, h);
+        } else {
+            pane.setPreferredSize(new Dimension(w, h));
+            frame.pack();
+        }
+    }
+
+    /**
+     * Gives the height of the painted images, which is the height of the editor pane, unless it is
+     * either fixed or clipped.
+     * @return The height of the painted images.
+     */
+    private int paintedHeight() {
+        int h = pageHeight == 0 ? pane.getHeight() : pageHeight;
+        return Math.max(1, maxHeight == 0 ? h : Math.min(h, maxHeight));
+    }
+
+    /**
+     * Lays out again the loaded document, since its images might had changed its size, and paints it.
+     * @param type The pixel type of the painted image.
+     * @return The painted image.
+     */
+    public BufferedImage paint(@NonNull PixelType type) {
+        checkThread();
+        layout();
+        long start = recorder.mark();
+        BufferedImage image = screenshot(type);
+        recorder.add(RenderPhase.PAINT, start);
+        recorder.allocated(image);
+        recorder.size(image.getWidth(), image.getHeight());
+        return image;
+    }
+
+    /**
+     * Lays out again the loaded document, since its images might had changed its size, and paints it
+     * into an image leased from a pool.
+     * @param pool The pool where the image is leased from.
+     * @param type The pixel type of the painted image.
+     * @return The lease of the painted image.
+     */
+    public RenderTarget paint(@NonNull RenderTargetPool pool, @NonNull PixelType type) {
+        checkThread();
+        layout();
+        RenderTarget target = pool.acquire(Math.max(1, pane.getWidth()), paintedHeight(), type);
+        long start = recorder.mark();
+        Screenshot.screenshot(pane, 0, target.getImage());
+        recorder.add(RenderPhase.PAINT, start);
+        recorder.size(target.getImage().getWidth(), target.getImage().getHeight());
+        return target;
+    }
+
+    /**
+     * Paints some regions of the loaded document, as it was {@linkplain #measure() last laid out}, into an image where
+     * it was already painted before, leaving the rest of the image untouched.
+     * @param image The image.
+     * @param regions The regions that should be painted again.
+     */
+    public void paint(@NonNull BufferedImage image, @NonNull List<Rectangle> regions) {
+        checkThread();
+        long start = recorder.mark();
+        for (Rectangle region : regions) {
+            Screenshot.screenshot(pane, region, image);
+        }
+        recorder.add(RenderPhase.PAINT, start);
+        recorder.size(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Paints the loaded document, as it was last laid out, into a new image, scaled if the render options say so.
+     * @param type The pixel type of the painted image.
+     * @return The painted image.
+     */
+    private BufferedImage screenshot(@NonNull PixelType type) {
+        int h = paintedHeight();
+        int w = Math.max(1, pane.getWidth());
+        double s = box == null ? scale : Math.min(1.0, Math.min(box.width / (double) w, box.height / (double) h));
+        if (s != 1.0) {
+            BufferedImage target = type.create(Math.max(1, (int) Math.round(w * s)), Math.max(1, (int) Math.round(h * s)));
+            return Screenshot.thumbnail(pane, w, h, target, scaleQuality);
+        }
+        if (h != pane.getHeight()) return Screenshot.screenshot(pane, 0, type.create(Math.max(1, pane.getWidth()), h));
+        return frame == null || type != PixelType.RGB ? Screenshot.screenshotHeadless(pane, type) : Screenshot.screenshot(pane);
+    }
+
+    /**
+     * Lays out again the loaded document, since its images might had changed its size, so it might be
+     * {@linkplain #paintBand(int, BufferedImage) painted in bands}.
+     * @return The size of the document.
+     */
+    public Dimension measure() {
+        checkThread();
+        layout();
+        Dimension size = new Dimension(pane.getWidth(), pane.getHeight() == 0 ? 0 : paintedHeight());
+        recorder.size(size.width, size.height);
+        return size;
+    }
+
+    /**
+     * Paints a horizontal band of the loaded document, as it was {@linkplain #measure() last laid out}.
+     * @param y The first row of the band.
+     * @param band The image where the band should be painted.
+     */
+    public void paintBand(int y, @NonNull BufferedImage band) {
+        checkThread();
+        long start = recorder.mark();
+        Screenshot.screenshot(pane, y, band);
+        recorder.add(RenderPhase.PAINT, start);
+    }
+
+    /**
+     * Discards the loaded document, so this surface might be used again for loading another one.
+     * <p>The previous document is replaced by a new empty one, so nothing from it (styles, base URL,
+     * loaded images, listeners) leaks into the next render, and the size of the editor pane is cleared,
+     * so the next document is laid out exactly as it would be in a fresh surface.</p>
+     */
+    public void reset() {
+        checkThread();
+        pane.setDocument(pane.getEditorKit().createDefaultDocument());
+        release();
+        pane.setPreferredSize(null);
+        pane.setSize(0, 0);
+        if (frame != null) frame.setSize(0, 0);
+        width = 0;
+        pageHeight = 0;
+        maxHeight = 0;
+        scale = 1.0;
+        box = null;
+        scaleQuality = null;
+        layoutKey = null;
+        styleSheet = null;
+        recorder = RenderRecorder.DISABLED;
+    }
+
+    /**
+     * Releases the native resources of this surface. It should not be used afterwards.
+     */
+    public void dispose() {
+        checkThread();
+        if (lease != null) {
+            pane.setDocument(pane.getEditorKit().createDefaultDocument());
+            release();
+        }
+        if (frame != null) frame.dispose();
+    }
+
+    /**
+     * Gives the loaded document back to its template, if it was parsed from one.
+     * The document must had been already replaced in the editor pane.
+     */
+    private void release() {
+        if (lease == null) return;
+        lease.getDocument().putProperty(ImageResourceCache.DOCUMENT_PROPERTY, null);
+        if (styleSheet != null) lease.getDocument().getStyleSheet().removeStyleSheet(styleSheet.sheet());
+        lease.release();
+        lease = null;
+    }
+}
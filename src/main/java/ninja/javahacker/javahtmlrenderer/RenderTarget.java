@@ -0,0 +1,97 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import lombok.NonNull;
+
+/**
+ * An image leased from a {@link RenderTargetPool}.
+ * <p>The {@linkplain #getImage() image} has exactly the requested size, but shares its pixels with a possibly
+ * larger pooled image. It should not be used anymore after this lease is {@linkplain #close() closed},
+ * since its pixels are then handed to someone else. Callers that need to keep the pixels should copy them
+ * before closing the lease.</p>
+ * <p>This should be used as such:</p>
+ * <pre>
+ *     try (RenderTarget target = pool.acquire(width, height, PixelType.RGB)) {
+ *         Screenshot.screenshot(component, target.getImage());
+ *         ImageIO.write(target.getImage(), "png", out);
+ *     }
+ * </pre>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings({"IMC_IMMATURE_CLASS_NO_TOSTRING", "EI_EXPOSE_REP"})
+public final class RenderTarget implements AutoCloseable {
+
+    /**
+     * The pool where the pooled image is given back to.
+     */
+    @NonNull
+    private final RenderTargetPool pool;
+
+    /**
+     * The pooled image.
+     */
+    @NonNull
+    private final BufferedImage backing;
+
+    /**
+     * The image with the requested size, sharing its pixels with the {@link #backing} image.
+     */
+    @NonNull
+    private final BufferedImage image;
+
+    /**
+     * The pixel type of the image.
+     */
+    @NonNull
+    private final PixelType type;
+
+    /**
+     * Tells if this lease was already closed.
+     * <p>This is accessed only while holding the lock of this object.</p>
+     */
+    private boolean closed;
+
+    /**
+     * Sole constructor.
+     * @param pool The pool where the pooled image is given back to.
+     * @param backing The pooled image.
+     * @param type The pixel type of the image.
+     * @param width The requested width.
+     * @param height The requested height.
+     */
+    RenderTarget(@NonNull RenderTargetPool pool, @NonNull BufferedImage backing, @NonNull PixelType type, int width, int height) {
+        this.pool = pool;
+        this.backing = backing;
+        this.type = type;
+        this.image = backing.getWidth() == width && backing.getHeight() == height ? backing : backing.getSubimage(0, 0, width, height);
+    }
+
+    /**
+     * Returns the leased image, with exactly the requested size.
+     * @return The leased image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the pixel type of the leased image.
+     * @return The pixel type of the leased image.
+     */
+    public PixelType getPixelType() {
+        return type;
+    }
+
+    /**
+     * Gives the image back to its pool. Closing an already closed lease has no effect.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        pool.giveBack(backing, type);
+    }
+}
@@ -0,0 +1,185 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * A pool of reusable images where the documents are painted.
+ * <p>Painting a large document allocates a large image, and allocating a new one for each render puts a lot of
+ * pressure on the garbage collector. Instead, the images might be {@linkplain #acquire(int, int, PixelType) leased}
+ * from this pool and given back once their pixels were consumed, so later renders of similar sizes reuse them.</p>
+ * <p>The images are bucketed by their pixel type and by their size rounded up, so images of slightly different
+ * sizes are served by the same bucket. Each dimension is rounded up to a multiple of 64 or of an eighth of its
+ * highest power of two, whichever is larger, so no more than about an eighth of each dimension is wasted.</p>
+ * <p>The idle images are kept up to a given total size in bytes of their pixels. Images given back when
+ * that size would be exceeded are just discarded.</p>
+ * <p>Instances of this class are thread-safe.</p>
+ * @see HtmlRenderEngine#render(String, RenderOptions, RenderTargetPool)
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class RenderTargetPool {
+
+    /**
+     * The smallest rounding step of the dimensions of the pooled images.
+     */
+    private static final int MIN_STEP = 64;
+
+    /**
+     * The pixel type and the rounded size of a group of interchangeable pooled images.
+     * @param type The pixel type.
+     * @param width The rounded width.
+     * @param height The rounded height.
+     */
+    private static record Bucket(@NonNull PixelType type, int width, int height) {
+    }
+
+    /**
+     * The maximum total size in bytes of the pixels of the idle images.
+     */
+    private final long maxIdleBytes;
+
+    /**
+     * The idle images of each bucket.
+     * <p>This is accessed only while holding its own lock.</p>
+     */
+    @NonNull
+    private final Map<Bucket, Deque<BufferedImage>> idle;
+
+    /**
+     * The total size in bytes of the pixels of the idle images.
+     * <p>This is accessed only while holding the lock of the {@link #idle}.</p>
+     */
+    private long idleBytes;
+
+    /**
+     * How many images were allocated.
+     */
+    @NonNull
+    private final AtomicLong allocations;
+
+    /**
+     * How many leases reused an idle image.
+     */
+    @NonNull
+    private final AtomicLong reuses;
+
+    /**
+     * Creates an empty pool.
+     * @param maxIdleBytes The maximum total size in bytes of the pixels of the idle images.
+     * @throws IllegalArgumentException If the {@code maxIdleBytes} is negative.
+     */
+    public RenderTargetPool(long maxIdleBytes) {
+        if (maxIdleBytes < 0) throw new IllegalArgumentException("The maxIdleBytes can't be negative.");
+        this.maxIdleBytes = maxIdleBytes;
+        this.idle = new HashMap<>();
+        this.allocations = new AtomicLong();
+        this.reuses = new AtomicLong();
+    }
+
+    /**
+     * Returns the maximum total size in bytes of the pixels of the idle images.
+     * @return The maximum total size in bytes of the pixels of the idle images.
+     */
+    public long getMaxIdleBytes() {
+        return maxIdleBytes;
+    }
+
+    /**
+     * Returns the total size in bytes of the pixels of the images currently idle in this pool.
+     * @return The total size in bytes of the pixels of the images currently idle in this pool.
+     */
+    public long getIdleBytes() {
+        synchronized (idle) {
+            return idleBytes;
+        }
+    }
+
+    /**
+     * Returns how many images were allocated by this pool.
+     * @return How many images were allocated by this pool.
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * Returns how many leases reused an idle image instead of allocating a new one.
+     * @return How many leases reused an idle image.
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    /**
+     * Leases an image with the given size and pixel type, reusing an idle one if possible.
+     * <p>The contents of a reused image are whatever was left there by its previous lease.</p>
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param type The pixel type of the image.
+     * @return The lease of the image, which should be closed once the image is no longer used.
+     * @throws IllegalArgumentException If the {@code width} or the {@code height} are not positive or
+     *     if the {@code type} is {@code null}.
+     */
+    public RenderTarget acquire(int width, int height, @NonNull PixelType type) {
+        if (width < 1 || height < 1) throw new IllegalArgumentException("The width and the height must be positive.");
+        Bucket bucket = new Bucket(type, roundUp(width), roundUp(height));
+        BufferedImage image = null;
+        synchronized (idle) {
+            Deque<BufferedImage> images = idle.get(bucket);
+            if (images != null) {
+                image = images.pollFirst();
+                if (images.isEmpty()) idle.remove(bucket);
+            }
+            if (image != null) idleBytes -= RenderCache.sizeOf(image);
+        }
+        if (image == null) {
+            allocations.incrementAndGet();
+            image = type.create(bucket.width(), bucket.height());
+        } else {
+            reuses.incrementAndGet();
+        }
+        return new RenderTarget(this, image, type, width, height);
+    }
+
+    /**
+     * Discards all the idle images.
+     */
+    public void clear() {
+        synchronized (idle) {
+            idle.clear();
+            idleBytes = 0;
+        }
+    }
+
+    /**
+     * Gives an image back to this pool, or discards it if the pool has no room for it.
+     * @param image The image.
+     * @param type The pixel type of the image.
+     */
+    void giveBack(@NonNull BufferedImage image, @NonNull PixelType type) {
+        long size = RenderCache.sizeOf(image);
+        synchronized (idle) {
+            if (idleBytes + size > maxIdleBytes) return;
+            idle.computeIfAbsent(new Bucket(type, image.getWidth(), image.getHeight()), b -> new ArrayDeque<>()).addFirst(image);
+            idleBytes += size;
+        }
+    }
+
+    /**
+     * Rounds up a dimension to the size of its bucket.
+     * @param n The dimension.
+     * @return The rounded dimension.
+     */
+    private static int roundUp(int n) {
+        int step = Math.max(MIN_STEP, Integer.highestOneBit(n) / 8);
+        long rounded = ((long) n + step - 1) / step * step;
+        return (int) Math.min(rounded, Integer.MAX_VALUE);
+    }
+}
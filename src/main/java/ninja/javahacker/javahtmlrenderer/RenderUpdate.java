@@ -0,0 +1,87 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import lombok.NonNull;
+
+/**
+ * The outcome of a render of a {@link RenderSession}: the updated image and where it changed.
+ * <p>Instances of this class are immutable, except for the image, which is not copied.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("EI_EXPOSE_REP")
+public final class RenderUpdate {
+
+    /**
+     * The updated image.
+     */
+    @NonNull
+    private final BufferedImage image;
+
+    /**
+     * The regions of the image that were painted again.
+     */
+    @NonNull
+    private final List<Rectangle> dirtyRegions;
+
+    /**
+     * Tells if the whole image was painted again.
+     */
+    private final boolean fullRepaint;
+
+    /**
+     * Sole constructor.
+     * @param image The updated image.
+     * @param dirtyRegions The regions of the image that were painted again.
+     * @param fullRepaint Tells if the whole image was painted again.
+     */
+    RenderUpdate(@NonNull BufferedImage image, @NonNull List<Rectangle> dirtyRegions, boolean fullRepaint) {
+        this.image = image;
+        this.dirtyRegions = List.copyOf(dirtyRegions);
+        this.fullRepaint = fullRepaint;
+    }
+
+    /**
+     * Returns the updated image.
+     * <p>The image belongs to the session and it is painted again in place by the following renders of the session,
+     * unless its size changes. So, it should be copied if it is needed after the next render.</p>
+     * @return The updated image.
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the regions of the image that were painted again.
+     * <p>The pixels outside of these regions are the same as in the image of the previous render of the session.
+     * The regions do not overlap and are sorted by their top and then by their left coordinates. Changing the returned
+     * rectangles does not affect this object.</p>
+     * @return The regions of the image that were painted again, which is empty if nothing changed.
+     */
+    public List<Rectangle> getDirtyRegions() {
+        return dirtyRegions.stream().map(Rectangle::new).toList();
+    }
+
+    /**
+     * Tells if the whole image was painted again, in which case the {@linkplain #getDirtyRegions() dirty regions}
+     * are just the whole image.
+     * <p>That happens on the first render of a session, when the size of the image changes, when the document
+     * could not be changed in place or when too much of it changed.</p>
+     * @return {@code true} if the whole image was painted again, {@code false} otherwise.
+     */
+    public boolean isFullRepaint() {
+        return fullRepaint;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "RenderUpdate(width=" + image.getWidth() + ", height=" + image.getHeight() + ", dirtyRegions=" + dirtyRegions
+                + ", fullRepaint=" + fullRepaint + ")";
+    }
+}
@@ -0,0 +1,136 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import lombok.NonNull;
+
+/**
+ * The main class of the worker processes of a {@link RenderFarm}.
+ * <p>It reads {@linkplain RenderProtocol.Request requests} from its standard input, renders each one of them
+ * headless in its own AWT's Event Dispatch Thread and writes the {@linkplain RenderProtocol.Response responses} to
+ * its standard output, until its standard input is closed. Anything else that would be printed to the standard
+ * output goes to the standard error instead, so it never corrupts the responses.</p>
+ * <p>It {@linkplain HtmlRenderer#warmUpInBackground() warms up} as soon as it starts, so a fresh worker pays the
+ * startup costs of the first render while it still waits for its first request.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class RenderWorker {
+
+    /**
+     * Instantiating this class in not allowed.
+     */
+    private RenderWorker() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Serves the requests of the farm until the standard input is closed.
+     * @param args Not used.
+     * @throws IOException If reading the standard input or writing the standard output fails.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    @SuppressFBWarnings("DM_EXIT")
+    public static void main(String[] args) throws IOException, InterruptedException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true, StandardCharsets.UTF_8));
+
+        // Warms up while the farm has no request for this worker yet.
+        WarmUp.start();
+        while (true) {
+            RenderProtocol.Request request;
+            try {
+                request = RenderProtocol.readRequest(in);
+            } catch (EOFException e) {
+                break;
+            }
+            RenderProtocol.write(out, serve(request));
+        }
+
+        // The AWT's Event Dispatch Thread keeps the JVM alive.
+        System.exit(0);
+    }
+
+    /**
+     * Renders a request.
+     * @param request The request.
+     * @return The response.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    private static RenderProtocol.Response serve(RenderProtocol.Request request) throws InterruptedException {
+        try {
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            RenderOptions options = request.options();
+            Dimension size = options.isScaled()
+                    ? encodeScaled(request.html(), options, request.format(), image)
+                    : HtmlRenderer.render(request.html(), options, request.format(), image);
+            Runtime rt = Runtime.getRuntime();
+            long heap = rt.totalMemory() - rt.freeMemory();
+            return new RenderProtocol.Response(RenderProtocol.OK, size.width, size.height, heap, image.toByteArray());
+        } catch (IllegalArgumentException e) {
+            return failure(RenderProtocol.INVALID, e);
+        } catch (IOException | RuntimeException e) {
+            return failure(RenderProtocol.FAILED, e);
+        }
+    }
+
+    /**
+     * Renders a request whose options scale the rendered image and encodes it.
+     * <p>Scaled documents are painted straight into the smaller image, which is not painted in bands, so it is
+     * rendered whole and only then encoded. Still, it takes only as much memory as the scaled image.</p>
+     * @param html The HTML that should be rendered.
+     * @param options The render options.
+     * @param format The image format.
+     * @param out Where the encoded image is written.
+     * @return The size of the rendered image.
+     * @throws InterruptedException If the main thread is interrupted.
+     * @throws IOException If encoding fails.
+     */
+    private static Dimension encodeScaled(
+            @NonNull String html,
+            @NonNull RenderOptions options,
+            @NonNull ImageFormat format,
+            @NonNull OutputStream out)
+            throws InterruptedException, IOException
+    {
+        PixelType type = format == ImageFormat.JPEG && options.getPixelType() == PixelType.ARGB ? PixelType.RGB : options.getPixelType();
+        BufferedImage image = HtmlRenderer.render(html, options.withPixelType(type));
+        Dimension size = new Dimension(image.getWidth(), image.getHeight());
+        ImageEncoder encoder = ImageEncoder.create(format, size, type, Channels.newChannel(out));
+        try {
+            encoder.accept(0, image);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        encoder.finish();
+        return size;
+    }
+
+    /**
+     * Creates the response of a failed render.
+     * @param status Either {@link RenderProtocol#INVALID} or {@link RenderProtocol#FAILED}.
+     * @param cause Why the render failed.
+     * @return The response.
+     */
+    private static RenderProtocol.Response failure(int status, Exception cause) {
+        byte[] message = String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8);
+        return new RenderProtocol.Response(status, 0, 0, 0, message);
+    }
+}
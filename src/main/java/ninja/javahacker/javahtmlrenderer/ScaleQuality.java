@@ -0,0 +1,33 @@
+package ninja.javahacker.javahtmlrenderer;
+
+/**
+ * Defines how the documents are painted when they are scaled, as when rendering thumbnails.
+ * <p>Scaled documents are painted straight into the smaller image, with their text, borders and backgrounds drawn at
+ * the scaled size. So, unlike scaling an image of the whole document, the time and memory spent depend on the size
+ * of the scaled image, not on the size of the document.</p>
+ * @see RenderOptions#withScaleQuality(ScaleQuality)
+ * @see Screenshot#thumbnail(java.awt.Component, java.awt.image.BufferedImage, ScaleQuality)
+ * @author Victor Williams Stafusa da Silva
+ */
+public enum ScaleQuality {
+
+    /**
+     * Paints straight into the scaled image without antialiasing, picking the nearest pixel of the scaled images.
+     * <p>This is the fastest, but thin lines and small text might get jagged or even vanish.</p>
+     */
+    FAST,
+
+    /**
+     * Paints straight into the scaled image with antialiasing, interpolating the scaled images bilinearly.
+     * <p>This is the default.</p>
+     */
+    BILINEAR,
+
+    /**
+     * Paints into an image up to four times as large as the scaled one, with antialiasing, and then halves it,
+     * interpolating bilinearly, until it has the scaled size.
+     * <p>This is the slowest, but gives the smoothest results for small thumbnails. Still, the intermediate images
+     * depend only on the size of the scaled image.</p>
+     */
+    PROGRESSIVE;
+}
@@ -1,9 +1,14 @@
 package ninja.javahacker.javahtmlrenderer;
 
+import java.awt.AlphaComposite;
 import java.awt.Component;
-import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
 
 /**
  * Takes screenshots of AWT {@link Component}s.
@@ -12,6 +17,14 @@ import java.awt.image.BufferedImage;
  *     java.awt.Component c = ...;
  *     BufferedImage img = Screenshot.screenshot(c);
  * </pre>
+ * <p>Instead of allocating a new image for each screenshot, the component might be painted into an image or
+ * raster given by the caller, which might be reused across many screenshots or taken from a {@link RenderTargetPool}:</p>
+ * <pre>
+ *     BufferedImage target = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+ *     Screenshot.screenshot(c, target);
+ * </pre>
+ * <p>For very large components, the screenshot might be taken into a {@link DirectImage}, whose pixels are
+ * stored outside of the Java heap.</p>
  * <p>Note that this code should never be used outside the AWT's Event Dispatch Thread
  * because AWT's component are not thread-safe and should never be used outside that thread.
  * Doing so is very likely to result in race-conditions, or data corruption.
@@ -20,6 +33,11 @@ import java.awt.image.BufferedImage;
  */
 public final class Screenshot {
 
+    /**
+     * The height of the bands painted at a time when taking screenshots into images stored outside of the Java heap.
+     */
+    private static final int BAND_HEIGHT = 128;
+
     /**
      * Instantiating this class in not allowed.
      */
@@ -29,18 +47,318 @@ public final class Screenshot {
 
     /**
      * Takes an screenshot of some AWT's component.
+     * <p>The image is created compatible with the default screen device. If the
+     * {@linkplain GraphicsEnvironment#isHeadless() environment is headless}, there is no screen device,
+     * so this behaves like {@link #screenshotHeadless(Component)}.</p>
      * @param c The component to be screenshot'd.
      * @return An image representing the screenshot of the component.
      * @throws IllegalArgumentException If the {@code c} is {@code null}.
      */
     public static BufferedImage screenshot(Component c) {
         if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (GraphicsEnvironment.isHeadless()) return screenshotHeadless(c);
         BufferedImage image = GraphicsEnvironment
                 .getLocalGraphicsEnvironment()
                 .getDefaultScreenDevice()
                 .getDefaultConfiguration()
                 .createCompatibleImage(c.getWidth(), c.getHeight());
-        Graphics graphics = image.createGraphics();
+        return paint(c, image);
+    }
+
+    /**
+     * Takes an screenshot of some AWT's component into a given image, without allocating any new one.
+     * <p>The component is painted at the top-left corner of the image. Only the region covered by the
+     * component is cleared before, to transparent black, and the rest of the image is left untouched.</p>
+     * @param c The component to be screenshot'd.
+     * @param target The image where the component should be painted.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If the {@code c} or the {@code target} are {@code null} or
+     *     if the {@code target} is smaller than the component.
+     */
+    public static BufferedImage screenshot(Component c, BufferedImage target) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        if (target.getWidth() < c.getWidth() || target.getHeight() < c.getHeight()) {
+            throw new IllegalArgumentException("The target is smaller than the component.");
+        }
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, c.getWidth(), c.getHeight());
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.clipRect(0, 0, c.getWidth(), c.getHeight());
+            c.print(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Takes an screenshot of a horizontal band of some AWT's component into a given image, without allocating any new one.
+     * <p>The rows of the component starting at {@code y} are painted at the top of the image, as many as fit in it.
+     * Only the region covered by those rows is cleared before, to transparent black, and the rest of the image is
+     * left untouched. Painting the consecutive bands of a component gives exactly the same pixels as
+     * {@linkplain #screenshot(Component, BufferedImage) painting all of it at once}, but only needs an
+     * image as large as a band.</p>
+     * @param c The component to be screenshot'd.
+     * @param y The first row of the band.
+     * @param target The image where the band should be painted.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If the {@code c} or the {@code target} are {@code null}, if the {@code target}
+     *     is narrower than the component or if the {@code y} is not a row of the component.
+     */
+    public static BufferedImage screenshot(Component c, int y, BufferedImage target) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        if (target.getWidth() < c.getWidth()) throw new IllegalArgumentException("The target is narrower than the component.");
+        if (y < 0 || y >= c.getHeight()) throw new IllegalArgumentException("The y is not a row of the component.");
+        int rows = Math.min(target.getHeight(), c.getHeight() - y);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, c.getWidth(), rows);
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.clipRect(0, 0, c.getWidth(), rows);
+            graphics.translate(0, -y);
+            c.print(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Takes an screenshot of a region of some AWT's component into the same region of a given image, without
+     * allocating any new one.
+     * <p>Only the pixels of the region that are within both the component and the image are cleared, to transparent
+     * black, and painted again. The rest of the image is left untouched. So, if the component changed only within the
+     * region since it was painted into the image, the image gets exactly the same pixels as
+     * {@linkplain #screenshot(Component, BufferedImage) painting all of it again}.</p>
+     * @param c The component to be screenshot'd.
+     * @param region The region of the component that should be painted.
+     * @param target The image where the region should be painted.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If the {@code c}, the {@code region} or the {@code target} are {@code null}.
+     */
+    public static BufferedImage screenshot(Component c, Rectangle region, BufferedImage target) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (region == null) throw new IllegalArgumentException("The region can't be null.");
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        Rectangle clip = region
+                .intersection(new Rectangle(0, 0, c.getWidth(), c.getHeight()))
+                .intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+        if (clip.isEmpty()) return target;
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fill(clip);
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.clip(clip);
+            c.print(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Takes an screenshot of some AWT's component into a given raster, without allocating any new one.
+     * <p>The raster is wrapped in an image of the given pixel type, which shares its pixels, and the component
+     * is painted into it as done by {@link #screenshot(Component, BufferedImage)}. So, the raster might be
+     * a child raster of some larger one, which is painted at the location of the child.</p>
+     * @param c The component to be screenshot'd.
+     * @param target The raster where the component should be painted.
+     * @param type The pixel type of the pixels stored in the raster.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If the {@code c}, the {@code target} or the {@code type} are {@code null},
+     *     if the {@code target} is smaller than the component or if it does not store pixels of the given type.
+     */
+    public static WritableRaster screenshot(Component c, WritableRaster target, PixelType type) {
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        if (type == null) throw new IllegalArgumentException("The type can't be null.");
+        ColorModel cm = type.getColorModel();
+        if (!cm.isCompatibleRaster(target)) throw new IllegalArgumentException("The target does not store pixels of that type.");
+        WritableRaster origin = target.createWritableTranslatedChild(0, 0);
+        screenshot(c, new BufferedImage(cm, origin, cm.isAlphaPremultiplied(), null));
+        return target;
+    }
+
+    /**
+     * Takes an screenshot of some AWT's component into an image stored outside of the Java heap.
+     * <p>The component is painted in horizontal bands into a single small image, as done by
+     * {@link #screenshot(Component, int, BufferedImage)}, and each band is copied into the {@code target},
+     * so no image as large as the component is ever allocated in the heap. The rows of the {@code target}
+     * covered by the component are replaced whole, with transparent black at the right of the component, and
+     * the rows below it are left untouched.</p>
+     * @param c The component to be screenshot'd.
+     * @param target The image where the component should be painted.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If the {@code c} or the {@code target} are {@code null} or
+     *     if the {@code target} is smaller than the component.
+     */
+    public static DirectImage screenshot(Component c, DirectImage target) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        if (target.getWidth() < c.getWidth() || target.getHeight() < c.getHeight()) {
+            throw new IllegalArgumentException("The target is smaller than the component.");
+        }
+        if (c.getWidth() == 0 || c.getHeight() == 0) return target;
+        BufferedImage band = target.getPixelType().create(target.getWidth(), Math.min(BAND_HEIGHT, c.getHeight()));
+        for (int y = 0; y < c.getHeight(); y += BAND_HEIGHT) {
+            int rows = Math.min(BAND_HEIGHT, c.getHeight() - y);
+            screenshot(c, y, band);
+            target.put(y, rows == band.getHeight() ? band : band.getSubimage(0, 0, band.getWidth(), rows));
+        }
+        return target;
+    }
+
+    /**
+     * Takes a scaled screenshot of some AWT's component into a given image, without allocating any image as large
+     * as the component.
+     * <p>The component is painted with a scaled transform, so that it fills the whole image, straight into it or,
+     * with {@link ScaleQuality#PROGRESSIVE}, into images up to four times as large as it. So, the time and memory
+     * spent depend on the size of the image, not on the size of the component. The image is cleared before,
+     * to transparent black.</p>
+     * @param c The component to be screenshot'd.
+     * @param target The image where the component should be painted.
+     * @param quality How the component is painted.
+     * @return The {@code target}.
+     * @throws IllegalArgumentException If any parameter is {@code null} or if the component has no area.
+     */
+    public static BufferedImage thumbnail(Component c, BufferedImage target, ScaleQuality quality) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (target == null) throw new IllegalArgumentException("The target can't be null.");
+        if (quality == null) throw new IllegalArgumentException("The quality can't be null.");
+        if (c.getWidth() == 0 || c.getHeight() == 0) throw new IllegalArgumentException("The component has no area.");
+        return thumbnail(c, c.getWidth(), c.getHeight(), target, quality);
+    }
+
+    /**
+     * Takes a scaled screenshot of the top-left region of some AWT's component into a given image, so that the
+     * region fills the whole image.
+     * @param c The component to be screenshot'd.
+     * @param width The width of the region.
+     * @param height The height of the region.
+     * @param target The image where the region should be painted.
+     * @param quality How the region is painted.
+     * @return The {@code target}.
+     */
+    static BufferedImage thumbnail(Component c, int width, int height, BufferedImage target, ScaleQuality quality) {
+        int w = target.getWidth();
+        int h = target.getHeight();
+        if (quality != ScaleQuality.PROGRESSIVE) return paintScaled(c, width, height, target, quality);
+        int steps = 0;
+        while (steps < 2 && (w << (steps + 1)) <= width && (h << (steps + 1)) <= height) {
+            steps++;
+        }
+        if (steps == 0) return paintScaled(c, width, height, target, ScaleQuality.BILINEAR);
+        BufferedImage step = paintScaled(c, width, height, compatible(target, w << steps, h << steps), ScaleQuality.BILINEAR);
+        for (int i = steps - 1; i >= 0; i--) {
+            BufferedImage half = i == 0 ? target : compatible(target, w << i, h << i);
+            Graphics2D graphics = half.createGraphics();
+            try {
+                graphics.setComposite(AlphaComposite.Src);
+                hints(graphics, ScaleQuality.BILINEAR);
+                graphics.drawImage(step, 0, 0, half.getWidth(), half.getHeight(), null);
+            } finally {
+                graphics.dispose();
+            }
+            step = half;
+        }
+        return target;
+    }
+
+    /**
+     * Takes an screenshot of some AWT's component without looking up any screen device.
+     * <p>The image is allocated directly as a {@link BufferedImage#TYPE_INT_RGB} image. The component
+     * does not need to be displayable or to be inside any window, it just needs to have been sized.</p>
+     * @param c The component to be screenshot'd.
+     * @return An image representing the screenshot of the component.
+     * @throws IllegalArgumentException If the {@code c} is {@code null}.
+     */
+    public static BufferedImage screenshotHeadless(Component c) {
+        return screenshotHeadless(c, PixelType.RGB);
+    }
+
+    /**
+     * Takes an screenshot of some AWT's component without looking up any screen device into an image
+     * of the given pixel type.
+     * <p>The component does not need to be displayable or to be inside any window, it just needs to have been sized.</p>
+     * @param c The component to be screenshot'd.
+     * @param type The pixel type of the image.
+     * @return An image representing the screenshot of the component.
+     * @throws IllegalArgumentException If the {@code c} or the {@code type} are {@code null}.
+     */
+    public static BufferedImage screenshotHeadless(Component c, PixelType type) {
+        if (c == null) throw new IllegalArgumentException("The component can't be null.");
+        if (type == null) throw new IllegalArgumentException("The type can't be null.");
+        return paint(c, type.create(c.getWidth(), c.getHeight()));
+    }
+
+    /**
+     * Paints the top-left region of some AWT's component with a scaled transform, so that the region fills
+     * the whole of the given image.
+     * @param c The component to be painted.
+     * @param width The width of the region.
+     * @param height The height of the region.
+     * @param image The image where the region should be painted.
+     * @param quality How the region is painted, which is either {@link ScaleQuality#FAST} or {@link ScaleQuality#BILINEAR}.
+     * @return The {@code image}.
+     */
+    private static BufferedImage paintScaled(Component c, int width, int height, BufferedImage image, ScaleQuality quality) {
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setComposite(AlphaComposite.SrcOver);
+            hints(graphics, quality);
+            graphics.scale(image.getWidth() / (double) width, image.getHeight() / (double) height);
+            graphics.clipRect(0, 0, width, height);
+            c.print(graphics);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Sets the rendering hints of a graphics context for painting with a scaled transform.
+     * @param graphics The graphics context.
+     * @param quality How it should paint, which is either {@link ScaleQuality#FAST} or {@link ScaleQuality#BILINEAR}.
+     */
+    private static void hints(Graphics2D graphics, ScaleQuality quality) {
+        boolean fast = quality == ScaleQuality.FAST;
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                fast ? RenderingHints.VALUE_RENDER_SPEED : RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                fast ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                fast ? RenderingHints.VALUE_ANTIALIAS_OFF : RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                fast ? RenderingHints.VALUE_TEXT_ANTIALIAS_OFF : RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+
+    /**
+     * Creates an image with the same pixel layout of another one, but with another size.
+     * @param image The other image.
+     * @param width The width of the created image.
+     * @param height The height of the created image.
+     * @return The created image.
+     */
+    private static BufferedImage compatible(BufferedImage image, int width, int height) {
+        ColorModel cm = image.getColorModel();
+        return new BufferedImage(cm, cm.createCompatibleWritableRaster(width, height), cm.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Paints some AWT's component into the given image.
+     * @param c The component to be painted.
+     * @param image The image where the component should be painted.
+     * @return The {@code image}.
+     */
+    private static BufferedImage paint(Component c, BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
         c.print(graphics);
         graphics.dispose();
         return image;
@@ -0,0 +1,97 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import javax.swing.text.html.StyleSheet;
+import lombok.NonNull;
+
+/**
+ * A base CSS style sheet, parsed once and shared by all the documents rendered with it.
+ * <p>Giving CSS rules in a {@code <style>} element of each document makes each render parse them again and resolve
+ * them again for each element of the document. Instead, the rules given here are parsed once, and each rule is
+ * resolved once for each distinct element path and then remembered, no matter how many documents use it.
+ * The documents only link to it, just as they already link to the default style sheet of the
+ * {@link javax.swing.text.html.HTMLEditorKit}.</p>
+ * <p>The rules given here override the default ones, and the rules given in the documents themselves,
+ * either in {@code <style>} elements or in {@code style} attributes, override the rules given here.</p>
+ * <p>This is used by giving it to {@link RenderOptions#withStyleSheet(SharedStyleSheet)}:</p>
+ * <pre>
+ *     SharedStyleSheet css = new SharedStyleSheet("td { color: red; } h1 { font-family: Arial; }");
+ *     RenderOptions opt = RenderOptions.defaults().withStyleSheet(css);
+ * </pre>
+ * <p>Instances of this class are immutable and thread-safe, so the same instance might be used by many renders
+ * at once.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+public final class SharedStyleSheet {
+
+    /**
+     * The CSS rules.
+     */
+    @NonNull
+    private final String css;
+
+    /**
+     * The SHA-256 hash of the CSS rules, as an hexadecimal string.
+     */
+    @NonNull
+    private final String digest;
+
+    /**
+     * The parsed rules, which are never changed after being parsed.
+     * <p>It still remembers the resolved rules, which is done while holding its own lock.</p>
+     */
+    @NonNull
+    private final StyleSheet sheet;
+
+    /**
+     * Parses some CSS rules.
+     * @param css The CSS rules.
+     * @throws IllegalArgumentException If the {@code css} is {@code null}.
+     */
+    public SharedStyleSheet(@NonNull String css) {
+        this.css = css;
+        MessageDigest md = RenderCache.sha256();
+        md.update(css.getBytes(StandardCharsets.UTF_8));
+        this.digest = HexFormat.of().formatHex(md.digest());
+        this.sheet = new StyleSheet();
+        sheet.addRule(css);
+    }
+
+    /**
+     * Returns the CSS rules.
+     * @return The CSS rules.
+     */
+    public String getCss() {
+        return css;
+    }
+
+    /**
+     * Gives the SHA-256 hash of the CSS rules, which identifies them in the keys of the caches.
+     * @return The SHA-256 hash of the CSS rules, as an hexadecimal string.
+     */
+    String digest() {
+        return digest;
+    }
+
+    /**
+     * Gives the parsed rules, to be linked to the style sheets of the documents. It must not be changed.
+     * @return The parsed rules.
+     */
+    StyleSheet sheet() {
+        return sheet;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>It identifies the rules by their hash, since they might be long.</p>
+     * @return {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "SharedStyleSheet(sha256=" + digest + ")";
+    }
+}
@@ -0,0 +1,131 @@
+package ninja.javahacker.javahtmlrenderer;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import javax.swing.UIManager;
+import javax.swing.text.html.HTMLEditorKit;
+
+/**
+ * Pays the startup costs of the first render ahead of time.
+ * <p>The first render in a fresh JVM is much slower than the following ones, since it initializes the AWT toolkit,
+ * the look and feel and the fonts, loads hundreds of classes of the Swing text and HTML packages, parses the default
+ * style sheet of the {@link HTMLEditorKit} and runs everything in the interpreter. Warming up does all of that
+ * once by rendering a small representative document a few times, so the first real render doesn't have to.</p>
+ * <p>The warm-up runs only once per JVM, in its own daemon thread. This class is also the main class of the
+ * training run that lists the classes loaded while rendering, from which an AppCDS archive is built.</p>
+ * @author Victor Williams Stafusa da Silva
+ */
+@SuppressFBWarnings("IMC_IMMATURE_CLASS_NO_TOSTRING")
+final class WarmUp {
+
+    /**
+     * A small document using the most common features: fonts in all styles, tables, lists and inline styles.
+     */
+    private static final String SAMPLE = "<h1 style='color: blue;'>Warm-up</h1>"
+            + "<p style=\"font-family: 'SansSerif';\">Some <b>bold</b>, <i>italic</i>, <u>underlined</u> and"
+            + " <code>monospaced</code> text.</p>"
+            + "<p style=\"font-family: 'Serif'; font-size: 14;\">Serif <b><i>text</i></b>.</p>"
+            + "<table border='1'><tr><th>A</th><th>B</th></tr><tr><td>1</td><td style='background-color: yellow;'>2</td></tr></table>"
+            + "<ul><li>One</li><li>Two</li></ul><div style='padding: 5px;'>${value}</div>";
+
+    /**
+     * How many times the sample document is rendered, so the hottest code gets compiled.
+     */
+    private static final int ROUNDS = 3;
+
+    /**
+     * The warm-up, once it is started.
+     * <p>This is accessed only while holding the lock of this class.</p>
+     */
+    private static CompletableFuture<Void> warmUp;
+
+    /**
+     * Instantiating this class in not allowed.
+     */
+    private WarmUp() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Starts the warm-up in a daemon thread, unless it was already started.
+     * @return A future completed once the warm-up is finished.
+     */
+    public static synchronized CompletableFuture<Void> start() {
+        if (warmUp == null) {
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            Thread t = new Thread(() -> {
+                try {
+                    run();
+                    f.complete(null);
+                } catch (Throwable e) {
+                    f.completeExceptionally(e);
+                }
+            }, "HtmlRenderer-warmup");
+            t.setDaemon(true);
+            t.start();
+            warmUp = f;
+        }
+        return warmUp.copy();
+    }
+
+    /**
+     * Starts the warm-up, unless it was already started, and waits until it finishes.
+     * @throws InterruptedException If this thread is interrupted before the warm-up finishes.
+     */
+    public static void await() throws InterruptedException {
+        try {
+            start().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new AssertionError(cause);
+        }
+    }
+
+    /**
+     * Does the warm-up.
+     * @throws InterruptedException If this thread is interrupted before the warm-up finishes.
+     */
+    private static void run() throws InterruptedException {
+        Toolkit.getDefaultToolkit();
+        GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames();
+        UIManager.getLookAndFeel();
+        new HTMLEditorKit().getStyleSheet();
+        RenderOptions headless = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+        HtmlTemplate template = new HtmlTemplate(SAMPLE);
+        try (HtmlRenderEngine engine = new HtmlRenderEngine(1, HtmlRenderEngine.DEFAULT_IDLE_TIMEOUT)) {
+            for (int i = 0; i < ROUNDS; i++) {
+                HtmlRenderer.render(SAMPLE, headless);
+                engine.render(template, Map.of("value", i), headless);
+                HtmlRenderer.render(SAMPLE, headless, ImageFormat.PNG, OutputStream.nullOutputStream());
+            }
+            if (!GraphicsEnvironment.isHeadless()) HtmlRenderer.render(SAMPLE, headless.withHeadless(false));
+        } catch (IOException e) {
+            // Writing into a null stream never fails.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * The training run: warms up and exits.
+     * <p>Run it with {@code -XX:DumpLoadedClassList=<file>} to list the classes loaded while rendering.</p>
+     * @param args Not used.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    @SuppressFBWarnings("DM_EXIT")
+    public static void main(String[] args) throws InterruptedException {
+        long start = System.nanoTime();
+        await();
+        System.out.println("Warmed up in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+
+        // The AWT's Event Dispatch Thread keeps the JVM alive.
+        System.exit(0);
+    }
+}
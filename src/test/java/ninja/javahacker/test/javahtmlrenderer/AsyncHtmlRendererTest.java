@@ -0,0 +1,150 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import ninja.javahacker.javahtmlrenderer.AsyncHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class AsyncHtmlRendererTest {
+    private static final String HTML = ""
+            + "<h1 style=\"color: blue; font-family: 'Arial'; font-size: 20; font-weight: bold;\">Hello World!</h1>"
+            + "<p style=\"color: black; font-family: 'Arial'; font-size: 12; font-weight: normal;\">Lorem ipsum dolor</p>"
+            + "<div><img src='file:///XXX' /></div>";
+
+    private String makeHtml() {
+        var f = LoadResource.saveTemp(LoadResource.load("test1.png"));
+        return HTML.replace("XXX", f.getAbsolutePath());
+    }
+
+    private void assertImageExpected(String x, BufferedImage image) {
+        var i1 = ImageCompare.equals(image, LoadResource.load("testhtml-1.png"));
+        var i2 = ImageCompare.equals(image, LoadResource.load("testhtml-2.png"));
+        if (!i1 && !i2) {
+            LoadResource.saveAs(image, "FAIL-" + x);
+            throw new AssertionError("Image compare failed: " + x);
+        }
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        try (var renderer = new AsyncHtmlRenderer()) {
+            assertImageExpected("testAsyncRender.png", renderer.render(makeHtml()).get());
+        }
+    }
+
+    @Test
+    public void testManyRenders() throws Exception {
+        var html = "<p>Hello</p>";
+        var expected = HtmlRenderer.render(html, 20);
+        var options = RenderOptions.defaults().withSleepTime(20);
+        try (var renderer = new AsyncHtmlRenderer(8)) {
+            var futures = new ArrayList<CompletableFuture<BufferedImage>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(renderer.render(html, options));
+            }
+            for (var f : futures) {
+                Assertions.assertTrue(ImageCompare.equals(expected, f.get()));
+            }
+        }
+    }
+
+    @Test
+    public void testCallerExecutor() throws Exception {
+        var pool = Executors.newFixedThreadPool(2);
+        var used = new AtomicInteger();
+        Executor executor = r -> {
+            used.incrementAndGet();
+            pool.execute(r);
+        };
+        try (var renderer = new AsyncHtmlRenderer(executor, 4)) {
+            assertImageExpected("testAsyncCallerExecutor.png", renderer.render(makeHtml()).get());
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(1, used.get());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        var slow = RenderOptions.defaults().withSleepTime(10_000);
+        try (var renderer = new AsyncHtmlRenderer(1)) {
+            final var before = System.currentTimeMillis();
+            var f = renderer.render("<p>Hello</p>", slow);
+            Thread.sleep(100);
+            Assertions.assertTrue(f.cancel(true));
+            Assertions.assertThrows(CancellationException.class, f::get);
+
+            // The only pending slot must be free again.
+            var g = renderer.render("<p>Hello</p>", RenderOptions.defaults().withSleepTime(0));
+            Assertions.assertNotNull(g.get(5, TimeUnit.SECONDS));
+            Assertions.assertTrue(System.currentTimeMillis() - before < 5_000);
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        var slow = RenderOptions.defaults().withSleepTime(10_000);
+        try (var renderer = new AsyncHtmlRenderer()) {
+            var before = System.currentTimeMillis();
+            var f = renderer.render("<p>Hello</p>", slow, Duration.ofMillis(100));
+            var e = Assertions.assertThrows(ExecutionException.class, f::get);
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+            Assertions.assertTrue(System.currentTimeMillis() - before < 5_000);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        var slow = RenderOptions.defaults().withSleepTime(10_000);
+        try (var renderer = new AsyncHtmlRenderer(1)) {
+            final var f = renderer.render("<p>Hello</p>", slow);
+            var blocked = new Thread(() -> {
+                try {
+                    renderer.render("<p>Hello</p>");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            blocked.start();
+            blocked.join(300);
+            Assertions.assertTrue(blocked.isAlive());
+            f.cancel(true);
+            blocked.join(5_000);
+            Assertions.assertFalse(blocked.isAlive());
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        var renderer = new AsyncHtmlRenderer();
+        renderer.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> renderer.render("<p>Hello</p>"));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AsyncHtmlRenderer(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new AsyncHtmlRenderer(Runnable::run, 0));
+        try (var renderer = new AsyncHtmlRenderer()) {
+            var opt = RenderOptions.defaults();
+            Assertions.assertThrows(IllegalArgumentException.class, () -> renderer.render("<p>Hello</p>", opt, Duration.ZERO));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> renderer.render("<p>Hello</p>", opt, Duration.ofMillis(-1)));
+        }
+    }
+}
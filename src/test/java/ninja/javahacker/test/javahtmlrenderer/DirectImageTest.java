@@ -0,0 +1,110 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.swing.JLabel;
+import ninja.javahacker.javahtmlrenderer.DirectImage;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.Screenshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class DirectImageTest {
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    private static String tall() {
+        var html = new StringBuilder("<h1>Tall</h1>");
+        for (int i = 0; i < 40; i++) {
+            html.append("<p style='color: #").append(i % 2 == 0 ? "c03020" : "2040a0").append(";'>Paragraph ").append(i).append("</p>");
+        }
+        return html.toString();
+    }
+
+    @Test
+    public void testRenderDirect() throws Exception {
+        for (var type : PixelType.values()) {
+            var options = OPTIONS.withPixelType(type);
+            var expected = HtmlRenderer.render(tall(), options);
+            var direct = HtmlRenderer.renderDirect(tall(), options);
+            Assertions.assertTrue(direct.getHeight() > 256);
+            Assertions.assertEquals(expected.getWidth(), direct.getWidth());
+            Assertions.assertEquals(expected.getHeight(), direct.getHeight());
+            Assertions.assertEquals(type, direct.getPixelType());
+            Assertions.assertTrue(direct.getBuffer().isDirect());
+            Assertions.assertTrue(ImageCompare.equals(expected, direct.getImage()), type.name());
+        }
+    }
+
+    @Test
+    public void testBufferLayout() throws Exception {
+        var options = OPTIONS.withPixelType(PixelType.ARGB);
+        var direct = HtmlRenderer.renderDirect(tall(), options);
+        var buffer = direct.getBuffer();
+        Assertions.assertEquals(direct.getWidth() * direct.getHeight() * 4, buffer.remaining());
+        var image = direct.getImage();
+        for (int y = 0; y < direct.getHeight(); y += 7) {
+            for (int x = 0; x < direct.getWidth(); x += 5) {
+                Assertions.assertEquals(image.getRGB(x, y), buffer.getInt((y * direct.getWidth() + x) * 4));
+            }
+        }
+        buffer.putInt(0, 0xFF123456);
+        Assertions.assertEquals(0xFF123456, image.getRGB(0, 0));
+    }
+
+    @Test
+    public void testRenderMapped(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("render.raw");
+        var expected = HtmlRenderer.render(tall(), OPTIONS);
+        var mapped = HtmlRenderer.renderMapped(tall(), OPTIONS, file);
+        mapped.force();
+        Assertions.assertTrue(ImageCompare.equals(expected, mapped.getImage()));
+        var bytes = Files.readAllBytes(file);
+        Assertions.assertEquals(expected.getWidth() * expected.getHeight() * 4, bytes.length);
+        int x = expected.getWidth() / 3;
+        int y = expected.getHeight() / 2;
+        int at = (y * expected.getWidth() + x) * 4;
+        var rgb = expected.getRGB(x, y);
+        Assertions.assertEquals((rgb >> 16) & 0xFF, bytes[at + 1] & 0xFF);
+        Assertions.assertEquals((rgb >> 8) & 0xFF, bytes[at + 2] & 0xFF);
+        Assertions.assertEquals(rgb & 0xFF, bytes[at + 3] & 0xFF);
+
+        var again = DirectImage.map(file, expected.getWidth(), expected.getHeight(), PixelType.RGB);
+        Assertions.assertTrue(ImageCompare.equals(expected, again.getImage()));
+    }
+
+    @Test
+    public void testScreenshot() throws Exception {
+        var target = DirectImage.allocate(120, 300, PixelType.ARGB);
+        EventQueue.invokeAndWait(() -> {
+            var label = new JLabel("Hello");
+            label.setOpaque(true);
+            label.setBackground(Color.ORANGE);
+            label.setSize(100, 290);
+            Assertions.assertSame(target, Screenshot.screenshot(label, target));
+            var expected = Screenshot.screenshotHeadless(label, PixelType.ARGB);
+            var image = target.getImage();
+            Assertions.assertTrue(ImageCompare.equals(expected, image.getSubimage(0, 0, 100, 290)));
+            Assertions.assertEquals(0, image.getRGB(110, 10));
+            var narrow = DirectImage.allocate(99, 290, PixelType.RGB);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(label, narrow));
+        });
+    }
+
+    @Test
+    public void testInvalid(@TempDir Path dir) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectImage.allocate(0, 10, PixelType.RGB));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectImage.allocate(10, 10, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectImage.allocate(50_000, 50_000, PixelType.RGB));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectImage.map(null, 10, 10, PixelType.RGB));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectImage.map(dir.resolve("x"), 10, -1, PixelType.GRAY));
+    }
+}
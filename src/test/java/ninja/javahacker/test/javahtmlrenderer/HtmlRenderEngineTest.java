@@ -0,0 +1,174 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.RenderTargetPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class HtmlRenderEngineTest {
+    private static final String HTML = ""
+            + "<h1 style=\"color: blue; font-family: 'Arial'; font-size: 20; font-weight: bold;\">Hello World!</h1>"
+            + "<p style=\"color: black; font-family: 'Arial'; font-size: 12; font-weight: normal;\">Lorem ipsum dolor</p>"
+            + "<div><img src='file:///XXX' /></div>";
+
+    private String makeHtml() {
+        var f = LoadResource.saveTemp(LoadResource.load("test1.png"));
+        return HTML.replace("XXX", f.getAbsolutePath());
+    }
+
+    private void assertImageExpected(String x, BufferedImage image) {
+        var i1 = ImageCompare.equals(image, LoadResource.load("testhtml-1.png"));
+        var i2 = ImageCompare.equals(image, LoadResource.load("testhtml-2.png"));
+        if (!i1 && !i2) {
+            LoadResource.saveAs(image, "FAIL-" + x);
+            throw new AssertionError("Image compare failed: " + x);
+        }
+    }
+
+    @Test
+    public void testRender() throws InterruptedException {
+        try (var engine = new HtmlRenderEngine()) {
+            assertImageExpected("testEngineRender.png", engine.render(makeHtml()));
+        }
+    }
+
+    @Test
+    public void testRenderIntoPooledTargets() throws InterruptedException {
+        var pool = new RenderTargetPool(64L * 1024 * 1024);
+        var html = makeHtml();
+        try (var engine = new HtmlRenderEngine()) {
+            var opt = RenderOptions.defaults().withPixelType(PixelType.RGB);
+            for (int i = 0; i < 3; i++) {
+                try (var target = engine.render(html, opt, pool)) {
+                    assertImageExpected("testRenderIntoPooledTargets.png", target.getImage());
+                }
+            }
+        }
+        Assertions.assertEquals(1, pool.getAllocations());
+        Assertions.assertEquals(2, pool.getReuses());
+    }
+
+    @Test
+    public void testRenderGray() throws InterruptedException {
+        try (var engine = new HtmlRenderEngine()) {
+            var rgb = engine.render("<p>Hello</p>");
+            var gray = engine.render("<p>Hello</p>", RenderOptions.defaults().withPixelType(PixelType.GRAY));
+            Assertions.assertEquals(BufferedImage.TYPE_BYTE_GRAY, gray.getType());
+            Assertions.assertEquals(rgb.getWidth(), gray.getWidth());
+            Assertions.assertEquals(rgb.getHeight(), gray.getHeight());
+        }
+    }
+
+    @Test
+    public void testBandedRender() throws InterruptedException {
+        var html = new StringBuilder(makeHtml());
+        for (int i = 0; i < 100; i++) {
+            html.append("<p style=\"color: #").append(i * 2).append("0000\">Line ").append(i).append("</p>");
+        }
+        try (var engine = new HtmlRenderEngine()) {
+            var full = engine.render(html.toString());
+            for (var bandHeight : List.of(100, 37, full.getHeight(), full.getHeight() + 1)) {
+                var next = new AtomicReference<Integer>(0);
+                var size = engine.render(html.toString(), RenderOptions.defaults(), bandHeight, (y, band) -> {
+                    Assertions.assertEquals(next.get(), y);
+                    Assertions.assertEquals(full.getWidth(), band.getWidth());
+                    Assertions.assertEquals(Math.min(bandHeight, full.getHeight() - y), band.getHeight());
+                    Assertions.assertTrue(ImageCompare.equals(full.getSubimage(0, y, full.getWidth(), band.getHeight()), band));
+                    next.set(y + band.getHeight());
+                });
+                Assertions.assertEquals(full.getHeight(), next.get());
+                Assertions.assertEquals(full.getWidth(), size.width);
+                Assertions.assertEquals(full.getHeight(), size.height);
+            }
+            Assertions.assertThrows(IllegalArgumentException.class, () -> engine.render("", RenderOptions.defaults(), 0, (y, b) -> { }));
+        }
+    }
+
+    @Test
+    public void testReusedSurfacesMatchFreshRenders() throws InterruptedException {
+        var docs = List.of(
+                "<p>Short</p>",
+                "<h1>A much wider title that makes the previous document narrower</h1>",
+                "<p>Short</p>",
+                makeHtml()
+        );
+        try (var engine = new HtmlRenderEngine(1, Duration.ofMinutes(1))) {
+            for (var html : docs) {
+                var expected = HtmlRenderer.render(html);
+                Assertions.assertTrue(ImageCompare.equals(expected, engine.render(html)), html);
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentRenders() throws Exception {
+        try (var engine = new HtmlRenderEngine(2, Duration.ofMinutes(1))) {
+            var html = makeHtml();
+            var images = new ArrayList<AtomicReference<BufferedImage>>();
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < 6; i++) {
+                var x = new AtomicReference<BufferedImage>();
+                images.add(x);
+                threads.add(new Thread(() -> {
+                    try {
+                        x.set(engine.render(html));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (var t : threads) {
+                t.join();
+            }
+            for (var x : images) {
+                assertImageExpected("testEngineConcurrentRenders.png", x.get());
+            }
+        }
+    }
+
+    @Test
+    public void testIdleEviction() throws Exception {
+        try (var engine = new HtmlRenderEngine(1, Duration.ofMillis(200))) {
+            Assertions.assertEquals(0, engine.getIdleSurfaces());
+            final var a = engine.render("<p>Hello</p>");
+            EventQueue.invokeAndWait(() -> { });
+            Assertions.assertEquals(1, engine.getIdleSurfaces(), "The surface should be given back to the pool.");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (engine.getIdleSurfaces() != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            Assertions.assertEquals(0, engine.getIdleSurfaces(), "The idle surface should be evicted.");
+            var b = engine.render("<p>Hello</p>");
+            Assertions.assertTrue(ImageCompare.equals(a, b));
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        var engine = new HtmlRenderEngine();
+        engine.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> engine.render("<p>Hello</p>"));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HtmlRenderEngine(0, Duration.ofMinutes(1)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HtmlRenderEngine(1, Duration.ZERO));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HtmlRenderEngine(1, Duration.ofMillis(-1)));
+    }
+}
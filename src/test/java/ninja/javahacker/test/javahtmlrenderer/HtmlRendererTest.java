@@ -1,10 +1,21 @@
 package ninja.javahacker.test.javahtmlrenderer;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.imageio.ImageIO;
+import ninja.javahacker.javahtmlrenderer.CompletionMode;
 import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
 import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ImageFormat;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -109,4 +120,168 @@ public class HtmlRendererTest {
         assertImageExpected("testPreparedRenderLongSleep.png", x.get());
         Assertions.assertNull(f.get());
     }
+
+    @Test
+    public void testRenderUntilLoaded() throws InterruptedException {
+        var opt = RenderOptions.defaults().withSleepTime(10_000).withCompletionMode(CompletionMode.UNTIL_LOADED);
+        var html = makeHtml();
+        long start = System.nanoTime();
+        var image = HtmlRenderer.render(html, opt);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertImageExpected("testRenderUntilLoaded.png", image);
+        Assertions.assertTrue(elapsed < 5_000, "Took " + elapsed + " ms.");
+    }
+
+    @Test
+    public void testRenderUntilLoadedTextOnly() throws InterruptedException {
+        var opt = RenderOptions.defaults().withSleepTime(10_000).withCompletionMode(CompletionMode.UNTIL_LOADED);
+        long start = System.nanoTime();
+        var image = HtmlRenderer.render("<p>Hello</p>", opt);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        Assertions.assertNotNull(image);
+        Assertions.assertTrue(elapsed < 5_000, "Took " + elapsed + " ms.");
+    }
+
+    @Test
+    public void testNegativeSleepTime() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RenderOptions.defaults().withSleepTime(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HtmlRenderer.prepare("<p>Hello</p>", -1));
+    }
+
+    @Test
+    public void testRenderHeadless() throws InterruptedException {
+        var opt = RenderOptions.defaults().withHeadless(true);
+        assertImageExpected("testRenderHeadless.png", HtmlRenderer.render(makeHtml(), opt));
+    }
+
+    @Test
+    public void testRenderWithWindowWhenHeadless() {
+        if (GraphicsEnvironment.isHeadless()) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> RenderOptions.defaults().withHeadless(false));
+        } else {
+            Assertions.assertFalse(RenderOptions.defaults().withHeadless(false).isHeadless());
+        }
+    }
+
+    private String makeTallHtml() {
+        var html = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            html.append("<p style=\"color: #").append(i * 4).append("40").append(99 - i).append("\">Line ").append(i).append("</p>");
+        }
+        return html.toString();
+    }
+
+    @Test
+    public void testRenderToPng() throws Exception {
+        var html = makeTallHtml();
+        for (var type : PixelType.values()) {
+            var opt = RenderOptions.defaults().withSleepTime(0).withPixelType(type);
+            var expected = HtmlRenderer.render(html, opt);
+            var out = new ByteArrayOutputStream();
+            var size = HtmlRenderer.render(html, opt, ImageFormat.PNG, out);
+            Assertions.assertEquals(expected.getWidth(), size.width);
+            Assertions.assertEquals(expected.getHeight(), size.height);
+            Assertions.assertTrue(expected.getHeight() > 128, "The document should span many bands.");
+            var decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            Assertions.assertTrue(ImageCompare.equals(expected, decoded), type.name());
+        }
+    }
+
+    @Test
+    public void testRenderToRawRgba() throws Exception {
+        var html = makeTallHtml();
+        var opt = RenderOptions.defaults().withSleepTime(0);
+        var expected = HtmlRenderer.render(html, opt);
+        var out = new ByteArrayOutputStream();
+        var size = HtmlRenderer.render(html, opt, ImageFormat.RAW_RGBA, Channels.newChannel(out));
+        var raw = ByteBuffer.wrap(out.toByteArray());
+        Assertions.assertEquals(size.width * size.height * 4, raw.remaining());
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                var rgba = raw.getInt();
+                Assertions.assertEquals(expected.getRGB(x, y), rgba >>> 8 | rgba << 24, x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testRenderToJpeg() throws Exception {
+        var opt = RenderOptions.defaults().withSleepTime(0).withPixelType(PixelType.ARGB);
+        var out = new ByteArrayOutputStream();
+        var size = HtmlRenderer.render("<p>Hello</p>", opt, ImageFormat.JPEG, out);
+        var decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        Assertions.assertEquals(size.width, decoded.getWidth());
+        Assertions.assertEquals(size.height, decoded.getHeight());
+    }
+
+    @Test
+    public void testRenderToByteBuffer() throws Exception {
+        var opt = RenderOptions.defaults().withSleepTime(0);
+        final var expected = HtmlRenderer.render("<p>Hello</p>", opt);
+        var buffer = ByteBuffer.allocate(1024 * 1024);
+        buffer.put((byte) 42);
+        HtmlRenderer.render("<p>Hello</p>", opt, ImageFormat.PNG, buffer);
+        buffer.flip();
+        Assertions.assertEquals(42, buffer.get());
+        var png = new byte[buffer.remaining()];
+        buffer.get(png);
+        Assertions.assertTrue(ImageCompare.equals(expected, ImageIO.read(new ByteArrayInputStream(png))));
+        var small = ByteBuffer.allocate(16);
+        Assertions.assertThrows(BufferOverflowException.class, () -> HtmlRenderer.render("<p>Hello</p>", opt, ImageFormat.PNG, small));
+    }
+
+    private static final String LONG_TEXT = "<p>" + "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(20) + "</p>";
+
+    @Test
+    public void testRenderWithWidth() throws InterruptedException {
+        var opt = RenderOptions.defaults().withSleepTime(0);
+        var wide = HtmlRenderer.render(LONG_TEXT, opt.withWidth(600));
+        var narrow = HtmlRenderer.render(LONG_TEXT, opt.withWidth(200));
+        Assertions.assertEquals(600, wide.getWidth());
+        Assertions.assertEquals(200, narrow.getWidth());
+        Assertions.assertTrue(narrow.getHeight() > wide.getHeight(), "The narrower render should wrap into more lines.");
+        var again = HtmlRenderer.render(LONG_TEXT, opt.withWidth(200));
+        Assertions.assertTrue(ImageCompare.equals(narrow, again));
+    }
+
+    @Test
+    public void testRenderWithPageSize() throws InterruptedException {
+        var opt = RenderOptions.defaults().withSleepTime(0);
+        var full = HtmlRenderer.render(LONG_TEXT, opt.withWidth(300));
+        var page = HtmlRenderer.render(LONG_TEXT, opt.withPageSize(300, 50));
+        Assertions.assertEquals(300, page.getWidth());
+        Assertions.assertEquals(50, page.getHeight());
+        Assertions.assertTrue(ImageCompare.equals(full.getSubimage(0, 0, 300, 50), page));
+        var tall = HtmlRenderer.render("<p>Hello</p>", opt.withPageSize(300, 500));
+        Assertions.assertEquals(300, tall.getWidth());
+        Assertions.assertEquals(500, tall.getHeight());
+        Assertions.assertEquals(tall.getRGB(0, 0), tall.getRGB(299, 499));
+    }
+
+    @Test
+    public void testRenderWithMaxHeight() throws Exception {
+        var html = makeTallHtml();
+        var opt = RenderOptions.defaults().withSleepTime(0);
+        var full = HtmlRenderer.render(html, opt);
+        var clipped = HtmlRenderer.render(html, opt.withMaxHeight(100));
+        Assertions.assertEquals(full.getWidth(), clipped.getWidth());
+        Assertions.assertEquals(100, clipped.getHeight());
+        Assertions.assertTrue(ImageCompare.equals(full.getSubimage(0, 0, full.getWidth(), 100), clipped));
+        var out = new ByteArrayOutputStream();
+        var size = HtmlRenderer.render(html, opt.withMaxHeight(100), ImageFormat.PNG, out);
+        Assertions.assertEquals(100, size.height);
+        Assertions.assertTrue(ImageCompare.equals(clipped, ImageIO.read(new ByteArrayInputStream(out.toByteArray()))));
+        var unclipped = HtmlRenderer.render("<p>Hello</p>", opt.withMaxHeight(10_000));
+        Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render("<p>Hello</p>", opt), unclipped));
+    }
+
+    @Test
+    public void testInvalidLayoutOptions() {
+        var opt = RenderOptions.defaults();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> opt.withWidth(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> opt.withMaxHeight(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> opt.withPageSize(0, 100));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> opt.withPageSize(100, 0));
+        Assertions.assertEquals(0, opt.withPageSize(100, 100).withWidth(0).getPageHeight());
+    }
 }
@@ -0,0 +1,88 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.util.List;
+import java.util.Map;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.HtmlTemplate;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class HtmlTemplateTest {
+    private static final String SOURCE = "<h1 style='color: blue;'>Hello ${name}!</h1>"
+            + "<table border='1'><tr><td>${a}</td><td><b>${b}</b> and ${a}</td></tr></table>"
+            + "<p title='${title}'>Literal ${not<i>a</i>}placeholder, <i>${b}</i></p>";
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    private static String substitute(Map<String, String> values) {
+        var html = SOURCE;
+        for (var e : values.entrySet()) {
+            var escaped = e.getValue().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+            html = html.replace("${" + e.getKey() + "}", escaped);
+        }
+        return html;
+    }
+
+    private static List<Map<String, String>> rounds() {
+        return List.of(
+                Map.of("name", "World", "a", "1", "b", "two"),
+                Map.of("name", "Everybody out there", "a", "longer value", "b", "x"),
+                Map.of("name", "W", "a", "1", "b", "two"),
+                Map.of("name", "World", "a", "<tag> & more", "b", "three")
+        );
+    }
+
+    @Test
+    public void testPlaceholders() {
+        var t = new HtmlTemplate(SOURCE);
+        Assertions.assertEquals(SOURCE, t.getSource());
+        Assertions.assertEquals(List.of("name", "a", "b"), List.copyOf(t.getPlaceholders()));
+    }
+
+    @Test
+    public void testEngineMatchesParsedSource() throws Exception {
+        var t = new HtmlTemplate(SOURCE);
+        try (var engine = new HtmlRenderEngine()) {
+            for (var values : rounds()) {
+                var expected = HtmlRenderer.render(substitute(values), OPTIONS);
+                final var image = engine.render(t, values, OPTIONS);
+                Assertions.assertTrue(ImageCompare.equals(expected, image), values.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelMatchesParsedSource() throws Exception {
+        var t = new HtmlTemplate(SOURCE);
+        try (var renderer = new ParallelHtmlRenderer(2)) {
+            for (var values : rounds()) {
+                var expected = HtmlRenderer.render(substitute(values), OPTIONS);
+                final var image = renderer.render(t, values, OPTIONS);
+                Assertions.assertTrue(ImageCompare.equals(expected, image), values.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testValuesAreText() throws Exception {
+        var t = new HtmlTemplate("<p>${v}</p>");
+        try (var engine = new HtmlRenderEngine()) {
+            var image = engine.render(t, Map.of("v", "<b>bold</b>"), OPTIONS);
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render("<p>&lt;b&gt;bold&lt;/b&gt;</p>", OPTIONS), image));
+        }
+    }
+
+    @Test
+    public void testMissingValue() throws Exception {
+        var t = new HtmlTemplate(SOURCE);
+        try (var engine = new HtmlRenderEngine()) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> engine.render(t, Map.of("name", "x", "a", "y"), OPTIONS));
+        }
+    }
+}
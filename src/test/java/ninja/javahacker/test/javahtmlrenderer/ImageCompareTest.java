@@ -1,7 +1,9 @@
 package ninja.javahacker.test.javahtmlrenderer;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
 import ninja.javahacker.javahtmlrenderer.ImageCompare;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -59,6 +61,81 @@ public class ImageCompareTest {
         Assertions.assertTrue(ImageCompare.equals(null, null));
     }
 
+    private BufferedImage randomImage(int type, int w, int h) {
+        var rnd = new Random(42);
+        var rgb = new int[w * h];
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] = 0xFF000000 | rnd.nextInt(0x1000000);
+        }
+        var image = new BufferedImage(w, h, type);
+        image.setRGB(0, 0, w, h, rgb, 0, w);
+        return image;
+    }
+
+    private BufferedImage copy(BufferedImage image, int type) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        var other = new BufferedImage(w, h, type);
+        other.setRGB(0, 0, w, h, image.getRGB(0, 0, w, h, null, 0, w), 0, w);
+        return other;
+    }
+
+    @Test
+    public void testDirectTypes() {
+        int[] types = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_INT_BGR,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR
+        };
+        for (int type : types) {
+            var a = randomImage(type, 70, 30);
+            var b = copy(a, type);
+            Assertions.assertTrue(ImageCompare.equals(a, b), "Type " + type);
+            b.setRGB(69, 29, b.getRGB(69, 29) ^ 0x000100);
+            Assertions.assertFalse(ImageCompare.equals(a, b), "Type " + type);
+            Assertions.assertFalse(ImageCompare.equals(b, a), "Type " + type);
+        }
+    }
+
+    @Test
+    public void testDifferentTypesSameColors() {
+        var a = randomImage(BufferedImage.TYPE_INT_RGB, 70, 30);
+        Assertions.assertTrue(ImageCompare.equals(a, copy(a, BufferedImage.TYPE_INT_ARGB)));
+        Assertions.assertTrue(ImageCompare.equals(copy(a, BufferedImage.TYPE_3BYTE_BGR), a));
+        var b = copy(a, BufferedImage.TYPE_INT_ARGB_PRE);
+        Assertions.assertTrue(ImageCompare.equals(a, b));
+        b.setRGB(0, 0, b.getRGB(0, 0) ^ 0x010000);
+        Assertions.assertFalse(ImageCompare.equals(a, b));
+    }
+
+    @Test
+    public void testSubimages() {
+        for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            var big = randomImage(type, 300, 200);
+            var sub = big.getSubimage(10, 20, 100, 50);
+            var b = copy(sub, type);
+            Assertions.assertTrue(ImageCompare.equals(sub, b), "Type " + type);
+            Assertions.assertTrue(ImageCompare.equals(b, sub), "Type " + type);
+            Assertions.assertFalse(ImageCompare.equals(sub, big.getSubimage(11, 20, 100, 50)), "Type " + type);
+            b.setRGB(50, 49, b.getRGB(50, 49) ^ 0x000001);
+            Assertions.assertFalse(ImageCompare.equals(sub, b), "Type " + type);
+        }
+    }
+
+    @Test
+    public void testUnusedAlphaByteIgnored() {
+        var a = randomImage(BufferedImage.TYPE_INT_RGB, 70, 30);
+        var b = copy(a, BufferedImage.TYPE_INT_RGB);
+        var data = ((DataBufferInt) b.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < data.length; i += 7) {
+            data[i] |= 0x5A000000;
+        }
+        Assertions.assertTrue(ImageCompare.equals(a, b));
+        Assertions.assertTrue(ImageCompare.equals(b, a));
+    }
+
     @Test
     public void testNoNewInstance() {
         var x = Assertions.assertThrows(InvocationTargetException.class, () -> {
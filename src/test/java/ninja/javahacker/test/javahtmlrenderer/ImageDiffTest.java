@@ -0,0 +1,136 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import ninja.javahacker.javahtmlrenderer.DiffMetric;
+import ninja.javahacker.javahtmlrenderer.ImageDiff;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class ImageDiffTest {
+
+    private BufferedImage blank(int w, int h) {
+        var image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+        g.dispose();
+        return image;
+    }
+
+    private BufferedImage fill(BufferedImage image, int rgb, int x, int y, int w, int h) {
+        for (int i = x; i < x + w; i++) {
+            for (int j = y; j < y + h; j++) {
+                image.setRGB(i, j, rgb);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void testIdentical() {
+        var r = ImageDiff.exact().compare(LoadResource.load("testhtml-1.png"), LoadResource.load("testhtml-1.png"));
+        Assertions.assertEquals(0, r.getDifferingPixels());
+        Assertions.assertTrue(r.isMatch());
+        Assertions.assertEquals(List.of(), r.getRegions());
+        Assertions.assertTrue(r.getMask().isEmpty());
+    }
+
+    @Test
+    public void testSinglePixel() {
+        var a = blank(100, 50);
+        var b = fill(blank(100, 50), 0x000000, 40, 30, 1, 1);
+        var r = ImageDiff.exact().compare(a, b);
+        Assertions.assertEquals(1, r.getDifferingPixels());
+        Assertions.assertFalse(r.isMatch());
+        Assertions.assertEquals(List.of(new Rectangle(40, 30, 1, 1)), r.getRegions());
+        Assertions.assertTrue(ImageDiff.exact().withMaxDifferingPixels(1).compare(a, b).isMatch());
+    }
+
+    @Test
+    public void testRegions() {
+        var b = blank(200, 100);
+
+        // Two blocks touching across a tile boundary form a single region. A far away block forms another one.
+        fill(b, 0xFF0000, 10, 10, 6, 5);
+        fill(b, 0xFF0000, 16, 20, 4, 4);
+        fill(b, 0x00FF00, 150, 70, 10, 20);
+        var r = ImageDiff.exact().compare(blank(200, 100), b);
+        Assertions.assertEquals(30 + 16 + 200, r.getDifferingPixels());
+        Assertions.assertEquals(List.of(new Rectangle(10, 10, 10, 14), new Rectangle(150, 70, 10, 20)), r.getRegions());
+    }
+
+    @Test
+    public void testChannelTolerance() {
+        var a = blank(20, 20);
+        var b = fill(blank(20, 20), 0xF8FFFF, 0, 0, 20, 10);
+        Assertions.assertEquals(200, ImageDiff.exact().compare(a, b).getDifferingPixels());
+        Assertions.assertEquals(200, ImageDiff.exact().withTolerance(6).compare(a, b).getDifferingPixels());
+        Assertions.assertEquals(0, ImageDiff.exact().withTolerance(7).compare(a, b).getDifferingPixels());
+    }
+
+    @Test
+    public void testPerceptual() {
+        var a = blank(20, 20);
+
+        // A slight change of hue is much less noticeable than the same change of brightness.
+        var hue = fill(blank(20, 20), 0xFFF0FF, 0, 0, 20, 20);
+        var dark = fill(blank(20, 20), 0xF0F0F0, 0, 0, 20, 20);
+        var diff = ImageDiff.exact().withMetric(DiffMetric.PERCEPTUAL).withTolerance(11);
+        Assertions.assertEquals(0, diff.compare(a, hue).getDifferingPixels());
+        Assertions.assertEquals(400, diff.compare(a, dark).getDifferingPixels());
+        Assertions.assertEquals(400, ImageDiff.exact().withTolerance(11).compare(a, hue).getDifferingPixels());
+    }
+
+    @Test
+    public void testMask() {
+        var a = blank(30, 30);
+        var b = fill(blank(30, 30), 0x123456, 5, 6, 2, 3);
+        var mask = ImageDiff.exact().withMask(true).compare(a, b).getMask().orElseThrow();
+        Assertions.assertEquals(30, mask.getWidth());
+        Assertions.assertEquals(30, mask.getHeight());
+        for (int x = 0; x < 30; x++) {
+            for (int y = 0; y < 30; y++) {
+                var inside = x >= 5 && x < 7 && y >= 6 && y < 9;
+                Assertions.assertEquals(inside ? 0xFFFF0000 : 0, mask.getRGB(x, y), x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testLargeImageInParallel() {
+        var b = blank(2000, 1000);
+        fill(b, 0x000000, 0, 0, 1, 1);
+        fill(b, 0x000000, 1000, 127, 3, 2);
+        fill(b, 0x000000, 1999, 999, 1, 1);
+        var r = ImageDiff.exact().withMask(true).compare(blank(2000, 1000), b);
+        Assertions.assertEquals(8, r.getDifferingPixels());
+        Assertions.assertEquals(
+                List.of(new Rectangle(0, 0, 1, 1), new Rectangle(1000, 127, 3, 2), new Rectangle(1999, 999, 1, 1)),
+                r.getRegions());
+    }
+
+    @Test
+    public void testGoldenAlternatives() {
+        var a = LoadResource.load("Hi-1.png");
+        var b = LoadResource.load("Hi-2.png");
+        var exact = ImageDiff.exact().compare(a, b);
+        Assertions.assertFalse(exact.isMatch());
+        var tolerant = ImageDiff.exact().withMetric(DiffMetric.PERCEPTUAL).withTolerance(200).compare(a, b);
+        Assertions.assertTrue(tolerant.getDifferingPixels() < exact.getDifferingPixels());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        var diff = ImageDiff.exact();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> diff.withTolerance(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> diff.withTolerance(256));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> diff.withMaxDifferingPixels(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> diff.compare(blank(1, 1), blank(1, 2)));
+    }
+}
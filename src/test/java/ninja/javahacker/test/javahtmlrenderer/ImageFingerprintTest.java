@@ -0,0 +1,112 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import ninja.javahacker.javahtmlrenderer.FingerprintIndex;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ImageFingerprint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class ImageFingerprintTest {
+
+    private static BufferedImage convert(BufferedImage image, int type) {
+        var copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        var g = copy.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+
+    private static BufferedImage touched(BufferedImage image) {
+        var copy = convert(image, BufferedImage.TYPE_INT_RGB);
+        copy.setRGB(5, 5, ~copy.getRGB(5, 5));
+        return copy;
+    }
+
+    @Test
+    public void testSameContentSameHash() throws Exception {
+        var golden = LoadResource.load("testhtml-1.png");
+        var rgb = convert(golden, BufferedImage.TYPE_INT_RGB);
+        var argb = convert(golden, BufferedImage.TYPE_INT_ARGB);
+        var bgr = convert(golden, BufferedImage.TYPE_3BYTE_BGR);
+        Assertions.assertTrue(ImageCompare.equals(rgb, argb));
+        Assertions.assertTrue(ImageCompare.equals(rgb, bgr));
+        var f = ImageFingerprint.of(rgb);
+        Assertions.assertEquals(f, ImageFingerprint.of(argb));
+        Assertions.assertEquals(f, ImageFingerprint.of(bgr));
+        Assertions.assertEquals(f.hashCode(), ImageFingerprint.of(bgr).hashCode());
+        Assertions.assertEquals(0, f.distance(ImageFingerprint.of(argb)));
+        Assertions.assertEquals(golden.getWidth(), f.getWidth());
+        Assertions.assertEquals(golden.getHeight(), f.getHeight());
+        Assertions.assertEquals(64, f.getContentHash().length());
+    }
+
+    @Test
+    public void testDifferentContent() throws Exception {
+        var golden = LoadResource.load("testhtml-1.png");
+        var f = ImageFingerprint.of(golden);
+        var touched = ImageFingerprint.of(touched(golden));
+        Assertions.assertNotEquals(f, touched);
+        Assertions.assertNotEquals(f.getContentHash(), touched.getContentHash());
+        Assertions.assertTrue(f.distance(touched) <= 2, f + " " + touched);
+        var other = ImageFingerprint.of(LoadResource.load("testhtml-2.png"));
+        Assertions.assertNotEquals(f, other);
+        Assertions.assertTrue(f.distance(other) > f.distance(touched), f + " " + other);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ImageFingerprint.of(null));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        var golden1 = LoadResource.load("testhtml-1.png");
+        var golden2 = LoadResource.load("testhtml-2.png");
+        var f1 = ImageFingerprint.of(golden1);
+        var f2 = ImageFingerprint.of(golden2);
+        var index = new FingerprintIndex<String>();
+        Assertions.assertTrue(index.closest(f1, 64).isEmpty());
+        Assertions.assertTrue(index.put(f1, "golden-1").isEmpty());
+        Assertions.assertTrue(index.put(f2, "golden-2").isEmpty());
+        Assertions.assertEquals(2, index.size());
+
+        var same = ImageFingerprint.of(convert(golden1, BufferedImage.TYPE_INT_ARGB));
+        Assertions.assertEquals("golden-1", index.get(same).orElseThrow());
+        Assertions.assertTrue(index.closest(same, 0).orElseThrow().isExact());
+
+        var touched = ImageFingerprint.of(touched(golden1));
+        Assertions.assertTrue(index.get(touched).isEmpty());
+        var closest = index.closest(touched, 10).orElseThrow();
+        Assertions.assertEquals("golden-1", closest.getValue());
+        Assertions.assertFalse(closest.isExact());
+        Assertions.assertEquals(f1, closest.getFingerprint());
+        Assertions.assertEquals(f1.distance(touched), closest.getDistance());
+
+        var all = index.within(touched, 64);
+        Assertions.assertEquals(2, all.size());
+        Assertions.assertEquals("golden-1", all.get(0).getValue());
+        Assertions.assertEquals("golden-2", all.get(1).getValue());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.closest(touched, 65));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.within(touched, -1));
+
+        Assertions.assertEquals("golden-1", index.put(same, "golden-1b").orElseThrow());
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals("golden-2", index.remove(f2).orElseThrow());
+        Assertions.assertTrue(index.get(f2).isEmpty());
+        Assertions.assertEquals(1, index.within(touched, 64).size());
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        var golden = LoadResource.load("testhtml-1.png");
+        var index = new FingerprintIndex<String>();
+        Assertions.assertEquals("out-1.png", index.intern(ImageFingerprint.of(golden), "out-1.png"));
+        var again = convert(golden, BufferedImage.TYPE_3BYTE_BGR);
+        Assertions.assertEquals("out-1.png", index.intern(ImageFingerprint.of(again), "out-2.png"));
+        Assertions.assertEquals("out-3.png", index.intern(ImageFingerprint.of(touched(golden)), "out-3.png"));
+        Assertions.assertEquals(2, index.size());
+    }
+}
@@ -0,0 +1,110 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import javax.imageio.ImageIO;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ImageResourceCache;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class ImageResourceCacheTest {
+    private static final String HTML = ""
+            + "<h1 style=\"color: blue; font-family: 'Arial'; font-size: 20; font-weight: bold;\">Hello World!</h1>"
+            + "<p style=\"color: black; font-family: 'Arial'; font-size: 12; font-weight: normal;\">Lorem ipsum dolor</p>"
+            + "<div><img src='file:///XXX' /></div>";
+
+    private Path write(Path file, int w, int h, long modified) throws Exception {
+        ImageIO.write(new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified));
+        return file;
+    }
+
+    @Test
+    public void testRenderWithoutWaiting() throws Exception {
+        File f = LoadResource.saveTemp(LoadResource.load("test1.png"));
+        var html = HTML.replace("XXX", f.getAbsolutePath());
+        var cache = new ImageResourceCache(ImageResourceCache.DEFAULT_MAX_BYTES);
+        var opt = RenderOptions.defaults().withSleepTime(0).withImageCache(cache);
+        Assertions.assertSame(cache, opt.getImageCache().orElseThrow());
+
+        var first = HtmlRenderer.render(html, opt);
+        Assertions.assertEquals(1, cache.getMisses());
+        var second = HtmlRenderer.render(html, opt);
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertTrue(cache.getHits() >= 1);
+        Assertions.assertTrue(ImageCompare.equals(first, second));
+        var i1 = ImageCompare.equals(first, LoadResource.load("testhtml-1.png"));
+        var i2 = ImageCompare.equals(first, LoadResource.load("testhtml-2.png"));
+        if (!i1 && !i2) {
+            LoadResource.saveAs(first, "FAIL-testRenderWithoutWaiting.png");
+            throw new AssertionError("Image compare failed.");
+        }
+    }
+
+    @Test
+    public void testPreload(@TempDir Path dir) throws Exception {
+        var url = write(dir.resolve("a.png"), 10, 20, 1000).toUri().toURL();
+        var cache = new ImageResourceCache(ImageResourceCache.DEFAULT_MAX_BYTES);
+        Assertions.assertTrue(cache.preload(url));
+        Assertions.assertTrue(cache.preload(url));
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(10 * 20 * 4, cache.getBytes());
+        Assertions.assertFalse(cache.preload(dir.resolve("missing.png").toUri().toURL()));
+    }
+
+    @Test
+    public void testModifiedFileIsReloaded(@TempDir Path dir) throws Exception {
+        var file = write(dir.resolve("a.png"), 10, 20, 1000);
+        var cache = new ImageResourceCache(ImageResourceCache.DEFAULT_MAX_BYTES);
+        cache.preload(file.toUri().toURL());
+        write(file, 30, 20, 2000);
+        cache.preload(file.toUri().toURL());
+        Assertions.assertEquals(2, cache.getMisses());
+        Assertions.assertEquals(30 * 20 * 4, cache.getBytes());
+    }
+
+    @Test
+    public void testInvalidateAndClear(@TempDir Path dir) throws Exception {
+        var a = write(dir.resolve("a.png"), 10, 10, 1000).toUri().toURL();
+        var b = write(dir.resolve("b.png"), 10, 10, 1000).toUri().toURL();
+        var cache = new ImageResourceCache(ImageResourceCache.DEFAULT_MAX_BYTES);
+        cache.preload(a);
+        cache.preload(b);
+        cache.invalidate(a);
+        Assertions.assertEquals(400, cache.getBytes());
+        cache.preload(a);
+        Assertions.assertEquals(3, cache.getMisses());
+        cache.clear();
+        Assertions.assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testEviction(@TempDir Path dir) throws Exception {
+        var a = write(dir.resolve("a.png"), 10, 10, 1000).toUri().toURL();
+        var b = write(dir.resolve("b.png"), 10, 10, 1000).toUri().toURL();
+        var cache = new ImageResourceCache(400);
+        cache.preload(a);
+        cache.preload(b);
+        Assertions.assertEquals(400, cache.getBytes());
+        cache.preload(b);
+        Assertions.assertEquals(1, cache.getHits());
+        cache.preload(a);
+        Assertions.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ImageResourceCache(-1));
+    }
+}
@@ -0,0 +1,132 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import ninja.javahacker.javahtmlrenderer.CompletionMode;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class ParallelHtmlRendererTest {
+    private static final int WORKERS = 8;
+    private static final int CALLERS = 16;
+    private static final int ROUNDS = 4;
+
+    private List<String> makeDocuments() {
+        var img = LoadResource.saveTemp(LoadResource.load("test1.png")).getAbsolutePath();
+        var table = new StringBuilder("<table border='1'>");
+        for (int i = 0; i < 20; i++) {
+            table.append("<tr><td>").append(i).append("</td><td style='color: red;'>Cell ").append(i * i).append("</td></tr>");
+        }
+        table.append("</table>");
+        return List.of(
+                "<p>Hello</p>",
+                "<h1 style=\"color: blue; font-family: 'Arial'; font-size: 20; font-weight: bold;\">Hello World!</h1>"
+                        + "<p style=\"color: black; font-family: 'Arial'; font-size: 12; font-weight: normal;\">Lorem ipsum dolor</p>"
+                        + "<div><img src='file:///" + img + "' /></div>",
+                table.toString(),
+                "<ul><li>One</li><li><b>Two</b></li><li><i>Three</i></li></ul><img src='file:///" + img + "' width='20' height='40'>",
+                "<div style='background-color: yellow; padding: 10px;'>Some <u>text</u> in a <span style='font-size: 30;'>box</span></div>",
+                "<p style='text-align: justify; width: 150px;'>Justified text, with its spaces stretched to fill both margins"
+                        + " of the <b>whole</b> paragraph, but the last line.</p>"
+        );
+    }
+
+    @Test
+    public void testMatchesSerialRender() throws Exception {
+        var docs = makeDocuments();
+        var serial = RenderOptions.defaults().withHeadless(true).withSleepTime(5_000).withCompletionMode(CompletionMode.UNTIL_LOADED);
+        var expected = new ArrayList<BufferedImage>();
+        for (var html : docs) {
+            expected.add(HtmlRenderer.render(html, serial));
+        }
+
+        var failures = ConcurrentHashMap.<String>newKeySet();
+        var error = new AtomicReference<Throwable>();
+        var start = new CountDownLatch(1);
+        try (var renderer = new ParallelHtmlRenderer(WORKERS)) {
+            var callers = new ArrayList<Thread>();
+            for (int c = 0; c < CALLERS; c++) {
+                int caller = c;
+                callers.add(new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int r = 0; r < ROUNDS; r++) {
+                            for (int i = 0; i < docs.size(); i++) {
+                                int d = (i + caller) % docs.size();
+                                var image = renderer.render(docs.get(d));
+                                if (!ImageCompare.equals(expected.get(d), image)) failures.add("Document " + d);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }));
+            }
+            callers.forEach(Thread::start);
+            start.countDown();
+            for (var t : callers) {
+                t.join();
+            }
+        }
+        if (error.get() != null) throw new AssertionError(error.get());
+        Assertions.assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    private static List<BufferedImage> renderAll(int workers, List<String> docs, RenderOptions options) throws Exception {
+        var callers = Executors.newFixedThreadPool(workers);
+        try (var renderer = new ParallelHtmlRenderer(workers)) {
+            var futures = docs.stream().map(html -> callers.submit(() -> renderer.render(html, options))).toList();
+            var images = new ArrayList<BufferedImage>();
+            for (var f : futures) {
+                images.add(f.get());
+            }
+            return images;
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWorkersRenderAsOne() throws Exception {
+        int workers = 4;
+        var docs = new ArrayList<String>();
+        for (int d = 0; d < 2 * workers; d++) {
+            var html = new StringBuilder();
+            for (int i = 0; i < 60; i++) {
+                html.append("<p style='font-size: ").append(10 + (i + d) % 12).append(";'>Lorem <b>ipsum</b> dolor sit amet, ")
+                        .append("<i>consectetur</i> adipiscing elit, sed do eiusmod tempor ").append(i * d).append("</p>");
+            }
+            docs.add(html.toString());
+        }
+        var options = RenderOptions.defaults().withHeadless(true).withSleepTime(0).withWidth(600);
+        var serial = renderAll(1, docs, options);
+        var parallel = renderAll(workers, docs, options);
+        for (int d = 0; d < docs.size(); d++) {
+            Assertions.assertTrue(ImageCompare.equals(serial.get(d), parallel.get(d)), "Document " + d);
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        var renderer = new ParallelHtmlRenderer(1);
+        renderer.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> renderer.render("<p>Hello</p>"));
+    }
+
+    @Test
+    public void testInvalidThreads() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ParallelHtmlRenderer(0));
+    }
+}
@@ -0,0 +1,120 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import ninja.javahacker.javahtmlrenderer.CompletionMode;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderAllTest {
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(50);
+
+    private static String snippet(int i) {
+        return "<span style='color: " + (i % 2 == 0 ? "red" : "blue") + ";'><b>#" + i + "</b> badge " + "x".repeat(i % 7) + "</span>";
+    }
+
+    private static List<String> snippets(int n) {
+        return IntStream.range(0, n).mapToObj(RenderAllTest::snippet).toList();
+    }
+
+    @Test
+    public void testMatchesSingleRenders() throws Exception {
+        var htmls = snippets(40);
+        List<BufferedImage> images;
+        try (var all = HtmlRenderer.renderAll(htmls, OPTIONS)) {
+            images = all.toList();
+        }
+        Assertions.assertEquals(htmls.size(), images.size());
+        for (int i = 0; i < htmls.size(); i++) {
+            var expected = HtmlRenderer.render(htmls.get(i), OPTIONS.withSleepTime(0));
+            Assertions.assertTrue(ImageCompare.equals(expected, images.get(i)), htmls.get(i));
+        }
+    }
+
+    @Test
+    public void testUntilLoaded() throws Exception {
+        var opt = OPTIONS.withCompletionMode(CompletionMode.UNTIL_LOADED).withSleepTime(1000);
+        var htmls = snippets(20);
+        try (var all = HtmlRenderer.renderAll(htmls.stream(), opt)) {
+            var images = all.toList();
+            for (int i = 0; i < htmls.size(); i++) {
+                Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(htmls.get(i), opt), images.get(i)), htmls.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testFasterThanSingleRenders() throws Exception {
+        var htmls = snippets(32);
+        var start = System.nanoTime();
+        for (var html : htmls) {
+            HtmlRenderer.render(html, OPTIONS);
+        }
+        var single = System.nanoTime() - start;
+        start = System.nanoTime();
+        try (var all = HtmlRenderer.renderAll(htmls, OPTIONS)) {
+            Assertions.assertEquals(htmls.size(), all.count());
+        }
+        var batched = System.nanoTime() - start;
+        Assertions.assertTrue(batched * 3 < single, () -> "single: " + single + " ns, batched: " + batched + " ns");
+    }
+
+    @Test
+    public void testLazyAndClosed() throws Exception {
+        var pulled = new AtomicInteger();
+        var closed = new AtomicBoolean();
+        var endless = Stream.iterate(0, i -> i + 1)
+                .peek(i -> pulled.incrementAndGet())
+                .map(RenderAllTest::snippet)
+                .onClose(() -> closed.set(true));
+        try (var all = HtmlRenderer.renderAll(endless, OPTIONS.withSleepTime(0))) {
+            Assertions.assertEquals(5, all.limit(5).count());
+        }
+        Assertions.assertTrue(closed.get());
+        Assertions.assertTrue(pulled.get() < 100, () -> "pulled: " + pulled.get());
+    }
+
+    @Test
+    public void testEmptyAndNull() throws Exception {
+        try (var all = HtmlRenderer.renderAll(List.of())) {
+            Assertions.assertEquals(0, all.count());
+        }
+        var htmls = new ArrayList<String>();
+        htmls.add("<p>x</p>");
+        htmls.add(null);
+        try (var all = HtmlRenderer.renderAll(htmls, OPTIONS)) {
+            Assertions.assertThrows(IllegalArgumentException.class, all::toList);
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        var htmls = snippets(100);
+        var renderer = new ParallelHtmlRenderer(4);
+        try {
+            List<BufferedImage> images;
+            try (var all = renderer.renderAll(htmls, OPTIONS)) {
+                images = all.toList();
+            }
+            Assertions.assertEquals(htmls.size(), images.size());
+            for (int i = 0; i < htmls.size(); i++) {
+                Assertions.assertTrue(ImageCompare.equals(renderer.render(htmls.get(i), OPTIONS), images.get(i)), htmls.get(i));
+            }
+        } finally {
+            renderer.close();
+        }
+        Assertions.assertThrows(IllegalStateException.class, () -> renderer.renderAll(htmls));
+    }
+}
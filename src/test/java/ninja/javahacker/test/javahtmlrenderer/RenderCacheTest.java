@@ -0,0 +1,176 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import ninja.javahacker.javahtmlrenderer.CompletionMode;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ImageResourceCache;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderCache;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.ScaleQuality;
+import ninja.javahacker.javahtmlrenderer.SharedStyleSheet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderCacheTest {
+    private static final RenderOptions FAST = RenderOptions.defaults().withSleepTime(10);
+
+    private List<Path> pngs(Path dir) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.toString().endsWith(".png")).toList();
+        }
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        var cache = new RenderCache(64L * 1024 * 1024);
+        var a = cache.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(0, cache.getHits());
+
+        a.setRGB(0, 0, 0x123456);
+        var b = cache.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertNotSame(a, b);
+        Assertions.assertNotEquals(0x123456, b.getRGB(0, 0) & 0xFFFFFF);
+        Assertions.assertTrue(ImageCompare.equals(b, cache.render("<p>Hello</p>", FAST)));
+        Assertions.assertTrue(cache.getBytes() > 0);
+    }
+
+    @Test
+    public void testOptionsArePartOfTheKey() throws Exception {
+        var cache = new RenderCache(64L * 1024 * 1024);
+        cache.render("<p>Hello</p>", FAST);
+        cache.render("<p>Hello</p>", FAST.withSleepTime(11));
+        cache.render("<p>Hello!</p>", FAST);
+        Assertions.assertEquals(3, cache.getMisses());
+        Assertions.assertEquals(0, cache.getHits());
+
+        var changed = List.of(
+                FAST.withCompletionMode(CompletionMode.UNTIL_LOADED),
+                FAST.withPixelType(PixelType.GRAY),
+                FAST.withWidth(300),
+                FAST.withPageSize(300, 200),
+                FAST.withMaxHeight(10),
+                FAST.withStyleSheet(new SharedStyleSheet("p { color: red; }")),
+                FAST.withScale(0.5),
+                FAST.withBoundingBox(20, 20),
+                FAST.withScale(0.5).withScaleQuality(ScaleQuality.FAST)
+        );
+        for (var options : changed) {
+            cache.render("<p>Hello</p>", options);
+        }
+        Assertions.assertEquals(3 + changed.size(), cache.getMisses());
+        Assertions.assertEquals(0, cache.getHits());
+
+        cache.render("<p>Hello</p>", FAST.withListener(m -> { }).withImageCache(new ImageResourceCache(1024 * 1024)));
+        cache.render("<p>Hello</p>", FAST.withStyleSheet(new SharedStyleSheet("p { color: red; }")));
+        Assertions.assertEquals(3 + changed.size(), cache.getMisses());
+        Assertions.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testDiskKeyIsStable(@TempDir Path dir) throws Exception {
+        new RenderCache(64L * 1024 * 1024, dir).render("<p>Hello</p>", RenderOptions.defaults().withSleepTime(10).withWidth(200));
+        Assertions.assertEquals(List.of(dir.resolve("9390dddb8063fb495c4b2ac4ade0e8825cc94b0965b3eda4a984815a7634c93a.png")), pngs(dir));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        var probe = new RenderCache(64L * 1024 * 1024);
+        probe.render("<p>Hello</p>", FAST);
+        var cache = new RenderCache(probe.getBytes());
+        cache.render("<p>Hello</p>", FAST);
+        cache.render("<p style=\"color: red\">Hello</p>", FAST);
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertTrue(cache.getBytes() <= cache.getMaxBytes());
+
+        cache.render("<p style=\"color: red\">Hello</p>", FAST);
+        Assertions.assertEquals(1, cache.getHits());
+        cache.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(3, cache.getMisses());
+        Assertions.assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void testTooLargeForMemory() throws Exception {
+        var cache = new RenderCache(0);
+        cache.render("<p>Hello</p>", FAST);
+        cache.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(2, cache.getMisses());
+        Assertions.assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        var cache = new RenderCache(64L * 1024 * 1024);
+        var slow = RenderOptions.defaults().withSleepTime(500);
+        var images = new ArrayList<AtomicReference<BufferedImage>>();
+        var threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            var x = new AtomicReference<BufferedImage>();
+            images.add(x);
+            threads.add(new Thread(() -> {
+                try {
+                    x.set(cache.render("<p>Hello</p>", slow));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (var t : threads) {
+            t.join();
+        }
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(7, cache.getHits());
+        for (var x : images) {
+            Assertions.assertTrue(ImageCompare.equals(images.get(0).get(), x.get()));
+        }
+    }
+
+    @Test
+    public void testDiskTier(@TempDir Path dir) throws Exception {
+        var first = new RenderCache(64L * 1024 * 1024, dir.resolve("cache"));
+        var a = first.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(1, pngs(dir.resolve("cache")).size());
+
+        var second = new RenderCache(64L * 1024 * 1024, dir.resolve("cache"));
+        var b = second.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(0, second.getMisses());
+        Assertions.assertEquals(1, second.getDiskHits());
+        Assertions.assertTrue(ImageCompare.equals(a, b));
+
+        second.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(1, second.getHits());
+    }
+
+    @Test
+    public void testCorruptDiskFile(@TempDir Path dir) throws Exception {
+        new RenderCache(64L * 1024 * 1024, dir).render("<p>Hello</p>", FAST);
+        var file = pngs(dir).get(0);
+        Files.write(file, new byte[] {1, 2, 3});
+        var cache = new RenderCache(64L * 1024 * 1024, dir);
+        cache.render("<p>Hello</p>", FAST);
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(0, cache.getDiskHits());
+        Assertions.assertTrue(Files.size(file) > 3);
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderCache(-1));
+    }
+}
@@ -0,0 +1,210 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ImageFormat;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderFarm;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.ScaleQuality;
+import ninja.javahacker.javahtmlrenderer.SharedStyleSheet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderFarmTest {
+    private static final String HTML = "<div style='background-color: yellow;'>Some <b>text</b> in a <i>box</i></div>";
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    @Test
+    public void testMatchesInProcessRender() throws Exception {
+        try (var farm = new RenderFarm(1)) {
+            for (var type : PixelType.values()) {
+                var opt = OPTIONS.withPixelType(type);
+                final var image = farm.render(HTML, opt);
+                var expected = HtmlRenderer.render(HTML, opt);
+                Assertions.assertTrue(ImageCompare.equals(expected, image), type.name());
+                Assertions.assertEquals(expected.getType(), image.getType());
+            }
+        }
+    }
+
+    @Test
+    public void testEncodedRender() throws Exception {
+        try (var farm = new RenderFarm(1)) {
+            var out = new ByteArrayOutputStream();
+            var size = farm.render(HTML, OPTIONS, ImageFormat.PNG, out);
+            var decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            Assertions.assertEquals(size.width, decoded.getWidth());
+            Assertions.assertEquals(size.height, decoded.getHeight());
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(HTML, OPTIONS), decoded));
+        }
+    }
+
+    @Test
+    public void testStyleSheet() throws Exception {
+        var opt = OPTIONS.withStyleSheet(new SharedStyleSheet("b { color: red; font-size: 30; }"));
+        try (var farm = new RenderFarm(1)) {
+            for (int i = 0; i < 2; i++) {
+                Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(HTML, opt), farm.render(HTML, opt)));
+            }
+        }
+    }
+
+    @Test
+    public void testScaled() throws Exception {
+        try (var farm = new RenderFarm(1)) {
+            var options = List.of(
+                    OPTIONS.withWidth(400).withScale(0.5),
+                    OPTIONS.withWidth(400).withBoundingBox(100, 100).withScaleQuality(ScaleQuality.FAST),
+                    OPTIONS.withWidth(400).withScale(0.5).withPixelType(PixelType.GRAY)
+            );
+            for (var opt : options) {
+                var expected = HtmlRenderer.render(HTML, opt);
+                var image = farm.render(HTML, opt);
+                Assertions.assertTrue(ImageCompare.equals(expected, image), opt.toString());
+                Assertions.assertEquals(expected.getType(), image.getType());
+            }
+            Assertions.assertEquals(200, farm.render(HTML, options.get(0)).getWidth());
+
+            var out = new ByteArrayOutputStream();
+            var size = farm.render(HTML, options.get(0), ImageFormat.PNG, out);
+            var decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            Assertions.assertEquals(200, size.width);
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(HTML, options.get(0)), decoded));
+        }
+    }
+
+    @Test
+    public void testRecycleAfterMaxRenders() throws Exception {
+        try (var farm = new RenderFarm(1, 2, RenderFarm.DEFAULT_MAX_WORKER_HEAP, RenderFarm.DEFAULT_TIMEOUT, List.of("-Xmx128m"))) {
+            var first = farm.render(HTML, OPTIONS);
+            for (int i = 0; i < 4; i++) {
+                Assertions.assertTrue(ImageCompare.equals(first, farm.render(HTML, OPTIONS)));
+            }
+            Assertions.assertEquals(2, farm.getRestarts());
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        try (var farm = new RenderFarm(1, 10, RenderFarm.DEFAULT_MAX_WORKER_HEAP, Duration.ofMillis(1), List.of())) {
+            Assertions.assertThrows(InterruptedIOException.class, () -> farm.render(HTML, OPTIONS.withSleepTime(1_000)));
+            Assertions.assertEquals(1, farm.getRestarts());
+        }
+    }
+
+    @Test
+    public void testConcurrentRenders() throws Exception {
+        var expected = HtmlRenderer.render(HTML, OPTIONS);
+        var pool = Executors.newFixedThreadPool(4);
+        try (var farm = new RenderFarm(2)) {
+            var results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 12; i++) {
+                results.add(pool.submit(() -> ImageCompare.equals(expected, farm.render(HTML, OPTIONS))));
+            }
+            for (var r : results) {
+                Assertions.assertTrue(r.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        var farm = new RenderFarm(1);
+        farm.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> farm.render(HTML));
+    }
+
+    @Test
+    public void testCloseWakesWaitingCallers() throws Exception {
+        var farm = new RenderFarm(1);
+        var busyStarted = new CountDownLatch(1);
+        var busy = new FutureTask<>(() -> {
+            busyStarted.countDown();
+            return farm.render(HTML, OPTIONS.withSleepTime(10_000));
+        });
+        var waiting = new ArrayList<FutureTask<BufferedImage>>();
+        var threads = new ArrayList<Thread>();
+        try {
+            new Thread(busy).start();
+            busyStarted.await();
+            var waitStarted = new CountDownLatch(2);
+            for (int i = 0; i < 2; i++) {
+                var w = new FutureTask<>(() -> {
+                    waitStarted.countDown();
+                    return farm.render(HTML, OPTIONS);
+                });
+                waiting.add(w);
+                threads.add(new Thread(w));
+            }
+            threads.forEach(Thread::start);
+            waitStarted.await();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!threads.stream().allMatch(t -> t.getState() == Thread.State.WAITING)) {
+                Assertions.assertTrue(System.nanoTime() < deadline, "The callers never waited for a worker.");
+                Thread.sleep(10);
+            }
+        } finally {
+            farm.close();
+        }
+        for (var w : waiting) {
+            var e = Assertions.assertThrows(ExecutionException.class, () -> w.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+        }
+        Assertions.assertThrows(ExecutionException.class, () -> busy.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCloseWithAllWorkersIdle() throws Exception {
+        var farm = new RenderFarm(2);
+        var pool = Executors.newFixedThreadPool(6);
+        try {
+            var start = new CountDownLatch(1);
+            var callers = new ArrayList<Future<BufferedImage>>();
+            for (int i = 0; i < 6; i++) {
+                callers.add(pool.submit(() -> {
+                    start.await();
+                    return farm.render(HTML, OPTIONS);
+                }));
+            }
+            farm.close();
+            start.countDown();
+            for (var c : callers) {
+                var e = Assertions.assertThrows(ExecutionException.class, () -> c.get(10, TimeUnit.SECONDS));
+                Assertions.assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+            }
+        } finally {
+            farm.close();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        var t = RenderFarm.DEFAULT_TIMEOUT;
+        var h = RenderFarm.DEFAULT_MAX_WORKER_HEAP;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderFarm(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderFarm(1, 0, h, t, List.of()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderFarm(1, 1, 0, t, List.of()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderFarm(1, 1, h, Duration.ZERO, List.of()));
+    }
+}
@@ -0,0 +1,107 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import ninja.javahacker.javahtmlrenderer.AsyncHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageFormat;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderEvent;
+import ninja.javahacker.javahtmlrenderer.RenderMetrics;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.RenderPhase;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderMetricsTest {
+    private static final String HTML = "<p>Hello</p>";
+
+    private void assertTimed(RenderMetrics metrics, RenderPhase... phases) {
+        long sum = 0;
+        for (var phase : RenderPhase.values()) {
+            var nanos = metrics.getNanos(phase);
+            Assertions.assertTrue(nanos >= 0, phase.name());
+            Assertions.assertEquals(nanos, metrics.getPhaseNanos().get(phase));
+            sum += nanos;
+        }
+        for (var phase : phases) {
+            Assertions.assertTrue(metrics.getNanos(phase) > 0, phase.name());
+        }
+        Assertions.assertTrue(metrics.getTotalNanos() >= sum, metrics.toString());
+    }
+
+    @Test
+    public void testHtmlRendererMetrics() throws InterruptedException {
+        var received = new CopyOnWriteArrayList<RenderMetrics>();
+        var opt = RenderOptions.defaults().withSleepTime(50).withListener(received::add);
+        final var image = HtmlRenderer.render(HTML, opt);
+        Assertions.assertEquals(1, received.size());
+        var metrics = received.get(0);
+        assertTimed(metrics, RenderPhase.values());
+        Assertions.assertTrue(metrics.getNanos(RenderPhase.WAIT) >= 50_000_000L);
+        Assertions.assertEquals(image.getWidth(), metrics.getWidth());
+        Assertions.assertEquals(image.getHeight(), metrics.getHeight());
+        Assertions.assertEquals(image.getWidth() * image.getHeight() * 4L, metrics.getBytes());
+    }
+
+    @Test
+    public void testOtherRenderersMetrics() throws Exception {
+        var received = new CopyOnWriteArrayList<RenderMetrics>();
+        var opt = RenderOptions.defaults().withSleepTime(0).withListener(received::add);
+        try (var engine = new HtmlRenderEngine()) {
+            engine.render(HTML, opt);
+        }
+        try (var parallel = new ParallelHtmlRenderer(1)) {
+            parallel.render(HTML, opt);
+        }
+        try (var async = new AsyncHtmlRenderer()) {
+            async.render(HTML, opt).get();
+        }
+        var size = HtmlRenderer.render(HTML, opt, ImageFormat.PNG, new ByteArrayOutputStream());
+        Assertions.assertEquals(4, received.size());
+        assertTimed(received.get(0), RenderPhase.PARSE, RenderPhase.LAYOUT, RenderPhase.PAINT);
+        assertTimed(received.get(1), RenderPhase.PARSE, RenderPhase.LAYOUT, RenderPhase.PAINT, RenderPhase.DISPOSE);
+        Assertions.assertEquals(0, received.get(1).getNanos(RenderPhase.QUEUE));
+        assertTimed(received.get(2), RenderPhase.PARSE, RenderPhase.LAYOUT, RenderPhase.PAINT, RenderPhase.DISPOSE);
+        assertTimed(received.get(3), RenderPhase.PARSE, RenderPhase.LAYOUT, RenderPhase.PAINT);
+        Assertions.assertEquals(size.width, received.get(3).getWidth());
+        Assertions.assertEquals(size.height, received.get(3).getHeight());
+        for (var m : received) {
+            Assertions.assertEquals(received.get(0).getWidth(), m.getWidth());
+            Assertions.assertEquals(received.get(0).getHeight(), m.getHeight());
+        }
+    }
+
+    @Test
+    public void testFlightRecorderEvent() throws Exception {
+        var file = Files.createTempFile("renders", ".jfr");
+        try {
+            int width;
+            try (var recording = new Recording()) {
+                recording.enable(RenderEvent.NAME).withoutThreshold();
+                recording.start();
+                width = HtmlRenderer.render(HTML, RenderOptions.defaults().withSleepTime(0)).getWidth();
+                recording.stop();
+                recording.dump(file);
+            }
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assertions.assertEquals(1, events.size());
+            var event = events.get(0);
+            Assertions.assertEquals(RenderEvent.NAME, event.getEventType().getName());
+            Assertions.assertEquals(width, event.getInt("width"));
+            Assertions.assertTrue(event.getDuration("paint").toNanos() > 0);
+            Assertions.assertTrue(event.getLong("bytes") > 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
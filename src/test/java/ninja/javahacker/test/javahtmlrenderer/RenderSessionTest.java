@@ -0,0 +1,143 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.RenderSession;
+import ninja.javahacker.javahtmlrenderer.RenderUpdate;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderSessionTest {
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    private static String dashboard(String style, String cpu, String mem, String disk) {
+        return "<html><head><style>" + style + "</style></head><body><h1>Servers</h1>"
+                + "<table border='1'><tr><th>Metric</th><th>Value</th></tr>"
+                + "<tr><td>CPU</td><td id='cpu'>" + cpu + "</td></tr>"
+                + "<tr><td>Memory</td><td id='mem'><b>" + mem + "</b></td></tr>"
+                + "<tr><td>Disk</td><td id='disk'>" + disk + "</td></tr></table>"
+                + "<p style='color: gray;'>Updated every second. Lots of text here, to have more area to not repaint.</p>"
+                + "<p>Some more text.</p><p>Even more text.</p></body></html>";
+    }
+
+    private static String dashboard(String cpu, String mem, String disk) {
+        return dashboard("td { padding: 3px; }", cpu, mem, disk);
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    private static void assertUntouchedOutside(BufferedImage before, RenderUpdate after) {
+        for (int y = 0; y < before.getHeight(); y++) {
+            for (int x = 0; x < before.getWidth(); x++) {
+                var inside = false;
+                for (var r : after.getDirtyRegions()) {
+                    inside |= r.contains(x, y);
+                }
+                if (!inside) Assertions.assertEquals(before.getRGB(x, y), after.getImage().getRGB(x, y), x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyChangedTextIsRepainted() throws Exception {
+        try (var session = new RenderSession(OPTIONS)) {
+            var first = session.render(dashboard("10%", "2 GB", "50%"));
+            Assertions.assertTrue(first.isFullRepaint());
+            Assertions.assertEquals(
+                    List.of(new Rectangle(first.getImage().getWidth(), first.getImage().getHeight())),
+                    first.getDirtyRegions());
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(dashboard("10%", "2 GB", "50%"), OPTIONS), first.getImage()));
+
+            var before = copy(first.getImage());
+            var html = dashboard("12%", "2 GB", "50%");
+            var next = session.render(html);
+            Assertions.assertFalse(next.isFullRepaint(), next.toString());
+            Assertions.assertSame(first.getImage(), next.getImage());
+            Assertions.assertFalse(next.getDirtyRegions().isEmpty());
+            long area = next.getDirtyRegions().stream().mapToLong(r -> (long) r.width * r.height).sum();
+            Assertions.assertTrue(area * 4 < (long) before.getWidth() * before.getHeight(), next.toString());
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS), next.getImage()));
+            assertUntouchedOutside(before, next);
+        }
+    }
+
+    @Test
+    public void testManyChanges() throws Exception {
+        try (var session = new RenderSession(OPTIONS)) {
+            session.render(dashboard("10%", "2 GB", "50%"));
+            for (int i = 0; i < 20; i++) {
+                var html = dashboard(i + "%", (i * 7 % 10) + " GB", (100 - i) + "%");
+                var update = session.render(html);
+                Assertions.assertFalse(update.isFullRepaint(), update.toString());
+                Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS), update.getImage()), html);
+            }
+        }
+    }
+
+    @Test
+    public void testNothingChanged() throws Exception {
+        try (var session = new RenderSession(OPTIONS)) {
+            session.render(dashboard("10%", "2 GB", "50%"));
+            var update = session.render(dashboard("10%", "2 GB", "50%"));
+            Assertions.assertFalse(update.isFullRepaint());
+            Assertions.assertTrue(update.getDirtyRegions().isEmpty(), update.toString());
+        }
+    }
+
+    @Test
+    public void testLayoutChangeIsRepainted() throws Exception {
+        try (var session = new RenderSession(OPTIONS.withWidth(300))) {
+            session.render(dashboard("10%", "2 GB", "50%"));
+            var html = dashboard("10% of a very very very very very long text that wraps into many lines", "2 GB", "50%");
+            var update = session.render(html);
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS.withWidth(300)), update.getImage()));
+        }
+    }
+
+    @Test
+    public void testStructureOrStyleChangeIsFullRepaint() throws Exception {
+        try (var session = new RenderSession(OPTIONS)) {
+            session.render(dashboard("10%", "2 GB", "50%"));
+            var html = dashboard("10%", "<i>2 GB</i>", "50%");
+            var update = session.render(html);
+            Assertions.assertTrue(update.isFullRepaint());
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS), update.getImage()));
+            html = dashboard("td { padding: 8px; }", "10%", "<i>2 GB</i>", "50%");
+            update = session.render(html);
+            Assertions.assertTrue(update.isFullRepaint());
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS), update.getImage()));
+        }
+    }
+
+    @Test
+    public void testUpdateById() throws Exception {
+        try (var session = new RenderSession(OPTIONS.withPixelType(PixelType.ARGB))) {
+            Assertions.assertThrows(IllegalStateException.class, () -> session.update(Map.of("cpu", "1%")));
+            session.render(dashboard("10%", "2 GB", "50%"));
+            var update = session.update(Map.of("cpu", "15%", "mem", "3 GB"));
+            Assertions.assertFalse(update.isFullRepaint(), update.toString());
+            var expected = HtmlRenderer.render(dashboard("15%", "3 GB", "50%"), OPTIONS.withPixelType(PixelType.ARGB));
+            Assertions.assertTrue(ImageCompare.equals(expected, update.getImage()));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> session.update(Map.of("nope", "1")));
+        }
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        var session = new RenderSession(OPTIONS);
+        session.render("<p>Hello</p>");
+        session.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> session.render("<p>Hello</p>"));
+    }
+}
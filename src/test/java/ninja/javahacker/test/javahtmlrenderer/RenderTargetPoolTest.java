@@ -0,0 +1,79 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.image.BufferedImage;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderTargetPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class RenderTargetPoolTest {
+
+    @Test
+    public void testReuse() {
+        var pool = new RenderTargetPool(64L * 1024 * 1024);
+        var a = pool.acquire(100, 50, PixelType.RGB);
+        Assertions.assertEquals(100, a.getImage().getWidth());
+        Assertions.assertEquals(50, a.getImage().getHeight());
+        Assertions.assertEquals(BufferedImage.TYPE_INT_RGB, a.getImage().getType());
+        Assertions.assertEquals(PixelType.RGB, a.getPixelType());
+        a.getImage().setRGB(99, 49, 0x123456);
+        a.close();
+        Assertions.assertTrue(pool.getIdleBytes() > 0);
+
+        // A slightly different size falls in the same bucket and sees the pixels left by the previous lease.
+        try (var b = pool.acquire(90, 60, PixelType.RGB)) {
+            Assertions.assertEquals(90, b.getImage().getWidth());
+            Assertions.assertEquals(60, b.getImage().getHeight());
+            Assertions.assertEquals(0, pool.getIdleBytes());
+        }
+        try (var c = pool.acquire(100, 50, PixelType.RGB)) {
+            Assertions.assertEquals(0x123456, c.getImage().getRGB(99, 49) & 0xFFFFFF);
+        }
+        Assertions.assertEquals(1, pool.getAllocations());
+        Assertions.assertEquals(2, pool.getReuses());
+    }
+
+    @Test
+    public void testBuckets() {
+        var pool = new RenderTargetPool(256L * 1024 * 1024);
+        pool.acquire(100, 100, PixelType.RGB).close();
+        pool.acquire(100, 100, PixelType.GRAY).close();
+        pool.acquire(1000, 100, PixelType.RGB).close();
+        pool.acquire(1920, 10000, PixelType.ARGB).close();
+        Assertions.assertEquals(4, pool.getAllocations());
+        Assertions.assertEquals(0, pool.getReuses());
+        Assertions.assertEquals(
+                128L * 128 * 4 + 128L * 128 + 1024L * 128 * 4 + 1920L * 10240 * 4,
+                pool.getIdleBytes());
+        pool.acquire(1900, 9500, PixelType.ARGB).close();
+        Assertions.assertEquals(1, pool.getReuses());
+        pool.clear();
+        Assertions.assertEquals(0, pool.getIdleBytes());
+    }
+
+    @Test
+    public void testBounded() {
+        var pool = new RenderTargetPool(100 * 100 * 2);
+        var a = pool.acquire(64, 64, PixelType.RGB);
+        var b = pool.acquire(64, 64, PixelType.RGB);
+        a.close();
+        b.close();
+        b.close();
+        Assertions.assertEquals(64 * 64 * 4, pool.getIdleBytes());
+        pool.acquire(64, 64, PixelType.RGB).close();
+        pool.acquire(64, 64, PixelType.RGB).close();
+        Assertions.assertEquals(2, pool.getAllocations());
+        Assertions.assertEquals(2, pool.getReuses());
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        var pool = new RenderTargetPool(0);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderTargetPool(-1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool.acquire(0, 1, PixelType.RGB));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> pool.acquire(1, 0, PixelType.RGB));
+    }
+}
@@ -9,7 +9,9 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JPanel;
 import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.PixelType;
 import ninja.javahacker.javahtmlrenderer.Screenshot;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -47,6 +49,74 @@ public class ScreenshotTest {
         Assertions.assertTrue(i1 || i2);
     }
 
+    private JPanel redPanel() {
+        var p = new JPanel();
+        p.setBackground(Color.RED);
+        p.setOpaque(true);
+        p.setSize(30, 20);
+        return p;
+    }
+
+    private BufferedImage blueImage(int type) {
+        var image = new BufferedImage(50, 40, type);
+        var g = image.createGraphics();
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, 50, 40);
+        g.dispose();
+        return image;
+    }
+
+    private void assertRedAt(BufferedImage image, int dx, int dy) {
+        for (int x = 0; x < 50; x++) {
+            for (int y = 0; y < 40; y++) {
+                var inside = x >= dx && x < dx + 30 && y >= dy && y < dy + 20;
+                Assertions.assertEquals(inside ? 0xFFFF0000 : 0xFF0000FF, image.getRGB(x, y), x + "," + y);
+            }
+        }
+    }
+
+    @Test
+    public void testScreenshotIntoTarget() {
+        var target = blueImage(BufferedImage.TYPE_INT_ARGB);
+        Assertions.assertSame(target, Screenshot.screenshot(redPanel(), target));
+        assertRedAt(target, 0, 0);
+    }
+
+    @Test
+    public void testScreenshotIntoRaster() {
+        var image = blueImage(BufferedImage.TYPE_INT_RGB);
+        var child = image.getRaster().createWritableChild(10, 5, 40, 35, 10, 5, null);
+        Assertions.assertSame(child, Screenshot.screenshot(redPanel(), child, PixelType.RGB));
+        assertRedAt(image, 10, 5);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(redPanel(), child, PixelType.GRAY));
+    }
+
+    @Test
+    public void testScreenshotBand() {
+        var target = blueImage(BufferedImage.TYPE_INT_RGB);
+        Assertions.assertSame(target, Screenshot.screenshot(redPanel(), 15, target));
+        assertRedAt(target, 0, -15);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(redPanel(), 20, target));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(redPanel(), -1, target));
+    }
+
+    @Test
+    public void testScreenshotHeadlessPixelTypes() {
+        for (var type : PixelType.values()) {
+            var image = Screenshot.screenshotHeadless(redPanel(), type);
+            Assertions.assertEquals(type.getImageType(), image.getType());
+            Assertions.assertEquals(30, image.getWidth());
+            Assertions.assertEquals(20, image.getHeight());
+        }
+    }
+
+    @Test
+    public void testScreenshotTargetTooSmall() {
+        var target = new BufferedImage(29, 20, BufferedImage.TYPE_INT_RGB);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(redPanel(), target));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(redPanel(), (BufferedImage) null));
+    }
+
     @Test
     public void testScreenshotNull() {
         Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.screenshot(null), "The component can't be null.");
@@ -0,0 +1,93 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderEngine;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.HtmlTemplate;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.ParallelHtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.SharedStyleSheet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class SharedStyleSheetTest {
+    private static final String CSS = "td { color: red; padding: 4px; } h1 { font-size: 30; color: green; } .big { font-size: 24; }";
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    private static String table(int rows) {
+        var html = new StringBuilder("<h1>Title</h1><table border='1'>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td>Row ").append(i).append("</td><td style='background-color: yellow;'>").append(i * i)
+                    .append("</td><td class='big'>Big</td></tr>");
+        }
+        return html.append("</table>").toString();
+    }
+
+    @Test
+    public void testMatchesStyleElement() throws Exception {
+        var opt = OPTIONS.withStyleSheet(new SharedStyleSheet(CSS));
+        var expected = HtmlRenderer.render("<style>" + CSS + "</style>" + table(10), OPTIONS);
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(table(10), opt)));
+        try (var engine = new HtmlRenderEngine()) {
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertTrue(ImageCompare.equals(expected, engine.render(table(10), opt)));
+            }
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(table(10), OPTIONS), engine.render(table(10), OPTIONS)));
+        }
+    }
+
+    @Test
+    public void testDocumentRulesWin() throws Exception {
+        var opt = OPTIONS.withStyleSheet(new SharedStyleSheet("p { color: blue; font-size: 40; }"));
+        var html = "<style>p { font-size: 10; }</style><p style='color: red;'>Hello</p>";
+        Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(html, OPTIONS), HtmlRenderer.render(html, opt)));
+    }
+
+    @Test
+    public void testLayoutHeightDependsOnStyleSheet() throws Exception {
+        var opt = OPTIONS.withWidth(200);
+        var big = opt.withStyleSheet(new SharedStyleSheet("p { font-size: 40; }"));
+        var html = "<p>Some text that wraps over many lines at this width.</p>";
+        var small = HtmlRenderer.render(html, opt).getHeight();
+        Assertions.assertTrue(HtmlRenderer.render(html, big).getHeight() > small);
+        Assertions.assertEquals(small, HtmlRenderer.render(html, opt).getHeight());
+    }
+
+    @Test
+    public void testTemplateLinksOnlyWhileRendered() throws Exception {
+        var css = new SharedStyleSheet("b { color: red; }");
+        var t = new HtmlTemplate("<p><b>${v}</b></p>");
+        try (var engine = new HtmlRenderEngine()) {
+            var styled = engine.render(t, Map.of("v", "x"), OPTIONS.withStyleSheet(css));
+            var plain = engine.render(t, Map.of("v", "x"), OPTIONS);
+            var expected = HtmlRenderer.render("<style>b { color: red; }</style><p><b>x</b></p>", OPTIONS);
+            Assertions.assertTrue(ImageCompare.equals(expected, styled));
+            Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render("<p><b>x</b></p>", OPTIONS), plain));
+        }
+    }
+
+    @Test
+    public void testConcurrentRenders() throws Exception {
+        var opt = OPTIONS.withStyleSheet(new SharedStyleSheet(CSS));
+        var expected = HtmlRenderer.render(table(30), opt);
+        var pool = Executors.newFixedThreadPool(8);
+        try (var renderer = new ParallelHtmlRenderer(4)) {
+            var results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit(() -> ImageCompare.equals(expected, renderer.render(table(30), opt))));
+            }
+            for (var r : results) {
+                Assertions.assertTrue(r.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageCompare;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class StreamedHtmlTest {
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0).withWidth(400);
+
+    private static final String HTML = "<html><head><style>p { color: #a03030; }</style></head><body>"
+            + "<h1>Relatório</h1><p>Ação, coração, pão e maçã.</p><table border='1'><tr><td>À</td><td>ü</td></tr></table>"
+            + "<p>Some <b>bold</b> and <i>italic</i> text.</p></body></html>";
+
+    private static String report(int rows) {
+        var html = new StringBuilder("<h1>Report</h1><table border='1'>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr><td>Row ").append(i).append("</td><td>Value ").append(i * 31 % 97).append("</td></tr>");
+        }
+        return html.append("</table>").toString();
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        var expected = HtmlRenderer.render(HTML, OPTIONS);
+        var reader = new StringReader(HTML);
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(reader, OPTIONS)));
+        Assertions.assertEquals(-1, reader.read(), "The reader should be read until its end, but not closed.");
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(new StringReader(HTML), OPTIONS)));
+        var preferred = HtmlRenderer.render(HTML, OPTIONS.withWidth(0));
+        Assertions.assertTrue(ImageCompare.equals(preferred, HtmlRenderer.render(new StringReader(HTML), OPTIONS.withWidth(0))));
+    }
+
+    @Test
+    public void testInputStream() throws Exception {
+        var expected = HtmlRenderer.render(HTML, OPTIONS);
+        var utf8 = new ByteArrayInputStream(HTML.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(utf8, StandardCharsets.UTF_8, OPTIONS)));
+        var latin1 = new ByteArrayInputStream(HTML.getBytes(StandardCharsets.ISO_8859_1));
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(latin1, StandardCharsets.ISO_8859_1, OPTIONS)));
+    }
+
+    @Test
+    public void testPath(@TempDir Path dir) throws Exception {
+        var expected = HtmlRenderer.render(HTML, OPTIONS);
+        var utf8 = Files.writeString(dir.resolve("utf8.html"), HTML, StandardCharsets.UTF_8);
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(utf8, StandardCharsets.UTF_8, OPTIONS)));
+        var latin1 = Files.writeString(dir.resolve("latin1.html"), HTML, StandardCharsets.ISO_8859_1);
+        Assertions.assertTrue(ImageCompare.equals(expected, HtmlRenderer.render(latin1, StandardCharsets.ISO_8859_1, OPTIONS)));
+
+        var big = report(3000);
+        var file = Files.writeString(dir.resolve("big.html"), big, StandardCharsets.UTF_8);
+        var streamed = HtmlRenderer.render(file, StandardCharsets.UTF_8, OPTIONS);
+        Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(big, OPTIONS), streamed));
+
+        Assertions.assertThrows(IOException.class, () -> HtmlRenderer.render(dir.resolve("missing.html"), StandardCharsets.UTF_8, OPTIONS));
+    }
+
+    @Test
+    public void testDeclaredCharsetIsIgnored(@TempDir Path dir) throws Exception {
+        var declared = "<html><head><meta http-equiv='Content-Type' content='text/html; charset=ISO-8859-1'></head>"
+                + "<body><p>Ação</p></body></html>";
+        var file = Files.writeString(dir.resolve("meta.html"), declared, StandardCharsets.UTF_8);
+        var image = HtmlRenderer.render(file, StandardCharsets.UTF_8, OPTIONS);
+        Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render("<html><body><p>Ação</p></body></html>", OPTIONS), image));
+    }
+
+    @Test
+    public void testGeneratedWhileRendered() throws Exception {
+        var big = report(2000);
+        var writer = new PipedWriter();
+        Reader reader = new PipedReader(writer, 4096);
+        var producer = CompletableFuture.runAsync(() -> {
+            try (writer) {
+                for (int i = 0; i < big.length(); i += 1000) {
+                    writer.write(big, i, Math.min(1000, big.length() - i));
+                }
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        var image = HtmlRenderer.render(reader, OPTIONS);
+        producer.join();
+        Assertions.assertTrue(ImageCompare.equals(HtmlRenderer.render(big, OPTIONS), image));
+    }
+
+    @Test
+    public void testReadFailure() {
+        var failing = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Broken.");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        var e = Assertions.assertThrows(IOException.class, () -> HtmlRenderer.render(failing, OPTIONS));
+        Assertions.assertEquals("Broken.", e.getMessage());
+    }
+}
@@ -0,0 +1,110 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JLabel;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.ImageFingerprint;
+import ninja.javahacker.javahtmlrenderer.PixelType;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import ninja.javahacker.javahtmlrenderer.RenderSession;
+import ninja.javahacker.javahtmlrenderer.ScaleQuality;
+import ninja.javahacker.javahtmlrenderer.Screenshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class ThumbnailTest {
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0).withWidth(800);
+
+    private static final String HTML = "<html><body style='background: #f0f0ff;'>"
+            + "<h1 style='background: #203080; color: white;'>Quarterly report</h1>"
+            + "<table border='1' width='100%'><tr><td bgcolor='#c03030'>Red</td><td bgcolor='#30c030'>Green</td></tr>"
+            + "<tr><td bgcolor='#3030c0'>Blue</td><td bgcolor='#000000'>Black</td></tr></table>"
+            + "<p>Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore.</p>"
+            + "<div style='background: #e0a000; height: 200px;'>Block</div></body></html>";
+
+    @Test
+    public void testScale() throws Exception {
+        var full = HtmlRenderer.render(HTML, OPTIONS);
+        var reference = ImageFingerprint.of(full);
+        for (var quality : ScaleQuality.values()) {
+            var thumb = HtmlRenderer.render(HTML, OPTIONS.withScale(0.25).withScaleQuality(quality));
+            Assertions.assertEquals(Math.round(full.getWidth() * 0.25), thumb.getWidth(), quality.name());
+            Assertions.assertEquals(Math.round(full.getHeight() * 0.25), thumb.getHeight(), quality.name());
+            Assertions.assertTrue(reference.distance(ImageFingerprint.of(thumb)) <= 12, quality.name());
+        }
+        var big = HtmlRenderer.render(HTML, OPTIONS.withScale(2));
+        Assertions.assertEquals(full.getWidth() * 2, big.getWidth());
+        Assertions.assertEquals(full.getHeight() * 2, big.getHeight());
+        Assertions.assertTrue(reference.distance(ImageFingerprint.of(big)) <= 12);
+    }
+
+    @Test
+    public void testBoundingBox() throws Exception {
+        var full = HtmlRenderer.render(HTML, OPTIONS);
+        var thumb = HtmlRenderer.render(HTML, OPTIONS.withBoundingBox(200, 200));
+        Assertions.assertTrue(thumb.getWidth() <= 200 && thumb.getHeight() <= 200);
+        Assertions.assertTrue(thumb.getWidth() == 200 || thumb.getHeight() == 200);
+        double ratio = full.getWidth() / (double) full.getHeight();
+        Assertions.assertEquals(ratio, thumb.getWidth() / (double) thumb.getHeight(), 0.02);
+
+        var small = HtmlRenderer.render("<p>Hi</p>", OPTIONS.withWidth(100).withBoundingBox(1000, 1000));
+        Assertions.assertEquals(HtmlRenderer.render("<p>Hi</p>", OPTIONS.withWidth(100)).getHeight(), small.getHeight());
+        Assertions.assertEquals(100, small.getWidth());
+
+        var paged = HtmlRenderer.render(HTML, OPTIONS.withPageSize(400, 300).withScale(0.5).withPixelType(PixelType.GRAY));
+        Assertions.assertEquals(new Dimension(200, 150), new Dimension(paged.getWidth(), paged.getHeight()));
+        Assertions.assertEquals(BufferedImage.TYPE_BYTE_GRAY, paged.getType());
+    }
+
+    @Test
+    public void testMemoryScalesWithOutput() throws Exception {
+        var full = new AtomicLong();
+        var thumb = new AtomicLong();
+        HtmlRenderer.render(HTML, OPTIONS.withListener(m -> full.set(m.getBytes())));
+        HtmlRenderer.render(HTML, OPTIONS.withScale(0.1).withListener(m -> thumb.set(m.getBytes())));
+        Assertions.assertTrue(full.get() > 0);
+        Assertions.assertTrue(thumb.get() * 50 < full.get(), thumb + " " + full);
+    }
+
+    @Test
+    public void testScreenshotThumbnail() throws Exception {
+        EventQueue.invokeAndWait(() -> {
+            var label = new JLabel();
+            label.setOpaque(true);
+            label.setBackground(Color.RED);
+            label.setSize(400, 200);
+            for (var quality : ScaleQuality.values()) {
+                var target = new BufferedImage(40, 20, BufferedImage.TYPE_INT_ARGB);
+                Assertions.assertSame(target, Screenshot.thumbnail(label, target, quality));
+                Assertions.assertEquals(Color.RED.getRGB(), target.getRGB(20, 10), quality.name());
+            }
+            var empty = new JLabel();
+            var target = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Screenshot.thumbnail(empty, target, ScaleQuality.FAST));
+        });
+    }
+
+    @Test
+    public void testInvalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OPTIONS.withScale(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OPTIONS.withScale(Double.NaN));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OPTIONS.withScale(Double.POSITIVE_INFINITY));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> OPTIONS.withBoundingBox(0, 10));
+        Assertions.assertFalse(OPTIONS.isScaled());
+        Assertions.assertTrue(OPTIONS.withScale(0.5).isScaled());
+        Assertions.assertFalse(OPTIONS.withBoundingBox(10, 10).withScale(1).isScaled());
+        Assertions.assertEquals(new Dimension(10, 20), OPTIONS.withBoundingBox(10, 20).getBoundingBox().orElseThrow());
+        Assertions.assertNotEquals(OPTIONS, OPTIONS.withScale(0.5));
+
+        var scaled = OPTIONS.withScale(0.5);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RenderSession(scaled));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HtmlRenderer.renderDirect("<p>Hi</p>", scaled));
+    }
+}
@@ -0,0 +1,79 @@
+package ninja.javahacker.test.javahtmlrenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import ninja.javahacker.javahtmlrenderer.HtmlRenderer;
+import ninja.javahacker.javahtmlrenderer.RenderOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Victor Williams Stafusa da Silva
+ */
+public class WarmUpTest {
+    private static final String HTML = "<h1>Hello</h1><table border='1'><tr><td>A</td><td><b>B</b></td></tr></table>";
+    private static final RenderOptions OPTIONS = RenderOptions.defaults().withHeadless(true).withSleepTime(0);
+
+    /**
+     * Runs in a fresh JVM, printing how many nanoseconds its first render took.
+     */
+    public static final class FirstRender {
+        private FirstRender() {
+            throw new UnsupportedOperationException();
+        }
+
+        public static void main(String[] args) throws Exception {
+            if (args.length > 0 && "warm".equals(args[0])) HtmlRenderer.warmUp();
+            var start = System.nanoTime();
+            HtmlRenderer.render(HTML, OPTIONS);
+            System.out.println(System.nanoTime() - start);
+            System.exit(0);
+        }
+    }
+
+    private static long firstRender(boolean warm) throws IOException, InterruptedException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var command = new ArrayList<String>();
+        command.add(java);
+        command.add("-Djava.awt.headless=true");
+        var modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null && WarmUpTest.class.getModule().isNamed()) {
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("-m");
+            command.add(WarmUpTest.class.getModule().getName() + "/" + FirstRender.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(ManagementFactory.getRuntimeMXBean().getClassPath().replace(";", File.pathSeparator));
+            command.add(FirstRender.class.getName());
+        }
+        if (warm) command.add("warm");
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).strip();
+        Assertions.assertTrue(process.waitFor(1, TimeUnit.MINUTES));
+        Assertions.assertEquals(0, process.exitValue(), output);
+        var lines = output.lines().toList();
+        return Long.parseLong(lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testWarmFirstRenderIsFaster() throws Exception {
+        var cold = firstRender(false);
+        var warm = firstRender(true);
+        Assertions.assertTrue(warm < cold, () -> "cold: " + cold + " ns, warm: " + warm + " ns");
+    }
+
+    @Test
+    public void testWarmUpOnlyOnce() throws Exception {
+        var background = HtmlRenderer.warmUpInBackground();
+        HtmlRenderer.warmUp();
+        Assertions.assertNull(background.get(1, TimeUnit.MINUTES));
+        Assertions.assertTrue(HtmlRenderer.warmUpInBackground().isDone());
+        HtmlRenderer.warmUp();
+    }
+}